@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2017, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.oracle.truffle.api.vm.PolyglotEngine;
+import com.oracle.truffle.r.runtime.RSource;
+
+/**
+ * Measures {@code unserialize} of the XDR payloads of typical R values, decoded either from a raw
+ * vector (as, e.g., {@code unserialize(serialize(x, NULL))} or the parallel package do) or from an
+ * uncompressed file through {@code readRDS}, i.e., through a connection.
+ *
+ * Run with the JMH runner, e.g., {@code org.openjdk.jmh.Main XdrDecodeBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XdrDecodeBenchmark {
+
+    @Param({"doubles", "integers", "strings", "data.frame"}) public String payload;
+    @Param({"1000", "1000000"}) public int length;
+    @Param({"raw", "file"}) public String from;
+
+    private PolyglotEngine engine;
+    private PolyglotEngine.Value unserialize;
+
+    private String value() {
+        switch (payload) {
+            case "doubles":
+                return "runif(n)";
+            case "integers":
+                return "sample.int(1000L, n, TRUE)";
+            case "strings":
+                return "as.character(sample.int(1000L, n, TRUE))";
+            case "data.frame":
+                return "data.frame(id = seq_len(n), x = runif(n), g = sample(letters, n, TRUE), stringsAsFactors = FALSE)";
+            default:
+                throw new IllegalArgumentException(payload);
+        }
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        engine = PolyglotEngine.newBuilder().build();
+        String code;
+        if (from.equals("raw")) {
+            code = "{ n <- %d; set.seed(42); p <- serialize(%s, NULL); function() unserialize(p) }";
+        } else {
+            code = "{ n <- %d; set.seed(42); f <- tempfile(); saveRDS(%s, f, compress = FALSE); function() readRDS(f) }";
+        }
+        unserialize = engine.eval(RSource.fromTextInternal(String.format(code, length, value()), RSource.Internal.BENCHMARK));
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (from.equals("file")) {
+            engine.eval(RSource.fromTextInternal("unlink(f)", RSource.Internal.BENCHMARK));
+        }
+        engine.dispose();
+    }
+
+    @Benchmark
+    public Object unserialize() throws Exception {
+        return unserialize.execute().get();
+    }
+}
@@ -0,0 +1,688 @@
+/*
+ * Copyright (c) 2017, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.oracle.truffle.api.RootCallTarget;
+import com.oracle.truffle.api.source.Source;
+import com.oracle.truffle.api.source.SourceSection;
+import com.oracle.truffle.r.nodes.RASTBuilder;
+import com.oracle.truffle.r.parser.DefaultRParserFactory;
+import com.oracle.truffle.r.runtime.FastROptions;
+import com.oracle.truffle.r.runtime.RInternalError;
+import com.oracle.truffle.r.runtime.RParserFactory;
+import com.oracle.truffle.r.runtime.RRuntime;
+import com.oracle.truffle.r.runtime.context.Engine.ParseException;
+import com.oracle.truffle.r.runtime.data.RComplex;
+import com.oracle.truffle.r.runtime.data.RNull;
+import com.oracle.truffle.r.runtime.nodes.RCodeBuilder;
+import com.oracle.truffle.r.runtime.nodes.RCodeBuilder.Argument;
+import com.oracle.truffle.r.runtime.nodes.RSyntaxNode;
+
+/**
+ * A persistent cache of parse results, which avoids running the parser on the same large sources,
+ * e.g., the base package, over and over again in short-lived processes.
+ *
+ * The parser is run with a {@link ShapeBuilder}, which records the calls the parser makes to its
+ * {@link RCodeBuilder} as a tree of {@link Shape}s. These calls are replayed on a
+ * {@link RASTBuilder} to create the actual AST, and the recorded tree is written to a file named
+ * after the SHA-256 of the source text. When the same text is parsed again, the tree is read from
+ * that file and replayed instead of running the parser. Since the same builder calls are replayed,
+ * with the same source sections, the result is identical to parsing.
+ *
+ * The files are stamped with a hash of the generated parser and lexer classes, so that they are
+ * ignored after any change to the grammar. All I/O errors simply lead to parsing as usual.
+ *
+ * Only the contents of files are cached, since other sources, e.g., texts built at run time, are
+ * unlikely to be parsed again by a later process. The modification time of a file is updated when
+ * it is used, and the least recently used files are deleted when the cache grows beyond
+ * {@link FastROptions#ASTCacheMaxSize}.
+ */
+final class ASTCache {
+
+    private static final int MAGIC = 0x46524153; // "FRAS"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte NODE_NONE = 0;
+    private static final byte NODE_CALL = 1;
+    private static final byte NODE_CONSTANT = 2;
+    private static final byte NODE_LOOKUP = 3;
+    private static final byte NODE_FUNCTION = 4;
+
+    private static final byte CONST_NULL = 0;
+    private static final byte CONST_INT = 1;
+    private static final byte CONST_DOUBLE = 2;
+    private static final byte CONST_LOGICAL = 3;
+    private static final byte CONST_STRING = 4;
+    private static final byte CONST_STRING_NA = 5;
+    private static final byte CONST_COMPLEX = 6;
+
+    private static final int SECTION_NULL = -1;
+    private static final int SECTION_UNAVAILABLE = -2;
+    private static final int SECTION_INTERNAL = -3;
+    private static final int SECTION_LAZY_DEPARSE = -4;
+
+    private static volatile byte[] parserStamp;
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong writes = new AtomicLong();
+
+    private ASTCache() {
+        // no instances
+    }
+
+    /**
+     * Thrown if a recorded tree cannot be written, e.g., because of an unexpected constant.
+     */
+    @SuppressWarnings("serial")
+    private static final class NotCacheableException extends Exception {
+        NotCacheableException(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    static boolean isCacheable(Source source) {
+        int minSize = FastROptions.ASTCacheMinSize.getNonNegativeIntValue();
+        return minSize > 0 && source.getLength() >= minSize && isFileBacked(source);
+    }
+
+    private static boolean isFileBacked(Source source) {
+        if (source.isInternal()) {
+            return false;
+        }
+        if (source.getPath() != null) {
+            return true;
+        }
+        URI uri = source.getURI();
+        return uri != null && "file".equals(uri.getScheme());
+    }
+
+    /**
+     * Returns the number of parses that were served from the cache and the number of parse results
+     * that were written to it.
+     */
+    static long[] getStatistics() {
+        return new long[]{hits.get(), writes.get()};
+    }
+
+    static List<RSyntaxNode> parse(Source source) throws ParseException {
+        Path file = cacheFile(source);
+        List<Shape> statements = file == null ? null : read(file, source);
+        if (statements == null) {
+            RParserFactory.Parser<Shape> parser = RParserFactory.getParser();
+            statements = parser.script(source, new ShapeBuilder());
+            if (file != null) {
+                write(file, source, statements);
+            }
+        }
+        RASTBuilder builder = new RASTBuilder();
+        List<RSyntaxNode> result = new ArrayList<>(statements.size());
+        for (Shape statement : statements) {
+            result.add(statement.replay(builder));
+        }
+        return result;
+    }
+
+    private static Path cacheFile(Source source) {
+        try {
+            Path dir = Paths.get(System.getProperty("user.home"), ".fastr", "ast-cache");
+            Files.createDirectories(dir);
+            if (!Files.isWritable(dir)) {
+                return null;
+            }
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(source.getCode().getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(hash.length * 2 + 4);
+            for (byte b : hash) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return dir.resolve(name.append(".ast").toString());
+        } catch (IOException | NoSuchAlgorithmException | SecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A hash of the classes generated from the grammar.
+     */
+    private static byte[] getParserStamp() throws IOException {
+        byte[] stamp = parserStamp;
+        if (stamp == null) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                for (String name : new String[]{"RParser.class", "RLexer.class"}) {
+                    try (InputStream in = DefaultRParserFactory.class.getResourceAsStream(name)) {
+                        if (in == null) {
+                            throw new IOException("cannot find " + name);
+                        }
+                        byte[] buffer = new byte[8192];
+                        int n;
+                        while ((n = in.read(buffer)) > 0) {
+                            digest.update(buffer, 0, n);
+                        }
+                    }
+                }
+                stamp = digest.digest();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+            parserStamp = stamp;
+        }
+        return stamp;
+    }
+
+    private static List<Shape> read(Path file, Source source) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            byte[] stamp = getParserStamp();
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || in.readInt() != source.getLength()) {
+                return null;
+            }
+            byte[] fileStamp = new byte[stamp.length];
+            in.readFully(fileStamp);
+            if (!Arrays.equals(stamp, fileStamp)) {
+                return null;
+            }
+            List<Shape> statements = new Reader(in, source).readStatements();
+            hits.incrementAndGet();
+            touch(file);
+            return statements;
+        } catch (IOException | RuntimeException e) {
+            // a stale, truncated or otherwise unreadable file is simply ignored
+            return null;
+        }
+    }
+
+    private static void write(Path file, Source source, List<Shape> statements) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(source.getLength());
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(source.getLength());
+            out.write(getParserStamp());
+            new Writer(out, source).writeStatements(statements);
+            out.flush();
+            // concurrent processes may write the same file, so it is replaced atomically
+            Path temp = Files.createTempFile(file.getParent(), "ast", ".tmp");
+            try {
+                Files.write(temp, bytes.toByteArray());
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            writes.incrementAndGet();
+            prune(file.getParent());
+        } catch (IOException | NotCacheableException | SecurityException e) {
+            // the result is not cached
+        }
+    }
+
+    /**
+     * Marks the file as recently used.
+     */
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException | SecurityException e) {
+            // it may only be deleted earlier
+        }
+    }
+
+    private static final class CacheFile {
+        private final Path path;
+        private final long size;
+        private final long lastUsed;
+
+        CacheFile(Path path, BasicFileAttributes attributes) {
+            this.path = path;
+            this.size = attributes.size();
+            this.lastUsed = attributes.lastModifiedTime().toMillis();
+        }
+    }
+
+    /**
+     * Deletes the least recently used files until the cache is no larger than
+     * {@link FastROptions#ASTCacheMaxSize}. Other processes may delete the same files concurrently.
+     */
+    private static void prune(Path dir) throws IOException {
+        long maxSize = FastROptions.ASTCacheMaxSize.getNonNegativeIntValue() * 1024L * 1024L;
+        ArrayList<CacheFile> files = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.ast")) {
+            for (Path path : stream) {
+                try {
+                    CacheFile file = new CacheFile(path, Files.readAttributes(path, BasicFileAttributes.class));
+                    files.add(file);
+                    total += file.size;
+                } catch (IOException e) {
+                    // deleted in the meantime
+                }
+            }
+        }
+        if (total <= maxSize) {
+            return;
+        }
+        files.sort(Comparator.comparingLong(file -> file.lastUsed));
+        for (CacheFile file : files) {
+            if (total <= maxSize) {
+                break;
+            }
+            Files.deleteIfExists(file.path);
+            total -= file.size;
+        }
+    }
+
+    /**
+     * A recorded call to an {@link RCodeBuilder}.
+     */
+    private abstract static class Shape {
+        protected final SourceSection source;
+
+        Shape(SourceSection source) {
+            this.source = source;
+        }
+
+        abstract RSyntaxNode replay(RCodeBuilder<RSyntaxNode> builder);
+
+        static List<Argument<RSyntaxNode>> replay(List<Argument<Shape>> arguments, RCodeBuilder<RSyntaxNode> builder) {
+            List<Argument<RSyntaxNode>> result = new ArrayList<>(arguments.size());
+            for (Argument<Shape> arg : arguments) {
+                result.add(RCodeBuilder.argument(arg.source, arg.name, arg.value == null ? null : arg.value.replay(builder)));
+            }
+            return result;
+        }
+    }
+
+    private static final class CallShape extends Shape {
+        private final Shape lhs;
+        private final List<Argument<Shape>> arguments;
+
+        CallShape(SourceSection source, Shape lhs, List<Argument<Shape>> arguments) {
+            super(source);
+            this.lhs = lhs;
+            this.arguments = arguments;
+        }
+
+        @Override
+        RSyntaxNode replay(RCodeBuilder<RSyntaxNode> builder) {
+            return builder.call(source, lhs.replay(builder), replay(arguments, builder));
+        }
+    }
+
+    private static final class ConstantShape extends Shape {
+        private final Object value;
+
+        ConstantShape(SourceSection source, Object value) {
+            super(source);
+            this.value = value;
+        }
+
+        @Override
+        RSyntaxNode replay(RCodeBuilder<RSyntaxNode> builder) {
+            return builder.constant(source, value);
+        }
+    }
+
+    private static final class LookupShape extends Shape {
+        private final String symbol;
+        private final boolean functionLookup;
+
+        LookupShape(SourceSection source, String symbol, boolean functionLookup) {
+            super(source);
+            this.symbol = symbol;
+            this.functionLookup = functionLookup;
+        }
+
+        @Override
+        RSyntaxNode replay(RCodeBuilder<RSyntaxNode> builder) {
+            return builder.lookup(source, symbol, functionLookup);
+        }
+    }
+
+    private static final class FunctionShape extends Shape {
+        private final List<Argument<Shape>> parameters;
+        private final Shape body;
+        /**
+         * The name of the variable the function is assigned to, if any, which the
+         * {@link RASTBuilder} only uses to name the function.
+         */
+        private final String assignedTo;
+
+        FunctionShape(SourceSection source, List<Argument<Shape>> parameters, Shape body, String assignedTo) {
+            super(source);
+            this.parameters = parameters;
+            this.body = body;
+            this.assignedTo = assignedTo;
+        }
+
+        @Override
+        RSyntaxNode replay(RCodeBuilder<RSyntaxNode> builder) {
+            return builder.function(source, replay(parameters, builder), body.replay(builder), assignedTo);
+        }
+    }
+
+    private static final class ShapeBuilder implements RCodeBuilder<Shape> {
+        private CodeBuilderContext context = CodeBuilderContext.DEFAULT;
+
+        @Override
+        public Shape call(SourceSection source, Shape lhs, List<Argument<Shape>> arguments) {
+            return new CallShape(source, lhs, arguments);
+        }
+
+        @Override
+        public Shape constant(SourceSection source, Object value) {
+            return new ConstantShape(source, value);
+        }
+
+        @Override
+        public Shape lookup(SourceSection source, String symbol, boolean functionLookup) {
+            return new LookupShape(source, symbol, functionLookup);
+        }
+
+        @Override
+        public Shape function(SourceSection source, List<Argument<Shape>> arguments, Shape body, Object assignedTo) {
+            return new FunctionShape(source, arguments, body, assignedTo instanceof LookupShape ? ((LookupShape) assignedTo).symbol : null);
+        }
+
+        @Override
+        public RootCallTarget rootFunction(SourceSection source, List<Argument<Shape>> arguments, Shape body, String name) {
+            // the parser never creates root functions
+            throw RInternalError.shouldNotReachHere();
+        }
+
+        @Override
+        public void setContext(CodeBuilderContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public CodeBuilderContext getContext() {
+            return context;
+        }
+    }
+
+    private static final class Writer {
+        private final DataOutputStream out;
+        private final Source source;
+        private final HashMap<String, Integer> strings = new HashMap<>();
+
+        Writer(DataOutputStream out, Source source) {
+            this.out = out;
+            this.source = source;
+        }
+
+        void writeStatements(List<Shape> statements) throws IOException, NotCacheableException {
+            out.writeInt(statements.size());
+            for (Shape statement : statements) {
+                writeShape(statement);
+            }
+        }
+
+        private void writeShape(Shape shape) throws IOException, NotCacheableException {
+            if (shape == null) {
+                out.writeByte(NODE_NONE);
+            } else if (shape instanceof CallShape) {
+                CallShape call = (CallShape) shape;
+                out.writeByte(NODE_CALL);
+                writeSection(call.source);
+                writeShape(call.lhs);
+                writeArguments(call.arguments);
+            } else if (shape instanceof ConstantShape) {
+                out.writeByte(NODE_CONSTANT);
+                writeSection(shape.source);
+                writeConstant(((ConstantShape) shape).value);
+            } else if (shape instanceof LookupShape) {
+                LookupShape lookup = (LookupShape) shape;
+                out.writeByte(NODE_LOOKUP);
+                writeSection(lookup.source);
+                writeString(lookup.symbol);
+                out.writeBoolean(lookup.functionLookup);
+            } else {
+                FunctionShape function = (FunctionShape) shape;
+                out.writeByte(NODE_FUNCTION);
+                writeSection(function.source);
+                writeArguments(function.parameters);
+                writeShape(function.body);
+                writeString(function.assignedTo);
+            }
+        }
+
+        private void writeArguments(List<Argument<Shape>> arguments) throws IOException, NotCacheableException {
+            out.writeInt(arguments.size());
+            for (Argument<Shape> arg : arguments) {
+                writeSection(arg.source);
+                writeString(arg.name);
+                writeShape(arg.value);
+            }
+        }
+
+        private void writeSection(SourceSection section) throws IOException, NotCacheableException {
+            if (section == null) {
+                out.writeInt(SECTION_NULL);
+            } else if (section == RSyntaxNode.SOURCE_UNAVAILABLE) {
+                out.writeInt(SECTION_UNAVAILABLE);
+            } else if (section == RSyntaxNode.INTERNAL) {
+                out.writeInt(SECTION_INTERNAL);
+            } else if (section == RSyntaxNode.LAZY_DEPARSE) {
+                out.writeInt(SECTION_LAZY_DEPARSE);
+            } else if (section.getSource() == source) {
+                out.writeInt(section.getCharIndex());
+                out.writeInt(section.getCharLength());
+            } else {
+                throw new NotCacheableException("source section from another source");
+            }
+        }
+
+        private void writeConstant(Object value) throws IOException, NotCacheableException {
+            if (value == RNull.instance) {
+                out.writeByte(CONST_NULL);
+            } else if (value instanceof Integer) {
+                out.writeByte(CONST_INT);
+                out.writeInt((Integer) value);
+            } else if (value instanceof Double) {
+                out.writeByte(CONST_DOUBLE);
+                out.writeLong(Double.doubleToRawLongBits((Double) value));
+            } else if (value instanceof Byte) {
+                out.writeByte(CONST_LOGICAL);
+                out.writeByte((Byte) value);
+            } else if (value instanceof String) {
+                if (RRuntime.isNA((String) value)) {
+                    out.writeByte(CONST_STRING_NA);
+                } else {
+                    out.writeByte(CONST_STRING);
+                    writeString((String) value);
+                }
+            } else if (value instanceof RComplex) {
+                RComplex complex = (RComplex) value;
+                out.writeByte(CONST_COMPLEX);
+                out.writeLong(Double.doubleToRawLongBits(complex.getRealPart()));
+                out.writeLong(Double.doubleToRawLongBits(complex.getImaginaryPart()));
+            } else {
+                throw new NotCacheableException("unexpected constant " + value.getClass().getSimpleName());
+            }
+        }
+
+        /**
+         * Writes an index into the table of strings written so far, followed by the string itself
+         * if it is new.
+         */
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                out.writeInt(-1);
+                return;
+            }
+            Integer index = strings.get(value);
+            if (index != null) {
+                out.writeInt(index);
+            } else {
+                int newIndex = strings.size();
+                strings.put(value, newIndex);
+                out.writeInt(newIndex);
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static final class Reader {
+        private final DataInputStream in;
+        private final Source source;
+        private final ArrayList<String> strings = new ArrayList<>();
+
+        Reader(DataInputStream in, Source source) {
+            this.in = in;
+            this.source = source;
+        }
+
+        List<Shape> readStatements() throws IOException {
+            int count = in.readInt();
+            List<Shape> statements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                statements.add(readShape());
+            }
+            return statements;
+        }
+
+        private Shape readShape() throws IOException {
+            byte kind = in.readByte();
+            switch (kind) {
+                case NODE_NONE:
+                    return null;
+                case NODE_CALL: {
+                    SourceSection section = readSection();
+                    Shape lhs = readShape();
+                    return new CallShape(section, lhs, readArguments());
+                }
+                case NODE_CONSTANT: {
+                    SourceSection section = readSection();
+                    return new ConstantShape(section, readConstant());
+                }
+                case NODE_LOOKUP: {
+                    SourceSection section = readSection();
+                    String symbol = readString();
+                    return new LookupShape(section, symbol, in.readBoolean());
+                }
+                case NODE_FUNCTION: {
+                    SourceSection section = readSection();
+                    List<Argument<Shape>> parameters = readArguments();
+                    Shape body = readShape();
+                    return new FunctionShape(section, parameters, body, readString());
+                }
+                default:
+                    throw new IOException("invalid node kind " + kind);
+            }
+        }
+
+        private List<Argument<Shape>> readArguments() throws IOException {
+            int count = in.readInt();
+            List<Argument<Shape>> arguments = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                SourceSection section = readSection();
+                String name = readString();
+                arguments.add(RCodeBuilder.argument(section, name, readShape()));
+            }
+            return arguments;
+        }
+
+        private SourceSection readSection() throws IOException {
+            int index = in.readInt();
+            switch (index) {
+                case SECTION_NULL:
+                    return null;
+                case SECTION_UNAVAILABLE:
+                    return RSyntaxNode.SOURCE_UNAVAILABLE;
+                case SECTION_INTERNAL:
+                    return RSyntaxNode.INTERNAL;
+                case SECTION_LAZY_DEPARSE:
+                    return RSyntaxNode.LAZY_DEPARSE;
+                default:
+                    return source.createSection(index, in.readInt());
+            }
+        }
+
+        private Object readConstant() throws IOException {
+            byte type = in.readByte();
+            switch (type) {
+                case CONST_NULL:
+                    return RNull.instance;
+                case CONST_INT:
+                    return in.readInt();
+                case CONST_DOUBLE:
+                    return Double.longBitsToDouble(in.readLong());
+                case CONST_LOGICAL:
+                    return in.readByte();
+                case CONST_STRING:
+                    return readString();
+                case CONST_STRING_NA:
+                    return RRuntime.STRING_NA;
+                case CONST_COMPLEX:
+                    return RComplex.valueOf(Double.longBitsToDouble(in.readLong()), Double.longBitsToDouble(in.readLong()));
+                default:
+                    throw new IOException("invalid constant type " + type);
+            }
+        }
+
+        private String readString() throws IOException {
+            int index = in.readInt();
+            if (index == -1) {
+                return null;
+            } else if (index < strings.size()) {
+                return strings.get(index);
+            } else if (index == strings.size()) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                String value = new String(bytes, StandardCharsets.UTF_8);
+                strings.add(value);
+                return value;
+            } else {
+                throw new IOException("invalid string index " + index);
+            }
+        }
+    }
+}
@@ -234,6 +234,11 @@ final class REngine implements Engine, Engine.Timings {
         return this;
     }
 
+    @Override
+    public long[] getParseCacheStatistics() {
+        return ASTCache.getStatistics();
+    }
+
     @Override
     public long elapsedTimeInNanos() {
         return System.nanoTime() - startTime;
@@ -281,6 +286,9 @@ final class REngine implements Engine, Engine.Timings {
     }
 
     private static List<RSyntaxNode> parseImpl(Source source) throws ParseException {
+        if (ASTCache.isCacheable(source)) {
+            return ASTCache.parse(source);
+        }
         RParserFactory.Parser<RSyntaxNode> parser = RParserFactory.getParser();
         return parser.script(source, new RASTBuilder());
     }
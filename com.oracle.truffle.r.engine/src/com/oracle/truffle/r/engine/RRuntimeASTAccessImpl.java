@@ -724,6 +724,14 @@ class RRuntimeASTAccessImpl implements RRuntimeASTAccess {
         RInstrumentation.checkDebugRequested(func);
     }
 
+    @Override
+    public void enableFrameLinks(RFunction func) {
+        RootNode root = func.getTarget().getRootNode();
+        if (root instanceof FunctionDefinitionNode) {
+            ((FunctionDefinitionNode) root).enableFrameLinks();
+        }
+    }
+
     @SuppressWarnings("rawtypes")
     @Override
     public Class<? extends TruffleLanguage> getTruffleRLanguage() {
@@ -427,7 +427,7 @@ public abstract class Covcor extends RExternalBuiltinNode.Arg4 {
 
     private static boolean[] findNAs(int n, int nc, RDoubleVector v) {
         boolean[] hasNA = new boolean[nc];
-        double[] data = v.getDataWithoutCopying();
+        double[] data = v.getReadonlyData();
         for (int j = 0; j < nc; j++) {
             for (int i = 0; i < n; i++) {
                 if (Double.isNaN(data[j * n + i])) {
@@ -446,7 +446,7 @@ public abstract class Covcor extends RExternalBuiltinNode.Arg4 {
         int n1 = -1;
         boolean sd0 = false;
 
-        double[] xData = x.getDataWithoutCopying();
+        double[] xData = x.getReadonlyData();
         boolean[] hasNAx = findNAs(n, ncx, x);
 
         if (n <= 1) { /* too many missing */
@@ -612,8 +612,8 @@ public abstract class Covcor extends RExternalBuiltinNode.Arg4 {
         int n1 = -1;
         boolean sd0 = false;
 
-        double[] xData = x.getDataWithoutCopying();
-        double[] yData = y.getDataWithoutCopying();
+        double[] xData = x.getReadonlyData();
+        double[] yData = y.getReadonlyData();
         boolean[] hasNAx = findNAs(n, ncx, x);
         boolean[] hasNAy = findNAs(n, ncy, y);
 
@@ -55,8 +55,8 @@ public abstract class Cutree extends RExternalBuiltinNode.Arg2 {
         int[] z = new int[n];
 
         int[] iAns = new int[n * whichLen];
-        int[] iMerge = merge.getDataWithoutCopying();
-        int[] iWhich = which.getDataWithoutCopying();
+        int[] iMerge = merge.getReadonlyData();
+        int[] iWhich = which.getReadonlyData();
 
         // for (k = 1; k <= n; k++) {
         for (k = 0; k < n; k++) {
@@ -370,7 +370,7 @@ public final class StatsFunctionsNodes {
             naCheck.enable(true);
             for (int i = 0; i < nout; i++) {
                 double xouti = v.getDataAt(i);
-                yout[i] = RRuntime.isNAorNaN(xouti) ? xouti : approx1(xouti, x.getDataWithoutCopying(), y.getDataWithoutCopying(), nx, apprMeth);
+                yout[i] = RRuntime.isNAorNaN(xouti) ? xouti : approx1(xouti, x.getReadonlyData(), y.getReadonlyData(), nx, apprMeth);
                 naCheck.check(yout[i]);
             }
             return RDataFactory.createDoubleVector(yout, naCheck.neverSeenNA());
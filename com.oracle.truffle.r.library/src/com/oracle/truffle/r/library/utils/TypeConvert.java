@@ -23,176 +23,338 @@
 package com.oracle.truffle.r.library.utils;
 
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.dsl.Specialization;
 import com.oracle.truffle.r.nodes.attributes.SetFixedAttributeNode;
 import com.oracle.truffle.r.nodes.builtin.RExternalBuiltinNode;
 import com.oracle.truffle.r.runtime.RRuntime;
 import com.oracle.truffle.r.runtime.data.RDataFactory;
-import com.oracle.truffle.r.runtime.data.RDoubleVector;
 import com.oracle.truffle.r.runtime.data.RIntVector;
-import com.oracle.truffle.r.runtime.data.RLogicalVector;
 import com.oracle.truffle.r.runtime.data.RVector;
 import com.oracle.truffle.r.runtime.data.model.RAbstractStringVector;
-import com.oracle.truffle.r.runtime.data.model.RAbstractVector;
 
+/**
+ * Large vectors are processed in chunks in parallel: first each chunk determines which of the
+ * types integer, double and logical all of its elements can be converted to, then the elements
+ * are converted to the chosen type. Non-numeric strings are mostly recognized by
+ * {@link #mayBeInt} and {@link #mayBeDouble} without the cost of a {@link NumberFormatException}.
+ */
 public abstract class TypeConvert extends RExternalBuiltinNode.Arg5 {
 
+    private static final int PARALLEL_LENGTH = 1 << 14;
+    private static final int PARALLEL_CHUNK = 1 << 12;
+
+    private static final int INT = 1;
+    private static final int DOUBLE = 2;
+    private static final int LOGICAL = 4;
+
     @Child private SetFixedAttributeNode setLevelsAttrNode = SetFixedAttributeNode.create(RRuntime.LEVELS_ATTR_KEY);
 
-    private static boolean isNA(String s, RAbstractStringVector naStrings) {
-        // naStrings are in addition to NA_character_
-        if (RRuntime.isNA(s)) {
-            return true;
-        }
-        for (int i = 0; i < naStrings.getLength(); i++) {
-            if (s.equals(naStrings.getDataAt(i))) {
-                return true;
+    private static final class NAStrings {
+        private final HashSet<String> strings = new HashSet<>();
+
+        NAStrings(RAbstractStringVector naStrings) {
+            for (int i = 0; i < naStrings.getLength(); i++) {
+                strings.add(naStrings.getDataAt(i));
             }
         }
-        return false;
+
+        boolean isNA(String s) {
+            // naStrings are in addition to NA_character_
+            return RRuntime.isNA(s) || strings.contains(s);
+        }
     }
 
-    /*
-     * In the next three methods, firstPos is the index of the first element in the vector that is
-     * not isNA(elem, naStrings). However, there may be isNA values after that.
+    /**
+     * Returns {@code false} if {@link RRuntime#string2intNoCheck} certainly fails on {@code s}.
      */
+    private static boolean mayBeInt(String s) {
+        int i = 0;
+        if (s.length() > 0 && (s.charAt(0) == '+' || s.charAt(0) == '-')) {
+            i++;
+        }
+        if (i == s.length()) {
+            return false;
+        }
+        char c = s.charAt(i);
+        return (c >= '0' && c <= '9') || c == '#';
+    }
 
-    private static RIntVector readIntVector(RAbstractStringVector x, int firstPos, int firstVal, RAbstractStringVector naStrings) {
-        int[] data = new int[x.getLength()];
-        Arrays.fill(data, 0, firstPos, RRuntime.INT_NA);
-        boolean complete = canBeComplete(firstPos);
-        data[firstPos] = firstVal;
-        for (int i = firstPos + 1; i < data.length; i++) {
-            String s = x.getDataAt(i);
-            boolean isNA = isNA(s, naStrings);
-            data[i] = isNA ? RRuntime.INT_NA : RRuntime.string2intNoCheck(s, true);
-            complete = complete && !isNA;
+    /**
+     * Returns {@code false} if {@link RRuntime#string2doubleNoCheck} certainly fails on {@code s}.
+     */
+    private static boolean mayBeDouble(String s) {
+        int len = s.length();
+        int i = 0;
+        // Double.parseDouble ignores leading white space
+        while (i < len && s.charAt(i) <= ' ') {
+            i++;
         }
-        return RDataFactory.createIntVector(data, complete);
+        if (i < len && (s.charAt(i) == '+' || s.charAt(i) == '-')) {
+            i++;
+        }
+        if (i == len) {
+            return false;
+        }
+        char c = s.charAt(i);
+        if (c == 'I') {
+            return s.startsWith("Inf", i);
+        } else if (c == 'N') {
+            return s.startsWith("NaN", i) || s.startsWith("NA_real_", i);
+        }
+        return (c >= '0' && c <= '9') || c == '.';
     }
 
-    private static RDoubleVector readDoubleVector(RAbstractStringVector x, int firstPos, double firstVal, RAbstractStringVector naStrings) {
-        double[] data = new double[x.getLength()];
-        Arrays.fill(data, 0, firstPos, RRuntime.DOUBLE_NA);
-        boolean complete = canBeComplete(firstPos);
-        data[firstPos] = firstVal;
-        for (int i = firstPos + 1; i < data.length; i++) {
-            String s = x.getDataAt(i);
-            boolean isNA = isNA(s, naStrings);
-            data[i] = isNA ? RRuntime.DOUBLE_NA : RRuntime.string2doubleNoCheck(s, true);
-            complete = complete && !isNA;
+    private static boolean isDecimalInt(String s) {
+        int i = s.length() > 0 && (s.charAt(0) == '+' || s.charAt(0) == '-') ? 1 : 0;
+        if (i == s.length()) {
+            return false;
+        }
+        for (; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
         }
-        return RDataFactory.createDoubleVector(data, complete);
+        return true;
     }
 
-    private static RLogicalVector readLogicalVector(RAbstractStringVector x, int firstPos, byte firstVal, RAbstractStringVector naStrings) {
-        byte[] data = new byte[x.getLength()];
-        Arrays.fill(data, 0, firstPos, RRuntime.LOGICAL_NA);
-        boolean complete = canBeComplete(firstPos);
-        data[firstPos] = firstVal;
-        for (int i = firstPos + 1; i < data.length; i++) {
-            String s = x.getDataAt(i);
-            boolean isNA = isNA(s, naStrings);
-            data[i] = isNA ? RRuntime.LOGICAL_NA : RRuntime.string2logicalNoCheck(s, true);
-            complete = complete && !isNA;
+    private static boolean isInt(String s) {
+        if (!mayBeInt(s)) {
+            return false;
+        }
+        try {
+            RRuntime.string2intNoCheck(s, true);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
         }
-        return RDataFactory.createLogicalVector(data, complete);
     }
 
-    private static boolean canBeComplete(int firstNonNAPos) {
-        return firstNonNAPos == 0 ? RDataFactory.COMPLETE_VECTOR : RDataFactory.INCOMPLETE_VECTOR;
+    private static boolean isDouble(String s) {
+        if (!mayBeDouble(s)) {
+            return false;
+        }
+        try {
+            RRuntime.string2doubleNoCheck(s, true);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
     }
 
-    @Specialization
-    protected Object typeConvert(RAbstractStringVector x, RAbstractStringVector naStrings, byte asIs, @SuppressWarnings("unused") Object dec, @SuppressWarnings("unused") Object numeral) {
-        if (x.getLength() == 0) {
-            return RDataFactory.createEmptyLogicalVector();
+    private static boolean isLogical(String s) {
+        return RRuntime.string2logicalNoCheck(s, false) != RRuntime.LOGICAL_NA;
+    }
+
+    /**
+     * Returns the subset of {@code types} that all the non-NA elements in the range can be
+     * converted to.
+     */
+    private static int possibleTypes(String[] x, int from, int to, int types, NAStrings naStrings) {
+        int result = types;
+        for (int i = from; i < to && result != 0; i++) {
+            String s = x[i];
+            if (naStrings.isNA(s)) {
+                continue;
+            }
+            boolean isInt = false;
+            if ((result & INT) != 0) {
+                isInt = isInt(s);
+                if (!isInt) {
+                    result &= ~INT;
+                }
+            }
+            // a plain decimal integer is always a valid double
+            if ((result & DOUBLE) != 0 && !(isInt && isDecimalInt(s)) && !isDouble(s)) {
+                result &= ~DOUBLE;
+            }
+            if ((result & LOGICAL) != 0 && !isLogical(s)) {
+                result &= ~LOGICAL;
+            }
         }
+        return result;
+    }
 
-        int i = 0;
-        while (i < x.getLength() && isNA(x.getDataAt(i), naStrings)) {
-            i++;
+    private static int chunks(int n) {
+        if (n < PARALLEL_LENGTH) {
+            return 1;
         }
+        return Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), n / PARALLEL_CHUNK));
+    }
 
-        if (i == x.getLength()) {
+    private static int chunkStart(int n, int chunk, int chunks) {
+        return (int) ((long) n * chunk / chunks);
+    }
+
+    private static void forEachChunk(int chunks, IntConsumer action) {
+        if (chunks == 1) {
+            action.accept(0);
+        } else {
+            IntStream.range(0, chunks).parallel().forEach(action);
+        }
+    }
+
+    private static int possibleTypes(String[] x, int types, NAStrings naStrings) {
+        int n = x.length;
+        int chunks = chunks(n);
+        int[] results = new int[chunks];
+        forEachChunk(chunks, chunk -> results[chunk] = possibleTypes(x, chunkStart(n, chunk, chunks), chunkStart(n, chunk + 1, chunks), types, naStrings));
+        int result = types;
+        for (int r : results) {
+            result &= r;
+        }
+        return result;
+    }
+
+    /**
+     * Converts all elements in parallel chunks, {@code convert} stores the converted element and
+     * returns whether it is {@code NA}. Returns {@code true} if there are no {@code NA}s.
+     */
+    private static boolean convert(int n, ElementConverter convert) {
+        int chunks = chunks(n);
+        boolean[] complete = new boolean[chunks];
+        forEachChunk(chunks, chunk -> {
+            boolean c = true;
+            for (int i = chunkStart(n, chunk, chunks); i < chunkStart(n, chunk + 1, chunks); i++) {
+                c &= !convert.convert(i);
+            }
+            complete[chunk] = c;
+        });
+        for (boolean c : complete) {
+            if (!c) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @FunctionalInterface
+    private interface ElementConverter {
+        boolean convert(int index);
+    }
+
+    /**
+     * Converts {@code x} to an integer, double or logical vector, or returns {@code null} if that
+     * is not possible. As in GnuR, the candidate types are determined by the first non-NA element.
+     */
+    @TruffleBoundary
+    private static RVector<?> convertAtomic(String[] x, NAStrings naStrings) {
+        int n = x.length;
+        int first = 0;
+        while (first < n && naStrings.isNA(x[first])) {
+            first++;
+        }
+        if (first == n) {
             // all NAs
-            byte[] data = new byte[i];
+            byte[] data = new byte[n];
             Arrays.fill(data, RRuntime.LOGICAL_NA);
             return RDataFactory.createLogicalVector(data, RDataFactory.INCOMPLETE_VECTOR);
         }
 
-        String s = x.getDataAt(i);
+        String s = x[first];
+        int type;
         if (RRuntime.hasHexPrefix(s)) {
             // this is a mess
-            // double takes precedense even if s is a hexadecimal integer
-            try {
-                double doubleVal = RRuntime.string2doubleNoCheck(s, true);
-                return readDoubleVector(x, i, doubleVal, naStrings);
-            } catch (NumberFormatException ix) {
-                // fall through
-            }
+            // double takes precedence even if s is a hexadecimal integer
+            type = possibleTypes(x, DOUBLE, naStrings);
+        } else if (isInt(s)) {
+            type = possibleTypes(x, INT | DOUBLE, naStrings);
+            type = (type & INT) != 0 ? INT : type;
+        } else if (isDouble(s)) {
+            type = possibleTypes(x, DOUBLE, naStrings);
+        } else if (isLogical(s)) {
+            type = possibleTypes(x, LOGICAL, naStrings);
         } else {
-            try {
-                int intVal = RRuntime.string2intNoCheck(s, true);
-                return readIntVector(x, i, intVal, naStrings);
-            } catch (NumberFormatException ix) {
-                try {
-                    double doubleVal = RRuntime.string2doubleNoCheck(s, true);
-                    try {
-                        return readDoubleVector(x, i, doubleVal, naStrings);
-                    } catch (NumberFormatException lx) {
-                        // fall through
-                    }
-                } catch (NumberFormatException dx) {
-                    try {
-                        byte logicalVal = RRuntime.string2logicalNoCheck(s, true);
-                        try {
-                            return readLogicalVector(x, i, logicalVal, naStrings);
-                        } catch (NumberFormatException lx) {
-                            // fall through
-                        }
-                    } catch (NumberFormatException lx) {
-                        // fall through
-                    }
-                }
+            type = 0;
+        }
+
+        switch (type) {
+            case INT: {
+                int[] data = new int[n];
+                boolean complete = convert(n, i -> {
+                    boolean isNA = naStrings.isNA(x[i]);
+                    data[i] = isNA ? RRuntime.INT_NA : RRuntime.string2intNoCheck(x[i]);
+                    return isNA;
+                });
+                return RDataFactory.createIntVector(data, complete);
             }
+            case DOUBLE: {
+                double[] data = new double[n];
+                boolean complete = convert(n, i -> {
+                    boolean isNA = naStrings.isNA(x[i]);
+                    data[i] = isNA ? RRuntime.DOUBLE_NA : RRuntime.string2doubleNoCheck(x[i]);
+                    return isNA;
+                });
+                return RDataFactory.createDoubleVector(data, complete);
+            }
+            case LOGICAL: {
+                byte[] data = new byte[n];
+                boolean complete = convert(n, i -> {
+                    boolean isNA = naStrings.isNA(x[i]);
+                    data[i] = isNA ? RRuntime.LOGICAL_NA : RRuntime.string2logicalNoCheck(x[i]);
+                    return isNA;
+                });
+                return RDataFactory.createLogicalVector(data, complete);
+            }
+            default:
+                return null;
+        }
+    }
+
+    @TruffleBoundary
+    private static String[] factorLevels(String[] x, NAStrings naStrings) {
+        TreeSet<String> levels = new TreeSet<>();
+        for (String s : x) {
+            if (!naStrings.isNA(s)) {
+                levels.add(s);
+            }
+        }
+        return levels.toArray(new String[levels.size()]);
+    }
+
+    @TruffleBoundary
+    private static RIntVector factorCodes(String[] x, String[] levels, NAStrings naStrings) {
+        HashMap<String, Integer> codes = new HashMap<>();
+        for (int i = 0; i < levels.length; i++) {
+            codes.put(levels[i], i + 1);
+        }
+        int[] data = new int[x.length];
+        boolean complete = convert(x.length, i -> {
+            boolean isNA = naStrings.isNA(x[i]);
+            data[i] = isNA ? RRuntime.INT_NA : codes.get(x[i]);
+            return isNA;
+        });
+        return RDataFactory.createIntVector(data, complete);
+    }
+
+    @Specialization
+    protected Object typeConvert(RAbstractStringVector x, RAbstractStringVector naStrings, byte asIs, @SuppressWarnings("unused") Object dec, @SuppressWarnings("unused") Object numeral) {
+        if (x.getLength() == 0) {
+            return RDataFactory.createEmptyLogicalVector();
         }
-        // fall through target - conversion to int, double or logical failed
+        String[] data = x.materialize().getDataWithoutCopying();
+        NAStrings na = new NAStrings(naStrings);
+        RVector<?> result = convertAtomic(data, na);
+        if (result != null) {
+            return result;
+        }
+        // conversion to int, double or logical failed
 
         if (asIs == RRuntime.LOGICAL_TRUE) {
             return x;
         } else {
             // create a factor
-            TreeSet<String> levels = new TreeSet<>();
-            for (int j = 0; j < x.getLength(); j++) {
-                s = x.getDataAt(j);
-                if (!isNA(s, naStrings)) {
-                    levels.add(s);
-                }
-            }
-            String[] levelsArray = new String[levels.size()];
-            levels.toArray(levelsArray);
-
-            int[] data = new int[x.getLength()];
-            boolean complete = true;
-            for (int j = 0; j < data.length; j++) {
-                s = x.getDataAt(j);
-                if (!isNA(s, naStrings)) {
-                    for (int k = 0; k < levelsArray.length; k++) {
-                        if (levelsArray[k].equals(s)) {
-                            data[j] = k + 1;
-                            break;
-                        }
-                    }
-                } else {
-                    data[j] = RRuntime.INT_NA;
-                    complete = false;
-                }
-            }
-            RIntVector res = RDataFactory.createIntVector(data, complete);
-            setLevelsAttrNode.execute(res, RDataFactory.createStringVector(levelsArray, RDataFactory.COMPLETE_VECTOR));
+            String[] levels = factorLevels(data, na);
+            RIntVector res = factorCodes(data, levels, na);
+            setLevelsAttrNode.execute(res, RDataFactory.createStringVector(levels, RDataFactory.COMPLETE_VECTOR));
             return RVector.setVectorClassAttr(res, RDataFactory.createStringVector("factor"));
         }
     }
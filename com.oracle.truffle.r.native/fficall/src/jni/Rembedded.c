@@ -602,7 +602,7 @@ CTXT R_getGlobalFunctionContext() {
 	jmethodID methodID = checkGetMethodID(jniEnv, UpCallsRFFIClass, "R_getGlobalFunctionContext", "()Ljava/lang/Object;", 0);
     CTXT result = (*jniEnv)->CallObjectMethod(jniEnv, UpCallsRFFIObject, methodID);
     SEXP new_result = checkRef(jniEnv, result);
-    return new_result == R_NilValue ? NULL : addGlobalRef(jniEnv, result, 0);
+    return new_result == R_NilValue ? NULL : addGlobalRef(jniEnv, result, GLOBALREF_TRANSIENT);
 }
 
 CTXT R_getParentFunctionContext(CTXT c) {
@@ -610,7 +610,7 @@ CTXT R_getParentFunctionContext(CTXT c) {
 	jmethodID methodID = checkGetMethodID(jniEnv, UpCallsRFFIClass, "R_getParentFunctionContext", "(Ljava/lang/Object;)Ljava/lang/Object;", 0);
     CTXT result = (*jniEnv)->CallObjectMethod(jniEnv, UpCallsRFFIObject, methodID, c);
     SEXP new_result = checkRef(jniEnv, result);
-    return new_result == R_NilValue ? NULL : addGlobalRef(jniEnv, result, 0);
+    return new_result == R_NilValue ? NULL : addGlobalRef(jniEnv, result, GLOBALREF_TRANSIENT);
 }
 
 SEXP R_getContextEnv(CTXT context) {
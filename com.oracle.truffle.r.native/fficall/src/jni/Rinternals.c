@@ -134,6 +134,8 @@ static jclass CharSXPWrapperClass;
 static jfieldID CharSXPWrapperContentsFieldID;
 
 jmethodID setCompleteMethodID;
+jmethodID getNativeDataMethodID;
+jmethodID commitNativeDataMethodID;
 
 void init_internals(JNIEnv *env) {
 	Rf_ScalarIntegerMethodID = checkGetMethodID(env, UpCallsRFFIClass, "Rf_ScalarInteger", "(I)Lcom/oracle/truffle/r/runtime/data/RIntVector;", 0);
@@ -237,6 +239,8 @@ void init_internals(JNIEnv *env) {
     Rf_ncolsMethodID = checkGetMethodID(env, UpCallsRFFIClass, "Rf_ncols", "(Ljava/lang/Object;)I", 0);
 
     setCompleteMethodID = checkGetMethodID(env, UpCallsRFFIClass, "setComplete", "(Ljava/lang/Object;Z)V", 0);
+    getNativeDataMethodID = checkGetMethodID(env, UpCallsRFFIClass, "getNativeData", "(Ljava/lang/Object;I)Ljava/lang/Object;", 0);
+    commitNativeDataMethodID = checkGetMethodID(env, UpCallsRFFIClass, "commitNativeData", "(Ljava/lang/Object;)V", 0);
 }
 
 static jstring stringFromCharSXP(JNIEnv *thisenv, SEXP charsxp) {
@@ -1623,7 +1627,7 @@ int R_check_class_etc (SEXP x, const char **valid) {
 
 SEXP R_PreserveObject(SEXP x) {
 	// convert to a JNI global ref until explicitly released
-	return createGlobalRef(getEnv(), x, 0);
+	return createGlobalRef(getEnv(), x, GLOBALREF_PRESERVED);
 }
 
 void R_ReleaseObject(SEXP x) {
@@ -24,32 +24,67 @@
 #include <string.h>
 #include <stdlib.h>
 #include <errno.h>
+#include <pthread.h>
 
 /*
  * All calls pass through one of the call(N) methods in rfficall.c, which carry the JNIEnv value,
  * that needs to be saved for reuse in the many R functions such as Rf_allocVector.
- * Currently only single threaded access is permitted (via a semaphore in CallRFFIWithJNI)
- * so we are safe to use static variables. TODO Figure out where to store such state
- * (portably) for MT use. JNI provides no help.
+ * Calls may be made concurrently from several threads (one per context), so all the state that
+ * is associated with a call, i.e., the JNIEnv, the table of copied vectors, the (non-permanent)
+ * transient global refs and the call depth, is kept per thread. Transient global refs, e.g. for
+ * contexts, are released when the outermost call of the thread returns.
+ * The shared state is the table of permanent global refs, which is created during initialization
+ * and read-only afterwards, and the table of preserved global refs (R_PreserveObject), which is
+ * guarded by preservedGlobalRefsLock because an object may be preserved in one thread and used or
+ * released in another.
  */
 jclass UpCallsRFFIClass;
 jobject UpCallsRFFIObject;
 jclass CharSXPWrapperClass;
 
-static JNIEnv *curenv = NULL;
+static __thread JNIEnv *curenv = NULL;
 
 // default for trace output when enabled
 FILE *traceFile = NULL;
 
 typedef struct globalRefTable_struct {
-	int permanent;
-	SEXP gref;         // The jobject (SEXP) global ref
+	jint hash;         // key of the referenced object, see refHash
+	int kind;          // GLOBALREF_TRANSIENT, GLOBALREF_PERMANENT or GLOBALREF_PRESERVED
+	int deleted;       // slot was released, lookups must continue probing
+	SEXP gref;         // The jobject (SEXP) global ref, NULL if the slot is not in use
 } GlobalRefElem;
 
+// Open addressing hash table of global refs, keyed on refHash of the object, so that checkRef,
+// which is applied to every object returned by an upcall, does not need to compare against every
+// cached ref.
+typedef struct {
+	GlobalRefElem *elems;
+	int length;        // always a power of 2
+	int count;         // slots holding a ref
+	int used;          // slots holding a ref or marked deleted
+	int transientCount;
+} GlobalRefTable;
+
 #define CACHED_GLOBALREFS_INITIAL_SIZE 64
-static GlobalRefElem *cachedGlobalRefs;
-static int cachedGlobalRefsHwm;
-static int cachedGlobalRefsLength;
+// permanent refs, shared by all threads
+static GlobalRefTable permanentGlobalRefs;
+// transient refs created during a call
+static __thread GlobalRefTable cachedGlobalRefs;
+// refs created by R_PreserveObject, shared by all threads
+static GlobalRefTable preservedGlobalRefs;
+static pthread_mutex_t preservedGlobalRefsLock = PTHREAD_MUTEX_INITIALIZER;
+// statistics of the lookups in the current thread, see getGlobalRefCacheStats
+static __thread jlong globalRefLookups;
+static __thread jlong globalRefHits;
+
+static jclass SystemClass;
+static jmethodID identityHashCodeMethodID;
+static jclass RBaseObjectClass;
+static jfieldID RBaseObjectRefHashFieldID;
+static jfieldID CharSXPWrapperRefHashFieldID;
+// source of the keys stored in the nativeRefHash fields, see refHash
+static unsigned int refHashCounter;
+static pthread_mutex_t refHashLock = PTHREAD_MUTEX_INITIALIZER;
 
 // Data structure for managing the required copying of
 // Java arrays to return C arrays, e.g, int*.
@@ -60,16 +95,18 @@ typedef struct nativeArrayTable_struct {
 	SEXP obj;         // The jobject (SEXP) that data is derived from (e.g, RIntVector)
 	void *jArray;     // the jarray corresponding to obj
 	void *data;       // the (possibly) copied (or pinned) data from JNI GetXXXArrayElements
+	int nativeData;   // data is the persistent native copy kept by obj (jArray is unused)
 } NativeArrayElem;
 
 #define NATIVE_ARRAY_TABLE_INITIAL_SIZE 64
 // A table of vectors that have been accessed and whose contents, e.g. the actual data
 // as a primitive array have been copied and handed out to the native code.
-static NativeArrayElem *nativeArrayTable;
+static __thread NativeArrayElem *nativeArrayTable;
 // hwm of nativeArrayTable
-static int nativeArrayTableHwm;
-static int nativeArrayTableLength;
+static __thread int nativeArrayTableHwm;
+static __thread int nativeArrayTableLength;
 static void releaseNativeArray(JNIEnv *env, int index, int freedata);
+static void purgeTransientGlobalRefs(JNIEnv *env);
 
 static int isEmbedded = 0;
 void setEmbedded() {
@@ -77,14 +114,34 @@ void setEmbedded() {
 }
 
 // native down call depth, indexes nativeArrayTableHwmStack
-int callDepth = 0;
+__thread int callDepth = 0;
 
 #define CALLDEPTH_STACK_SIZE 16
-static int nativeArrayTableHwmStack[CALLDEPTH_STACK_SIZE];
+static __thread int nativeArrayTableHwmStack[CALLDEPTH_STACK_SIZE];
 
 // stack of jmp_buf ptrs for non-local control transfer on error
-static jmp_buf* callErrorJmpBufTable[CALLDEPTH_STACK_SIZE];
+static __thread jmp_buf* callErrorJmpBufTable[CALLDEPTH_STACK_SIZE];
+
+static void initGlobalRefTable(GlobalRefTable *table, int length) {
+	table->elems = calloc(length, sizeof(GlobalRefElem));
+	table->length = length;
+	table->count = 0;
+	table->used = 0;
+	table->transientCount = 0;
+}
 
+// allocates the tables of the current thread on its first call
+static void initThreadState() {
+	if (nativeArrayTable == NULL) {
+		initGlobalRefTable(&cachedGlobalRefs, CACHED_GLOBALREFS_INITIAL_SIZE);
+		nativeArrayTable = calloc(NATIVE_ARRAY_TABLE_INITIAL_SIZE, sizeof(NativeArrayElem));
+		nativeArrayTableLength = NATIVE_ARRAY_TABLE_INITIAL_SIZE;
+		nativeArrayTableHwm = 0;
+		if (cachedGlobalRefs.elems == NULL || nativeArrayTable == NULL) {
+			fatalError("FFI thread state allocation failure");
+		}
+	}
+}
 
 void init_utils(JNIEnv *env, jobject upCallsInstance) {
 	curenv = env;
@@ -110,12 +167,18 @@ void init_utils(JNIEnv *env, jobject upCallsInstance) {
 		    setvbuf(traceFile, (char*) NULL, _IONBF, 0);
 		}
 	}
-    cachedGlobalRefs = calloc(CACHED_GLOBALREFS_INITIAL_SIZE, sizeof(GlobalRefElem));
-    cachedGlobalRefsLength = CACHED_GLOBALREFS_INITIAL_SIZE;
-    cachedGlobalRefsHwm = 0;
-	nativeArrayTable = calloc(NATIVE_ARRAY_TABLE_INITIAL_SIZE, sizeof(NativeArrayElem));
-	nativeArrayTableLength = NATIVE_ARRAY_TABLE_INITIAL_SIZE;
-	nativeArrayTableHwm = 0;
+	SystemClass = checkFindClass(env, "java/lang/System");
+	identityHashCodeMethodID = checkGetMethodID(env, SystemClass, "identityHashCode", "(Ljava/lang/Object;)I", 1);
+	RBaseObjectClass = checkFindClass(env, "com/oracle/truffle/r/runtime/data/RBaseObject");
+	RBaseObjectRefHashFieldID = checkGetFieldID(env, RBaseObjectClass, "nativeRefHash", "I", 0);
+	CharSXPWrapperClass = checkFindClass(env, "com/oracle/truffle/r/runtime/ffi/CharSXPWrapper");
+	CharSXPWrapperRefHashFieldID = checkGetFieldID(env, CharSXPWrapperClass, "nativeRefHash", "I", 0);
+	initGlobalRefTable(&permanentGlobalRefs, CACHED_GLOBALREFS_INITIAL_SIZE);
+	initGlobalRefTable(&preservedGlobalRefs, CACHED_GLOBALREFS_INITIAL_SIZE);
+	if (permanentGlobalRefs.elems == NULL || preservedGlobalRefs.elems == NULL) {
+		fatalError("FFI global refs table allocation failure");
+	}
+	initThreadState();
 }
 
 const char *stringToChars(JNIEnv *jniEnv, jstring string) {
@@ -132,6 +195,7 @@ const char *stringToChars(JNIEnv *jniEnv, jstring string) {
 
 void callEnter(JNIEnv *env, jmp_buf *jmpbuf) {
 	setEnv(env);
+	initThreadState();
 	//printf("callEnter: callDepth %d, jmpbufptr %p\n", callDepth, jmpbuf);
 	callErrorJmpBufTable[callDepth] = jmpbuf;
 	if (callDepth >= CALLDEPTH_STACK_SIZE) {
@@ -153,6 +217,9 @@ void callExit(JNIEnv *env) {
 	}
 	nativeArrayTableHwm = oldHwm;
 	callDepth--;
+	if (callDepth == 0) {
+		purgeTransientGlobalRefs(env);
+	}
 }
 
 void invalidateNativeArray(JNIEnv *env, SEXP oldObj) {
@@ -199,7 +266,7 @@ static void *findNativeArray(JNIEnv *env, SEXP x) {
 	return NULL;
 }
 
-static void addNativeArray(JNIEnv *env, SEXP x, SEXPTYPE type, void *jArray, void *data) {
+static void addNativeArray(JNIEnv *env, SEXP x, SEXPTYPE type, void *jArray, void *data, int nativeData) {
 #if TRACE_NATIVE_ARRAYS
 	fprintf(traceFile, "addNativeArray(x=%p, t=%p, ix=%d)\n", x, data, nativeArrayTableHwm);
 #endif
@@ -219,6 +286,7 @@ static void addNativeArray(JNIEnv *env, SEXP x, SEXPTYPE type, void *jArray, voi
 	nativeArrayTable[nativeArrayTableHwm].data = data;
 	nativeArrayTable[nativeArrayTableHwm].type = type;
 	nativeArrayTable[nativeArrayTableHwm].jArray = jArray;
+	nativeArrayTable[nativeArrayTableHwm].nativeData = nativeData;
 	nativeArrayTableHwm++;
 }
 
@@ -226,6 +294,13 @@ void *getNativeArray(JNIEnv *thisenv, SEXP x, SEXPTYPE type) {
 	void *data = findNativeArray(thisenv, x);
 	jboolean isCopy;
 	if (data == NULL) {
+		// large vectors keep a copy in native memory, refreshed only if the Java data may have changed
+		jobject buffer = (*thisenv)->CallObjectMethod(thisenv, UpCallsRFFIObject, getNativeDataMethodID, x, type);
+		if (buffer != NULL) {
+			data = (*thisenv)->GetDirectBufferAddress(thisenv, buffer);
+			addNativeArray(thisenv, x, type, NULL, data, 1);
+			return data;
+		}
 		jarray jArray;
 		switch (type) {
 		case INTSXP: {
@@ -272,7 +347,7 @@ void *getNativeArray(JNIEnv *thisenv, SEXP x, SEXPTYPE type) {
 			fatalError("getNativeArray: unexpected type");
 
 		}
-		addNativeArray(thisenv, x, type, jArray, data);
+		addNativeArray(thisenv, x, type, jArray, data, 0);
 	}
 	return data;
 }
@@ -282,7 +357,10 @@ static void releaseNativeArray(JNIEnv *env, int i, int freedata) {
 #if TRACE_NATIVE_ARRAYS
                fprintf(traceFile, "releaseNativeArray(x=%p, ix=%d, freedata=%d)\n", cv.obj, i, freedata);
 #endif
-	if (cv.obj != NULL) {
+	if (cv.obj != NULL && cv.nativeData) {
+		// the native copy stays valid, only the Java data needs to be updated
+		(*env)->CallVoidMethod(env, UpCallsRFFIObject, commitNativeDataMethodID, cv.obj);
+	} else if (cv.obj != NULL) {
 		jboolean complete = JNI_FALSE; // pessimal
 		switch (cv.type) {
 		case INTSXP: {
@@ -341,50 +419,226 @@ static void releaseNativeArray(JNIEnv *env, int i, int freedata) {
 	}
 }
 
-static SEXP findCachedGlobalRef(JNIEnv *env, SEXP obj) {
-	for (int i = 0; i < cachedGlobalRefsHwm; i++) {
-		GlobalRefElem elem = cachedGlobalRefs[i];
-		if (elem.gref == NULL) {
-			continue;
+static jint identityHash(JNIEnv *env, SEXP obj) {
+	jint hash = (*env)->CallStaticIntMethod(env, SystemClass, identityHashCodeMethodID, obj);
+	// spread the high bits, the table index only uses the low ones
+	return hash ^ ((unsigned int) hash >> 16);
+}
+
+// the nativeRefHash field of obj, or NULL if obj does not have one
+static jfieldID refHashField(JNIEnv *env, SEXP obj) {
+	if ((*env)->IsInstanceOf(env, obj, RBaseObjectClass)) {
+		return RBaseObjectRefHashFieldID;
+	} else if ((*env)->IsInstanceOf(env, obj, CharSXPWrapperClass)) {
+		return CharSXPWrapperRefHashFieldID;
+	}
+	return NULL;
+}
+
+// Returns the key of obj in the global ref tables. Most SEXPs have a nativeRefHash field, which is
+// assigned a key when the first global ref for the object is created (if assign is set) and is
+// 0 before, so looking them up does not need a call into Java. Other objects, e.g. RNull, are
+// keyed on their identity hash.
+static jint refHash(JNIEnv *env, SEXP obj, int assign) {
+	jfieldID field = refHashField(env, obj);
+	if (field == NULL) {
+		return identityHash(env, obj);
+	}
+	jint hash = (*env)->GetIntField(env, obj, field);
+	if (hash == 0 && assign) {
+		pthread_mutex_lock(&refHashLock);
+		// another thread may have assigned a key in the meantime
+		hash = (*env)->GetIntField(env, obj, field);
+		while (hash == 0) {
+			// consecutive keys are spread evenly over the low bits used as table index
+			hash = (jint) (++refHashCounter * 0x9E3779B9u);
 		}
-		if ((*env)->IsSameObject(env, elem.gref, obj)) {
+		(*env)->SetIntField(env, obj, field, hash);
+		pthread_mutex_unlock(&refHashLock);
+	}
+	return hash;
+}
+
+static GlobalRefElem *findGlobalRef(JNIEnv *env, GlobalRefTable *table, jint hash, SEXP obj) {
+	if (table->count == 0) {
+		return NULL;
+	}
+	int mask = table->length - 1;
+	// terminates because the load factor is bounded (see insertGlobalRef)
+	for (int i = hash & mask; ; i = (i + 1) & mask) {
+		GlobalRefElem *elem = &table->elems[i];
+		if (elem->gref == NULL) {
+			if (!elem->deleted) {
+				return NULL;
+			}
+		} else if (elem->hash == hash && (*env)->IsSameObject(env, elem->gref, obj)) {
 #if TRACE_REF_CACHE
 			fprintf(traceFile, "gref: cache hit: %d\n", i);
 #endif
-			return elem.gref;
+			return elem;
 		}
 	}
-	return NULL;
 }
 
-SEXP addGlobalRef(JNIEnv *env, SEXP obj, int permanent) {
-	SEXP gref;
-	if (cachedGlobalRefsHwm >= cachedGlobalRefsLength) {
-		int newLength = cachedGlobalRefsLength * 2;
+static SEXP findCachedGlobalRef(JNIEnv *env, jint hash, SEXP obj) {
+	globalRefLookups++;
+	GlobalRefElem *elem = findGlobalRef(env, &permanentGlobalRefs, hash, obj);
+	if (elem == NULL) {
+		elem = findGlobalRef(env, &cachedGlobalRefs, hash, obj);
+	}
+	if (elem != NULL) {
+		globalRefHits++;
+		return elem->gref;
+	}
+	// most code does not preserve objects, so avoid taking the lock in that case
+	if (__atomic_load_n(&preservedGlobalRefs.count, __ATOMIC_ACQUIRE) == 0) {
+		return NULL;
+	}
+	SEXP gref = NULL;
+	pthread_mutex_lock(&preservedGlobalRefsLock);
+	elem = findGlobalRef(env, &preservedGlobalRefs, hash, obj);
+	if (elem != NULL) {
+		globalRefHits++;
+		gref = elem->gref;
+	}
+	pthread_mutex_unlock(&preservedGlobalRefsLock);
+	return gref;
+}
+
+// re-inserts the live entries of table into a table of the given length, dropping deleted slots
+static void rehashGlobalRefs(GlobalRefTable *table, int newLength) {
 #if TRACE_REF_CACHE
-		fprintf(traceFile, "gref: extending table to %d\n", newLength);
+	fprintf(traceFile, "gref: rehashing table to %d\n", newLength);
 #endif
-		SEXP newCachedGlobalRefs = calloc(newLength, sizeof(GlobalRefElem));
-		if (newCachedGlobalRefs == NULL) {
-			fatalError("FFI global refs table expansion failure");
+	GlobalRefElem *oldElems = table->elems;
+	int oldLength = table->length;
+	GlobalRefElem *newElems = calloc(newLength, sizeof(GlobalRefElem));
+	if (newElems == NULL) {
+		fatalError("FFI global refs table expansion failure");
+	}
+	int mask = newLength - 1;
+	for (int i = 0; i < oldLength; i++) {
+		if (oldElems[i].gref != NULL) {
+			int j = oldElems[i].hash & mask;
+			while (newElems[j].gref != NULL) {
+				j = (j + 1) & mask;
+			}
+			newElems[j] = oldElems[i];
 		}
-		memcpy(newCachedGlobalRefs, cachedGlobalRefs, cachedGlobalRefsLength * sizeof(GlobalRefElem));
-		free(cachedGlobalRefs);
-		cachedGlobalRefs = newCachedGlobalRefs;
-		cachedGlobalRefsLength = newLength;
-	}
-	gref = (*env)->NewGlobalRef(env, obj);
-	cachedGlobalRefs[cachedGlobalRefsHwm].gref = gref;
-	cachedGlobalRefs[cachedGlobalRefsHwm].permanent = permanent;
+	}
+	free(oldElems);
+	table->elems = newElems;
+	table->length = newLength;
+	table->used = table->count;
+}
+
+static SEXP insertGlobalRef(JNIEnv *env, GlobalRefTable *table, jint hash, SEXP obj, int kind) {
+	if ((table->used + 1) * 4 > table->length * 3) {
+		// grow if mostly live entries, otherwise just get rid of the deleted ones
+		rehashGlobalRefs(table, (table->count + 1) * 2 > table->length ? table->length * 2 : table->length);
+	}
+	int mask = table->length - 1;
+	int i = hash & mask;
+	while (table->elems[i].gref != NULL) {
+		i = (i + 1) & mask;
+	}
+	GlobalRefElem *elem = &table->elems[i];
+	if (!elem->deleted) {
+		table->used++;
+	}
+	SEXP gref = (*env)->NewGlobalRef(env, obj);
+	elem->hash = hash;
+	elem->kind = kind;
+	elem->deleted = 0;
+	elem->gref = gref;
+	// read without the lock by findCachedGlobalRef
+	__atomic_store_n(&table->count, table->count + 1, __ATOMIC_RELEASE);
+	if (kind == GLOBALREF_TRANSIENT) {
+		table->transientCount++;
+	}
 #if TRACE_REF_CACHE
-			fprintf(traceFile, "gref: add: index %d, ref %p\n", cachedGlobalRefsHwm), gref;
+	fprintf(traceFile, "gref: add: index %d, ref %p\n", i, gref);
 #endif
-	cachedGlobalRefsHwm++;
 	return gref;
 }
 
+static void deleteGlobalRef(JNIEnv *env, GlobalRefTable *table, GlobalRefElem *elem) {
+#if TRACE_REF_CACHE
+	fprintf(traceFile, "gref: release: gref: %p\n", elem->gref);
+#endif
+	(*env)->DeleteGlobalRef(env, elem->gref);
+	if (elem->kind == GLOBALREF_TRANSIENT) {
+		table->transientCount--;
+	}
+	elem->gref = NULL;
+	elem->deleted = 1;
+	__atomic_store_n(&table->count, table->count - 1, __ATOMIC_RELEASE);
+}
+
+// releases the transient refs of the current thread once its outermost call has returned
+static void purgeTransientGlobalRefs(JNIEnv *env) {
+	GlobalRefTable *table = &cachedGlobalRefs;
+	if (table->transientCount == 0) {
+		return;
+	}
+	for (int i = 0; i < table->length && table->transientCount > 0; i++) {
+		GlobalRefElem *elem = &table->elems[i];
+		if (elem->gref != NULL && elem->kind == GLOBALREF_TRANSIENT) {
+			deleteGlobalRef(env, table, elem);
+		}
+	}
+	if (table->count == 0) {
+		// nothing to probe past, the whole table is free again
+		memset(table->elems, 0, table->length * sizeof(GlobalRefElem));
+		table->used = 0;
+	}
+}
+
+static SEXP addGlobalRefWithHash(JNIEnv *env, jint hash, SEXP obj, int kind) {
+	if (kind == GLOBALREF_PERMANENT) {
+		// only created during initialization, hence no concurrent access
+		return insertGlobalRef(env, &permanentGlobalRefs, hash, obj, kind);
+	} else if (kind == GLOBALREF_PRESERVED) {
+		pthread_mutex_lock(&preservedGlobalRefsLock);
+		SEXP gref = insertGlobalRef(env, &preservedGlobalRefs, hash, obj, kind);
+		pthread_mutex_unlock(&preservedGlobalRefsLock);
+		return gref;
+	} else {
+		initThreadState();
+		return insertGlobalRef(env, &cachedGlobalRefs, hash, obj, kind);
+	}
+}
+
+SEXP addGlobalRef(JNIEnv *env, SEXP obj, int kind) {
+	return addGlobalRefWithHash(env, refHash(env, obj, 1), obj, kind);
+}
+
 SEXP checkRef(JNIEnv *env, SEXP obj) {
-	SEXP gref = findCachedGlobalRef(env, obj);
+	if (obj == NULL) {
+		return obj;
+	}
+	SEXP gref;
+	jfieldID field = refHashField(env, obj);
+	if (field != NULL) {
+		jint hash = (*env)->GetIntField(env, obj, field);
+		if (hash == 0) {
+			// there never was a global ref for obj, which is the case for most objects
+			globalRefLookups++;
+			gref = NULL;
+		} else {
+			gref = findCachedGlobalRef(env, hash, obj);
+		}
+	} else {
+		SEXP nil = R_NilValue;
+		if (nil != NULL && (*env)->IsSameObject(env, obj, nil)) {
+			// by far the most common object without a nativeRefHash field
+			globalRefLookups++;
+			globalRefHits++;
+			gref = nil;
+		} else {
+			gref = findCachedGlobalRef(env, identityHash(env, obj), obj);
+		}
+	}
 	TRACE(TARGpp, obj, gref);
 	if (gref == NULL) {
 		return obj;
@@ -393,28 +647,52 @@ SEXP checkRef(JNIEnv *env, SEXP obj) {
 	}
 }
 
-SEXP createGlobalRef(JNIEnv *env, SEXP obj, int permanent) {
-	SEXP gref = findCachedGlobalRef(env, obj);
+SEXP createGlobalRef(JNIEnv *env, SEXP obj, int kind) {
+	jint hash = refHash(env, obj, 1);
+	if (kind == GLOBALREF_PRESERVED) {
+		// a transient ref of the thread would not survive the call, so only reuse a lasting one
+		GlobalRefElem *elem = findGlobalRef(env, &permanentGlobalRefs, hash, obj);
+		if (elem != NULL) {
+			return elem->gref;
+		}
+		pthread_mutex_lock(&preservedGlobalRefsLock);
+		elem = findGlobalRef(env, &preservedGlobalRefs, hash, obj);
+		SEXP gref = elem != NULL ? elem->gref : insertGlobalRef(env, &preservedGlobalRefs, hash, obj, kind);
+		pthread_mutex_unlock(&preservedGlobalRefsLock);
+		return gref;
+	}
+	SEXP gref = findCachedGlobalRef(env, hash, obj);
 	if (gref == NULL) {
-		gref = addGlobalRef(env, obj, permanent);
+		gref = addGlobalRefWithHash(env, hash, obj, kind);
 	}
 	return gref;
 }
 
 void releaseGlobalRef(JNIEnv *env, SEXP obj) {
-	for (int i = 0; i < cachedGlobalRefsHwm; i++) {
-		GlobalRefElem elem = cachedGlobalRefs[i];
-		if (elem.gref == NULL || elem.permanent) {
-			continue;
-		}
-		if ((*env)->IsSameObject(env, elem.gref, obj)) {
-#if TRACE_REF_CACHE
-			fprintf(traceFile, "gref: release: index %d, gref: %p\n", i, elem.gref);
-#endif
-			(*env)->DeleteGlobalRef(env, elem.gref);
-			cachedGlobalRefs[i].gref = NULL;
-		}
+	// only preserved refs are released, permanent ones live forever and transient ones are
+	// released when the call returns
+	jint hash = refHash(env, obj, 0);
+	if (hash == 0) {
+		return;
+	}
+	pthread_mutex_lock(&preservedGlobalRefsLock);
+	GlobalRefElem *elem;
+	while ((elem = findGlobalRef(env, &preservedGlobalRefs, hash, obj)) != NULL) {
+		deleteGlobalRef(env, &preservedGlobalRefs, elem);
 	}
+	pthread_mutex_unlock(&preservedGlobalRefsLock);
+}
+
+JNIEXPORT void JNICALL
+Java_com_oracle_truffle_r_runtime_ffi_jni_JNI_1Call_nativeGetGlobalRefCacheStats(JNIEnv *env, jclass c, jlongArray stats) {
+	jlong values[6];
+	values[0] = globalRefLookups;
+	values[1] = globalRefHits;
+	values[2] = permanentGlobalRefs.count;
+	values[3] = cachedGlobalRefs.count;
+	values[4] = cachedGlobalRefs.length;
+	values[5] = __atomic_load_n(&preservedGlobalRefs.count, __ATOMIC_ACQUIRE);
+	(*env)->SetLongArrayRegion(env, stats, 0, 6, values);
 }
 
 void validateRef(JNIEnv *env, SEXP x, const char *msg) {
@@ -47,10 +47,16 @@ void fatalError(char *msg);
 void validate(SEXP x);
 // checks x against the list of global JNI refs, returning the global version if x matches (IsSameObject)
 SEXP checkRef(JNIEnv *env, SEXP x);
-// creates a global JNI global ref from x. If permanent is non-zero, calls to
-// releaseGlobalRef are ignored and the global ref persists for the entire execution
-// (used for the R global variables such as R_NilValue).
-SEXP createGlobalRef(JNIEnv *env, SEXP x, int permanent);
+// kinds of global refs created by createGlobalRef/addGlobalRef:
+// transient refs are released when the outermost native call of the thread returns,
+// permanent refs persist for the entire execution and calls to releaseGlobalRef are ignored
+// (used for the R global variables such as R_NilValue),
+// preserved refs persist until released by releaseGlobalRef (R_PreserveObject).
+#define GLOBALREF_TRANSIENT 0
+#define GLOBALREF_PERMANENT 1
+#define GLOBALREF_PRESERVED 2
+// creates a global JNI global ref from x of the given kind, unless one already exists.
+SEXP createGlobalRef(JNIEnv *env, SEXP x, int kind);
 // release a previously created JNI global ref
 void releaseGlobalRef(JNIEnv *env, SEXP x);
 // validate a JNI reference
@@ -74,7 +80,7 @@ void *getNativeArray(JNIEnv *env, SEXP x, SEXPTYPE type);
 void invalidateNativeArray(JNIEnv *env, SEXP oldObj);
 void updateNativeArrays(JNIEnv *env);
 
-SEXP addGlobalRef(JNIEnv *env, SEXP obj, int permanent);
+SEXP addGlobalRef(JNIEnv *env, SEXP obj, int kind);
 
 void init_utils(JNIEnv *env, jobject upCallsInstance);
 void init_rmath(JNIEnv *env);
@@ -125,7 +131,9 @@ extern jmethodID LOGICAL_MethodID;
 extern jmethodID REAL_MethodID;
 extern jmethodID RAW_MethodID;
 extern jmethodID setCompleteMethodID;
+extern jmethodID getNativeDataMethodID;
+extern jmethodID commitNativeDataMethodID;
 
-extern int callDepth;
+extern __thread int callDepth;
 
 #endif /* RFFIUTILS_H */
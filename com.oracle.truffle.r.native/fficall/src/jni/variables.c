@@ -62,7 +62,7 @@ SEXP FASTR_NamespaceRegistry() {
 CTXT FASTR_GlobalContext() {
 	JNIEnv *env = getEnv();
 	CTXT res = (*env)->CallObjectMethod(env, UpCallsRFFIObject, R_GlobalContextMethodID);
-    return addGlobalRef(env, res, 0);
+    return addGlobalRef(env, res, GLOBALREF_TRANSIENT);
 }
 
 static const char *R_Home_local;
@@ -122,7 +122,7 @@ void init_variables(JNIEnv *env, jobjectArray initialValues) {
 			} else if (strcmp(nameChars, "R_NaInt") == 0) {
 				R_NaInt = (*env)->CallIntMethod(env, value, intValueMethodID);
 			} else {
-				SEXP ref = createGlobalRef(env, value, 1);
+				SEXP ref = createGlobalRef(env, value, GLOBALREF_PERMANENT);
 				if (strcmp(nameChars, "R_EmptyEnv") == 0) {
 					R_EmptyEnv = ref;
 				} else if (strcmp(nameChars, "R_NilValue") == 0) {
@@ -27,14 +27,19 @@ import java.nio.file.FileSystems;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.oracle.truffle.api.CompilerAsserts;
 import com.oracle.truffle.api.RootCallTarget;
 import com.oracle.truffle.api.frame.MaterializedFrame;
+import com.oracle.truffle.api.object.DynamicObject;
 import com.oracle.truffle.api.source.Source;
 import com.oracle.truffle.r.nodes.builtin.base.BasePackage;
 import com.oracle.truffle.r.nodes.builtin.base.BaseVariables;
+import com.oracle.truffle.r.runtime.FastROptions;
+import com.oracle.truffle.r.runtime.RArguments;
 import com.oracle.truffle.r.runtime.RDeparse;
 import com.oracle.truffle.r.runtime.REnvVars;
 import com.oracle.truffle.r.runtime.RInternalError;
@@ -47,8 +52,19 @@ import com.oracle.truffle.r.runtime.builtins.RBuiltinKind;
 import com.oracle.truffle.r.runtime.builtins.RBuiltinLookup;
 import com.oracle.truffle.r.runtime.context.Engine.ParseException;
 import com.oracle.truffle.r.runtime.context.RContext;
+import com.oracle.truffle.r.runtime.data.RAttributable;
+import com.oracle.truffle.r.runtime.data.RAttributesLayout;
+import com.oracle.truffle.r.runtime.data.RAttributesLayout.RAttribute;
 import com.oracle.truffle.r.runtime.data.RDataFactory;
 import com.oracle.truffle.r.runtime.data.RFunction;
+import com.oracle.truffle.r.runtime.data.RList;
+import com.oracle.truffle.r.runtime.data.RMissing;
+import com.oracle.truffle.r.runtime.data.RNull;
+import com.oracle.truffle.r.runtime.data.RPromise;
+import com.oracle.truffle.r.runtime.data.RSequence;
+import com.oracle.truffle.r.runtime.data.RShareable;
+import com.oracle.truffle.r.runtime.data.RStringVector;
+import com.oracle.truffle.r.runtime.data.RSymbol;
 import com.oracle.truffle.r.runtime.env.REnvironment;
 import com.oracle.truffle.r.runtime.env.REnvironment.PutException;
 
@@ -87,20 +103,29 @@ public final class RBuiltinPackages implements RBuiltinLookup {
                 }
             }
         }
+        SharedBase shared = FastROptions.SharedBase.getBooleanValue() ? sharedBase : null;
         // Now "load" the package
         Path baseDirPath = FileSystems.getDefault().getPath(REnvVars.rHome(), "library", "base");
-        Path basePathbase = baseDirPath.resolve("R").resolve("base");
         Source baseSource = null;
-        try {
-            baseSource = RSource.fromFileName(basePathbase.toString());
-        } catch (IOException ex) {
-            Utils.rSuicide(String.format("unable to open the base package %s", basePathbase));
+        if (shared == null) {
+            Path basePathbase = baseDirPath.resolve("R").resolve("base");
+            try {
+                baseSource = RSource.fromFileName(basePathbase.toString());
+            } catch (IOException ex) {
+                Utils.rSuicide(String.format("unable to open the base package %s", basePathbase));
+            }
         }
         // Load the (stub) DLL for base
         String path = baseDirPath.resolve("libs").resolve("base.so").toString();
         Source loadSource = RSource.fromTextInternal(".Internal(dyn.load(" + RRuntime.quoteString(path, false) + ", TRUE, TRUE, \"\"))", RSource.Internal.R_IMPL);
         RContext.getEngine().parseAndEval(loadSource, baseFrame, false);
 
+        if (shared != null) {
+            shared.install(baseEnv);
+            return;
+        }
+        Map<String, Object> initialBindings = FastROptions.SharedBase.getBooleanValue() && !sharedBaseFailed ? getBindings(baseEnv) : null;
+
         // Any RBuiltinKind.SUBSTITUTE functions installed above should not be overridden
         try {
             RContext.getInstance().setLoadingBase(true);
@@ -113,6 +138,248 @@ public final class RBuiltinPackages implements RBuiltinLookup {
             RContext.getInstance().setLoadingBase(false);
         }
         pkg.loadOverrides(baseFrame);
+        if (initialBindings != null) {
+            synchronized (RBuiltinPackages.class) {
+                if (sharedBase == null && !sharedBaseFailed) {
+                    sharedBase = SharedBase.create(baseEnv, initialBindings);
+                    sharedBaseFailed = sharedBase == null;
+                }
+            }
+        }
+    }
+
+    /**
+     * The bindings that evaluating the base package and its overrides adds to the base environment,
+     * recorded by the first context that loads base when {@link FastROptions#SharedBase} is set.
+     * Later {@code SHARE_NOTHING} contexts install these bindings into their base environment
+     * instead of parsing and evaluating the sources again, so the ASTs and call targets of the
+     * closures, as well as the constant vectors of the base package, exist once per process.
+     *
+     * Nothing that an R program can modify is shared: every context gets its own closure objects,
+     * enclosed by its own base environment, and its own copies of the environments that base
+     * creates, e.g., the environment of the user hooks. The recorded bindings are a private copy
+     * of the state of the loading context right after loading base, so later modifications in that
+     * context do not leak into others either. The shared vectors are made
+     * {@link RShareable#makeSharedPermanent() permanently shared}, so any modification copies
+     * them.
+     */
+    private static final class SharedBase {
+        private final String[] names;
+        private final Object[] values;
+        /**
+         * The environments of the context that loaded base, references to which are replaced by
+         * the corresponding environments of the context that installs the bindings. The global
+         * environment, which holds the data of the loading context, is represented by an empty
+         * placeholder.
+         */
+        private final REnvironment originalBaseEnv;
+        private final REnvironment originalBaseNamespaceEnv;
+        private final REnvironment globalEnvPlaceholder;
+
+        private SharedBase(String[] names, Object[] values, REnvironment globalEnvPlaceholder) {
+            this.names = names;
+            this.values = values;
+            this.originalBaseEnv = REnvironment.baseEnv();
+            this.originalBaseNamespaceEnv = REnvironment.baseNamespaceEnv();
+            this.globalEnvPlaceholder = globalEnvPlaceholder;
+        }
+
+        /**
+         * Returns {@code null} and reports it if any of the new bindings cannot be copied, e.g., an
+         * unevaluated promise or a closure created by a function call, in which case all contexts
+         * keep loading base from its sources.
+         */
+        static SharedBase create(REnvironment baseEnv, Map<String, Object> initialBindings) {
+            // the base environments of the loading context stay in the copy, to be replaced on
+            // install
+            Copier copier = new Copier(REnvironment.baseEnv(), REnvironment.baseNamespaceEnv());
+            REnvironment globalEnvPlaceholder = RDataFactory.createNewEnv(null);
+            RArguments.initializeEnclosingFrame(globalEnvPlaceholder.getArgumentsFrame(), REnvironment.emptyEnv().getFrame());
+            copier.replace(REnvironment.globalEnv(), globalEnvPlaceholder);
+            ArrayList<String> names = new ArrayList<>();
+            ArrayList<Object> values = new ArrayList<>();
+            for (Map.Entry<String, Object> entry : getBindings(baseEnv).entrySet()) {
+                Object value = entry.getValue();
+                if (initialBindings.get(entry.getKey()) == value) {
+                    // installed by loadBase itself, which every context does anyway
+                    continue;
+                }
+                try {
+                    values.add(copier.copy(value));
+                } catch (NotCopyableException e) {
+                    Utils.warn("SharedBase: the value of '" + entry.getKey() + "' cannot be shared, every context loads the base package from its sources");
+                    return null;
+                }
+                names.add(entry.getKey());
+            }
+            return new SharedBase(names.toArray(new String[names.size()]), values.toArray(), globalEnvPlaceholder);
+        }
+
+        void install(REnvironment baseEnv) {
+            Copier copier = new Copier();
+            copier.replace(originalBaseEnv, baseEnv);
+            copier.replace(originalBaseNamespaceEnv, REnvironment.baseNamespaceEnv());
+            copier.replace(globalEnvPlaceholder, REnvironment.globalEnv());
+            for (int i = 0; i < names.length; i++) {
+                try {
+                    baseEnv.safePut(names[i], copier.copy(values[i]));
+                } catch (NotCopyableException e) {
+                    // the recorded values are the result of a successful copy
+                    throw RInternalError.shouldNotReachHere(e);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class NotCopyableException extends Exception {
+    }
+
+    /**
+     * Copies the values bound in the base environment, such that the copy shares no mutable state
+     * with the original: closures are re-created around the same call target and enclosed by the
+     * copy of their environment, environments created by {@code new.env} are copied with all their
+     * bindings, and everything else must be immutable or is made permanently shared.
+     */
+    private static final class Copier {
+        /**
+         * Maps the objects copied so far to their copies, which also preserves the identity of
+         * objects that are reachable in several ways, e.g., closures enclosed by the same
+         * environment.
+         */
+        private final IdentityHashMap<Object, Object> copies = new IdentityHashMap<>();
+
+        Copier(REnvironment... keep) {
+            for (REnvironment env : keep) {
+                copies.put(env, env);
+            }
+            copies.put(REnvironment.emptyEnv(), REnvironment.emptyEnv());
+        }
+
+        void replace(REnvironment original, REnvironment replacement) {
+            copies.put(original, replacement);
+        }
+
+        Object copy(Object value) throws NotCopyableException {
+            Object copy = copies.get(value);
+            if (copy != null) {
+                return copy;
+            }
+            if (value instanceof RPromise) {
+                RPromise promise = (RPromise) value;
+                if (!promise.isEvaluated()) {
+                    throw new NotCopyableException();
+                }
+                return copy(promise.getValue());
+            } else if (value instanceof RFunction) {
+                return copyFunction((RFunction) value);
+            } else if (value instanceof REnvironment) {
+                return copyEnvironment((REnvironment) value);
+            } else if (value instanceof RList) {
+                return copyList((RList) value);
+            } else if (value instanceof RShareable) {
+                if (value instanceof RAttributable) {
+                    checkAttributes((RAttributable) value);
+                }
+                return ((RShareable) value).makeSharedPermanent();
+            } else if (value instanceof String || value instanceof Integer || value instanceof Double || value instanceof Byte || value instanceof RSequence || value instanceof RSymbol ||
+                            value == RNull.instance || value == RMissing.instance) {
+                return value;
+            }
+            throw new NotCopyableException();
+        }
+
+        private RFunction copyFunction(RFunction function) throws NotCopyableException {
+            if (function.isBuiltin()) {
+                // builtins are cached by RBuiltinPackages and carry no state
+                return function;
+            }
+            REnvironment enclosing = (REnvironment) copy(REnvironment.frameToEnvironment(function.getEnclosingFrame()));
+            if (copies.containsKey(function)) {
+                // the function is bound in its own enclosing environment
+                return (RFunction) copies.get(function);
+            }
+            RFunction result = RDataFactory.createFunction(function.getName(), function.getPackageName(), function.getTarget(), null, enclosing.getFrame());
+            copies.put(function, result);
+            copyAttributes(function, result);
+            return result;
+        }
+
+        private REnvironment copyEnvironment(REnvironment env) throws NotCopyableException {
+            // package environments, namespaces and function environments belong to their context
+            if (!(env instanceof REnvironment.NewEnv) || env.isNamespaceEnv() || env.isPackageEnv() != null) {
+                throw new NotCopyableException();
+            }
+            REnvironment.NewEnv newEnv = (REnvironment.NewEnv) env;
+            REnvironment result = RDataFactory.createNewEnv(null, newEnv.isHashed(), newEnv.getInitialSize());
+            copies.put(env, result);
+            RArguments.initializeEnclosingFrame(result.getArgumentsFrame(), ((REnvironment) copy(env.getParent())).getFrame());
+            RStringVector names = env.ls(true, null, false);
+            for (int i = 0; i < names.getLength(); i++) {
+                String name = names.getDataAt(i);
+                result.safePut(name, copy(env.get(name)));
+                if (env.bindingIsLocked(name)) {
+                    result.lockBinding(name);
+                }
+            }
+            copyAttributes(env, result);
+            if (env.isLocked()) {
+                result.lock(false);
+            }
+            return result;
+        }
+
+        private RList copyList(RList list) throws NotCopyableException {
+            Object[] data = new Object[list.getLength()];
+            boolean changed = false;
+            for (int i = 0; i < data.length; i++) {
+                Object element = list.getDataAt(i);
+                data[i] = copy(element);
+                changed |= data[i] != element;
+            }
+            checkAttributes(list);
+            if (!changed) {
+                return (RList) list.makeSharedPermanent();
+            }
+            RList result = RDataFactory.createList(data);
+            copies.put(list, result);
+            copyAttributes(list, result);
+            return (RList) result.makeSharedPermanent();
+        }
+
+        /**
+         * Attributes are copied as they are, so they must not refer to anything that is copied.
+         */
+        private void checkAttributes(RAttributable value) throws NotCopyableException {
+            DynamicObject attributes = value.getAttributes();
+            if (attributes != null) {
+                for (RAttribute attribute : RAttributesLayout.asIterable(attributes)) {
+                    if (copy(attribute.getValue()) != attribute.getValue()) {
+                        throw new NotCopyableException();
+                    }
+                }
+            }
+        }
+
+        private void copyAttributes(RAttributable from, RAttributable to) throws NotCopyableException {
+            checkAttributes(from);
+            if (from.getAttributes() != null) {
+                to.initAttributes(RAttributesLayout.copy(from.getAttributes()));
+            }
+        }
+    }
+
+    private static volatile SharedBase sharedBase;
+    private static volatile boolean sharedBaseFailed;
+
+    private static Map<String, Object> getBindings(REnvironment env) {
+        RStringVector names = env.ls(true, null, false);
+        HashMap<String, Object> bindings = new HashMap<>(names.getLength());
+        for (int i = 0; i < names.getLength(); i++) {
+            String name = names.getDataAt(i);
+            bindings.put(name, env.get(name));
+        }
+        return bindings;
     }
 
     public static void loadDefaultPackageOverrides(String pkgName) {
@@ -135,7 +402,7 @@ public final class RBuiltinPackages implements RBuiltinLookup {
     /**
      * Global builtin cache.
      */
-    private static final HashMap<String, RFunction> cachedBuiltinFunctions = new HashMap<>();
+    private static final ConcurrentHashMap<String, RFunction> cachedBuiltinFunctions = new ConcurrentHashMap<>();
 
     @Override
     public RFunction lookupBuiltin(String methodName) {
@@ -160,8 +427,9 @@ public final class RBuiltinPackages implements RBuiltinLookup {
             }
             RootCallTarget callTarget = RBuiltinNode.createArgumentsCallTarget(builtinFactory);
             function = RDataFactory.createFunction(builtinFactory.getName(), "base", callTarget, builtinFactory, null);
-            cachedBuiltinFunctions.put(methodName, function);
-            return function;
+            // contexts may be initialized concurrently, all of them have to get the same function
+            RFunction existing = cachedBuiltinFunctions.putIfAbsent(methodName, function);
+            return existing != null ? existing : function;
         } catch (Throwable t) {
             throw new RuntimeException("error while creating builtin " + methodName + " / " + builtinFactory, t);
         }
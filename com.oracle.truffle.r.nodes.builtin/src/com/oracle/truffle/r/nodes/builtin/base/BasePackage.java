@@ -103,9 +103,12 @@ import com.oracle.truffle.r.nodes.builtin.fastr.FastRRefCountInfo;
 import com.oracle.truffle.r.nodes.builtin.fastr.FastRRefCountInfoNodeGen;
 import com.oracle.truffle.r.nodes.builtin.fastr.FastRStackTrace;
 import com.oracle.truffle.r.nodes.builtin.fastr.FastRStackTraceNodeGen;
+import com.oracle.truffle.r.nodes.builtin.fastr.FastRStats.FastRConnectionStats;
+import com.oracle.truffle.r.nodes.builtin.fastr.FastRStats.FastRParseCacheStats;
 import com.oracle.truffle.r.nodes.builtin.fastr.FastRStats.FastRProfAttr;
 import com.oracle.truffle.r.nodes.builtin.fastr.FastRStats.FastRProfFuncounts;
 import com.oracle.truffle.r.nodes.builtin.fastr.FastRStats.FastRProfTypecounts;
+import com.oracle.truffle.r.nodes.builtin.fastr.FastRStats.FastRRefCacheStats;
 import com.oracle.truffle.r.nodes.builtin.fastr.FastRStatsFactory;
 import com.oracle.truffle.r.nodes.builtin.fastr.FastRSyntaxTree;
 import com.oracle.truffle.r.nodes.builtin.fastr.FastRSyntaxTreeNodeGen;
@@ -256,6 +259,7 @@ public class BasePackage extends RBuiltinPackage {
         add(ConnectionFunctions.XZFile.class, ConnectionFunctionsFactory.XZFileNodeGen::create);
         add(ConnectionFunctions.GetAllConnections.class, ConnectionFunctionsFactory.GetAllConnectionsNodeGen::create);
         add(ConnectionFunctions.GetConnection.class, ConnectionFunctionsFactory.GetConnectionNodeGen::create);
+        add(ConnectionFunctions.MMap.class, ConnectionFunctionsFactory.MMapNodeGen::create);
         add(ConnectionFunctions.IsOpen.class, ConnectionFunctionsFactory.IsOpenNodeGen::create);
         add(ConnectionFunctions.IsSeekable.class, ConnectionFunctionsFactory.IsSeekableNodeGen::create);
         add(ConnectionFunctions.Open.class, ConnectionFunctionsFactory.OpenNodeGen::create);
@@ -351,8 +355,16 @@ public class BasePackage extends RBuiltinPackage {
         add(FastRContext.ChannelReceive.class, FastRContextFactory.ChannelReceiveNodeGen::create);
         add(FastRContext.ChannelSelect.class, FastRContextFactory.ChannelSelectNodeGen::create);
         add(FastRContext.ChannelSend.class, FastRContextFactory.ChannelSendNodeGen::create);
+        add(FastRContext.ChannelReceiveBatch.class, FastRContextFactory.ChannelReceiveBatchNodeGen::create);
+        add(FastRContext.ChannelSendBatch.class, FastRContextFactory.ChannelSendBatchNodeGen::create);
         add(FastRContext.Spawn.class, FastRContextFactory.SpawnNodeGen::create);
         add(FastRContext.Join.class, FastRContextFactory.JoinNodeGen::create);
+        add(FastRContext.WorkerAcquire.class, FastRContextFactory.WorkerAcquireNodeGen::create);
+        add(FastRContext.WorkerRelease.class, FastRContextFactory.WorkerReleaseNodeGen::create);
+        add(FastRContext.PoolCreate.class, FastRContextFactory.PoolCreateNodeGen::create);
+        add(FastRContext.PoolSubmit.class, FastRContextFactory.PoolSubmitNodeGen::create);
+        add(FastRContext.PoolAwait.class, FastRContextFactory.PoolAwaitNodeGen::create);
+        add(FastRContext.PoolClose.class, FastRContextFactory.PoolCloseNodeGen::create);
         add(FastrDqrls.class, FastrDqrlsNodeGen::create);
         add(FastRDebug.class, FastRDebugNodeGen::create);
         add(FastRIdentity.class, FastRIdentityNodeGen::create);
@@ -371,8 +383,11 @@ public class BasePackage extends RBuiltinPackage {
         add(FastRPkgSource.class, FastRPkgSourceNodeGen::create);
         add(FastRStackTrace.class, FastRStackTraceNodeGen::create);
         add(FastRProfAttr.class, FastRStatsFactory.FastRProfAttrNodeGen::create);
+        add(FastRConnectionStats.class, FastRStatsFactory.FastRConnectionStatsNodeGen::create);
         add(FastRProfTypecounts.class, FastRStatsFactory.FastRProfTypecountsNodeGen::create);
         add(FastRProfFuncounts.class, FastRStatsFactory.FastRProfFuncountsNodeGen::create);
+        add(FastRParseCacheStats.class, FastRStatsFactory.FastRParseCacheStatsNodeGen::create);
+        add(FastRRefCacheStats.class, FastRStatsFactory.FastRRefCacheStatsNodeGen::create);
         add(FastRSyntaxTree.class, FastRSyntaxTreeNodeGen::create);
         add(FastRThrowIt.class, FastRThrowItNodeGen::create);
         add(FastRTrace.Trace.class, FastRTraceFactory.TraceNodeGen::create);
@@ -39,6 +39,7 @@ import static com.oracle.truffle.r.runtime.RVisibility.OFF;
 import static com.oracle.truffle.r.runtime.builtins.RBehavior.IO;
 import static com.oracle.truffle.r.runtime.builtins.RBehavior.READS_STATE;
 import static com.oracle.truffle.r.runtime.builtins.RBuiltinKind.INTERNAL;
+import static com.oracle.truffle.r.runtime.builtins.RBuiltinKind.PRIMITIVE;
 import static com.oracle.truffle.r.runtime.conn.ConnectionSupport.getBaseConnection;
 import static com.oracle.truffle.r.runtime.conn.ConnectionSupport.removeFileURLPrefix;
 import static com.oracle.truffle.r.runtime.conn.StdConnections.getStderr;
@@ -49,7 +50,6 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.DoubleBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
 
@@ -70,6 +70,7 @@ import com.oracle.truffle.r.runtime.builtins.RBuiltin;
 import com.oracle.truffle.r.runtime.conn.CompressedConnections.CompressedRConnection;
 import com.oracle.truffle.r.runtime.conn.ConnectionSupport.BaseRConnection;
 import com.oracle.truffle.r.runtime.conn.FileConnections.FileRConnection;
+import com.oracle.truffle.r.runtime.conn.MMapConnections.MMapRConnection;
 import com.oracle.truffle.r.runtime.conn.RConnection;
 import com.oracle.truffle.r.runtime.conn.SocketConnections.RSocketConnection;
 import com.oracle.truffle.r.runtime.conn.TextConnections.TextRConnection;
@@ -83,6 +84,7 @@ import com.oracle.truffle.r.runtime.data.RExpression;
 import com.oracle.truffle.r.runtime.data.RIntVector;
 import com.oracle.truffle.r.runtime.data.RList;
 import com.oracle.truffle.r.runtime.data.RLogicalVector;
+import com.oracle.truffle.r.runtime.data.RMissing;
 import com.oracle.truffle.r.runtime.data.RNull;
 import com.oracle.truffle.r.runtime.data.RRaw;
 import com.oracle.truffle.r.runtime.data.RRawVector;
@@ -281,6 +283,33 @@ public abstract class ConnectionFunctions {
         }
     }
 
+    @RBuiltin(name = ".fastr.mmap", kind = PRIMITIVE, parameterNames = {"description", "open"}, behavior = IO)
+    public abstract static class MMap extends RBuiltinNode {
+
+        @Override
+        public Object[] getDefaultParameterValues() {
+            return new Object[]{RMissing.instance, "rb"};
+        }
+
+        @Override
+        protected void createCasts(CastBuilder casts) {
+            Casts.description(casts);
+            Casts.open(casts);
+        }
+
+        @Specialization
+        @TruffleBoundary
+        protected RAbstractIntVector mmap(String description, String open) {
+            String path = removeFileURLPrefix(description);
+            try {
+                return new MMapRConnection(path, open).asVector();
+            } catch (IOException ex) {
+                RError.warning(this, RError.Message.CANNOT_OPEN_FILE, description, ex.getMessage());
+                throw RError.error(this, RError.Message.CANNOT_OPEN_CONNECTION);
+            }
+        }
+    }
+
     @RBuiltin(name = "textConnection", kind = INTERNAL, parameterNames = {"description", "text", "open", "env", "encoding"}, behavior = IO)
     public abstract static class TextConnection extends RBuiltinNode {
         @Override
@@ -774,25 +803,38 @@ public abstract class ConnectionFunctions {
             return result;
         }
 
+        /**
+         * Reads (at most) {@code nBytes} bytes, without copying them if the connection supports
+         * it. The remaining bytes of the result are the bytes read.
+         */
+        private static ByteBuffer readBuffer(RConnection con, int nBytes) throws IOException {
+            ByteBuffer buffer = con.readBinView(nBytes);
+            if (buffer == null) {
+                buffer = ByteBuffer.allocate(nBytes);
+                if (con.readBin(buffer) <= 0) {
+                    return ByteBuffer.allocate(0);
+                }
+                buffer.flip();
+            }
+            return buffer;
+        }
+
         private static RIntVector readInteger(RConnection con, int n, int size, boolean swap, boolean signed) throws IOException {
-            ByteBuffer buffer = ByteBuffer.allocate(n * size);
-            int bytesRead = con.readBin(buffer);
-            if (bytesRead == 0) {
+            ByteBuffer buffer = readBuffer(con, n * size);
+            if (!buffer.hasRemaining()) {
                 return RDataFactory.createEmptyIntVector();
             }
-            buffer.flip();
             checkOrder(buffer, swap);
-            int nInts = bytesRead / size;
+            int nInts = buffer.remaining() / size;
             int[] data = new int[nInts];
             boolean complete = RDataFactory.COMPLETE_VECTOR;
             if (size == 4) {
-                IntBuffer intBuffer = buffer.asIntBuffer();
+                buffer.asIntBuffer().get(data);
                 for (int i = 0; i < nInts; i++) {
-                    int d = intBuffer.get();
-                    if (RRuntime.isNA(d)) {
+                    if (RRuntime.isNA(data[i])) {
                         complete = RDataFactory.INCOMPLETE_VECTOR;
+                        break;
                     }
-                    data[i] = d;
                 }
             } else if (size == 1) {
                 for (int i = 0; i < nInts; i++) {
@@ -804,48 +846,34 @@ public abstract class ConnectionFunctions {
             return RDataFactory.createIntVector(data, complete);
         }
 
+        private static boolean isComplete(double[] data) {
+            for (int i = 0; i < data.length; i++) {
+                if (RRuntime.isNA(data[i])) {
+                    return RDataFactory.INCOMPLETE_VECTOR;
+                }
+            }
+            return RDataFactory.COMPLETE_VECTOR;
+        }
+
         private static RDoubleVector readDouble(RConnection con, int n, boolean swap) throws IOException {
-            ByteBuffer buffer = ByteBuffer.allocate(n * 8);
-            int bytesRead = con.readBin(buffer);
-            if (bytesRead == 0) {
+            ByteBuffer buffer = readBuffer(con, n * 8);
+            if (!buffer.hasRemaining()) {
                 return RDataFactory.createEmptyDoubleVector();
             }
-            buffer.flip();
-            DoubleBuffer doubleBuffer = checkOrder(buffer, swap).asDoubleBuffer();
-            int nDoubles = bytesRead / 8;
-            boolean complete = RDataFactory.COMPLETE_VECTOR;
-            double[] data = new double[nDoubles];
-            for (int i = 0; i < nDoubles; i++) {
-                double d = doubleBuffer.get();
-                if (RRuntime.isNA(d)) {
-                    complete = RDataFactory.INCOMPLETE_VECTOR;
-                }
-                data[i] = d;
-            }
-            return RDataFactory.createDoubleVector(data, complete);
+            double[] data = new double[buffer.remaining() / 8];
+            checkOrder(buffer, swap).asDoubleBuffer().get(data);
+            return RDataFactory.createDoubleVector(data, isComplete(data));
         }
 
         private static RComplexVector readComplex(RConnection con, int n, boolean swap) throws IOException {
-            ByteBuffer buffer = ByteBuffer.allocate(n * 16);
-            int bytesRead = con.readBin(buffer);
-            if (bytesRead == 0) {
+            ByteBuffer buffer = readBuffer(con, n * 16);
+            if (!buffer.hasRemaining()) {
                 return RDataFactory.createEmptyComplexVector();
             }
-            buffer.flip();
-            DoubleBuffer doubleBuffer = checkOrder(buffer, swap).asDoubleBuffer();
-            int nComplex = bytesRead / 16;
-            boolean complete = RDataFactory.COMPLETE_VECTOR;
-            double[] data = new double[nComplex * 2];
-            for (int i = 0; i < nComplex; i++) {
-                double re = doubleBuffer.get();
-                double im = doubleBuffer.get();
-                if (RRuntime.isNA(re) || RRuntime.isNA(im)) {
-                    complete = RDataFactory.INCOMPLETE_VECTOR;
-                }
-                data[2 * i] = re;
-                data[2 * i + 1] = im;
-            }
-            return RDataFactory.createComplexVector(data, complete);
+            // the real and imaginary parts are stored in the same order as in the vector
+            double[] data = new double[buffer.remaining() / 16 * 2];
+            checkOrder(buffer, swap).asDoubleBuffer().get(data);
+            return RDataFactory.createComplexVector(data, isComplete(data));
         }
 
         private static RStringVector readString(RConnection con, int n) throws IOException {
@@ -870,26 +898,22 @@ public abstract class ConnectionFunctions {
         }
 
         private static RRawVector readRaw(RConnection con, int n) throws IOException {
-            ByteBuffer buffer = ByteBuffer.allocate(n);
-            int bytesRead = con.readBin(buffer);
-            if (bytesRead == 0) {
+            ByteBuffer buffer = readBuffer(con, n);
+            if (!buffer.hasRemaining()) {
                 return RDataFactory.createEmptyRawVector();
             }
-            buffer.flip();
-            byte[] data = new byte[bytesRead];
+            byte[] data = new byte[buffer.remaining()];
             buffer.get(data);
             return RDataFactory.createRawVector(data);
         }
 
         private static RLogicalVector readLogical(RConnection con, int n, boolean swap) throws IOException {
-            ByteBuffer buffer = ByteBuffer.allocate(n * 4);
-            int bytesRead = con.readBin(buffer);
-            if (bytesRead == 0) {
+            ByteBuffer buffer = readBuffer(con, n * 4);
+            if (!buffer.hasRemaining()) {
                 return RDataFactory.createEmptyLogicalVector();
             }
-            buffer.flip();
             IntBuffer intBuffer = checkOrder(buffer, swap).asIntBuffer();
-            int nInts = bytesRead / 4;
+            int nInts = buffer.remaining() / 4;
             byte[] data = new byte[nInts];
             boolean complete = RDataFactory.COMPLETE_VECTOR;
             for (int i = 0; i < nInts; i++) {
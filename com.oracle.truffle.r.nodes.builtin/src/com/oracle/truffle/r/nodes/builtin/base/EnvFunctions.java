@@ -489,7 +489,7 @@ public class EnvFunctions {
         @TruffleBoundary
         protected REnvironment newEnv(boolean hash, REnvironment parent, int size) {
             REnvironment env = RDataFactory.createNewEnv(null, hash, size);
-            RArguments.initializeEnclosingFrame(env.getFrame(), parent.getFrame());
+            RArguments.initializeEnclosingFrame(env.getArgumentsFrame(), parent.getFrame());
             return env;
         }
     }
@@ -165,7 +165,7 @@ public class FrameFunctions {
                     }
                     notifyRCallNodes(actualFrame, RArguments.getCall(frame));
                 }
-                return Utils.getStackFrame(frameAccess(), actualFrame);
+                return Utils.getStackFrame(frameAccess(), RArguments.getCall(frame), actualFrame);
             }
         }
 
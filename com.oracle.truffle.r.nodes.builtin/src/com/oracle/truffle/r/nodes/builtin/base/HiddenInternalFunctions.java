@@ -43,6 +43,7 @@ import com.oracle.truffle.r.nodes.function.PromiseHelperNode;
 import com.oracle.truffle.r.nodes.function.RCallNode;
 import com.oracle.truffle.r.nodes.function.call.CallRFunctionCachedNode;
 import com.oracle.truffle.r.nodes.function.call.CallRFunctionCachedNodeGen;
+import com.oracle.truffle.r.runtime.LazyDBCache;
 import com.oracle.truffle.r.runtime.RCaller;
 import com.oracle.truffle.r.runtime.RCompression;
 import com.oracle.truffle.r.runtime.RError;
@@ -208,43 +209,51 @@ public class HiddenInternalFunctions {
             }
             String dbPath = datafile.getDataAt(0);
             String packageName = new File(dbPath).getName();
-            byte[] dbData = RContext.getInstance().stateLazyDBCache.getData(dbPath);
             int dotIndex;
             if ((dotIndex = packageName.lastIndexOf('.')) > 0) {
                 packageName = packageName.substring(0, dotIndex);
             }
             int offset = key.getDataAt(0);
             int length = key.getDataAt(1);
-            int outlen = getOutlen(dbData, offset); // length of uncompressed data
+            LazyDBCache.ContextStateImpl lazyDBCache = RContext.getInstance().stateLazyDBCache;
             byte[] udata = null;
             boolean rc = true;
-            /*
-             * compression may have value 0, 1, 2 or 3. Value 1 is gzip and the data starts at
-             * "offset + 4". Values 2 and 3 have a "type" field at "offset + 4
-             * " and the data starts at "offset + 5". The type field is 'Z' for lzma, '2' for bzip,
-             * '1' for zip and '0' for no compression. From GnuR code, the only difference between
-             * compression=2 and compression=3 is that type='Z' is only possible for the latter.
-             */
-            if (compression == 0) {
-                udata = new byte[length];
-                System.arraycopy(dbData, offset, udata, 0, length);
-            } else {
-                udata = new byte[outlen];
-                if (compression == 2 || compression == 3) {
-                    RCompression.Type type = RCompression.Type.fromTypeChar(dbData[4]);
-                    if (type == null) {
-                        RError.warning(this, RError.Message.GENERIC, "unknown compression type");
-                        return RNull.instance;
-                    }
-                    byte[] data = new byte[length - 5];
-                    System.arraycopy(dbData, offset + 5, data, 0, data.length);
-                    rc = RCompression.uncompress(type, udata, data);
+            LazyDBCache.MappedDB db = lazyDBCache.getData(dbPath);
+            try {
+                Object cached = lazyDBCache.getDecoded(db, offset, length);
+                if (cached != null) {
+                    return cached;
+                }
+                ByteBuffer record = db.slice(offset, length);
+                /*
+                 * compression may have value 0, 1, 2 or 3. Value 1 is gzip and the data starts at
+                 * "offset + 4". Values 2 and 3 have a "type" field at "offset + 4" and the data
+                 * starts at "offset + 5". The type field is 'Z' for lzma, '2' for bzip, '1' for zip
+                 * and '0' for no compression. From GnuR code, the only difference between
+                 * compression=2 and compression=3 is that type='Z' is only possible for the latter.
+                 */
+                if (compression == 0) {
+                    udata = new byte[length];
+                    record.get(udata);
                 } else {
-                    // GnuR treats any other value as 1
-                    byte[] data = new byte[length - 4];
-                    System.arraycopy(dbData, offset + 4, data, 0, data.length);
-                    rc = RCompression.uncompress(RCompression.Type.GZIP, udata, data);
+                    int outlen = record.getInt(0); // length of uncompressed data
+                    udata = new byte[outlen];
+                    if (compression == 2 || compression == 3) {
+                        RCompression.Type type = RCompression.Type.fromTypeChar(record.get(4));
+                        if (type == null) {
+                            RError.warning(this, RError.Message.GENERIC, "unknown compression type");
+                            return RNull.instance;
+                        }
+                        record.position(5);
+                        rc = RCompression.uncompress(type, udata, record);
+                    } else {
+                        // GnuR treats any other value as 1
+                        record.position(4);
+                        rc = RCompression.uncompress(RCompression.Type.GZIP, udata, record);
+                    }
                 }
+            } finally {
+                db.release();
             }
             if (!rc) {
                 throw RError.error(this, RError.Message.LAZY_LOAD_DB_CORRUPT, dbPath);
@@ -258,19 +267,13 @@ public class HiddenInternalFunctions {
                 };
                 String functionName = ReadVariableNode.getSlowPathEvaluationName();
                 Object result = RSerialize.unserialize(udata, callHook, packageName, functionName);
+                lazyDBCache.putDecoded(db, offset, length, result);
                 return result;
             } catch (IOException ex) {
                 // unexpected
                 throw RInternalError.shouldNotReachHere(ex);
             }
         }
-
-        private static int getOutlen(byte[] dbData, int offset) {
-            ByteBuffer dataLengthBuf = ByteBuffer.allocate(4);
-            dataLengthBuf.put(dbData, offset, 4);
-            dataLengthBuf.position(0);
-            return dataLengthBuf.getInt();
-        }
     }
 
     @RBuiltin(name = "getRegisteredRoutines", kind = INTERNAL, parameterNames = "info", behavior = COMPLEX)
@@ -370,7 +373,7 @@ public class HiddenInternalFunctions {
 
         @TruffleBoundary
         private RIntVector lazyLoadDBinsertValueInternal(MaterializedFrame frame, Object value, RAbstractStringVector file, int type, int compression, RFunction hook) {
-            if (!(compression == 1 || compression == 3)) {
+            if (!(compression == 1 || compression == 2 || compression == 3)) {
                 throw RError.error(this, Message.GENERIC, "unsupported compression");
             }
 
@@ -388,30 +391,34 @@ public class HiddenInternalFunctions {
                 int offset;
                 RCompression.Type ctype;
                 byte[] cdata;
+                String errorMessage;
                 if (compression == 1) {
                     ctype = RCompression.Type.GZIP;
                     offset = 4;
-                    outLen = (int) (1.001 * data.length) + 20;
-                    cdata = new byte[outLen];
-                    boolean rc = RCompression.compress(ctype, data, cdata);
-                    if (!rc) {
-                        throw RError.error(this, Message.GENERIC, "zlib compress error");
-                    }
+                    cdata = new byte[(int) (1.001 * data.length) + 20];
+                    errorMessage = "zlib compress error";
+                } else if (compression == 2) {
+                    ctype = RCompression.Type.BZIP2;
+                    offset = 5;
+                    // the worst case size as in GnuR
+                    cdata = new byte[(int) (1.01 * data.length) + 600];
+                    errorMessage = "bzip2 compress error";
                 } else if (compression == 3) {
                     ctype = RCompression.Type.XZ;
                     offset = 5;
-                    outLen = data.length;
-                    cdata = new byte[outLen];
-                    boolean rc = RCompression.compress(ctype, data, cdata);
-                    if (!rc) {
-                        throw RError.error(this, Message.GENERIC, "lzma compress error");
-                    }
+                    // incompressible data is stored in chunks with a three byte header
+                    cdata = new byte[data.length + data.length / 1024 + 64];
+                    errorMessage = "lzma compress error";
                 } else {
                     throw RInternalError.shouldNotReachHere();
                 }
+                outLen = RCompression.compress(ctype, data, cdata);
+                if (outLen < 0) {
+                    throw RError.error(this, Message.GENERIC, errorMessage);
+                }
                 int[] intData = new int[2];
-                intData[1] = outLen + offset; // include length + type (compression == 3)
-                intData[0] = appendFile(file.getDataAt(0), cdata, data.length, ctype);
+                intData[1] = outLen + offset; // include length + type (compression == 2 or 3)
+                intData[0] = appendFile(file.getDataAt(0), cdata, outLen, data.length, ctype);
                 return RDataFactory.createIntVector(intData, RDataFactory.COMPLETE_VECTOR);
             } catch (Throwable ex) {
                 // Exceptions have been observed that were masked and very hard to find
@@ -432,27 +439,32 @@ public class HiddenInternalFunctions {
          *
          * @param path path of file
          * @param cdata the compressed data
+         * @param clen length of the compressed data
          * @param ulen length of uncompressed data
          * @return offset in file of appended data
          */
-        private int appendFile(String path, byte[] cdata, int ulen, RCompression.Type type) {
+        private int appendFile(String path, byte[] cdata, int clen, int ulen, RCompression.Type type) {
             File file = new File(path);
+            int result;
             try (BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(file, true))) {
-                int result = (int) file.length();
+                result = (int) file.length();
                 ByteBuffer dataLengthBuf = ByteBuffer.allocate(4);
                 dataLengthBuf.putInt(ulen);
                 dataLengthBuf.position(0);
                 byte[] ulenData = new byte[4];
                 dataLengthBuf.get(ulenData);
                 out.write(ulenData);
-                if (type == RCompression.Type.XZ) {
-                    out.write(RCompression.Type.XZ.typeByte);
+                if (type != RCompression.Type.GZIP) {
+                    out.write(type.typeByte);
                 }
-                out.write(cdata);
-                return result;
+                out.write(cdata, 0, clen);
             } catch (IOException ex) {
                 throw RError.ioError(this, ex);
             }
+            // any existing mapping of the file does not cover the new data, which is only complete
+            // once the stream has been closed
+            RContext.getInstance().stateLazyDBCache.remove(path);
+            return result;
         }
     }
 
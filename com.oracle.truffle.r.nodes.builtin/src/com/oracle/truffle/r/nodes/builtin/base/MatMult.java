@@ -168,8 +168,8 @@ public abstract class MatMult extends RBuiltinNode {
             errorProfile.enter();
             throw RError.error(this, RError.Message.NON_CONFORMABLE_ARGS);
         }
-        double[] dataA = a.materialize().getDataWithoutCopying();
-        double[] dataB = b.materialize().getDataWithoutCopying();
+        double[] dataA = a.materialize().getReadonlyData();
+        double[] dataB = b.materialize().getReadonlyData();
         double[] result = new double[aRows * bCols];
 
         if (!seenLargeMatrix && (aRows > BLOCK_SIZE || aCols > BLOCK_SIZE || bRows > BLOCK_SIZE || bCols > BLOCK_SIZE)) {
@@ -95,8 +95,8 @@ public abstract class Merge extends RBuiltinNode {
         for (int i = 0; i < ny; i++) {
             iy[i] = i + 1;
         }
-        int[] xIndsData = xInds.getDataWithoutCopying();
-        int[] yIndsData = yInds.getDataWithoutCopying();
+        int[] xIndsData = xInds.getReadonlyData();
+        int[] yIndsData = yInds.getReadonlyData();
         isortWithIndex(xIndsData, ix, nx);
         isortWithIndex(yIndsData, iy, ny);
 
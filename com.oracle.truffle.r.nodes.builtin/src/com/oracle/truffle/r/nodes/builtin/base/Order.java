@@ -21,6 +21,8 @@ import static com.oracle.truffle.r.runtime.builtins.RBuiltinKind.INTERNAL;
 import java.text.Collator;
 import java.text.ParseException;
 import java.text.RuleBasedCollator;
+import java.util.Arrays;
+import java.util.Comparator;
 
 import com.oracle.truffle.api.CompilerDirectives;
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
@@ -265,7 +267,9 @@ public abstract class Order extends RPrecedenceBuiltinNode {
         for (int i = 0; i < indx.length; i++) {
             indx[i] = i;
         }
-        orderVector(indx, args.getArguments(), RRuntime.fromLogical(naLast), decreasing);
+        if (n < RadixOrder.MIN_LENGTH || !radixOrderMulti(indx, args.getArguments(), RRuntime.fromLogical(naLast), decreasing)) {
+            orderVector(indx, args.getArguments(), RRuntime.fromLogical(naLast), decreasing);
+        }
         for (int i = 0; i < indx.length; i++) {
             indx[i] = indx[i] + 1;
         }
@@ -273,6 +277,18 @@ public abstract class Order extends RPrecedenceBuiltinNode {
         return RDataFactory.createIntVector(indx, RDataFactory.COMPLETE_VECTOR);
     }
 
+    /**
+     * Orders with the same semantics as {@link #orderVector}, where decreasing order also reverses
+     * the placement of NA values.
+     */
+    private static boolean radixOrderMulti(int[] indx, Object[] vectors, boolean naLast, boolean dec) {
+        byte[] naLastVec = new byte[vectors.length];
+        boolean[] decVec = new boolean[vectors.length];
+        Arrays.fill(naLastVec, RRuntime.asLogical(naLast != dec));
+        Arrays.fill(decVec, dec);
+        return RadixOrder.order(indx, vectors, naLastVec, decVec);
+    }
+
     private boolean greaterSub(int i, int j, Object[] vectors, boolean naLast, boolean dec) {
         int c = -1;
         for (int k = 0; k < vectors.length; k++) {
@@ -332,6 +348,9 @@ public abstract class Order extends RPrecedenceBuiltinNode {
                 return indxVec;
             }
             int[] indx = indxVec.getDataWithoutCopying();
+            if (indx.length >= RadixOrder.MIN_LENGTH && RadixOrder.order(indx, 0, indx.length, dv, rho == null ? naLast : RRuntime.LOGICAL_NA, decreasing, null)) {
+                return indxVec;
+            }
             int lo = 0;
             int hi = indx.length - 1;
             if (rho == null) {
@@ -371,6 +390,9 @@ public abstract class Order extends RPrecedenceBuiltinNode {
                 return indxVec;
             }
             int[] indx = indxVec.getDataWithoutCopying();
+            if (indx.length >= RadixOrder.MIN_LENGTH && RadixOrder.order(indx, 0, indx.length, dv, rho == null ? naLast : RRuntime.LOGICAL_NA, decreasing, null)) {
+                return indxVec;
+            }
             int lo = 0;
             int hi = indx.length - 1;
             if (rho == null && !RRuntime.isNA(naLast)) {
@@ -408,6 +430,9 @@ public abstract class Order extends RPrecedenceBuiltinNode {
                 return indxVec;
             }
             int[] indx = indxVec.getDataWithoutCopying();
+            if (indx.length >= RadixOrder.MIN_LENGTH && radixOrder(indx, dv, rho == null ? naLast : RRuntime.LOGICAL_NA, decreasing)) {
+                return indxVec;
+            }
             int lo = 0;
             int hi = indx.length - 1;
             if (rho == null) {
@@ -573,6 +598,17 @@ public abstract class Order extends RPrecedenceBuiltinNode {
             }
         }
 
+        @TruffleBoundary
+        private boolean radixOrder(int[] indx, RAbstractStringVector dv, byte naLast, boolean decreasing) {
+            Comparator<String> stringOrder;
+            if (needsStringCollation) {
+                stringOrder = createCollator()::compare;
+            } else {
+                stringOrder = String::compareToIgnoreCase;
+            }
+            return RadixOrder.order(indx, 0, indx.length, dv, naLast, decreasing, stringOrder);
+        }
+
         private int compareString(Collator collator, String dataAt, String dataAt2) {
             if (needsStringCollation) {
                 return compare(collator, dataAt, dataAt2);
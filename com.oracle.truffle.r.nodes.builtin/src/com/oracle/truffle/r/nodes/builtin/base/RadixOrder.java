@@ -0,0 +1,418 @@
+/*
+ * Copyright (c) 2017, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.nodes.builtin.base;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.r.runtime.RRuntime;
+import com.oracle.truffle.r.runtime.data.model.RAbstractDoubleVector;
+import com.oracle.truffle.r.runtime.data.model.RAbstractIntVector;
+import com.oracle.truffle.r.runtime.data.model.RAbstractLogicalVector;
+import com.oracle.truffle.r.runtime.data.model.RAbstractStringVector;
+
+/**
+ * Stable LSD radix sort of index vectors, used by {@link Order} for integer, logical, double and
+ * string keys.
+ *
+ * Every key is first mapped to an integer whose natural order is the requested order: integers and
+ * logicals are used as they are, doubles via an order-preserving transformation of their bits and
+ * strings via their rank among the distinct values. Decreasing order is obtained by complementing
+ * the key, which keeps the sort stable, i.e., ties are ordered by their original position just like
+ * in the Shell sort variants of {@link Order}. NA values are either moved to the front or the back
+ * of the result, or ordered as ordinary values.
+ *
+ * The keys are rebased to their minimum, so that only as many {@value #RADIX_BITS} bit digits as
+ * the range of the keys requires are processed; e.g., a factor with less than 2048 levels needs a
+ * single counting pass. For large vectors the histogram and scatter phases of each pass are split
+ * into chunks that are processed in parallel.
+ */
+final class RadixOrder {
+
+    /**
+     * Below this length the Shell sort in {@link Order} is faster.
+     */
+    static final int MIN_LENGTH = 256;
+
+    private static final int PARALLEL_LENGTH = 1 << 20;
+    private static final int PARALLEL_CHUNK = 1 << 18;
+
+    private static final int RADIX_BITS = 11;
+    private static final int BUCKETS = 1 << RADIX_BITS;
+    private static final int MASK = BUCKETS - 1;
+
+    private RadixOrder() {
+        // no instances
+    }
+
+    static boolean isSupported(Object vector) {
+        return vector instanceof RAbstractIntVector || vector instanceof RAbstractLogicalVector || vector instanceof RAbstractDoubleVector || vector instanceof RAbstractStringVector;
+    }
+
+    /**
+     * Orders {@code indx} by the keys of all {@code vectors}, the first vector being the most
+     * significant key, by doing one stable pass per key starting from the last one. Strings are
+     * compared by {@link String#compareTo}. {@code naLast} must not contain NA. Returns
+     * {@code false} without modifying {@code indx} if any of the vectors is not supported.
+     */
+    @TruffleBoundary
+    static boolean order(int[] indx, Object[] vectors, byte[] naLast, boolean[] decreasing) {
+        for (int k = 0; k < vectors.length; k++) {
+            assert !RRuntime.isNA(naLast[k]);
+            if (!isSupported(vectors[k])) {
+                return false;
+            }
+        }
+        for (int k = vectors.length - 1; k >= 0; k--) {
+            boolean done = order(indx, 0, indx.length, vectors[k], naLast[k], decreasing[k], String::compareTo);
+            assert done;
+        }
+        return true;
+    }
+
+    /**
+     * Stably orders {@code indx[lo, hi)} by the values of {@code vector} at these indexes. NA values
+     * go to the end if {@code naLast} is {@code TRUE}, to the front if it is {@code FALSE} and are
+     * ordered as ordinary values if it is {@code NA}. Strings are compared by {@code stringOrder}.
+     * Returns {@code false} without modifying {@code indx} if the vector is not supported or if NaN
+     * values would have to be ordered as ordinary values, which is not a total order.
+     */
+    @TruffleBoundary
+    static boolean order(int[] indx, int lo, int hi, Object vector, byte naLast, boolean decreasing, Comparator<String> stringOrder) {
+        int n = hi - lo;
+        boolean separateNAs = !RRuntime.isNA(naLast);
+        int[] idx = new int[n];
+        int[] nas = null;
+        int count = 0;
+        int naCount = 0;
+        if (vector instanceof RAbstractDoubleVector) {
+            RAbstractDoubleVector v = (RAbstractDoubleVector) vector;
+            long[] keys = new long[n];
+            for (int p = lo; p < hi; p++) {
+                int i = indx[p];
+                double d = v.getDataAt(i);
+                if (Double.isNaN(d)) {
+                    if (!separateNAs) {
+                        return false;
+                    }
+                    if (nas == null) {
+                        nas = new int[n];
+                    }
+                    nas[naCount++] = i;
+                } else {
+                    // adding 0.0 turns -0.0 into 0.0, which compare equal
+                    long bits = Double.doubleToRawLongBits(d + 0.0);
+                    long key = bits ^ ((bits >> 63) & Long.MAX_VALUE);
+                    keys[count] = decreasing ? ~key : key;
+                    idx[count++] = i;
+                }
+            }
+            sort(keys, idx, count);
+        } else {
+            int[] keys = new int[n];
+            if (vector instanceof RAbstractIntVector) {
+                RAbstractIntVector v = (RAbstractIntVector) vector;
+                for (int p = lo; p < hi; p++) {
+                    int i = indx[p];
+                    int x = v.getDataAt(i);
+                    if (separateNAs && RRuntime.isNA(x)) {
+                        if (nas == null) {
+                            nas = new int[n];
+                        }
+                        nas[naCount++] = i;
+                    } else {
+                        keys[count] = decreasing ? ~x : x;
+                        idx[count++] = i;
+                    }
+                }
+            } else if (vector instanceof RAbstractLogicalVector) {
+                RAbstractLogicalVector v = (RAbstractLogicalVector) vector;
+                for (int p = lo; p < hi; p++) {
+                    int i = indx[p];
+                    byte x = v.getDataAt(i);
+                    if (separateNAs && RRuntime.isNA(x)) {
+                        if (nas == null) {
+                            nas = new int[n];
+                        }
+                        nas[naCount++] = i;
+                    } else {
+                        keys[count] = decreasing ? ~x : x;
+                        idx[count++] = i;
+                    }
+                }
+            } else if (vector instanceof RAbstractStringVector) {
+                RAbstractStringVector v = (RAbstractStringVector) vector;
+                HashMap<String, Integer> ids = new HashMap<>();
+                ArrayList<String> distinct = new ArrayList<>();
+                for (int p = lo; p < hi; p++) {
+                    int i = indx[p];
+                    String x = v.getDataAt(i);
+                    if (separateNAs && RRuntime.isNA(x)) {
+                        if (nas == null) {
+                            nas = new int[n];
+                        }
+                        nas[naCount++] = i;
+                    } else {
+                        Integer id = ids.get(x);
+                        if (id == null) {
+                            id = distinct.size();
+                            ids.put(x, id);
+                            distinct.add(x);
+                        }
+                        keys[count] = id;
+                        idx[count++] = i;
+                    }
+                }
+                int[] ranks = rank(distinct, stringOrder);
+                for (int i = 0; i < count; i++) {
+                    int r = ranks[keys[i]];
+                    keys[i] = decreasing ? ~r : r;
+                }
+            } else {
+                return false;
+            }
+            sort(keys, idx, count);
+        }
+        int pos = lo;
+        if (naCount > 0 && !RRuntime.fromLogical(naLast)) {
+            System.arraycopy(nas, 0, indx, pos, naCount);
+            pos += naCount;
+        }
+        System.arraycopy(idx, 0, indx, pos, count);
+        pos += count;
+        if (naCount > 0 && RRuntime.fromLogical(naLast)) {
+            System.arraycopy(nas, 0, indx, pos, naCount);
+        }
+        return true;
+    }
+
+    /**
+     * Computes the rank of each of the distinct strings, strings that compare equal get the same
+     * rank.
+     */
+    private static int[] rank(ArrayList<String> distinct, Comparator<String> stringOrder) {
+        int size = distinct.size();
+        Integer[] sorted = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, (a, b) -> stringOrder.compare(distinct.get(a), distinct.get(b)));
+        int[] ranks = new int[size];
+        for (int i = 1; i < size; i++) {
+            int prev = sorted[i - 1];
+            int cur = sorted[i];
+            ranks[cur] = stringOrder.compare(distinct.get(prev), distinct.get(cur)) == 0 ? ranks[prev] : i;
+        }
+        return ranks;
+    }
+
+    private static void sort(int[] keys, int[] idx, int n) {
+        if (n < 2) {
+            return;
+        }
+        int min = keys[0];
+        int max = min;
+        boolean sorted = true;
+        for (int i = 1; i < n; i++) {
+            int key = keys[i];
+            sorted &= key >= keys[i - 1];
+            min = Math.min(min, key);
+            max = Math.max(max, key);
+        }
+        if (sorted) {
+            return;
+        }
+        int bits = 64 - Long.numberOfLeadingZeros((long) max - min);
+        for (int i = 0; i < n; i++) {
+            // unsigned offset from the minimum
+            keys[i] -= min;
+        }
+        int chunks = chunks(n);
+        int[] srcKeys = keys;
+        int[] srcIdx = idx;
+        int[] dstKeys = new int[n];
+        int[] dstIdx = new int[n];
+        for (int shift = 0; shift < bits; shift += RADIX_BITS) {
+            int[][] offsets = offsets(srcKeys, n, shift, chunks);
+            if (offsets != null) {
+                scatter(srcKeys, srcIdx, dstKeys, dstIdx, n, shift, chunks, offsets);
+                int[] tmp = srcKeys;
+                srcKeys = dstKeys;
+                dstKeys = tmp;
+                tmp = srcIdx;
+                srcIdx = dstIdx;
+                dstIdx = tmp;
+            }
+        }
+        if (srcIdx != idx) {
+            System.arraycopy(srcIdx, 0, idx, 0, n);
+        }
+    }
+
+    private static void sort(long[] keys, int[] idx, int n) {
+        if (n < 2) {
+            return;
+        }
+        long min = keys[0];
+        long max = min;
+        boolean sorted = true;
+        for (int i = 1; i < n; i++) {
+            long key = keys[i];
+            sorted &= key >= keys[i - 1];
+            min = Math.min(min, key);
+            max = Math.max(max, key);
+        }
+        if (sorted) {
+            return;
+        }
+        // the difference may overflow, but it is correct when interpreted as unsigned
+        int bits = 64 - Long.numberOfLeadingZeros(max - min);
+        for (int i = 0; i < n; i++) {
+            keys[i] -= min;
+        }
+        int chunks = chunks(n);
+        long[] srcKeys = keys;
+        int[] srcIdx = idx;
+        long[] dstKeys = new long[n];
+        int[] dstIdx = new int[n];
+        for (int shift = 0; shift < bits; shift += RADIX_BITS) {
+            int[][] offsets = offsets(srcKeys, n, shift, chunks);
+            if (offsets != null) {
+                scatter(srcKeys, srcIdx, dstKeys, dstIdx, n, shift, chunks, offsets);
+                long[] tmpKeys = srcKeys;
+                srcKeys = dstKeys;
+                dstKeys = tmpKeys;
+                int[] tmp = srcIdx;
+                srcIdx = dstIdx;
+                dstIdx = tmp;
+            }
+        }
+        if (srcIdx != idx) {
+            System.arraycopy(srcIdx, 0, idx, 0, n);
+        }
+    }
+
+    private static int[][] offsets(int[] keys, int n, int shift, int chunks) {
+        int[][] counts = new int[chunks][BUCKETS];
+        forEachChunk(chunks, c -> {
+            int[] count = counts[c];
+            int end = chunkStart(n, c + 1, chunks);
+            for (int i = chunkStart(n, c, chunks); i < end; i++) {
+                count[(keys[i] >>> shift) & MASK]++;
+            }
+        });
+        return toOffsets(counts, n);
+    }
+
+    private static int[][] offsets(long[] keys, int n, int shift, int chunks) {
+        int[][] counts = new int[chunks][BUCKETS];
+        forEachChunk(chunks, c -> {
+            int[] count = counts[c];
+            int end = chunkStart(n, c + 1, chunks);
+            for (int i = chunkStart(n, c, chunks); i < end; i++) {
+                count[(int) (keys[i] >>> shift) & MASK]++;
+            }
+        });
+        return toOffsets(counts, n);
+    }
+
+    /**
+     * Turns the per-chunk bucket counts into the position of the first element of each chunk in
+     * each bucket, so that every chunk can be scattered independently while keeping the sort
+     * stable. Returns {@code null} if all elements fall into the same bucket, in which case the pass
+     * can be skipped.
+     */
+    private static int[][] toOffsets(int[][] counts, int n) {
+        for (int b = 0; b < BUCKETS; b++) {
+            int total = 0;
+            for (int[] count : counts) {
+                total += count[b];
+            }
+            if (total == n) {
+                return null;
+            } else if (total != 0) {
+                break;
+            }
+        }
+        int offset = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            for (int[] count : counts) {
+                int c = count[b];
+                count[b] = offset;
+                offset += c;
+            }
+        }
+        return counts;
+    }
+
+    private static void scatter(int[] srcKeys, int[] srcIdx, int[] dstKeys, int[] dstIdx, int n, int shift, int chunks, int[][] offsets) {
+        forEachChunk(chunks, c -> {
+            int[] offset = offsets[c];
+            int end = chunkStart(n, c + 1, chunks);
+            for (int i = chunkStart(n, c, chunks); i < end; i++) {
+                int key = srcKeys[i];
+                int pos = offset[(key >>> shift) & MASK]++;
+                dstKeys[pos] = key;
+                dstIdx[pos] = srcIdx[i];
+            }
+        });
+    }
+
+    private static void scatter(long[] srcKeys, int[] srcIdx, long[] dstKeys, int[] dstIdx, int n, int shift, int chunks, int[][] offsets) {
+        forEachChunk(chunks, c -> {
+            int[] offset = offsets[c];
+            int end = chunkStart(n, c + 1, chunks);
+            for (int i = chunkStart(n, c, chunks); i < end; i++) {
+                long key = srcKeys[i];
+                int pos = offset[(int) (key >>> shift) & MASK]++;
+                dstKeys[pos] = key;
+                dstIdx[pos] = srcIdx[i];
+            }
+        });
+    }
+
+    private static int chunks(int n) {
+        if (n < PARALLEL_LENGTH) {
+            return 1;
+        }
+        return Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), n / PARALLEL_CHUNK));
+    }
+
+    private static int chunkStart(int n, int chunk, int chunks) {
+        return (int) ((long) n * chunk / chunks);
+    }
+
+    private static void forEachChunk(int chunks, IntConsumer action) {
+        if (chunks == 1) {
+            action.accept(0);
+        } else {
+            IntStream.range(0, chunks).parallel().forEach(action);
+        }
+    }
+}
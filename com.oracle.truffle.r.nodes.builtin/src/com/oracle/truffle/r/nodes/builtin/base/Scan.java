@@ -25,7 +25,8 @@ import static com.oracle.truffle.r.runtime.builtins.RBehavior.IO;
 import static com.oracle.truffle.r.runtime.builtins.RBuiltinKind.INTERNAL;
 
 import java.io.IOException;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.HashSet;
 
 import com.oracle.truffle.api.CompilerDirectives;
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
@@ -41,6 +42,7 @@ import com.oracle.truffle.r.runtime.RError.Message;
 import com.oracle.truffle.r.runtime.RInternalError;
 import com.oracle.truffle.r.runtime.RRuntime;
 import com.oracle.truffle.r.runtime.builtins.RBuiltin;
+import com.oracle.truffle.r.runtime.conn.ConnectionSupport.BaseRConnection;
 import com.oracle.truffle.r.runtime.conn.RConnection;
 import com.oracle.truffle.r.runtime.conn.StdConnections;
 import com.oracle.truffle.r.runtime.data.RComplex;
@@ -56,16 +58,19 @@ import com.oracle.truffle.r.runtime.data.RVector;
 import com.oracle.truffle.r.runtime.data.model.RAbstractLogicalVector;
 import com.oracle.truffle.r.runtime.data.model.RAbstractStringVector;
 import com.oracle.truffle.r.runtime.data.model.RAbstractVector;
-import com.oracle.truffle.r.runtime.ops.na.NACheck;
 
 @RBuiltin(name = "scan", kind = INTERNAL, parameterNames = {"file", "what", "nmax", "sep", "dec", "quote", "skip", "nlines", "na.strings", "flush", "fill", "strip.white", "quiet", "blank.lines.skip",
                 "multi.line", "comment.char", "allowEscapes", "encoding", "skipNull"}, behavior = IO)
 public abstract class Scan extends RBuiltinNode {
 
     private static final int SCAN_BLOCKSIZE = 1000;
+    /**
+     * The number of lines read from the connection at once, the lines that are not consumed are
+     * pushed back at the end.
+     */
+    private static final int SCAN_CHUNK_LINES = 1024;
     private static final int NO_COMCHAR = 100000; /* won't occur even in Unicode */
 
-    private final NACheck naCheck = NACheck.create();
     private final BranchProfile errorProfile = BranchProfile.create();
     @Child private GetNamesAttributeNode getNames = GetNamesAttributeNode.create();
 
@@ -81,7 +86,7 @@ public abstract class Scan extends RBuiltinNode {
 
     @SuppressWarnings("unused")
     private static class LocalData {
-        RAbstractStringVector naStrings = null;
+        HashSet<String> naStrings = null;
         boolean quiet = false;
         String sepchar = null;
         char decchar = '.';
@@ -99,6 +104,11 @@ public abstract class Scan extends RBuiltinNode {
         boolean atStart = false;
         boolean embedWarn = false;
         boolean skipNull = false;
+        ScanTokenizer tokenizer = null;
+        // the lines read from the connection but not processed yet
+        String[] lines = new String[0];
+        int lineIndex = 0;
+        int chunkLines = 1;
     }
 
     @Override
@@ -162,7 +172,10 @@ public abstract class Scan extends RBuiltinNode {
         // TODO: some sort of character translation happens here?
         data.quoteset = quotes;
 
-        data.naStrings = naStringsVec;
+        data.naStrings = new HashSet<>();
+        for (int i = 0; i < naStringsVec.getLength(); i++) {
+            data.naStrings.add(naStringsVec.getDataAt(i));
+        }
 
         if (stripVec.getLength() != 1 && stripVec.getLength() != what.getLength()) {
             errorProfile.enter();
@@ -186,138 +199,72 @@ public abstract class Scan extends RBuiltinNode {
         data.skipNull = skipNull;
 
         // TODO: quite a few more things happen in GNU R around connections
-        data.con = RConnection.fromIndex(file);
+        BaseRConnection con = RConnection.fromIndex(file);
+        data.con = con;
+        boolean wasOpen = con.isOpen();
 
         data.save = 0;
 
+        data.tokenizer = new ScanTokenizer(data.sepchar, data.quoteset, data.comchar);
+        // reading ahead would block on terminals, sockets, pipes, fifos, ...
+        data.chunkLines = con.canReadAhead() ? SCAN_CHUNK_LINES : 1;
+
         try (RConnection openConn = data.con.forceOpen("r")) {
             if (nskip > 0) {
                 openConn.readLines(nskip, true, skipNull);
             }
-            if (what instanceof RList) {
-                return scanFrame((RList) what, nmax, nlines, flush, fill, strip == RRuntime.LOGICAL_TRUE, blSkip, multiLine, data);
-            } else {
-                return scanVector(what, nmax, nlines, flush, strip == RRuntime.LOGICAL_TRUE, blSkip, data);
+            try {
+                if (what instanceof RList) {
+                    return scanFrame((RList) what, nmax, nlines, flush, fill, strip == RRuntime.LOGICAL_TRUE, blSkip, multiLine, data);
+                } else {
+                    return scanVector(what, nmax, nlines, flush, strip == RRuntime.LOGICAL_TRUE, blSkip, data);
+                }
+            } finally {
+                if (wasOpen && data.lineIndex < data.lines.length) {
+                    openConn.pushBack(RDataFactory.createStringVector(Arrays.copyOfRange(data.lines, data.lineIndex, data.lines.length), RDataFactory.COMPLETE_VECTOR), true);
+                }
             }
         } catch (IOException x) {
             throw RError.error(this, RError.Message.CANNOT_READ_CONNECTION);
         }
     }
 
-    private static int getFirstQuoteInd(String str, char sepChar) {
-        int quoteInd = str.indexOf(sepChar);
-        if (quoteInd >= 0) {
-            if (quoteInd == 0 || str.charAt(quoteInd - 1) == ' ' || str.charAt(quoteInd - 1) == '\t') {
-                // it's a quote character if it starts the string or is preceded by a blank space
-                return quoteInd;
-            }
-        }
-        return -1;
-    }
-
-    private static String[] getQuotedItems(LocalData data, String s) {
-        LinkedList<String> items = new LinkedList<>();
-
-        String str = s;
-        StringBuilder sb = null;
-
-        while (true) {
-            int sepInd;
-            if (data.sepchar == null) {
-                int blInd = str.indexOf(' ');
-                int tabInd = str.indexOf('\t');
-                if (blInd == -1) {
-                    sepInd = tabInd;
-                } else if (tabInd == -1) {
-                    sepInd = blInd;
-                } else {
-                    sepInd = Math.min(blInd, tabInd);
-                }
-            } else {
-                assert data.sepchar.length() == 1;
-                sepInd = str.indexOf(data.sepchar.charAt(0));
-            }
-
-            int quoteInd = getFirstQuoteInd(str, data.quoteset.charAt(0));
-            char quoteChar = data.quoteset.charAt(0);
-            for (int i = 1; i < data.quoteset.length(); i++) {
-                int ind = getFirstQuoteInd(str, data.quoteset.charAt(i));
-                if (ind >= 0 && (quoteInd == -1 || (quoteInd >= 0 && ind < quoteInd))) {
-                    // update quoteInd if either the new index is smaller or the previous one (for
-                    // another separator) was not found
-                    quoteInd = ind;
-                    quoteChar = data.quoteset.charAt(i);
-                }
-            }
-
-            if (sb == null) {
-                // first iteration
-                if (quoteInd == -1) {
-                    // no quotes at all
-                    return data.sepchar == null ? s.split("\\s+") : s.split(data.sepchar);
-                } else {
-                    sb = new StringBuilder();
-                }
-            }
-
-            if (sepInd == -1 && quoteInd == -1) {
-                // no more separators and no more quotes - add the last item and return
-                sb.append(str);
-                items.add(sb.toString());
-                break;
-            }
-
-            if (quoteInd >= 0 && (sepInd == -1 || (sepInd >= 0 && quoteInd < sepInd))) {
-                // quote character was found before the separator character - everything from the
-                // beginning of str up to the end of quote becomes part of this item
-                sb.append(str.substring(0, quoteInd));
-                int nextQuoteInd = str.indexOf(quoteChar, quoteInd + 1);
-                sb.append(str.substring(quoteInd + 1, nextQuoteInd));
-                str = str.substring(nextQuoteInd + 1, str.length());
-            } else {
-                assert sepInd >= 0;
-                // everything from the beginning of str becomes part of this time and item
-                // processing is completed (also eat up separators)
-                String[] tuple = data.sepchar == null ? str.split("\\s+", 2) : str.split(data.sepchar, 2);
-                assert tuple.length == 2;
-                sb.append(tuple[0]);
-                str = tuple[1];
-                items.add(sb.toString());
-                sb = new StringBuilder();
+    private static String nextLine(LocalData data) throws IOException {
+        if (data.lineIndex == data.lines.length) {
+            // pushed back lines have to be consumed before the unused lines of a chunk can be
+            // pushed back themselves
+            int n = data.con.pushBackLength() > 0 ? 1 : data.chunkLines;
+            data.lines = data.con.readLines(n, true, data.skipNull);
+            data.lineIndex = 0;
+            if (data.lines.length == 0) {
+                return null;
             }
         }
-
-        return items.toArray(new String[items.size()]);
+        return data.lines[data.lineIndex++];
     }
 
     private static String[] getItems(LocalData data, boolean blSkip) throws IOException {
         while (true) {
-            String[] str = data.con.readLines(1, true, false);
-            if (str == null || str.length == 0) {
+            String line = nextLine(data);
+            if (line == null) {
                 return null;
-            } else {
-                String s = str[0].trim();
-                if (blSkip && s.length() == 0) {
-                    continue;
-                } else {
-                    if (data.quoteset.length() == 0) {
-                        return data.sepchar == null ? s.split("\\s+") : s.split(data.sepchar);
-                    } else {
-                        return getQuotedItems(data, s);
-                    }
-                }
+            }
+            String[] items = data.tokenizer.tokenize(line);
+            if (items != null) {
+                return items;
+            } else if (!blSkip) {
+                return new String[]{""};
             }
         }
     }
 
-    private void fillEmpty(int from, int to, int records, RList list, LocalData data) {
+    private static void fillEmpty(int from, int to, Column[] columns, LocalData data) {
         for (int i = from; i < to; i++) {
-            RVector<?> vec = (RVector<?>) list.getDataAt(i);
-            vec.updateDataAtAsObject(records, extractItem(vec, "", data), naCheck);
+            columns[i].add("", data);
         }
     }
 
-    private RVector<?> scanFrame(RList what, int maxRecords, int maxLines, boolean flush, boolean fill, @SuppressWarnings("unused") boolean stripWhite, boolean blSkip, boolean multiLine,
+    private RList scanFrame(RList what, int maxRecords, int maxLines, boolean flush, boolean fill, @SuppressWarnings("unused") boolean stripWhite, boolean blSkip, boolean multiLine,
                     LocalData data)
                     throws IOException {
 
@@ -327,32 +274,29 @@ public abstract class Scan extends RBuiltinNode {
         }
         int blockSize = maxRecords > 0 ? maxRecords : (maxLines > 0 ? maxLines : SCAN_BLOCKSIZE);
 
-        RList list = RDataFactory.createList(new Object[nc]);
+        Column[] columns = new Column[nc];
         for (int i = 0; i < nc; i++) {
             if (what.getDataAt(i) == RNull.instance) {
                 errorProfile.enter();
                 throw RError.error(this, RError.Message.INVALID_ARGUMENT, "what");
             } else {
-                RAbstractVector vec = castVector(what.getDataAt(i));
-                list.updateDataAt(i, vec.createEmptySameType(blockSize, RDataFactory.COMPLETE_VECTOR), null);
+                columns[i] = Column.create(castVector(what.getDataAt(i)), blockSize);
             }
         }
-        list.setNames(getNames.getNames(what));
-
-        naCheck.enable(true);
 
-        return scanFrameInternal(maxRecords, maxLines, flush, fill, blSkip, multiLine, data, nc, blockSize, list);
+        RList list = RDataFactory.createList(scanFrameInternal(maxRecords, maxLines, flush, fill, blSkip, multiLine, data, columns));
+        list.setNames(getNames.getNames(what));
+        return list;
     }
 
     @TruffleBoundary
-    private RVector<?> scanFrameInternal(int maxRecords, int maxLines, boolean flush, boolean fill, boolean blSkip, boolean multiLine, LocalData data, int nc, int initialBlockSize, RList list)
+    private Object[] scanFrameInternal(int maxRecords, int maxLines, boolean flush, boolean fill, boolean blSkip, boolean multiLine, LocalData data, Column[] columns)
                     throws IOException {
-        int blockSize = initialBlockSize;
+        int nc = columns.length;
         int n = 0;
         int lines = 0;
         int records = 0;
         while (true) {
-            // TODO: does not do any fancy stuff, like handling comments
             String[] strItems = getItems(data, blSkip);
             if (strItems == null) {
                 break;
@@ -363,7 +307,7 @@ public abstract class Scan extends RBuiltinNode {
 
                 if (n == strItems.length) {
                     if (fill) {
-                        fillEmpty(n, nc, records, list, data);
+                        fillEmpty(n, nc, columns, data);
                         records++;
                         n = 0;
                         break;
@@ -380,20 +324,7 @@ public abstract class Scan extends RBuiltinNode {
                         }
                     }
                 }
-                Object item = extractItem((RAbstractVector) list.getDataAt(n), strItems[i], data);
-
-                if (records == blockSize) {
-                    // enlarge the vector
-                    blockSize = blockSize * 2;
-                    for (int j = 0; j < nc; j++) {
-                        RVector<?> vec = (RVector<?>) list.getDataAt(j);
-                        vec = vec.copyResized(blockSize, false);
-                        list.updateDataAt(j, vec, null);
-                    }
-                }
-
-                RVector<?> vec = (RVector<?>) list.getDataAt(n);
-                vec.updateDataAtAsObject(records, item, naCheck);
+                columns[n].add(strItems[i], data);
                 n++;
                 if (n == nc) {
                     records++;
@@ -420,7 +351,7 @@ public abstract class Scan extends RBuiltinNode {
             if (!fill) {
                 RError.warning(this, RError.Message.ITEMS_NOT_MULTIPLE);
             }
-            fillEmpty(n, nc, records, list, data);
+            fillEmpty(n, nc, columns, data);
             records++;
         }
 
@@ -428,28 +359,21 @@ public abstract class Scan extends RBuiltinNode {
             String s = String.format("Read %d record%s", records, (records == 1) ? "" : "s");
             StdConnections.getStdout().writeString(s, true);
         }
-        // trim vectors if necessary
+        Object[] result = new Object[nc];
         for (int i = 0; i < nc; i++) {
-            RVector<?> vec = (RVector<?>) list.getDataAt(i);
-            if (vec.getLength() > records) {
-                list.updateDataAt(i, vec.copyResized(records, false), null);
-            }
+            result[i] = columns[i].finish();
         }
-
-        return list;
+        return result;
     }
 
     @TruffleBoundary
     private RVector<?> scanVector(RAbstractVector what, int maxItems, int maxLines, @SuppressWarnings("unused") boolean flush, @SuppressWarnings("unused") boolean stripWhite, boolean blSkip,
                     LocalData data) throws IOException {
-        int blockSize = maxItems > 0 ? maxItems : SCAN_BLOCKSIZE;
-        RVector<?> vec = what.createEmptySameType(blockSize, RDataFactory.COMPLETE_VECTOR);
-        naCheck.enable(true);
+        Column column = Column.create(what, maxItems > 0 ? maxItems : SCAN_BLOCKSIZE);
 
         int n = 0;
         int lines = 0;
         while (true) {
-            // TODO: does not do any fancy stuff, like handling comments
             String[] strItems = getItems(data, blSkip);
             if (strItems == null) {
                 break;
@@ -457,16 +381,7 @@ public abstract class Scan extends RBuiltinNode {
 
             boolean done = false;
             for (int i = 0; i < strItems.length; i++) {
-
-                Object item = extractItem(what, strItems[i], data);
-
-                if (n == blockSize) {
-                    // enlarge the vector
-                    blockSize = blockSize * 2;
-                    vec = vec.copyResized(blockSize, false);
-                }
-
-                vec.updateDataAtAsObject(n, item, naCheck);
+                column.add(strItems[i], data);
                 n++;
                 if (n == maxItems) {
                     done = true;
@@ -485,75 +400,193 @@ public abstract class Scan extends RBuiltinNode {
             String s = String.format("Read %d item%s", n, (n == 1) ? "" : "s");
             StdConnections.getStdout().writeString(s, true);
         }
-        // trim vector if necessary
-        return vec.getLength() > n ? vec.copyResized(n, false) : vec;
+        return column.finish();
     }
 
     // If mode = 0 use for numeric fields where "" is NA
     // If mode = 1 use for character fields where "" is verbatim unless
     // na.strings includes ""
     private static boolean isNaString(String buffer, int mode, LocalData data) {
-        int i;
-
         if (mode == 0 && buffer.length() == 0) {
             return true;
         }
-        for (i = 0; i < data.naStrings.getLength(); i++) {
-            if (data.naStrings.getDataAt(i).equals(buffer)) {
-                return true;
+        return data.naStrings.contains(buffer);
+    }
+
+    private static String withDecimalPoint(String buffer, LocalData data) {
+        return data.decchar == '.' ? buffer : buffer.replace(data.decchar, '.');
+    }
+
+    /**
+     * Collects the items of a column, or of the whole result for a vector {@code what}, directly
+     * in an array of the column's type.
+     */
+    private abstract static class Column {
+        protected int length;
+        protected boolean complete = true;
+
+        abstract void add(String item, LocalData data);
+
+        abstract RVector<?> finish();
+
+        protected static int newCapacity(int capacity) {
+            return Math.max(16, capacity * 2);
+        }
+
+        static Column create(RAbstractVector what, int initialSize) {
+            Class<?> elementClass = what.getElementClass();
+            if (elementClass == RLogical.class) {
+                return new LogicalColumn(initialSize);
+            } else if (elementClass == RInteger.class) {
+                return new IntColumn(initialSize);
+            } else if (elementClass == RDouble.class) {
+                return new DoubleColumn(initialSize);
+            } else if (elementClass == RComplex.class) {
+                return new ComplexColumn(initialSize);
+            } else if (elementClass == RString.class) {
+                return new StringColumn(initialSize);
+            } else if (elementClass == RRaw.class) {
+                return new RawColumn(initialSize);
             }
+            throw RInternalError.shouldNotReachHere();
         }
-        return false;
     }
 
-    private static Object extractItem(RAbstractVector what, String buffer, LocalData data) {
-        if (what.getElementClass() == RLogical.class) {
-            if (isNaString(buffer, 0, data)) {
-                return RRuntime.LOGICAL_NA;
-            } else {
-                return RRuntime.string2logicalNoCheck(buffer);
+    private static final class LogicalColumn extends Column {
+        private byte[] data;
+
+        LogicalColumn(int size) {
+            data = new byte[size];
+        }
+
+        @Override
+        void add(String item, LocalData localData) {
+            if (length == data.length) {
+                data = Arrays.copyOf(data, newCapacity(data.length));
             }
+            byte value = isNaString(item, 0, localData) ? RRuntime.LOGICAL_NA : RRuntime.string2logicalNoCheck(item);
+            complete &= !RRuntime.isNA(value);
+            data[length++] = value;
         }
-        if (what.getElementClass() == RInteger.class) {
-            if (isNaString(buffer, 0, data)) {
-                return RRuntime.INT_NA;
-            } else {
-                return RRuntime.string2intNoCheck(buffer);
+
+        @Override
+        RVector<?> finish() {
+            return RDataFactory.createLogicalVector(Arrays.copyOf(data, length), complete);
+        }
+    }
+
+    private static final class IntColumn extends Column {
+        private int[] data;
+
+        IntColumn(int size) {
+            data = new int[size];
+        }
+
+        @Override
+        void add(String item, LocalData localData) {
+            if (length == data.length) {
+                data = Arrays.copyOf(data, newCapacity(data.length));
             }
+            int value = isNaString(item, 0, localData) ? RRuntime.INT_NA : RRuntime.string2intNoCheck(item);
+            complete &= !RRuntime.isNA(value);
+            data[length++] = value;
         }
 
-        if (what.getElementClass() == RDouble.class) {
-            if (isNaString(buffer, 0, data)) {
-                return RRuntime.DOUBLE_NA;
-            } else {
-                return RRuntime.string2doubleNoCheck(buffer);
+        @Override
+        RVector<?> finish() {
+            return RDataFactory.createIntVector(Arrays.copyOf(data, length), complete);
+        }
+    }
+
+    private static final class DoubleColumn extends Column {
+        private double[] data;
+
+        DoubleColumn(int size) {
+            data = new double[size];
+        }
+
+        @Override
+        void add(String item, LocalData localData) {
+            if (length == data.length) {
+                data = Arrays.copyOf(data, newCapacity(data.length));
             }
+            double value = isNaString(item, 0, localData) ? RRuntime.DOUBLE_NA : RRuntime.string2doubleNoCheck(withDecimalPoint(item, localData));
+            complete &= !RRuntime.isNA(value);
+            data[length++] = value;
         }
 
-        if (what.getElementClass() == RComplex.class) {
-            if (isNaString(buffer, 0, data)) {
-                return RRuntime.createComplexNA();
-            } else {
-                return RRuntime.string2complexNoCheck(buffer);
+        @Override
+        RVector<?> finish() {
+            return RDataFactory.createDoubleVector(Arrays.copyOf(data, length), complete);
+        }
+    }
+
+    private static final class ComplexColumn extends Column {
+        private double[] data;
+
+        ComplexColumn(int size) {
+            data = new double[size * 2];
+        }
+
+        @Override
+        void add(String item, LocalData localData) {
+            if (length * 2 == data.length) {
+                data = Arrays.copyOf(data, newCapacity(data.length));
             }
+            RComplex value = isNaString(item, 0, localData) ? RRuntime.createComplexNA() : RRuntime.string2complexNoCheck(withDecimalPoint(item, localData));
+            complete &= !RRuntime.isNA(value);
+            data[length * 2] = value.getRealPart();
+            data[length * 2 + 1] = value.getImaginaryPart();
+            length++;
         }
 
-        if (what.getElementClass() == RString.class) {
-            if (isNaString(buffer, 1, data)) {
-                return RRuntime.STRING_NA;
-            } else {
-                return buffer;
+        @Override
+        RVector<?> finish() {
+            return RDataFactory.createComplexVector(Arrays.copyOf(data, length * 2), complete);
+        }
+    }
+
+    private static final class StringColumn extends Column {
+        private String[] data;
+
+        StringColumn(int size) {
+            data = new String[size];
+        }
+
+        @Override
+        void add(String item, LocalData localData) {
+            if (length == data.length) {
+                data = Arrays.copyOf(data, newCapacity(data.length));
             }
+            String value = isNaString(item, 1, localData) ? RRuntime.STRING_NA : item;
+            complete &= !RRuntime.isNA(value);
+            data[length++] = value;
         }
 
-        if (what.getElementClass() == RRaw.class) {
-            if (isNaString(buffer, 0, data)) {
-                return RDataFactory.createRaw((byte) 0);
-            } else {
-                return RRuntime.string2raw(buffer);
+        @Override
+        RVector<?> finish() {
+            return RDataFactory.createStringVector(Arrays.copyOf(data, length), complete);
+        }
+    }
+
+    private static final class RawColumn extends Column {
+        private byte[] data;
+
+        RawColumn(int size) {
+            data = new byte[size];
+        }
+
+        @Override
+        void add(String item, LocalData localData) {
+            if (length == data.length) {
+                data = Arrays.copyOf(data, newCapacity(data.length));
             }
+            data[length++] = isNaString(item, 0, localData) ? 0 : RRuntime.string2raw(item).getValue();
         }
 
-        throw RInternalError.shouldNotReachHere();
+        @Override
+        RVector<?> finish() {
+            return RDataFactory.createRawVector(Arrays.copyOf(data, length));
+        }
     }
 }
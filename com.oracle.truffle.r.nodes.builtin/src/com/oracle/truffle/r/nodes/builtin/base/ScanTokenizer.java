@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2017, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.nodes.builtin.base;
+
+import java.util.ArrayList;
+
+/**
+ * Splits the lines read by {@code scan} into items in a single pass over the characters, without
+ * any regular expressions. Follows GnuR's {@code scan.c}:
+ * <ul>
+ * <li>With the default (white space) separator, items are separated by runs of blanks and a quote
+ * is only recognized at the start of an item.</li>
+ * <li>With an explicit separator, each separator ends an item (so a line ending with one has an
+ * empty last item) and quotes are recognized anywhere in the style of {@code .csv} files, where a
+ * doubled quote character stands for the quote itself.</li>
+ * <li>A comment character outside of quotes ends the line.</li>
+ * </ul>
+ */
+final class ScanTokenizer {
+
+    private static final String[] EMPTY_LINE = new String[]{""};
+
+    private final char sepchar;
+    private final boolean hasSep;
+    private final String quoteset;
+    private final int comchar;
+
+    private final ArrayList<String> items = new ArrayList<>();
+    private final StringBuilder item = new StringBuilder();
+
+    ScanTokenizer(String sepchar, String quoteset, int comchar) {
+        this.hasSep = sepchar != null;
+        this.sepchar = hasSep ? sepchar.charAt(0) : 0;
+        this.quoteset = quoteset;
+        this.comchar = comchar;
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\f' || c == 0x0B;
+    }
+
+    private boolean isBlank(char c) {
+        return c <= ' ' && !(hasSep && c == sepchar);
+    }
+
+    /**
+     * Returns the items of the line, or {@code null} if the line is blank (ignoring comments).
+     */
+    String[] tokenize(String line) {
+        // leading and trailing blanks are never part of an item, unless they separate items
+        int start = 0;
+        int end = line.length();
+        while (start < end && isBlank(line.charAt(start))) {
+            start++;
+        }
+        while (end > start && isBlank(line.charAt(end - 1))) {
+            end--;
+        }
+        if (start == end || line.charAt(start) == comchar) {
+            return null;
+        }
+        items.clear();
+        if (hasSep) {
+            tokenizeSep(line, start, end);
+        } else {
+            tokenizeBlank(line, start, end);
+        }
+        return items.isEmpty() ? EMPTY_LINE : items.toArray(new String[items.size()]);
+    }
+
+    private void tokenizeBlank(String line, int start, int end) {
+        int i = start;
+        while (i < end) {
+            char c = line.charAt(i);
+            if (c == comchar) {
+                return;
+            }
+            if (quoteset.indexOf(c) >= 0) {
+                int close = line.indexOf(c, i + 1);
+                if (close == -1 || close >= end) {
+                    close = end;
+                }
+                items.add(line.substring(i + 1, close));
+                i = close + 1;
+            } else {
+                int itemStart = i;
+                while (i < end && !isSpace(line.charAt(i)) && line.charAt(i) != comchar) {
+                    i++;
+                }
+                items.add(line.substring(itemStart, i));
+            }
+            while (i < end && isSpace(line.charAt(i))) {
+                i++;
+            }
+        }
+    }
+
+    private void tokenizeSep(String line, int start, int end) {
+        StringBuilder sb = item;
+        sb.setLength(0);
+        int i = start;
+        while (i < end) {
+            char c = line.charAt(i++);
+            if (c == sepchar) {
+                items.add(sb.toString());
+                sb.setLength(0);
+            } else if (c == comchar) {
+                // like the end of the line, the comment ends the item without the blanks before it
+                while (sb.length() > 0 && sb.charAt(sb.length() - 1) <= ' ') {
+                    sb.setLength(sb.length() - 1);
+                }
+                break;
+            } else if (quoteset.indexOf(c) >= 0) {
+                while (i < end) {
+                    char q = line.charAt(i++);
+                    if (q == c) {
+                        if (i < end && line.charAt(i) == c) {
+                            sb.append(c);
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        sb.append(q);
+                    }
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        items.add(sb.toString());
+    }
+}
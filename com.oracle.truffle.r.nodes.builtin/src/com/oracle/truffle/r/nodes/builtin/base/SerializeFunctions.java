@@ -42,6 +42,8 @@ import com.oracle.truffle.r.runtime.RError.Message;
 import com.oracle.truffle.r.runtime.RRuntime;
 import com.oracle.truffle.r.runtime.RSerialize;
 import com.oracle.truffle.r.runtime.builtins.RBuiltin;
+import com.oracle.truffle.r.runtime.conn.CompressedConnections.CompressedRConnection;
+import com.oracle.truffle.r.runtime.conn.ConnectionSupport.BaseRConnection;
 import com.oracle.truffle.r.runtime.conn.RConnection;
 import com.oracle.truffle.r.runtime.data.RDataFactory;
 import com.oracle.truffle.r.runtime.data.RNull;
@@ -72,14 +74,31 @@ public class SerializeFunctions {
         protected Object doSerializeToConnBase(Object object, int connIndex, int type, @SuppressWarnings("unused") byte xdrLogical, @SuppressWarnings("unused") RNull version,
                         @SuppressWarnings("unused") RNull refhook) {
             // xdr is only relevant if ascii is false
-            try (RConnection openConn = RConnection.fromIndex(connIndex).forceOpen(type != RSerialize.XDR ? "wt" : "wb")) {
+            BaseRConnection conn = RConnection.fromIndex(connIndex);
+            try (RConnection openConn = conn.forceOpen(type != RSerialize.XDR ? "wt" : "wb")) {
                 if (!openConn.canWrite()) {
                     throw RError.error(this, RError.Message.CONNECTION_NOT_OPEN_WRITE);
                 }
                 if (type == RSerialize.XDR && openConn.isTextMode()) {
                     throw RError.error(this, RError.Message.BINARY_CONNECTION_REQUIRED);
                 }
-                RSerialize.serialize(openConn, object, type, RSerialize.DEFAULT_VERSION, null);
+                CompressedRConnection compressed = conn instanceof CompressedRConnection ? (CompressedRConnection) conn : null;
+                boolean previous = compressed != null && compressed.isParallelCompression();
+                if (compressed != null) {
+                    /*
+                     * The serialized stream is written at once, so splitting it into gzip members
+                     * only costs a little compression ratio. This only takes effect if nothing has
+                     * been written to the connection yet, e.g., when saveRDS has just opened it.
+                     */
+                    compressed.setParallelCompression(true);
+                }
+                try {
+                    RSerialize.serialize(openConn, object, type, RSerialize.DEFAULT_VERSION, null);
+                } finally {
+                    if (compressed != null) {
+                        compressed.setParallelCompression(previous);
+                    }
+                }
                 return RNull.instance;
             } catch (IOException ex) {
                 throw RError.error(this, RError.Message.GENERIC, ex.getMessage());
@@ -52,6 +52,7 @@ import com.oracle.truffle.r.runtime.data.model.RAbstractDoubleVector;
 import com.oracle.truffle.r.runtime.data.model.RAbstractIntVector;
 import com.oracle.truffle.r.runtime.data.model.RAbstractLogicalVector;
 import com.oracle.truffle.r.runtime.data.model.RAbstractStringVector;
+import com.oracle.truffle.r.runtime.data.model.RAbstractVector;
 
 /**
  * The internal functions mandated by {@code base/sort.R}. N.B. We use the standard JDK sorting
@@ -267,24 +268,59 @@ public class SortFunctions {
             }
             /*
              * Order takes a single decreasing argument that applies to all the vectors. We
-             * potentially have a different value for each vector, so we have to process one by one.
-             * However, OrderNode can't yet handle that, so we abort if nargs > 1 and the decreasing
-             * values don't match.
+             * potentially have a different value for each vector, in which case the vectors are
+             * ordered one by one using RadixOrder.
              */
             byte lastdb = RRuntime.LOGICAL_NA;
+            boolean differing = false;
             for (int i = 0; i < nargs; i++) {
                 byte db = decreasingVec.getDataAt(i);
                 if (RRuntime.isNA(db)) {
                     throw RError.error(this, RError.Message.RADIX_SORT_DEC_NOT_LOGICAL);
                 }
                 if (lastdb != RRuntime.LOGICAL_NA && db != lastdb) {
-                    throw RError.nyi(this, "radixsort: args > 1 with differing 'decreasing' values not implemented");
+                    differing = true;
                 }
                 lastdb = db;
             }
+            if (differing) {
+                return radixSortDiffering(naLast, decreasingVec, zz.getArguments());
+            }
             boolean decreasing = RRuntime.fromLogical(decreasingVec.getDataAt(0));
             Object result = orderNode.execute(naLast, decreasing, zz);
             return result;
         }
+
+        @TruffleBoundary
+        private Object radixSortDiffering(byte naLast, RAbstractLogicalVector decreasingVec, Object[] vectors) {
+            if (RRuntime.isNA(naLast)) {
+                throw RError.nyi(this, "radixsort: na.last == NA with differing 'decreasing' values not implemented");
+            }
+            int n = -1;
+            byte[] naLastVec = new byte[vectors.length];
+            boolean[] decVec = new boolean[vectors.length];
+            for (int i = 0; i < vectors.length; i++) {
+                if (!RadixOrder.isSupported(vectors[i])) {
+                    throw RError.nyi(this, "radixsort: args > 1 with differing 'decreasing' values not implemented for this type");
+                }
+                int length = ((RAbstractVector) vectors[i]).getLength();
+                if (n != -1 && length != n) {
+                    throw RError.error(this, RError.Message.ARGUMENT_LENGTHS_DIFFER);
+                }
+                n = length;
+                // unlike in order, NA values are placed according to na.last in either direction
+                naLastVec[i] = naLast;
+                decVec[i] = RRuntime.fromLogical(decreasingVec.getDataAt(i));
+            }
+            int[] indx = new int[n];
+            for (int i = 0; i < n; i++) {
+                indx[i] = i;
+            }
+            RadixOrder.order(indx, vectors, naLastVec, decVec);
+            for (int i = 0; i < n; i++) {
+                indx[i]++;
+            }
+            return RDataFactory.createIntVector(indx, RDataFactory.COMPLETE_VECTOR);
+        }
     }
 }
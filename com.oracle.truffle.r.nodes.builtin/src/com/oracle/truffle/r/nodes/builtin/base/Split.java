@@ -65,7 +65,7 @@ public abstract class Split extends RBuiltinNode {
 
     @Specialization
     protected RList split(RAbstractIntVector x, RAbstractIntVector f) {
-        int[] factor = f.materialize().getDataWithoutCopying();
+        int[] factor = f.materialize().getReadonlyData();
         RStringVector names = getLevelNode.execute(f);
         final int nLevels = getNLevels(names);
 
@@ -98,7 +98,7 @@ public abstract class Split extends RBuiltinNode {
 
     @Specialization
     protected RList split(RAbstractDoubleVector x, RAbstractIntVector f) {
-        int[] factor = f.materialize().getDataWithoutCopying();
+        int[] factor = f.materialize().getReadonlyData();
         RStringVector names = getLevelNode.execute(f);
         final int nLevels = getNLevels(names);
 
@@ -131,7 +131,7 @@ public abstract class Split extends RBuiltinNode {
 
     @Specialization
     protected RList split(RAbstractStringVector x, RAbstractIntVector f) {
-        int[] factor = f.materialize().getDataWithoutCopying();
+        int[] factor = f.materialize().getReadonlyData();
         RStringVector names = getLevelNode.execute(f);
         final int nLevels = getNLevels(names);
 
@@ -164,7 +164,7 @@ public abstract class Split extends RBuiltinNode {
 
     @Specialization
     protected RList split(RAbstractLogicalVector x, RAbstractIntVector f) {
-        int[] factor = f.materialize().getDataWithoutCopying();
+        int[] factor = f.materialize().getReadonlyData();
         RStringVector names = getLevelNode.execute(f);
         final int nLevels = getNLevels(names);
 
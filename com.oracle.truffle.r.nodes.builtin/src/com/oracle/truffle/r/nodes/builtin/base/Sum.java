@@ -69,6 +69,12 @@ public abstract class Sum extends RBuiltinNode {
         return new Object[]{RArgsValuesAndNames.EMPTY, RRuntime.LOGICAL_FALSE};
     }
 
+    @Override
+    public boolean acceptsDeferredVectors() {
+        // FULL_PRECISION is only implemented for materialized vectors
+        return !FULL_PRECISION;
+    }
+
     protected static boolean isRDoubleVector(Object value) {
         return value instanceof RDoubleVector;
     }
@@ -84,7 +90,7 @@ public abstract class Sum extends RBuiltinNode {
         int length = lengthProfile.profile(vector.getLength());
 
         if (needsExactSumProfile.profile(length >= 3)) {
-            return RFFIFactory.getRFFI().getMiscRFFI().exactSum(vector.getDataWithoutCopying(), !vector.isComplete(), cachedNaRm);
+            return RFFIFactory.getRFFI().getMiscRFFI().exactSum(vector.getReadonlyData(), !vector.isComplete(), cachedNaRm);
         } else {
             na.enable(vector);
             loopProfile.profileCounted(length);
@@ -111,6 +117,7 @@ public abstract class Sum extends RBuiltinNode {
     @Specialization(contains = {"sumLengthOneRDoubleVector", "sumLengthOne"})
     protected Object sum(RArgsValuesAndNames args, boolean naRm,
                     @Cached("create()") Combine combine) {
+        RBuiltinNode.materializeDeferred(args);
         return reduce.executeReduce(combine.executeCombine(args, false), naRm, false);
     }
 }
@@ -48,6 +48,7 @@ import com.oracle.truffle.r.runtime.RSource;
 import com.oracle.truffle.r.runtime.RStartParams;
 import com.oracle.truffle.r.runtime.builtins.RBuiltin;
 import com.oracle.truffle.r.runtime.context.ContextInfo;
+import com.oracle.truffle.r.runtime.context.ContextPool;
 import com.oracle.truffle.r.runtime.context.RContext;
 import com.oracle.truffle.r.runtime.data.RDataFactory;
 import com.oracle.truffle.r.runtime.data.RIntVector;
@@ -162,6 +163,135 @@ public class FastRContext {
         }
     }
 
+    /**
+     * Returns the channel id of a worker context from the {@link ContextPool} of the current
+     * context, which is then used to send jobs to the worker and to receive the results. The
+     * worker must be given back by {@code .fastr.context.worker.release}.
+     */
+    @RBuiltin(name = ".fastr.context.worker.acquire", kind = PRIMITIVE, parameterNames = {}, behavior = COMPLEX)
+    public abstract static class WorkerAcquire extends RBuiltinNode {
+        @Specialization
+        @TruffleBoundary
+        protected int acquire() {
+            RContext context = RContext.getInstance();
+            return context.stateContextPool.acquire(context);
+        }
+    }
+
+    /**
+     * Gives a worker back to the {@link ContextPool}. {@code reuse = FALSE} must be used if the
+     * result of the last job sent to the worker has not been received.
+     */
+    @RBuiltin(name = ".fastr.context.worker.release", visibility = OFF, kind = PRIMITIVE, parameterNames = {"id", "reuse"}, behavior = COMPLEX)
+    public abstract static class WorkerRelease extends RBuiltinNode {
+        @Override
+        public Object[] getDefaultParameterValues() {
+            return new Object[]{RMissing.instance, RRuntime.LOGICAL_TRUE};
+        }
+
+        @Override
+        protected void createCasts(CastBuilder casts) {
+            Casts.id(casts);
+            casts.arg("reuse").asLogicalVector().findFirst().map(toBoolean());
+        }
+
+        @Specialization
+        @TruffleBoundary
+        protected RNull release(int id, boolean reuse) {
+            RContext.getInstance().stateContextPool.release(id, reuse);
+            return RNull.instance;
+        }
+    }
+
+    /**
+     * Creates a pool of {@code pc} {@code SHARE_PARENT_RO} contexts, which are started immediately
+     * and kept alive until the pool is closed by {@code .fastr.context.pool.close}, so that the
+     * expressions submitted to the pool by {@code .fastr.context.pool.submit} do not pay for the
+     * creation and initialization of a context. The result is the id of the pool.
+     */
+    @RBuiltin(name = ".fastr.context.pool.create", kind = PRIMITIVE, parameterNames = {"pc"}, behavior = COMPLEX)
+    public abstract static class PoolCreate extends RBuiltinNode {
+        @Override
+        public Object[] getDefaultParameterValues() {
+            return new Object[]{1};
+        }
+
+        @Override
+        protected void createCasts(CastBuilder casts) {
+            Casts.pc(casts);
+        }
+
+        @Specialization
+        @TruffleBoundary
+        protected int create(int pc) {
+            RContext context = RContext.getInstance();
+            return context.stateContextPool.createPool(context, pc);
+        }
+    }
+
+    /**
+     * Submits each of the expressions to the pool, where it is evaluated by the next idle context
+     * after its global environment has been cleared. The result is a vector of task handles that
+     * should be passed to {@code .fastr.context.pool.await}.
+     */
+    @RBuiltin(name = ".fastr.context.pool.submit", kind = PRIMITIVE, parameterNames = {"pool", "exprs"}, behavior = COMPLEX)
+    public abstract static class PoolSubmit extends RBuiltinNode {
+        @Override
+        protected void createCasts(CastBuilder casts) {
+            casts.arg("pool").asIntegerVector().mustBe(notEmpty()).findFirst();
+            Casts.exprs(casts);
+        }
+
+        @Specialization
+        @TruffleBoundary
+        protected RIntVector submit(int pool, RAbstractStringVector exprs) {
+            ContextPool.ContextStateImpl state = RContext.getInstance().stateContextPool;
+            int[] data = new int[exprs.getLength()];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = state.submit(pool, exprs.getDataAt(i));
+            }
+            return RDataFactory.createIntVector(data, RDataFactory.COMPLETE_VECTOR);
+        }
+    }
+
+    /**
+     * Waits for the completion of the tasks, the result has the same format as the result of
+     * {@code .fastr.context.eval}.
+     */
+    @RBuiltin(name = ".fastr.context.pool.await", kind = PRIMITIVE, parameterNames = {"handle"}, behavior = COMPLEX)
+    public abstract static class PoolAwait extends RBuiltinNode {
+        @Override
+        protected void createCasts(CastBuilder casts) {
+            casts.arg("handle").asIntegerVector().mustBe(notEmpty());
+        }
+
+        @Specialization
+        @TruffleBoundary
+        protected RList await(RAbstractIntVector handle) {
+            ContextPool.ContextStateImpl state = RContext.getInstance().stateContextPool;
+            Object[] results = new Object[handle.getLength()];
+            for (int i = 0; i < results.length; i++) {
+                results[i] = state.await(handle.getDataAt(i));
+            }
+            return RDataFactory.createList(results);
+        }
+    }
+
+    @RBuiltin(name = ".fastr.context.pool.close", visibility = OFF, kind = PRIMITIVE, parameterNames = {"pool"}, behavior = COMPLEX)
+    public abstract static class PoolClose extends RBuiltinNode {
+        @Override
+        protected void createCasts(CastBuilder casts) {
+            casts.arg("pool").asIntegerVector().mustBe(notEmpty()).findFirst();
+        }
+
+        @Specialization
+        @TruffleBoundary
+        protected RNull close(int pool) {
+            RContext.getInstance().stateContextPool.closePool(pool);
+            return RNull.instance;
+        }
+    }
+
     /**
      * Evaluate expressions in {@code pc} new contexts of type {@code kind}, with the expression
      * taken from the expression in the usual R repeating mode. The invoking context (thread) waits
@@ -300,18 +430,27 @@ public class FastRContext {
         return info;
     }
 
-    @RBuiltin(name = ".fastr.channel.create", kind = PRIMITIVE, parameterNames = {"key"}, behavior = COMPLEX)
+    /**
+     * Creates a channel, {@code capacity} is the number of messages that can be sent in each
+     * direction before the sender blocks.
+     */
+    @RBuiltin(name = ".fastr.channel.create", kind = PRIMITIVE, parameterNames = {"key", "capacity"}, behavior = COMPLEX)
     public abstract static class CreateChannel extends RBuiltinNode {
+        @Override
+        public Object[] getDefaultParameterValues() {
+            return new Object[]{RMissing.instance, RChannel.DEFAULT_CAPACITY};
+        }
 
         @Override
         protected void createCasts(CastBuilder casts) {
             Casts.key(casts);
+            casts.arg("capacity").asIntegerVector().findFirst().notNA().mustBe(gt(0));
         }
 
         @Specialization
         @TruffleBoundary
-        protected int createChannel(int key) {
-            return RChannel.createChannel(key);
+        protected int createChannel(int key, int capacity) {
+            return RChannel.createChannel(key, capacity);
         }
     }
 
@@ -359,6 +498,49 @@ public class FastRContext {
         }
     }
 
+    /**
+     * Sends each element of the list {@code data} as a separate message.
+     */
+    @RBuiltin(name = ".fastr.channel.send.batch", visibility = OFF, kind = PRIMITIVE, parameterNames = {"id", "data"}, behavior = COMPLEX)
+    public abstract static class ChannelSendBatch extends RBuiltinNode {
+        @Override
+        protected void createCasts(CastBuilder casts) {
+            Casts.id(casts);
+            casts.arg("data").mustBe(instanceOf(RList.class));
+        }
+
+        @Specialization
+        @TruffleBoundary
+        protected RNull send(int id, RList data) {
+            RChannel.sendBatch(id, data);
+            return RNull.instance;
+        }
+    }
+
+    /**
+     * Waits for a message and returns a list of it and of the other messages already available,
+     * at most {@code max} messages in total.
+     */
+    @RBuiltin(name = ".fastr.channel.receive.batch", kind = PRIMITIVE, parameterNames = {"id", "max"}, behavior = COMPLEX)
+    public abstract static class ChannelReceiveBatch extends RBuiltinNode {
+        @Override
+        public Object[] getDefaultParameterValues() {
+            return new Object[]{RMissing.instance, Integer.MAX_VALUE};
+        }
+
+        @Override
+        protected void createCasts(CastBuilder casts) {
+            Casts.id(casts);
+            casts.arg("max").asIntegerVector().findFirst().notNA().mustBe(gt(0));
+        }
+
+        @Specialization
+        @TruffleBoundary
+        protected RList receive(int id, int max) {
+            return RChannel.receiveBatch(id, max);
+        }
+    }
+
     @RBuiltin(name = ".fastr.channel.receive", kind = PRIMITIVE, parameterNames = {"id"}, behavior = COMPLEX)
     public abstract static class ChannelReceive extends RBuiltinNode {
         @Override
@@ -383,7 +565,8 @@ public class FastRContext {
         @Specialization
         @TruffleBoundary
         protected Object poll(int id) {
-            return RChannel.poll(id);
+            Object result = RChannel.poll(id);
+            return result == null ? RNull.instance : result;
         }
     }
 
@@ -397,22 +580,16 @@ public class FastRContext {
         @Specialization
         @TruffleBoundary
         protected RList select(RList nodes) {
-            int ind = 0;
-            int length = nodes.getLength();
-            while (true) {
-                Object o = nodes.getDataAt(ind);
-                ind = (ind + 1) % length;
-                int id;
+            int[] ids = new int[nodes.getLength()];
+            for (int i = 0; i < ids.length; i++) {
+                Object o = nodes.getDataAt(i);
                 if (o instanceof Integer) {
-                    id = (int) o;
+                    ids[i] = (int) o;
                 } else {
-                    id = ((RIntVector) o).getDataAt(0);
-                }
-                Object res = RChannel.poll(id);
-                if (res != null) {
-                    return RDataFactory.createList(new Object[]{id, res});
+                    ids[i] = ((RIntVector) o).getDataAt(0);
                 }
             }
+            return RChannel.select(ids);
         }
     }
 }
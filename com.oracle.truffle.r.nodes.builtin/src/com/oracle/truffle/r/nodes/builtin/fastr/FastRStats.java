@@ -48,14 +48,19 @@ import com.oracle.truffle.r.runtime.RError;
 import com.oracle.truffle.r.runtime.RRuntime;
 import com.oracle.truffle.r.runtime.RSource;
 import com.oracle.truffle.r.runtime.builtins.RBuiltin;
+import com.oracle.truffle.r.runtime.conn.RConnection;
+import com.oracle.truffle.r.runtime.context.Engine;
 import com.oracle.truffle.r.runtime.context.RContext;
 import com.oracle.truffle.r.runtime.data.AttributeTracer;
 import com.oracle.truffle.r.runtime.data.AttributeTracer.Change;
 import com.oracle.truffle.r.runtime.data.RDataFactory;
 import com.oracle.truffle.r.runtime.data.RNull;
+import com.oracle.truffle.r.runtime.data.RStringVector;
 import com.oracle.truffle.r.runtime.data.RTypedValue;
 import com.oracle.truffle.r.runtime.data.model.RAbstractStringVector;
 import com.oracle.truffle.r.runtime.data.model.RAbstractVector;
+import com.oracle.truffle.r.runtime.ffi.CallRFFI;
+import com.oracle.truffle.r.runtime.ffi.RFFIFactory;
 import com.oracle.truffle.r.runtime.instrument.InstrumentationState.RprofState;
 import com.oracle.truffle.tools.Profiler;
 import com.oracle.truffle.tools.Profiler.Counter.TimeKind;
@@ -434,4 +439,73 @@ public class FastRStats {
             }
         }
     }
+
+    /**
+     * Returns the read statistics of a connection: the number of bytes read from the underlying
+     * stream, the number of lines read, the time spent reading lines in seconds and the resulting
+     * throughput in bytes per second, or {@code NULL} if the connection does not keep statistics.
+     */
+    @RBuiltin(name = ".fastr.connection.stats", kind = PRIMITIVE, parameterNames = {"con"}, behavior = COMPLEX)
+    public abstract static class FastRConnectionStats extends RBuiltinNode {
+        private static final RStringVector NAMES = RDataFactory.createStringVector(new String[]{"bytes", "lines", "seconds", "throughput"}, RDataFactory.COMPLETE_VECTOR);
+
+        @Override
+        protected void createCasts(CastBuilder casts) {
+            casts.arg("con").defaultError(RError.Message.INVALID_CONNECTION).mustNotBeNull().asIntegerVector().findFirst();
+        }
+
+        @Specialization
+        @TruffleBoundary
+        protected Object stats(int con) {
+            long[] stats = RConnection.fromIndex(con).getReadStatistics();
+            if (stats == null) {
+                return RNull.instance;
+            }
+            double seconds = stats[2] / 1e9;
+            double[] data = new double[]{stats[0], stats[1], seconds, seconds == 0 ? 0 : stats[0] / seconds};
+            return RDataFactory.createDoubleVector(data, RDataFactory.COMPLETE_VECTOR, NAMES);
+        }
+    }
+
+    /**
+     * Returns the number of parses that were served from the persistent cache of parse results and
+     * the number of parse results that were written to it, see
+     * {@link Engine#getParseCacheStatistics()}.
+     */
+    @RBuiltin(name = ".fastr.parse.cache.stats", kind = PRIMITIVE, parameterNames = {}, behavior = COMPLEX)
+    public abstract static class FastRParseCacheStats extends RBuiltinNode {
+        private static final RStringVector NAMES = RDataFactory.createStringVector(new String[]{"hits", "writes"}, RDataFactory.COMPLETE_VECTOR);
+
+        @Specialization
+        @TruffleBoundary
+        protected Object stats() {
+            long[] stats = RContext.getEngine().getParseCacheStatistics();
+            return RDataFactory.createDoubleVector(new double[]{stats[0], stats[1]}, RDataFactory.COMPLETE_VECTOR, NAMES);
+        }
+    }
+
+    /**
+     * Returns the statistics of the cache of global refs kept by the native code for the current
+     * thread, see {@link CallRFFI.CallRFFINode#getGlobalRefCacheStats()}, including the hit rate
+     * of the lookups, or {@code NULL} if the FFI implementation does not have such a cache.
+     */
+    @RBuiltin(name = ".fastr.rffi.refcache.stats", kind = PRIMITIVE, parameterNames = {}, behavior = COMPLEX)
+    public abstract static class FastRRefCacheStats extends RBuiltinNode {
+        private static final RStringVector NAMES = RDataFactory.createStringVector(new String[]{"lookups", "hits", "hitrate", "permanent", "thread", "capacity", "preserved"},
+                        RDataFactory.COMPLETE_VECTOR);
+
+        @Child private CallRFFI.CallRFFINode callRFFINode = RFFIFactory.getRFFI().getCallRFFI().createCallRFFINode();
+
+        @Specialization
+        @TruffleBoundary
+        protected Object stats() {
+            long[] stats = callRFFINode.getGlobalRefCacheStats();
+            if (stats == null) {
+                return RNull.instance;
+            }
+            double hitRate = stats[0] == 0 ? 0 : (double) stats[1] / stats[0];
+            double[] data = new double[]{stats[0], stats[1], hitRate, stats[2], stats[3], stats[4], stats[5]};
+            return RDataFactory.createDoubleVector(data, RDataFactory.COMPLETE_VECTOR, NAMES);
+        }
+    }
 }
@@ -24,13 +24,16 @@ package com.oracle.truffle.r.nodes.binary;
 
 import com.oracle.truffle.api.CompilerAsserts;
 import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.dsl.Cached;
 import com.oracle.truffle.api.dsl.Fallback;
 import com.oracle.truffle.api.dsl.Specialization;
+import com.oracle.truffle.api.profiles.ConditionProfile;
 import com.oracle.truffle.api.profiles.ValueProfile;
 import com.oracle.truffle.r.nodes.builtin.CastBuilder;
 import com.oracle.truffle.r.nodes.builtin.RBuiltinNode;
+import com.oracle.truffle.r.nodes.function.RCallNode;
 import com.oracle.truffle.r.nodes.primitive.BinaryMapNode;
 import com.oracle.truffle.r.nodes.profile.TruffleBoundaryNode;
 import com.oracle.truffle.r.nodes.unary.UnaryArithmeticNode;
@@ -39,6 +42,7 @@ import com.oracle.truffle.r.runtime.RError;
 import com.oracle.truffle.r.runtime.RError.Message;
 import com.oracle.truffle.r.runtime.RType;
 import com.oracle.truffle.r.runtime.data.RDataFactory;
+import com.oracle.truffle.r.runtime.data.RDeferredDoubleVector;
 import com.oracle.truffle.r.runtime.data.RMissing;
 import com.oracle.truffle.r.runtime.data.RNull;
 import com.oracle.truffle.r.runtime.data.model.RAbstractComplexVector;
@@ -48,6 +52,7 @@ import com.oracle.truffle.r.runtime.data.model.RAbstractLogicalVector;
 import com.oracle.truffle.r.runtime.data.model.RAbstractVector;
 import com.oracle.truffle.r.runtime.ops.BinaryArithmetic;
 import com.oracle.truffle.r.runtime.ops.BinaryArithmeticFactory;
+import com.oracle.truffle.r.runtime.nodes.RSyntaxNode;
 import com.oracle.truffle.r.runtime.ops.UnaryArithmeticFactory;
 
 /**
@@ -62,6 +67,9 @@ public abstract class BinaryArithmeticNode extends RBuiltinNode {
     protected final BinaryArithmeticFactory binary;
     private final UnaryArithmeticFactory unary;
 
+    private final ConditionProfile deferredProfile = ConditionProfile.createBinaryProfile();
+    @CompilationFinal private Boolean consumedByArithmetic;
+
     public BinaryArithmeticNode(BinaryArithmeticFactory binaryFactory, UnaryArithmeticFactory unaryFactory) {
         this.binary = binaryFactory;
         this.unary = unaryFactory;
@@ -73,6 +81,43 @@ public abstract class BinaryArithmeticNode extends RBuiltinNode {
         casts.arg(1).boxPrimitive();
     }
 
+    @Override
+    public boolean acceptsDeferredVectors() {
+        // deferred operands are combined into a new deferred result, see BinaryMapNode
+        return true;
+    }
+
+    /**
+     * A {@link RDeferredDoubleVector} result is only kept if it is directly passed to another
+     * arithmetic operation or to {@code sum}, which consume it within the same expression.
+     * Otherwise it is materialized right away, so that it cannot end up in variables, lists,
+     * environments, etc.
+     */
+    private Object checkDeferred(Object result) {
+        if (deferredProfile.profile(result instanceof RDeferredDoubleVector)) {
+            if (consumedByArithmetic == null) {
+                CompilerDirectives.transferToInterpreterAndInvalidate();
+                consumedByArithmetic = isConsumedByArithmetic();
+            }
+            if (!consumedByArithmetic) {
+                return ((RDeferredDoubleVector) result).materialize();
+            }
+        }
+        return result;
+    }
+
+    private boolean isConsumedByArithmetic() {
+        if (!(getParent() instanceof RCallNode.BuiltinCallNode)) {
+            return false;
+        }
+        RSyntaxNode call = ((RCallNode.BuiltinCallNode) getParent()).getRSyntaxNode();
+        if (!(call instanceof RCallNode)) {
+            return false;
+        }
+        String name = ((RCallNode) call).getGroupGenericCallName();
+        return "+".equals(name) || "-".equals(name) || "*".equals(name) || "/".equals(name) || "sum".equals(name);
+    }
+
     public static BinaryArithmeticNode create(BinaryArithmeticFactory binary, UnaryArithmeticFactory unary) {
         return BinaryArithmeticNodeGen.create(binary, unary);
     }
@@ -80,7 +125,7 @@ public abstract class BinaryArithmeticNode extends RBuiltinNode {
     @Specialization(limit = "CACHE_LIMIT", guards = {"cached != null", "cached.isSupported(left, right)"})
     protected Object doNumericVectorCached(Object left, Object right,
                     @Cached("createFastCached(left, right)") BinaryMapNode cached) {
-        return cached.apply(left, right);
+        return checkDeferred(cached.apply(left, right));
     }
 
     @Specialization(contains = "doNumericVectorCached", guards = {"isNumericVector(left)", "isNumericVector(right)"})
@@ -90,7 +135,7 @@ public abstract class BinaryArithmeticNode extends RBuiltinNode {
                     @Cached("new(createCached(arithmetic, left, right))") GenericNumericVectorNode generic) {
         RAbstractVector leftVector = (RAbstractVector) left;
         RAbstractVector rightVector = (RAbstractVector) right;
-        return generic.get(arithmetic, leftVector, rightVector).apply(leftVector, rightVector);
+        return checkDeferred(generic.get(arithmetic, leftVector, rightVector).apply(leftVector, rightVector));
     }
 
     protected BinaryMapNode createFastCached(Object left, Object right) {
@@ -108,7 +153,8 @@ public abstract class BinaryArithmeticNode extends RBuiltinNode {
     @SuppressWarnings("unused")
     protected Object doUnary(Object left, RMissing right,
                     @Cached("createUnaryArithmeticNode()") UnaryArithmeticNode unaryNode) {
-        return unaryNode.execute(left);
+        // unary plus returns its operand
+        return checkDeferred(unaryNode.execute(left));
     }
 
     protected final UnaryArithmeticNode createUnaryArithmeticNode() {
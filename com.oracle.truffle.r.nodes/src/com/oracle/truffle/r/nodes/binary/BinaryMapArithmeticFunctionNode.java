@@ -28,6 +28,7 @@ import com.oracle.truffle.r.runtime.RError;
 import com.oracle.truffle.r.runtime.RRuntime;
 import com.oracle.truffle.r.runtime.data.RComplex;
 import com.oracle.truffle.r.runtime.data.RDataFactory;
+import com.oracle.truffle.r.runtime.data.RDeferredDoubleVector;
 import com.oracle.truffle.r.runtime.data.RDoubleSequence;
 import com.oracle.truffle.r.runtime.data.RIntSequence;
 import com.oracle.truffle.r.runtime.data.RSequence;
@@ -72,6 +73,20 @@ public final class BinaryMapArithmeticFunctionNode extends BinaryMapNAFunctionNo
         return null;
     }
 
+    @Override
+    public RDeferredDoubleVector.Op getDeferredOp() {
+        if (arithmetic instanceof Add) {
+            return RDeferredDoubleVector.Op.ADD;
+        } else if (arithmetic instanceof Subtract) {
+            return RDeferredDoubleVector.Op.SUBTRACT;
+        } else if (arithmetic instanceof Multiply) {
+            return RDeferredDoubleVector.Op.MULTIPLY;
+        } else if (arithmetic instanceof Div) {
+            return RDeferredDoubleVector.Op.DIVIDE;
+        }
+        return null;
+    }
+
     private boolean isSequenceMulArithmetic() {
         return arithmetic instanceof Multiply || arithmetic instanceof IntegerDiv || arithmetic instanceof Div;
     }
@@ -37,6 +37,7 @@ import com.oracle.truffle.r.runtime.builtins.RBuiltin;
 import com.oracle.truffle.r.runtime.builtins.RBuiltinDescriptor;
 import com.oracle.truffle.r.runtime.builtins.RBuiltinKind;
 import com.oracle.truffle.r.runtime.data.RArgsValuesAndNames;
+import com.oracle.truffle.r.runtime.data.RDeferredDoubleVector;
 import com.oracle.truffle.r.runtime.data.RMissing;
 import com.oracle.truffle.r.runtime.data.RNull;
 import com.oracle.truffle.r.runtime.data.RTypes;
@@ -71,6 +72,57 @@ public abstract class RBuiltinNode extends RBaseNode {
         return EMPTY_OBJECT_ARRAY;
     }
 
+    /**
+     * Returns {@code true} if the builtin handles {@link RDeferredDoubleVector} arguments itself,
+     * otherwise these are materialized before the builtin is called.
+     */
+    public boolean acceptsDeferredVectors() {
+        return false;
+    }
+
+    /**
+     * Materializes {@code value} if it is a {@link RDeferredDoubleVector}, see
+     * {@link #acceptsDeferredVectors()}.
+     */
+    public static Object materializeDeferred(Object value) {
+        return RDeferredDoubleVector.materializeDeferred(value);
+    }
+
+    /**
+     * Materializes the {@link RDeferredDoubleVector} values in {@code varArgs}.
+     */
+    public static void materializeDeferred(RArgsValuesAndNames varArgs) {
+        Object[] array = varArgs.getArguments();
+        for (int i = 0; i < array.length; i++) {
+            array[i] = materializeDeferred(array[i]);
+        }
+    }
+
+    /**
+     * Releases the {@link RDeferredDoubleVector} values in the (cast) arguments {@code args} of a
+     * builtin that {@link #acceptsDeferredVectors() accepts} them, after it returned
+     * {@code result}. The builtin has consumed them unless they are the {@code result} or
+     * operands of the deferred {@code result}. {@code result} is {@code null} if the builtin did not return normally.
+     */
+    public static void releaseDeferred(Object[] args, Object result) {
+        for (Object arg : args) {
+            if (arg instanceof RArgsValuesAndNames) {
+                for (Object value : ((RArgsValuesAndNames) arg).getArguments()) {
+                    releaseDeferred(value, result);
+                }
+            } else {
+                releaseDeferred(arg, result);
+            }
+        }
+    }
+
+    private static void releaseDeferred(Object value, Object result) {
+        // e.g., unary plus returns its argument
+        if (value instanceof RDeferredDoubleVector && value != result && !(result instanceof RDeferredDoubleVector && ((RDeferredDoubleVector) result).hasOperand(value))) {
+            ((RDeferredDoubleVector) value).release();
+        }
+    }
+
     static RootCallTarget createArgumentsCallTarget(RBuiltinFactory builtin) {
         CompilerAsserts.neverPartOfCompilation();
 
@@ -34,6 +34,7 @@ import com.oracle.truffle.api.frame.FrameDescriptor;
 import com.oracle.truffle.api.frame.FrameSlot;
 import com.oracle.truffle.api.frame.FrameSlotKind;
 import com.oracle.truffle.api.frame.FrameSlotTypeException;
+import com.oracle.truffle.api.frame.MaterializedFrame;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.nodes.Node;
 import com.oracle.truffle.api.nodes.NodeUtil;
@@ -58,6 +59,7 @@ import com.oracle.truffle.r.runtime.RArguments;
 import com.oracle.truffle.r.runtime.RArguments.DispatchArgs;
 import com.oracle.truffle.r.runtime.RArguments.S3Args;
 import com.oracle.truffle.r.runtime.RArguments.S4Args;
+import com.oracle.truffle.r.runtime.RCaller;
 import com.oracle.truffle.r.runtime.RDeparse;
 import com.oracle.truffle.r.runtime.RError;
 import com.oracle.truffle.r.runtime.RErrorHandling;
@@ -120,6 +122,11 @@ public final class FunctionDefinitionNode extends RRootNode implements RSyntaxNo
 
     private final Assumption noHandlerStackSlot = Truffle.getRuntime().createAssumption();
     private final Assumption noRestartStackSlot = Truffle.getRuntime().createAssumption();
+    /**
+     * Valid as long as no stack introspection has looked for a frame of this function that is not
+     * the current one. Afterwards, each invocation links its frame to its {@link RCaller}.
+     */
+    private final Assumption noFrameLink = Truffle.getRuntime().createAssumption("no frame link");
     @CompilationFinal private FrameSlot handlerStackSlot;
     @CompilationFinal private FrameSlot restartStackSlot;
 
@@ -244,10 +251,25 @@ public final class FunctionDefinitionNode extends RRootNode implements RSyntaxNo
         return argPostProcess;
     }
 
+    /**
+     * Makes the invocations of this function link their frames to their {@link RCaller}s, so that
+     * {@code Utils.getStackFrame} finds them without walking the stack.
+     */
+    public void enableFrameLinks() {
+        noFrameLink.invalidate();
+    }
+
     @Override
     public Object execute(VirtualFrame frame) {
         boolean runOnExitHandlers = true;
+        RCaller linkedCaller = null;
+        MaterializedFrame previousLink = null;
         try {
+            if (!noFrameLink.isValid()) {
+                linkedCaller = RArguments.getCall(frame);
+                previousLink = linkedCaller.getFrame();
+                linkedCaller.setFrame(frame.materialize());
+            }
             verifyEnclosingAssumptions(frame);
             setupDispatchSlots(frame);
             saveArguments.execute(frame);
@@ -290,6 +312,9 @@ public final class FunctionDefinitionNode extends RRootNode implements RSyntaxNo
              * has no exit handlers (by fiat), so any exceptions from onExits handlers will be
              * caught above.
              */
+            if (linkedCaller != null) {
+                linkedCaller.setFrame(previousLink);
+            }
             visibility.executeEndOfFunction(frame, this);
             if (argPostProcess != null) {
                 resetArgs.enter();
@@ -91,6 +91,7 @@ import com.oracle.truffle.r.runtime.conn.RConnection;
 import com.oracle.truffle.r.runtime.context.RContext;
 import com.oracle.truffle.r.runtime.data.RArgsValuesAndNames;
 import com.oracle.truffle.r.runtime.data.RDataFactory;
+import com.oracle.truffle.r.runtime.data.RDeferredDoubleVector;
 import com.oracle.truffle.r.runtime.data.REmpty;
 import com.oracle.truffle.r.runtime.data.RFunction;
 import com.oracle.truffle.r.runtime.data.RMissing;
@@ -477,9 +478,42 @@ public abstract class RCallNode extends RCallBaseNode implements RSyntaxNode, RS
             }
         }
 
+        if (s3Args != null) {
+            // the method is a closure, which must not see deferred vectors, see getGroupGenericCallName
+            for (int i = 0; i < args.length; i++) {
+                args[i] = RBuiltinNode.materializeDeferred(args[i]);
+            }
+        }
         return call.execute(frame, resultFunction, new RArgsValuesAndNames(args, argsSignature), s3Args, s3DefaulArguments);
     }
 
+    /**
+     * Returns the name of the function called by the call that this call is a direct argument of,
+     * if the arguments of that call are evaluated and passed on as values by
+     * {@link #callGroupGeneric}. Returns {@code null} in all other cases, e.g., if the arguments
+     * are wrapped into promises. Builtins like arithmetic use this to determine whether their
+     * result can be a {@link RDeferredDoubleVector}.
+     */
+    public String getGroupGenericCallName() {
+        Node parent = getParent();
+        if (parent instanceof WrapArgumentBaseNode) {
+            parent = parent.getParent();
+        }
+        if (!(parent instanceof CallArgumentsNode)) {
+            return null;
+        }
+        Node node = parent.getParent();
+        while (!(node instanceof RCallNode)) {
+            // only callGroupGeneric keeps its arguments directly
+            if (node == null || node instanceof RootNode || node instanceof FunctionDispatch || node instanceof ForeignCall) {
+                return null;
+            }
+            node = node.getParent();
+        }
+        RSyntaxElement lhs = ((RCallNode) node).getSyntaxLHS();
+        return lhs instanceof RSyntaxLookup ? ((RSyntaxLookup) lhs).getIdentifier() : null;
+    }
+
     protected final class ForeignCall extends Node {
 
         @Child private CallArgumentsNode arguments;
@@ -753,6 +787,7 @@ public abstract class RCallNode extends RCallBaseNode implements RSyntaxNode, RS
         private final FormalArguments formals;
         private final RBuiltinDescriptor builtinDescriptor;
         private final boolean explicitArgs;
+        private final boolean materializeDeferred;
 
         public BuiltinCallNode(RBuiltinNode builtin, RBuiltinDescriptor builtinDescriptor, FormalArguments formalArguments, RCallNode originalCall, boolean explicitArgs) {
             super(originalCall);
@@ -760,6 +795,7 @@ public abstract class RCallNode extends RCallBaseNode implements RSyntaxNode, RS
             this.builtinDescriptor = builtinDescriptor;
             this.explicitArgs = explicitArgs;
             this.casts = builtin.getCasts();
+            this.materializeDeferred = !builtin.acceptsDeferredVectors();
             this.formals = formalArguments;
             promiseHelpers = new PromiseHelperNode[formals.getLength()];
             argEmptySeen = new boolean[formals.getLength()];
@@ -790,6 +826,9 @@ public abstract class RCallNode extends RCallBaseNode implements RSyntaxNode, RS
                     RArgsValuesAndNames varArgs = (RArgsValuesAndNames) arg;
                     if (builtinDescriptor.evaluatesArg(i)) {
                         forcePromises(frame, varArgs);
+                        if (materializeDeferred) {
+                            RBuiltinNode.materializeDeferred(varArgs);
+                        }
                     } else {
                         wrapPromises(varArgs);
                     }
@@ -802,6 +841,9 @@ public abstract class RCallNode extends RCallBaseNode implements RSyntaxNode, RS
                             }
                             arg = promiseHelpers[i].evaluate(frame, (RPromise) arg);
                         }
+                        if (materializeDeferred) {
+                            arg = RBuiltinNode.materializeDeferred(arg);
+                        }
                         if (i < casts.length && casts[i] != null) {
                             assert builtinDescriptor.evaluatesArg(i);
                             arg = casts[i].execute(arg);
@@ -875,12 +917,28 @@ public abstract class RCallNode extends RCallBaseNode implements RSyntaxNode, RS
 
         @Override
         public Object execute(VirtualFrame frame, RFunction currentFunction, RArgsValuesAndNames orderedArguments, S3Args s3Args) {
-            Object result = builtin.executeBuiltin(frame, castArguments(frame, orderedArguments.getArguments()));
+            Object[] args = castArguments(frame, orderedArguments.getArguments());
+            Object result;
+            if (materializeDeferred) {
+                result = builtin.executeBuiltin(frame, args);
+            } else {
+                result = executeDeferred(frame, args);
+            }
             assert result != null : "builtins cannot return 'null': " + builtinDescriptor.getName();
             assert !(result instanceof RConnection) : "builtins cannot return connection': " + builtinDescriptor.getName();
             visibility.execute(frame, builtinDescriptor.getVisibility());
             return result;
         }
+
+        private Object executeDeferred(VirtualFrame frame, Object[] args) {
+            Object result = null;
+            try {
+                result = builtin.executeBuiltin(frame, args);
+                return result;
+            } finally {
+                RBuiltinNode.releaseDeferred(args, result);
+            }
+        }
     }
 
     private static final class DispatchedCallNode extends LeafCallNode {
@@ -4,7 +4,7 @@
  * http://www.gnu.org/licenses/gpl-2.0.html
  *
  * Copyright (c) 2014, Purdue University
- * Copyright (c) 2014, 2016, Oracle and/or its affiliates
+ * Copyright (c) 2014, 2017, Oracle and/or its affiliates
  *
  * All rights reserved.
  */
@@ -19,11 +19,13 @@ import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.CompilerDirectives.ValueType;
 import com.oracle.truffle.api.frame.Frame;
+import com.oracle.truffle.api.frame.FrameDescriptor;
 import com.oracle.truffle.api.frame.FrameSlot;
 import com.oracle.truffle.api.frame.FrameSlotTypeException;
 import com.oracle.truffle.api.frame.MaterializedFrame;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.nodes.ExplodeLoop;
+import com.oracle.truffle.api.nodes.InvalidAssumptionException;
 import com.oracle.truffle.api.nodes.NodeCost;
 import com.oracle.truffle.api.nodes.NodeInfo;
 import com.oracle.truffle.api.profiles.BranchProfile;
@@ -32,11 +34,13 @@ import com.oracle.truffle.api.profiles.ValueProfile;
 import com.oracle.truffle.r.nodes.access.variables.LocalReadVariableNode;
 import com.oracle.truffle.r.nodes.access.variables.ReadVariableNode;
 import com.oracle.truffle.r.runtime.ArgumentsSignature;
+import com.oracle.truffle.r.runtime.RArguments;
 import com.oracle.truffle.r.runtime.RArguments.S3Args;
 import com.oracle.truffle.r.runtime.RError;
 import com.oracle.truffle.r.runtime.RInternalError;
 import com.oracle.truffle.r.runtime.RRuntime;
 import com.oracle.truffle.r.runtime.RType;
+import com.oracle.truffle.r.runtime.S3DispatchTable;
 import com.oracle.truffle.r.runtime.context.RContext;
 import com.oracle.truffle.r.runtime.data.RDataFactory;
 import com.oracle.truffle.r.runtime.data.RFunction;
@@ -44,6 +48,10 @@ import com.oracle.truffle.r.runtime.data.RNull;
 import com.oracle.truffle.r.runtime.data.RPromise;
 import com.oracle.truffle.r.runtime.data.RStringVector;
 import com.oracle.truffle.r.runtime.env.REnvironment;
+import com.oracle.truffle.r.runtime.env.frame.FrameSlotChangeMonitor;
+import com.oracle.truffle.r.runtime.env.frame.FrameSlotChangeMonitor.FrameAndSlotLookupResult;
+import com.oracle.truffle.r.runtime.env.frame.FrameSlotChangeMonitor.LookupResult;
+import com.oracle.truffle.r.runtime.env.frame.NSBaseMaterializedFrame;
 import com.oracle.truffle.r.runtime.nodes.RBaseNode;
 
 public abstract class S3FunctionLookupNode extends RBaseNode {
@@ -105,10 +113,7 @@ public abstract class S3FunctionLookupNode extends RBaseNode {
     @TruffleBoundary
     private static Result performLookup(MaterializedFrame callerFrame, String genericName, String groupName, RStringVector type, boolean nextMethod, LookupOperation op, GetMethodsTable getTable) {
         Result result;
-        Object methodsTable = getTable.get();
-        if (methodsTable instanceof RPromise) {
-            methodsTable = PromiseHelperNode.evaluateSlowPath(null, (RPromise) methodsTable);
-        }
+        Object methodsTable = forceMethodsTable(getTable.get());
         MaterializedFrame methodsTableFrame = methodsTable == null ? null : ((REnvironment) methodsTable).getFrame();
 
         // look for a generic function reachable from the caller frame
@@ -398,6 +403,129 @@ public abstract class S3FunctionLookupNode extends RBaseNode {
         }
     }
 
+    private static FrameDescriptor getCallerDescriptor(MaterializedFrame callerFrame) {
+        // the base namespace shares the frame descriptor of the base environment
+        return callerFrame instanceof NSBaseMaterializedFrame ? ((NSBaseMaterializedFrame) callerFrame).getMarkerFrameDescriptor() : callerFrame.getFrameDescriptor();
+    }
+
+    /**
+     * The result of a dispatch together with what is needed to check that it still holds: the
+     * lookups from the caller's frame are represented by their {@link LookupResult}s, which
+     * {@link FrameSlotChangeMonitor} invalidates whenever a binding is added, changed or shadowed
+     * along the way, and the lookups in the methods table, which is a single environment, are
+     * simply repeated.
+     */
+    private static final class DispatchEntry extends S3DispatchTable.Entry {
+        private final Result result;
+        private final Object methodsTable;
+        private final String[] callerNames;
+        private final LookupResult[] callerLookups;
+        private final String[] tableNames;
+        private final RFunction[] tableFunctions;
+
+        private DispatchEntry(Result result, Object methodsTable, String[] callerNames, LookupResult[] callerLookups, String[] tableNames, RFunction[] tableFunctions) {
+            this.result = result;
+            this.methodsTable = methodsTable;
+            this.callerNames = callerNames;
+            this.callerLookups = callerLookups;
+            this.tableNames = tableNames;
+            this.tableFunctions = tableFunctions;
+        }
+
+        @Override
+        public boolean isValid(MaterializedFrame callerFrame, Object currentMethodsTable) {
+            if (currentMethodsTable != methodsTable) {
+                return false;
+            }
+            for (int i = 0; i < callerNames.length; i++) {
+                // a valid lookup result is handed out again for the same frame descriptor
+                if (FrameSlotChangeMonitor.lookup(callerFrame, callerNames[i]) != callerLookups[i]) {
+                    return false;
+                }
+            }
+            if (tableNames.length > 0) {
+                MaterializedFrame tableFrame = ((REnvironment) forceMethodsTable(methodsTable)).getFrame();
+                for (int i = 0; i < tableNames.length; i++) {
+                    if (readLocalFunction(tableFrame, tableNames[i]) != tableFunctions[i]) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private static Object readLocalFunction(MaterializedFrame frame, String name) {
+            FrameSlot slot = frame.getFrameDescriptor().findFrameSlot(name);
+            Object value = slot == null ? null : frame.getValue(slot);
+            if (value instanceof RPromise && ((RPromise) value).isEvaluated()) {
+                value = ((RPromise) value).getValue();
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Records the lookups of a dispatch in the megamorphic case. A dispatch can only be cached if
+     * each lookup from the caller's frame can be described by a {@link LookupResult}.
+     */
+    private static final class DispatchRecorder {
+        private final ArrayList<String> callerNames = new ArrayList<>();
+        private final ArrayList<LookupResult> callerLookups = new ArrayList<>();
+        private final ArrayList<String> tableNames = new ArrayList<>();
+        private final ArrayList<RFunction> tableFunctions = new ArrayList<>();
+        private boolean cacheable = true;
+
+        void record(MaterializedFrame frame, String name, boolean inMethodsTable, RFunction function) {
+            if (!cacheable) {
+                return;
+            }
+            if (inMethodsTable) {
+                tableNames.add(name);
+                tableFunctions.add(function);
+                return;
+            }
+            LookupResult lookup = FrameSlotChangeMonitor.lookup(frame, name);
+            if (lookup == null || lookup instanceof FrameAndSlotLookupResult) {
+                // the value of the binding is not stable
+                cacheable = false;
+                return;
+            }
+            try {
+                Object value = lookup.getValue();
+                if (value instanceof RPromise && ((RPromise) value).isEvaluated()) {
+                    value = ((RPromise) value).getValue();
+                }
+                // e.g., a non-function value is skipped by the function lookup
+                if (value != function) {
+                    cacheable = false;
+                    return;
+                }
+            } catch (InvalidAssumptionException e) {
+                cacheable = false;
+                return;
+            }
+            callerNames.add(name);
+            callerLookups.add(lookup);
+        }
+
+        DispatchEntry createEntry(Result result, Object methodsTable) {
+            return new DispatchEntry(result, methodsTable, callerNames.toArray(new String[callerNames.size()]), callerLookups.toArray(new LookupResult[callerLookups.size()]),
+                            tableNames.toArray(new String[tableNames.size()]), tableFunctions.toArray(new RFunction[tableFunctions.size()]));
+        }
+    }
+
+    private static Object forceMethodsTable(Object methodsTable) {
+        if (methodsTable instanceof RPromise) {
+            return PromiseHelperNode.evaluateSlowPath(null, (RPromise) methodsTable);
+        }
+        return methodsTable;
+    }
+
+    /**
+     * Used once the chain of cached nodes overflows. To avoid repeating the search along the
+     * environment chain for every class on each call, the results are kept in the per-context
+     * {@link S3DispatchTable} that is shared by all megamorphic call sites.
+     */
     private static final class UseMethodFunctionLookupGenericNode extends S3FunctionLookupNode {
 
         protected UseMethodFunctionLookupGenericNode(boolean throwsError, boolean nextMethod) {
@@ -411,23 +539,39 @@ public abstract class S3FunctionLookupNode extends RBaseNode {
 
         @TruffleBoundary
         private Result executeInternal(String genericName, RStringVector type, String group, MaterializedFrame callerFrame, MaterializedFrame genericDefFrame) {
-            LookupOperation op = (lookupFrame, name, inMethodsTable) -> {
-                return ReadVariableNode.lookupFunction(name, lookupFrame, inMethodsTable, true);
-            };
-
-            GetMethodsTable getTable = () -> {
-                FrameSlot slot = genericDefFrame == null ? null : genericDefFrame.getFrameDescriptor().findFrameSlot(RRuntime.RS3MethodsTable);
-                if (slot == null) {
-                    return null;
-                }
-                try {
-                    return genericDefFrame.getObject(slot);
-                } catch (FrameSlotTypeException e) {
-                    throw RInternalError.shouldNotReachHere();
+            Object methodsTable = getMethodsTable(genericDefFrame);
+
+            /*
+             * The frame of a generic that is defined inside a function belongs to a single call,
+             * keeping it in the table would keep the whole frame alive.
+             */
+            boolean cacheable = genericDefFrame == null || RArguments.getFunction(genericDefFrame) == null;
+            S3DispatchTable.ContextStateImpl dispatchTable = cacheable ? RContext.getInstance().stateS3Dispatch : null;
+            FrameDescriptor callerDescriptor = getCallerDescriptor(callerFrame);
+            S3DispatchTable.Key key = cacheable ? S3DispatchTable.Key.create(genericName, group, type, nextMethod, genericDefFrame) : null;
+            DispatchEntry entry = cacheable ? (DispatchEntry) dispatchTable.get(callerDescriptor, key) : null;
+
+            Result result;
+            if (entry != null && entry.isValid(callerFrame, methodsTable)) {
+                result = entry.result;
+            } else {
+                DispatchRecorder recorder = new DispatchRecorder();
+                LookupOperation op = (lookupFrame, name, inMethodsTable) -> {
+                    RFunction function = ReadVariableNode.lookupFunction(name, lookupFrame, inMethodsTable, true);
+                    recorder.record(lookupFrame, name, inMethodsTable, function);
+                    return function;
+                };
+
+                result = performLookup(callerFrame, genericName, group, type, nextMethod, op, () -> methodsTable);
+
+                if (cacheable) {
+                    if (recorder.cacheable) {
+                        dispatchTable.put(callerDescriptor, key.copy(), recorder.createEntry(result, methodsTable));
+                    } else if (entry != null) {
+                        dispatchTable.remove(callerDescriptor, key);
+                    }
                 }
-            };
-
-            Result result = performLookup(callerFrame, genericName, group, type, nextMethod, op, getTable);
+            }
 
             if (result == null) {
                 if (throwsError) {
@@ -442,5 +586,17 @@ public abstract class S3FunctionLookupNode extends RBaseNode {
             }
             return result;
         }
+
+        private static Object getMethodsTable(MaterializedFrame genericDefFrame) {
+            FrameSlot slot = genericDefFrame == null ? null : genericDefFrame.getFrameDescriptor().findFrameSlot(RRuntime.RS3MethodsTable);
+            if (slot == null) {
+                return null;
+            }
+            try {
+                return genericDefFrame.getObject(slot);
+            } catch (FrameSlotTypeException e) {
+                throw RInternalError.shouldNotReachHere();
+            }
+        }
     }
 }
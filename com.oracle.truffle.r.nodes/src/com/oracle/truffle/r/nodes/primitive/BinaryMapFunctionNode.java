@@ -24,6 +24,7 @@ package com.oracle.truffle.r.nodes.primitive;
 
 import com.oracle.truffle.r.runtime.RInternalError;
 import com.oracle.truffle.r.runtime.data.RComplex;
+import com.oracle.truffle.r.runtime.data.RDeferredDoubleVector;
 import com.oracle.truffle.r.runtime.data.model.RAbstractVector;
 import com.oracle.truffle.r.runtime.nodes.RBaseNode;
 
@@ -94,6 +95,14 @@ public abstract class BinaryMapFunctionNode extends RBaseNode {
         return null;
     }
 
+    /**
+     * Returns the operation to use if the result of applying this function to two double vectors
+     * can be computed lazily by a {@link RDeferredDoubleVector}, or <code>null</code>.
+     */
+    public RDeferredDoubleVector.Op getDeferredOp() {
+        return null;
+    }
+
     /**
      * Enables the node for the two operation. Invoked once for each BinaryMap operation invocation.
      */
@@ -39,6 +39,7 @@ import com.oracle.truffle.r.runtime.RRuntime;
 import com.oracle.truffle.r.runtime.RType;
 import com.oracle.truffle.r.runtime.Utils;
 import com.oracle.truffle.r.runtime.data.RComplex;
+import com.oracle.truffle.r.runtime.data.RDeferredDoubleVector;
 import com.oracle.truffle.r.runtime.data.RRaw;
 import com.oracle.truffle.r.runtime.data.RScalarVector;
 import com.oracle.truffle.r.runtime.data.RShareable;
@@ -58,6 +59,8 @@ import com.oracle.truffle.r.runtime.nodes.RBaseNode;
  * is provided using a {@link BinaryMapFunctionNode}.
  *
  * The implementation tries to share input vectors if they are implementing {@link RShareable}.
+ * Arithmetic on large double vectors without attributes is not computed here, the result is a
+ * {@link RDeferredDoubleVector} instead.
  */
 public final class BinaryMapNode extends RBaseNode {
 
@@ -81,6 +84,7 @@ public final class BinaryMapNode extends RBaseNode {
     private final ConditionProfile seenEmpty = ConditionProfile.createBinaryProfile();
     private final ConditionProfile shareLeft;
     private final ConditionProfile shareRight;
+    private final ConditionProfile deferProfile;
     private final RType argumentType;
     private final RType resultType;
 
@@ -90,6 +94,7 @@ public final class BinaryMapNode extends RBaseNode {
     private final boolean mayFoldConstantTime;
     private final boolean mayShareLeft;
     private final boolean mayShareRight;
+    private final RDeferredDoubleVector.Op deferredOp;
 
     private BinaryMapNode(BinaryMapFunctionNode function, RAbstractVector left, RAbstractVector right, RType argumentType, RType resultType, boolean copyAttributes) {
         this.function = function;
@@ -106,11 +111,18 @@ public final class BinaryMapNode extends RBaseNode {
         this.argumentType = argumentType;
         this.resultType = resultType;
         this.maxLengthProfile = ConditionProfile.createBinaryProfile();
+        if (argumentType == RType.Double && resultType == RType.Double && RDeferredDoubleVector.isOperandClass(leftClass) && RDeferredDoubleVector.isOperandClass(rightClass) &&
+                        RDeferredDoubleVector.isEnabled()) {
+            this.deferredOp = function.getDeferredOp();
+        } else {
+            this.deferredOp = null;
+        }
 
         // lazily create profiles only if needed to avoid unnecessary allocations
         this.shareLeft = mayShareLeft ? ConditionProfile.createBinaryProfile() : null;
         this.shareRight = mayShareRight ? ConditionProfile.createBinaryProfile() : null;
         this.dimensionsProfile = mayContainMetadata ? ConditionProfile.createBinaryProfile() : null;
+        this.deferProfile = deferredOp != null ? ConditionProfile.createBinaryProfile() : null;
 
         this.copyAttributes = mayContainMetadata ? CopyAttributesNodeGen.create(copyAttributes) : null;
     }
@@ -251,6 +263,15 @@ public final class BinaryMapNode extends RBaseNode {
         if (mayFoldConstantTime) {
             target = function.tryFoldConstantTime(leftCast, leftLength, rightCast, rightLength);
         }
+        if (target == null && deferredOp != null) {
+            int maxLength = maxLengthProfile.profile(leftLength >= rightLength) ? leftLength : rightLength;
+            RAbstractDoubleVector leftDouble = (RAbstractDoubleVector) leftCast;
+            RAbstractDoubleVector rightDouble = (RAbstractDoubleVector) rightCast;
+            if (deferProfile.profile(left.getAttributes() == null && right.getAttributes() == null && RDeferredDoubleVector.canDefer(leftDouble, leftLength, rightDouble, rightLength, maxLength))) {
+                // no attributes to copy
+                return RDeferredDoubleVector.create(deferredOp, leftDouble, rightDouble, maxLength);
+            }
+        }
         if (target == null) {
             int maxLength = maxLengthProfile.profile(leftLength >= rightLength) ? leftLength : rightLength;
             target = createOrShareVector(leftLength, left, rightLength, right, maxLength);
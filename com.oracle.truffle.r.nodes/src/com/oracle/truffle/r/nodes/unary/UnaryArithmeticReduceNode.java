@@ -31,6 +31,7 @@ import com.oracle.truffle.r.runtime.RError;
 import com.oracle.truffle.r.runtime.RRuntime;
 import com.oracle.truffle.r.runtime.data.RComplex;
 import com.oracle.truffle.r.runtime.data.RComplexVector;
+import com.oracle.truffle.r.runtime.data.RDeferredDoubleVector;
 import com.oracle.truffle.r.runtime.data.RDoubleSequence;
 import com.oracle.truffle.r.runtime.data.RDoubleVector;
 import com.oracle.truffle.r.runtime.data.RIntSequence;
@@ -210,7 +211,7 @@ public abstract class UnaryArithmeticReduceNode extends RBaseNode {
         int result = semantics.getIntStart();
         na.enable(operand);
         int opCount = 0;
-        int[] data = operand.getDataWithoutCopying();
+        int[] data = operand.getReadonlyData();
         for (int i = 0; i < operand.getLength(); i++) {
             int d = data[i];
             if (na.check(d)) {
@@ -241,7 +242,7 @@ public abstract class UnaryArithmeticReduceNode extends RBaseNode {
         double result = semantics.getDoubleStart();
         na.enable(operand);
         int opCount = 0;
-        double[] data = operand.getDataWithoutCopying();
+        double[] data = operand.getReadonlyData();
         for (int i = 0; i < operand.getLength(); i++) {
             double d = data[i];
             if (na.check(d)) {
@@ -261,6 +262,40 @@ public abstract class UnaryArithmeticReduceNode extends RBaseNode {
         return result;
     }
 
+    @Specialization
+    protected double doDeferredDoubleVector(RDeferredDoubleVector operand, boolean naRm, @SuppressWarnings("unused") boolean finite) {
+        RBaseNode.reportWork(this, operand.getLength());
+        boolean profiledNaRm = naRmProfile.profile(naRm);
+        double result = semantics.getDoubleStart();
+        na.enable(operand);
+        int opCount = 0;
+        int length = operand.getLength();
+        // the elements are computed block-wise, without materializing the vector
+        double[] block = new double[RDeferredDoubleVector.BLOCK_SIZE];
+        double[][] scratch = operand.createScratch();
+        for (int from = 0; from < length; from += RDeferredDoubleVector.BLOCK_SIZE) {
+            int count = Math.min(RDeferredDoubleVector.BLOCK_SIZE, length - from);
+            operand.fill(from, count, block, 0, scratch);
+            for (int i = 0; i < count; i++) {
+                double d = block[i];
+                if (na.check(d)) {
+                    if (profiledNaRm) {
+                        continue;
+                    } else {
+                        return RRuntime.DOUBLE_NA;
+                    }
+                } else {
+                    result = arithmetic.op(result, d);
+                }
+                opCount++;
+            }
+        }
+        if (opCount == 0) {
+            emptyWarning();
+        }
+        return result;
+    }
+
     @Specialization
     protected int doLogicalVector(RLogicalVector operand, boolean naRm, @SuppressWarnings("unused") boolean finite) {
         RBaseNode.reportWork(this, operand.getLength());
@@ -268,7 +303,7 @@ public abstract class UnaryArithmeticReduceNode extends RBaseNode {
         int result = semantics.getIntStart();
         na.enable(operand);
         int opCount = 0;
-        byte[] data = operand.getDataWithoutCopying();
+        byte[] data = operand.getReadonlyData();
         for (int i = 0; i < operand.getLength(); i++) {
             byte d = data[i];
             if (na.check(d)) {
@@ -46,6 +46,7 @@ import com.oracle.truffle.r.runtime.RType;
 import com.oracle.truffle.r.runtime.Utils;
 import com.oracle.truffle.r.runtime.context.Engine.ParseException;
 import com.oracle.truffle.r.runtime.context.RContext;
+import com.oracle.truffle.r.runtime.data.NativeVectorData;
 import com.oracle.truffle.r.runtime.data.RAttributable;
 import com.oracle.truffle.r.runtime.data.RAttributesLayout;
 import com.oracle.truffle.r.runtime.data.RComplex;
@@ -1596,7 +1597,7 @@ public class JavaUpCallsRFFI implements UpCallsRFFI {
             tracer.R_NewHashedEnv(parent, name, hashed, initialSize);
         }
         REnvironment env = RDataFactory.createNewEnv(name, hashed, initialSize);
-        RArguments.initializeEnclosingFrame(env.getFrame(), parent.getFrame());
+        RArguments.initializeEnclosingFrame(env.getArgumentsFrame(), parent.getFrame());
         return env;
     }
 
@@ -1613,6 +1614,49 @@ public class JavaUpCallsRFFI implements UpCallsRFFI {
         }
     }
 
+    /**
+     * Called from {@code getNativeArray} to obtain the persistent native copy of the data of
+     * {@code x}, see {@link NativeVectorData}. Returns {@code null} if {@code x} does not keep one
+     * for the requested {@code type}, in which case the data is copied via {@link #INTEGER(Object)}
+     * etc.
+     */
+    public Object getNativeData(Object x, int type) {
+        boolean matches;
+        switch (SEXPTYPE.mapInt(type)) {
+            case INTSXP:
+            case LGLSXP:
+                // both are int* in native code
+                matches = x instanceof RIntVector || x instanceof RLogicalVector;
+                break;
+            case REALSXP:
+                matches = x instanceof RDoubleVector;
+                break;
+            case RAWSXP:
+                matches = x instanceof RRawVector;
+                break;
+            default:
+                matches = false;
+        }
+        if (matches) {
+            NativeVectorData data = ((RVector<?>) x).getNativeData();
+            return data == null ? null : data.getBuffer();
+        }
+        return null;
+    }
+
+    /**
+     * Called when native code returns (or calls back into R) for each vector obtained through
+     * {@link #getNativeData}. Vectors that native code must not modify are left alone, otherwise,
+     * as for {@link #setComplete}, the "complete" status of the vector is updated pessimistically,
+     * except for logical vectors where it is computed anyway.
+     */
+    public void commitNativeData(Object x) {
+        RVector<?> vector = (RVector<?>) x;
+        if (vector.commitNativeData() && !(vector instanceof RLogicalVector)) {
+            vector.setComplete(false);
+        }
+    }
+
     /**
      * Called when a {@link CharSXPWrapper} is expected and not found.
      */
@@ -27,6 +27,7 @@ import static com.oracle.truffle.r.runtime.ffi.RFFIUtils.traceDownCallReturn;
 import static com.oracle.truffle.r.runtime.ffi.RFFIUtils.traceEnabled;
 
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.r.runtime.FastROptions;
 import com.oracle.truffle.r.runtime.RInternalError;
 import com.oracle.truffle.r.runtime.ffi.CallRFFI;
 import com.oracle.truffle.r.runtime.ffi.DLL;
@@ -45,9 +46,13 @@ import com.oracle.truffle.r.runtime.ffi.UpCallsRFFIFactory;
  * they are passed as an array and the JNI code has to call back to get the args (not very
  * efficient).
  *
- * The JNI layer is not (currently) MT safe, so all calls are single threaded. N.B. Since the calls
- * take place from a {@link JNI_CallRFFINode}, and this is duplicated in separate contexts, we must
- * synchronize on the class.
+ * The native state of a call (the JNIEnv, copied vectors and transient global refs) is kept per
+ * thread, so contexts running on separate threads can be in native code at the same time. Objects
+ * preserved by {@code R_PreserveObject} are kept in a process-wide table guarded by a lock, as they
+ * may be used and released by another thread. Calls into the native code of packages that are not
+ * thread safe can be serialized with the {@link FastROptions#SynchronizedNativeCalls} option, in
+ * which case the calls synchronize on the {@link JNI_CallRFFINode} class, because the node is
+ * duplicated in separate contexts.
  */
 public class JNI_Call implements CallRFFI {
 
@@ -56,14 +61,23 @@ public class JNI_Call implements CallRFFI {
         @Override
         @TruffleBoundary
         public Object invokeCall(NativeCallInfo nativeCallInfo, Object[] args) {
-            synchronized (JNI_CallRFFINode.class) {
-                long address = nativeCallInfo.address.asAddress();
-                Object result = null;
-                if (traceEnabled()) {
-                    traceDownCall(nativeCallInfo.name, args);
+            if (isSynchronized(nativeCallInfo)) {
+                synchronized (JNI_CallRFFINode.class) {
+                    return doInvokeCall(nativeCallInfo, args);
                 }
-                try {
-                    switch (args.length) {
+            } else {
+                return doInvokeCall(nativeCallInfo, args);
+            }
+        }
+
+        private static Object doInvokeCall(NativeCallInfo nativeCallInfo, Object[] args) {
+            long address = nativeCallInfo.address.asAddress();
+            Object result = null;
+            if (traceEnabled()) {
+                traceDownCall(nativeCallInfo.name, args);
+            }
+            try {
+                switch (args.length) {
             // @formatter:off
             case 0: result = call0(address); break;
             case 1: result = call1(address, args[0]); break;
@@ -78,12 +92,12 @@ public class JNI_Call implements CallRFFI {
             default:
                 result = call(address, args); break;
                 // @formatter:on
-                    }
-                    return result;
-                } finally {
-                    if (traceEnabled()) {
-                        traceDownCallReturn(nativeCallInfo.name, result);
-                    }
+                }
+                return result;
+            } finally {
+                if (traceEnabled()) {
+                    traceDownCallReturn(nativeCallInfo.name, result);
+                    traceGlobalRefCache();
                 }
             }
         }
@@ -91,30 +105,62 @@ public class JNI_Call implements CallRFFI {
         @Override
         @TruffleBoundary
         public void invokeVoidCall(NativeCallInfo nativeCallInfo, Object[] args) {
-            synchronized (JNI_CallRFFINode.class) {
-                if (traceEnabled()) {
-                    traceDownCall(nativeCallInfo.name, args);
+            if (isSynchronized(nativeCallInfo)) {
+                synchronized (JNI_CallRFFINode.class) {
+                    doInvokeVoidCall(nativeCallInfo, args);
+                }
+            } else {
+                doInvokeVoidCall(nativeCallInfo, args);
+            }
+        }
+
+        private static void doInvokeVoidCall(NativeCallInfo nativeCallInfo, Object[] args) {
+            if (traceEnabled()) {
+                traceDownCall(nativeCallInfo.name, args);
+            }
+            long address = nativeCallInfo.address.asAddress();
+            try {
+                switch (args.length) {
+                    case 0:
+                        callVoid0(address);
+                        break;
+                    case 1:
+                        callVoid1(address, args[0]);
+                        break;
+                    default:
+                        throw RInternalError.shouldNotReachHere();
                 }
-                long address = nativeCallInfo.address.asAddress();
-                try {
-                    switch (args.length) {
-                        case 0:
-                            callVoid0(address);
-                            break;
-                        case 1:
-                            callVoid1(address, args[0]);
-                            break;
-                        default:
-                            throw RInternalError.shouldNotReachHere();
-                    }
-                } finally {
-                    if (traceEnabled()) {
-                        traceDownCallReturn(nativeCallInfo.name, null);
-                    }
+            } finally {
+                if (traceEnabled()) {
+                    traceDownCallReturn(nativeCallInfo.name, null);
+                    traceGlobalRefCache();
                 }
             }
         }
 
+        @Override
+        @TruffleBoundary
+        public long[] getGlobalRefCacheStats() {
+            long[] stats = new long[6];
+            nativeGetGlobalRefCacheStats(stats);
+            return stats;
+        }
+
+        private static void traceGlobalRefCache() {
+            long[] stats = new long[6];
+            nativeGetGlobalRefCacheStats(stats);
+            TraceUpCallsAdapter.traceGlobalRefCache(stats[0], stats[1], stats[2], stats[3], stats[4], stats[5]);
+        }
+
+        private static boolean isSynchronized(NativeCallInfo nativeCallInfo) {
+            String option = FastROptions.SynchronizedNativeCalls.getStringValue();
+            if (option == null) {
+                return false;
+            }
+            // calls without a known library are synchronized if any library is
+            return nativeCallInfo.dllInfo == null || FastROptions.matchesElement(nativeCallInfo.dllInfo.name, option) != null;
+        }
+
         @Override
         public void setTempDir(String tempDir) {
             synchronized (JNI_CallRFFINode.class) {
@@ -190,6 +236,13 @@ public class JNI_Call implements CallRFFI {
 
     private static native void nativeSetInteractive(boolean interactive);
 
+    /**
+     * Fills {@code stats} with the global ref cache statistics of the current thread: lookups,
+     * hits, number of permanent refs, number of thread refs, capacity of the thread table and
+     * number of preserved refs (shared by all threads).
+     */
+    private static native void nativeGetGlobalRefCacheStats(long[] stats);
+
     private static native Object call(long address, Object[] args);
 
     private static native Object call0(long address);
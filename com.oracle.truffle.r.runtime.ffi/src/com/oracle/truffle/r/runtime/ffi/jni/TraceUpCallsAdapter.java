@@ -32,6 +32,18 @@ import com.oracle.truffle.r.runtime.ffi.RFFIUtils;
 import com.oracle.truffle.r.runtime.ffi.UpCallsRFFI;
 
 public class TraceUpCallsAdapter implements UpCallsRFFI {
+
+    /**
+     * Traces the state of the native global ref cache after a down call: the hit rate of the
+     * lookups done so far by the current thread and the sizes of the tables.
+     */
+    public static void traceGlobalRefCache(long lookups, long hits, long permanentRefs, long threadRefs, long threadCapacity, long preservedRefs) {
+        if (RFFIUtils.traceEnabled()) {
+            double hitRate = lookups == 0 ? 0 : (double) hits / lookups;
+            RFFIUtils.traceUpCall("globalRefCache", lookups, hits, String.format("%.3f", hitRate), permanentRefs, threadRefs, threadCapacity, preservedRefs);
+        }
+    }
+
     @Override
     public RIntVector Rf_ScalarInteger(int value) {
         if (RFFIUtils.traceEnabled()) {
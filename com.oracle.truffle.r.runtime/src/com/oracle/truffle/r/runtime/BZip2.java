@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2017, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.runtime;
+
+/**
+ * Constants of the bzip2 format shared by {@link BZip2InputStream} and {@link BZip2OutputStream}.
+ *
+ * A bzip2 stream is the header {@code "BZh"} followed by the block size (in units of 100k) as a
+ * digit, a sequence of blocks and an end of stream marker with the combined CRC of all blocks. Each
+ * block is run-length encoded, Burrows-Wheeler transformed, move-to-front encoded with runs of
+ * zeros encoded as {@link #RUNA}/{@link #RUNB} digits and finally Huffman coded with up to six
+ * tables, one of which is selected for each group of {@link #GROUP_SIZE} symbols.
+ */
+final class BZip2 {
+
+    private BZip2() {
+        // no instances
+    }
+
+    static final long BLOCK_MAGIC = 0x314159265359L;
+    static final long END_MAGIC = 0x177245385090L;
+
+    static final int RUNA = 0;
+    static final int RUNB = 1;
+
+    static final int MAX_ALPHA_SIZE = 258;
+    static final int MIN_GROUPS = 2;
+    static final int MAX_GROUPS = 6;
+    static final int GROUP_SIZE = 50;
+    static final int MAX_SELECTORS = 2 + (900000 / GROUP_SIZE);
+    /**
+     * The maximum code length accepted by the decoder, the encoder limits codes to
+     * {@link #MAX_ENCODE_CODE_LENGTH}.
+     */
+    static final int MAX_CODE_LENGTH = 20;
+    static final int MAX_ENCODE_CODE_LENGTH = 17;
+
+    /**
+     * Table of the (big-endian) CRC-32 used by bzip2, which unlike {@link java.util.zip.CRC32}
+     * processes the bits of each byte starting with the most significant one.
+     */
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int c = i << 24;
+            for (int j = 0; j < 8; j++) {
+                c = (c & 0x80000000) != 0 ? (c << 1) ^ 0x04C11DB7 : c << 1;
+            }
+            CRC_TABLE[i] = c;
+        }
+    }
+
+    static int updateCRC(int crc, int b) {
+        return (crc << 8) ^ CRC_TABLE[((crc >>> 24) ^ b) & 0xFF];
+    }
+
+    static int updateCRC(int crc, int b, int count) {
+        int result = crc;
+        for (int i = 0; i < count; i++) {
+            result = (result << 8) ^ CRC_TABLE[((result >>> 24) ^ b) & 0xFF];
+        }
+        return result;
+    }
+
+    static int combineCRC(int combinedCRC, int blockCRC) {
+        return ((combinedCRC << 1) | (combinedCRC >>> 31)) ^ blockCRC;
+    }
+}
@@ -0,0 +1,454 @@
+/*
+ * Copyright (c) 2017, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.runtime;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A streaming bzip2 decompressor. Only one block is held in memory at a time and its data is
+ * produced incrementally while reading, so the memory use is bounded by the block size (at most
+ * about 4MB) regardless of the size of the data. Like the {@code bzip2} tool, this reads
+ * concatenated streams, e.g., from a file that was appended to.
+ */
+public final class BZip2InputStream extends InputStream {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final byte[] inBuffer = new byte[BUFFER_SIZE];
+    private int inPos;
+    private int inLimit;
+    private long bitBuffer;
+    private int bitCount;
+
+    private int blockSize;
+    /**
+     * The inverse Burrows-Wheeler transform as in the reference implementation: the low byte of
+     * each entry is a byte of the transformed block, the upper bits the index of the next entry.
+     */
+    private int[] tt;
+    private final int[] charCount = new int[256];
+    private final byte[] selectors = new byte[BZip2.MAX_SELECTORS];
+    private final byte[][] codeLengths = new byte[BZip2.MAX_GROUPS][BZip2.MAX_ALPHA_SIZE];
+    private final int[][] limit = new int[BZip2.MAX_GROUPS][BZip2.MAX_CODE_LENGTH + 2];
+    private final int[][] base = new int[BZip2.MAX_GROUPS][BZip2.MAX_CODE_LENGTH + 2];
+    private final int[][] perm = new int[BZip2.MAX_GROUPS][BZip2.MAX_ALPHA_SIZE];
+    private final int[] minLength = new int[BZip2.MAX_GROUPS];
+
+    /*
+     * State of the output of the current block.
+     */
+    private int blockRemaining;
+    private int tPos;
+    private int lastByte;
+    private int sameCount;
+    private int repeat;
+    private int blockCRC;
+    private int expectedBlockCRC;
+    private int combinedCRC;
+    private boolean eof;
+    private boolean closed;
+
+    public BZip2InputStream(InputStream in) throws IOException {
+        this.in = in;
+        if (!readStreamHeader(true)) {
+            throw new IOException("not a bzip2 stream");
+        }
+        eof = !initBlock();
+    }
+
+    private int readByte() throws IOException {
+        if (inPos == inLimit) {
+            inLimit = in.read(inBuffer, 0, inBuffer.length);
+            inPos = 0;
+            if (inLimit <= 0) {
+                inLimit = 0;
+                return -1;
+            }
+        }
+        return inBuffer[inPos++] & 0xFF;
+    }
+
+    private int readBits(int n) throws IOException {
+        while (bitCount < n) {
+            int b = readByte();
+            if (b < 0) {
+                throw new IOException("unexpected end of bzip2 stream");
+            }
+            bitBuffer = (bitBuffer << 8) | b;
+            bitCount += 8;
+        }
+        bitCount -= n;
+        return (int) ((bitBuffer >>> bitCount) & ((1L << n) - 1));
+    }
+
+    private boolean readBit() throws IOException {
+        return readBits(1) != 0;
+    }
+
+    private long readLong48() throws IOException {
+        return ((long) readBits(24) << 24) | readBits(24);
+    }
+
+    /**
+     * Reads the header of a stream. At the start of the data there has to be one, after the end of
+     * a stream there may be another.
+     */
+    private boolean readStreamHeader(boolean first) throws IOException {
+        int b = readByte();
+        if (b < 0 && !first) {
+            return false;
+        }
+        if (b != 'B' || readByte() != 'Z' || readByte() != 'h') {
+            if (first) {
+                return false;
+            }
+            throw new IOException("garbage after bzip2 stream");
+        }
+        int level = readByte() - '0';
+        if (level < 1 || level > 9) {
+            throw new IOException("invalid bzip2 block size");
+        }
+        if (blockSize != level * 100000) {
+            blockSize = level * 100000;
+            tt = new int[blockSize];
+        }
+        combinedCRC = 0;
+        return true;
+    }
+
+    /**
+     * Reads the next block (of the current or a following stream) and prepares its output.
+     *
+     * @return {@code false} if the end of the data has been reached
+     */
+    private boolean initBlock() throws IOException {
+        while (true) {
+            long magic = readLong48();
+            if (magic == BZip2.BLOCK_MAGIC) {
+                break;
+            } else if (magic != BZip2.END_MAGIC) {
+                throw new IOException("bad bzip2 block header");
+            }
+            int streamCRC = readBits(32);
+            if (streamCRC != combinedCRC) {
+                throw new IOException("bzip2 stream CRC error");
+            }
+            // streams start at a byte boundary
+            bitCount = 0;
+            if (!readStreamHeader(false)) {
+                return false;
+            }
+        }
+        expectedBlockCRC = readBits(32);
+        if (readBit()) {
+            // only produced by versions of bzip2 before 0.9.5
+            throw new IOException("randomized bzip2 blocks are not supported");
+        }
+        int origPtr = readBits(24);
+        int nblock = readBlockData();
+        if (origPtr < 0 || origPtr >= nblock) {
+            throw new IOException("bad bzip2 block origin");
+        }
+
+        // set up the inverse Burrows-Wheeler transform
+        int[] cftab = new int[257];
+        for (int i = 0; i < 256; i++) {
+            cftab[i + 1] = cftab[i] + charCount[i];
+        }
+        int[] t = tt;
+        for (int i = 0; i < nblock; i++) {
+            int uc = t[i] & 0xFF;
+            t[cftab[uc]++] |= i << 8;
+        }
+        tPos = t[origPtr] >>> 8;
+        blockRemaining = nblock;
+        lastByte = -1;
+        sameCount = 0;
+        repeat = 0;
+        blockCRC = 0xFFFFFFFF;
+        return true;
+    }
+
+    /**
+     * Reads the Huffman coded, move-to-front transformed data of a block into {@link #tt}.
+     *
+     * @return the number of bytes in the block
+     */
+    private int readBlockData() throws IOException {
+        // symbol map
+        byte[] seqToUnseq = new byte[256];
+        int nInUse = 0;
+        int inUse16 = readBits(16);
+        for (int i = 0; i < 16; i++) {
+            if ((inUse16 & (0x8000 >>> i)) != 0) {
+                int bits = readBits(16);
+                for (int j = 0; j < 16; j++) {
+                    if ((bits & (0x8000 >>> j)) != 0) {
+                        seqToUnseq[nInUse++] = (byte) (i * 16 + j);
+                    }
+                }
+            }
+        }
+        if (nInUse == 0) {
+            throw new IOException("bad bzip2 symbol map");
+        }
+        int alphaSize = nInUse + 2;
+
+        // selectors
+        int nGroups = readBits(3);
+        int nSelectors = readBits(15);
+        if (nGroups < BZip2.MIN_GROUPS || nGroups > BZip2.MAX_GROUPS || nSelectors < 1) {
+            throw new IOException("bad bzip2 selectors");
+        }
+        byte[] pos = new byte[BZip2.MAX_GROUPS];
+        for (int i = 0; i < nGroups; i++) {
+            pos[i] = (byte) i;
+        }
+        for (int i = 0; i < nSelectors; i++) {
+            int j = 0;
+            while (readBit()) {
+                if (++j >= nGroups) {
+                    throw new IOException("bad bzip2 selector");
+                }
+            }
+            // undo the move-to-front coding of the selectors
+            byte v = pos[j];
+            System.arraycopy(pos, 0, pos, 1, j);
+            pos[0] = v;
+            // like bzip2 1.0.8, accept (and ignore) more selectors than a block can use, some
+            // encoders write them
+            if (i < BZip2.MAX_SELECTORS) {
+                selectors[i] = v;
+            }
+        }
+        if (nSelectors > BZip2.MAX_SELECTORS) {
+            nSelectors = BZip2.MAX_SELECTORS;
+        }
+
+        // code lengths and decoding tables
+        for (int t = 0; t < nGroups; t++) {
+            int curr = readBits(5);
+            byte[] len = codeLengths[t];
+            for (int i = 0; i < alphaSize; i++) {
+                while (true) {
+                    if (curr < 1 || curr > BZip2.MAX_CODE_LENGTH) {
+                        throw new IOException("bad bzip2 code length");
+                    }
+                    if (!readBit()) {
+                        break;
+                    }
+                    curr += readBit() ? -1 : 1;
+                }
+                len[i] = (byte) curr;
+            }
+            createDecodeTables(t, alphaSize);
+        }
+
+        // the move-to-front transformed symbols
+        for (int i = 0; i < 256; i++) {
+            charCount[i] = 0;
+        }
+        byte[] yy = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            yy[i] = (byte) i;
+        }
+        int[] t = tt;
+        int eob = nInUse + 1;
+        int nblock = 0;
+        int groupNo = -1;
+        int groupPos = 0;
+        int runLength = 0;
+        int runWeight = 1;
+        while (true) {
+            if (groupPos == 0) {
+                if (++groupNo >= nSelectors) {
+                    throw new IOException("bad bzip2 data");
+                }
+                groupPos = BZip2.GROUP_SIZE;
+            }
+            groupPos--;
+            int sym = decodeSymbol(selectors[groupNo]);
+            if (sym == BZip2.RUNA || sym == BZip2.RUNB) {
+                // run lengths are written in bijective base 2
+                runLength += (sym + 1) * runWeight;
+                runWeight <<= 1;
+                if (runLength > blockSize) {
+                    throw new IOException("bad bzip2 run length");
+                }
+                continue;
+            }
+            if (runLength > 0) {
+                int uc = seqToUnseq[yy[0] & 0xFF] & 0xFF;
+                if (nblock + runLength > blockSize) {
+                    throw new IOException("bad bzip2 run length");
+                }
+                charCount[uc] += runLength;
+                for (int i = 0; i < runLength; i++) {
+                    t[nblock++] = uc;
+                }
+                runLength = 0;
+                runWeight = 1;
+            }
+            if (sym == eob) {
+                break;
+            }
+            if (sym > eob || nblock >= blockSize) {
+                throw new IOException("bad bzip2 data");
+            }
+            int nn = sym - 1;
+            byte v = yy[nn];
+            System.arraycopy(yy, 0, yy, 1, nn);
+            yy[0] = v;
+            int uc = seqToUnseq[v & 0xFF] & 0xFF;
+            charCount[uc]++;
+            t[nblock++] = uc;
+        }
+        return nblock;
+    }
+
+    /**
+     * Creates the tables for decoding the canonical Huffman code of group {@code t}: the codes of
+     * each length are consecutive and assigned in the order of the symbols.
+     */
+    private void createDecodeTables(int t, int alphaSize) {
+        byte[] len = codeLengths[t];
+        int minLen = BZip2.MAX_CODE_LENGTH;
+        int maxLen = 0;
+        for (int i = 0; i < alphaSize; i++) {
+            minLen = Math.min(minLen, len[i]);
+            maxLen = Math.max(maxLen, len[i]);
+        }
+        int[] p = perm[t];
+        int pp = 0;
+        for (int l = minLen; l <= maxLen; l++) {
+            for (int i = 0; i < alphaSize; i++) {
+                if (len[i] == l) {
+                    p[pp++] = i;
+                }
+            }
+        }
+        int[] lim = limit[t];
+        int[] b = base[t];
+        int[] count = new int[BZip2.MAX_CODE_LENGTH + 2];
+        for (int i = 0; i < alphaSize; i++) {
+            count[len[i]]++;
+        }
+        // b[l] is the first code of length l minus the index of its symbol in perm
+        int code = 0;
+        int index = 0;
+        for (int l = 0; l <= BZip2.MAX_CODE_LENGTH; l++) {
+            b[l] = code - index;
+            code += count[l];
+            index += count[l];
+            lim[l] = code - 1;
+            code <<= 1;
+        }
+        lim[BZip2.MAX_CODE_LENGTH + 1] = Integer.MAX_VALUE;
+        minLength[t] = minLen;
+    }
+
+    private int decodeSymbol(int t) throws IOException {
+        int n = minLength[t];
+        int[] lim = limit[t];
+        int code = readBits(n);
+        while (code > lim[n]) {
+            if (++n > BZip2.MAX_CODE_LENGTH) {
+                throw new IOException("bad bzip2 code");
+            }
+            code = (code << 1) | readBits(1);
+        }
+        int index = code - base[t][n];
+        if (index < 0 || index >= BZip2.MAX_ALPHA_SIZE) {
+            throw new IOException("bad bzip2 code");
+        }
+        return perm[t][index];
+    }
+
+    private void endBlock() throws IOException {
+        blockCRC = ~blockCRC;
+        if (blockCRC != expectedBlockCRC) {
+            throw new IOException("bzip2 block CRC error");
+        }
+        combinedCRC = BZip2.combineCRC(combinedCRC, blockCRC);
+        eof = !initBlock();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == 1 ? b[0] & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("stream closed");
+        }
+        int n = 0;
+        int[] t = tt;
+        while (n < len && !eof) {
+            if (repeat > 0) {
+                int count = Math.min(repeat, len - n);
+                byte v = (byte) lastByte;
+                for (int i = 0; i < count; i++) {
+                    b[off + n + i] = v;
+                }
+                blockCRC = BZip2.updateCRC(blockCRC, lastByte, count);
+                repeat -= count;
+                n += count;
+                continue;
+            }
+            if (blockRemaining == 0) {
+                endBlock();
+                continue;
+            }
+            int p = t[tPos];
+            int ch = p & 0xFF;
+            tPos = p >>> 8;
+            blockRemaining--;
+            if (sameCount == 4) {
+                // the length of a run of more than four equal bytes
+                repeat = ch;
+                sameCount = 0;
+                continue;
+            }
+            if (ch == lastByte) {
+                sameCount++;
+            } else {
+                lastByte = ch;
+                sameCount = 1;
+            }
+            b[off + n++] = (byte) ch;
+            blockCRC = BZip2.updateCRC(blockCRC, ch);
+        }
+        return n == 0 && len > 0 ? -1 : n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        in.close();
+    }
+}
@@ -0,0 +1,621 @@
+/*
+ * Copyright (c) 2017, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.runtime;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A streaming bzip2 compressor. The data is compressed block by block as it is written, so only
+ * the current block (of at most 900k bytes) is held in memory. The output can be read by the
+ * {@code bzip2} tool and by {@link BZip2InputStream}.
+ */
+public final class BZip2OutputStream extends OutputStream {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int REFINEMENT_ITERATIONS = 4;
+
+    private final OutputStream out;
+    private final byte[] outBuffer = new byte[BUFFER_SIZE];
+    private int outPos;
+    private long bitBuffer;
+    private int bitCount;
+
+    private final int blockSize100k;
+    /**
+     * The current block after the initial run-length encoding; the reference implementation
+     * leaves some slack below the nominal block size.
+     */
+    private final byte[] block;
+    private final int blockCapacity;
+    private int blockLength;
+    private final boolean[] inUse = new boolean[256];
+    private int blockCRC = 0xFFFFFFFF;
+    private int combinedCRC;
+
+    /*
+     * The pending run of equal bytes.
+     */
+    private int runByte = -1;
+    private int runLength;
+
+    /*
+     * Work arrays, allocated on the first block.
+     */
+    private int[] sorted;
+    private int[] classes;
+    private int[] sortedNext;
+    private int[] classesNext;
+    private int[] count;
+    private char[] mtf;
+
+    private boolean finished;
+
+    /**
+     * @param blockSize100k the block size in units of 100k, from 1 to 9, where larger blocks
+     *            usually compress better
+     */
+    public BZip2OutputStream(OutputStream out, int blockSize100k) throws IOException {
+        if (blockSize100k < 1 || blockSize100k > 9) {
+            throw new IllegalArgumentException("invalid bzip2 block size");
+        }
+        this.out = out;
+        this.blockSize100k = blockSize100k;
+        this.blockCapacity = blockSize100k * 100000 - 19;
+        this.block = new byte[blockCapacity];
+        writeByte('B');
+        writeByte('Z');
+        writeByte('h');
+        writeByte('0' + blockSize100k);
+    }
+
+    public BZip2OutputStream(OutputStream out) throws IOException {
+        this(out, 9);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (finished) {
+            throw new IOException("stream finished");
+        }
+        int v = b & 0xFF;
+        if (v == runByte && runLength < 255) {
+            runLength++;
+        } else {
+            if (runLength > 0) {
+                writeRun();
+            }
+            runByte = v;
+            runLength = 1;
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("stream finished");
+        }
+        int i = off;
+        int end = off + len;
+        while (i < end) {
+            int v = b[i] & 0xFF;
+            if (v == runByte) {
+                // extend the run as far as possible at once
+                int j = i + 1;
+                int max = Math.min(end, i + 255 - runLength);
+                while (j < max && b[j] == b[i]) {
+                    j++;
+                }
+                runLength += j - i;
+                i = j;
+                if (runLength == 255) {
+                    writeRun();
+                    runByte = -1;
+                    runLength = 0;
+                }
+            } else {
+                if (runLength > 0) {
+                    writeRun();
+                }
+                runByte = v;
+                runLength = 1;
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Adds the pending run to the block: runs of four or more bytes are stored as four bytes and
+     * the number of the remaining ones.
+     */
+    private void writeRun() throws IOException {
+        if (blockLength + Math.min(runLength, 5) > blockCapacity) {
+            endBlock();
+        }
+        byte v = (byte) runByte;
+        blockCRC = BZip2.updateCRC(blockCRC, runByte, runLength);
+        inUse[runByte] = true;
+        if (runLength < 4) {
+            for (int i = 0; i < runLength; i++) {
+                block[blockLength++] = v;
+            }
+        } else {
+            for (int i = 0; i < 4; i++) {
+                block[blockLength++] = v;
+            }
+            block[blockLength++] = (byte) (runLength - 4);
+            inUse[runLength - 4] = true;
+        }
+    }
+
+    private void writeBits(int n, int value) throws IOException {
+        bitBuffer = (bitBuffer << n) | (value & ((1L << n) - 1));
+        bitCount += n;
+        while (bitCount >= 8) {
+            bitCount -= 8;
+            writeByte((int) (bitBuffer >>> bitCount));
+        }
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (outPos == outBuffer.length) {
+            out.write(outBuffer, 0, outPos);
+            outPos = 0;
+        }
+        outBuffer[outPos++] = (byte) b;
+    }
+
+    private void endBlock() throws IOException {
+        if (blockLength == 0) {
+            return;
+        }
+        blockCRC = ~blockCRC;
+        combinedCRC = BZip2.combineCRC(combinedCRC, blockCRC);
+        writeBits(24, (int) (BZip2.BLOCK_MAGIC >>> 24));
+        writeBits(24, (int) BZip2.BLOCK_MAGIC);
+        writeBits(32, blockCRC);
+        // not randomized
+        writeBits(1, 0);
+        int origPtr = sortRotations();
+        writeBits(24, origPtr);
+        writeBlockData();
+        blockLength = 0;
+        blockCRC = 0xFFFFFFFF;
+        Arrays.fill(inUse, false);
+    }
+
+    /**
+     * Sorts the rotations of the block (the Burrows-Wheeler transform) by prefix doubling: after
+     * step {@code h}, {@link #sorted} holds the rotations sorted by their first {@code 2^h} bytes
+     * and {@link #classes} their rank with respect to that order.
+     *
+     * @return the index of the unrotated block in the sorted rotations
+     */
+    private int sortRotations() {
+        int n = blockLength;
+        if (sorted == null) {
+            int size = blockCapacity;
+            sorted = new int[size];
+            classes = new int[size];
+            sortedNext = new int[size];
+            classesNext = new int[size];
+            count = new int[Math.max(size, 256)];
+            mtf = new char[size + 1];
+        }
+        int[] p = sorted;
+        int[] c = classes;
+        int[] pn = sortedNext;
+        int[] cn = classesNext;
+        int[] cnt = count;
+        byte[] s = block;
+
+        Arrays.fill(cnt, 0, 256, 0);
+        for (int i = 0; i < n; i++) {
+            cnt[s[i] & 0xFF]++;
+        }
+        for (int i = 1; i < 256; i++) {
+            cnt[i] += cnt[i - 1];
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            p[--cnt[s[i] & 0xFF]] = i;
+        }
+        int nClasses = 1;
+        c[p[0]] = 0;
+        for (int i = 1; i < n; i++) {
+            if (s[p[i]] != s[p[i - 1]]) {
+                nClasses++;
+            }
+            c[p[i]] = nClasses - 1;
+        }
+        for (int h = 1; h < n && nClasses < n; h <<= 1) {
+            // sort by the second half (given by the previous order), then stably by the first half
+            for (int i = 0; i < n; i++) {
+                int j = p[i] - h;
+                pn[i] = j < 0 ? j + n : j;
+            }
+            Arrays.fill(cnt, 0, nClasses, 0);
+            for (int i = 0; i < n; i++) {
+                cnt[c[pn[i]]]++;
+            }
+            for (int i = 1; i < nClasses; i++) {
+                cnt[i] += cnt[i - 1];
+            }
+            for (int i = n - 1; i >= 0; i--) {
+                p[--cnt[c[pn[i]]]] = pn[i];
+            }
+            nClasses = 1;
+            cn[p[0]] = 0;
+            for (int i = 1; i < n; i++) {
+                int cur = p[i];
+                int prev = p[i - 1];
+                int curNext = cur + h < n ? cur + h : cur + h - n;
+                int prevNext = prev + h < n ? prev + h : prev + h - n;
+                if (c[cur] != c[prev] || c[curNext] != c[prevNext]) {
+                    nClasses++;
+                }
+                cn[cur] = nClasses - 1;
+            }
+            int[] tmp = c;
+            c = cn;
+            cn = tmp;
+        }
+        for (int i = 0; i < n; i++) {
+            if (p[i] == 0) {
+                return i;
+            }
+        }
+        throw RInternalError.shouldNotReachHere();
+    }
+
+    /**
+     * Writes the move-to-front transformed and Huffman coded last column of the sorted rotations.
+     */
+    private void writeBlockData() throws IOException {
+        int n = blockLength;
+        // symbol map
+        int[] unseqToSeq = new int[256];
+        int nInUse = 0;
+        for (int i = 0; i < 256; i++) {
+            if (inUse[i]) {
+                unseqToSeq[i] = nInUse++;
+            }
+        }
+        int inUse16 = 0;
+        for (int i = 0; i < 16; i++) {
+            for (int j = 0; j < 16; j++) {
+                if (inUse[i * 16 + j]) {
+                    inUse16 |= 0x8000 >>> i;
+                }
+            }
+        }
+        writeBits(16, inUse16);
+        for (int i = 0; i < 16; i++) {
+            if ((inUse16 & (0x8000 >>> i)) != 0) {
+                int bits = 0;
+                for (int j = 0; j < 16; j++) {
+                    if (inUse[i * 16 + j]) {
+                        bits |= 0x8000 >>> j;
+                    }
+                }
+                writeBits(16, bits);
+            }
+        }
+
+        // move-to-front transform, runs of zeros are written as RUNA/RUNB digits
+        int alphaSize = nInUse + 2;
+        int eob = nInUse + 1;
+        int[] freq = new int[alphaSize];
+        char[] v = mtf;
+        int nMTF = 0;
+        byte[] yy = new byte[256];
+        for (int i = 0; i < nInUse; i++) {
+            yy[i] = (byte) i;
+        }
+        int zeros = 0;
+        int[] p = sorted;
+        for (int i = 0; i < n; i++) {
+            int j = p[i] - 1;
+            byte ll = (byte) unseqToSeq[block[j < 0 ? j + n : j] & 0xFF];
+            if (yy[0] == ll) {
+                zeros++;
+                continue;
+            }
+            if (zeros > 0) {
+                nMTF = writeZeros(v, nMTF, freq, zeros);
+                zeros = 0;
+            }
+            int k = 1;
+            while (yy[k] != ll) {
+                k++;
+            }
+            System.arraycopy(yy, 0, yy, 1, k);
+            yy[0] = ll;
+            v[nMTF++] = (char) (k + 1);
+            freq[k + 1]++;
+        }
+        if (zeros > 0) {
+            nMTF = writeZeros(v, nMTF, freq, zeros);
+        }
+        v[nMTF++] = (char) eob;
+        freq[eob]++;
+
+        writeHuffmanCoded(v, nMTF, freq, alphaSize);
+    }
+
+    private static int writeZeros(char[] v, int pos, int[] freq, int zeros) {
+        // bijective base 2 with digits RUNA (1) and RUNB (2)
+        int result = pos;
+        int z = zeros - 1;
+        while (true) {
+            int sym = (z & 1) != 0 ? BZip2.RUNB : BZip2.RUNA;
+            v[result++] = (char) sym;
+            freq[sym]++;
+            if (z < 2) {
+                break;
+            }
+            z = (z - 2) / 2;
+        }
+        return result;
+    }
+
+    private void writeHuffmanCoded(char[] v, int nMTF, int[] freq, int alphaSize) throws IOException {
+        int nGroups = nMTF < 200 ? 2 : nMTF < 600 ? 3 : nMTF < 1200 ? 4 : nMTF < 2400 ? 5 : 6;
+        byte[][] len = new byte[nGroups][alphaSize];
+
+        // initial tables, each covering a range of symbols with about the same total frequency
+        int nPart = nGroups;
+        int remaining = nMTF;
+        int gs = 0;
+        while (nPart > 0) {
+            int target = remaining / nPart;
+            int ge = gs - 1;
+            int sum = 0;
+            while (sum < target && ge < alphaSize - 1) {
+                sum += freq[++ge];
+            }
+            if (ge > gs && nPart != nGroups && nPart != 1 && ((nGroups - nPart) % 2 == 1)) {
+                sum -= freq[ge--];
+            }
+            for (int i = 0; i < alphaSize; i++) {
+                len[nPart - 1][i] = (byte) (i >= gs && i <= ge ? 0 : 15);
+            }
+            nPart--;
+            gs = ge + 1;
+            remaining -= sum;
+        }
+
+        // refine the tables by assigning each group of symbols to the cheapest one
+        int nSelectors = (nMTF + BZip2.GROUP_SIZE - 1) / BZip2.GROUP_SIZE;
+        byte[] selectors = new byte[nSelectors];
+        int[][] groupFreq = new int[nGroups][alphaSize];
+        int[] cost = new int[nGroups];
+        for (int iter = 0; iter < REFINEMENT_ITERATIONS; iter++) {
+            for (int t = 0; t < nGroups; t++) {
+                Arrays.fill(groupFreq[t], 0);
+            }
+            for (int sel = 0; sel < nSelectors; sel++) {
+                int start = sel * BZip2.GROUP_SIZE;
+                int end = Math.min(nMTF, start + BZip2.GROUP_SIZE);
+                Arrays.fill(cost, 0);
+                for (int i = start; i < end; i++) {
+                    int sym = v[i];
+                    for (int t = 0; t < nGroups; t++) {
+                        cost[t] += len[t][sym];
+                    }
+                }
+                int best = 0;
+                for (int t = 1; t < nGroups; t++) {
+                    if (cost[t] < cost[best]) {
+                        best = t;
+                    }
+                }
+                selectors[sel] = (byte) best;
+                for (int i = start; i < end; i++) {
+                    groupFreq[best][v[i]]++;
+                }
+            }
+            for (int t = 0; t < nGroups; t++) {
+                makeCodeLengths(len[t], groupFreq[t], alphaSize);
+            }
+        }
+
+        int[][] codes = new int[nGroups][alphaSize];
+        for (int t = 0; t < nGroups; t++) {
+            assignCodes(codes[t], len[t], alphaSize);
+        }
+
+        // selectors, move-to-front and unary coded
+        writeBits(3, nGroups);
+        writeBits(15, nSelectors);
+        byte[] pos = new byte[nGroups];
+        for (int i = 0; i < nGroups; i++) {
+            pos[i] = (byte) i;
+        }
+        for (int sel = 0; sel < nSelectors; sel++) {
+            byte s = selectors[sel];
+            int j = 0;
+            while (pos[j] != s) {
+                j++;
+            }
+            System.arraycopy(pos, 0, pos, 1, j);
+            pos[0] = s;
+            for (int k = 0; k < j; k++) {
+                writeBits(1, 1);
+            }
+            writeBits(1, 0);
+        }
+
+        // code lengths, delta coded
+        for (int t = 0; t < nGroups; t++) {
+            int curr = len[t][0];
+            writeBits(5, curr);
+            for (int i = 0; i < alphaSize; i++) {
+                while (curr < len[t][i]) {
+                    writeBits(2, 2);
+                    curr++;
+                }
+                while (curr > len[t][i]) {
+                    writeBits(2, 3);
+                    curr--;
+                }
+                writeBits(1, 0);
+            }
+        }
+
+        // the symbols
+        for (int sel = 0; sel < nSelectors; sel++) {
+            int t = selectors[sel];
+            byte[] l = len[t];
+            int[] c = codes[t];
+            int start = sel * BZip2.GROUP_SIZE;
+            int end = Math.min(nMTF, start + BZip2.GROUP_SIZE);
+            for (int i = start; i < end; i++) {
+                int sym = v[i];
+                writeBits(l[sym], c[sym]);
+            }
+        }
+    }
+
+    /**
+     * Computes the lengths of a Huffman code for the given frequencies, limited to
+     * {@link BZip2#MAX_ENCODE_CODE_LENGTH} by flattening the frequencies until the code fits.
+     * Every symbol gets a code, even if it does not occur.
+     */
+    static void makeCodeLengths(byte[] len, int[] freq, int alphaSize) {
+        int[] weight = new int[alphaSize];
+        for (int i = 0; i < alphaSize; i++) {
+            weight[i] = Math.max(1, freq[i]);
+        }
+        // nodes 0..alphaSize-1 are the leaves, the inner nodes follow
+        long[] nodeWeight = new long[2 * alphaSize];
+        int[] parent = new int[2 * alphaSize];
+        int[] leaves = new int[alphaSize];
+        int[] inner = new int[alphaSize];
+        while (true) {
+            for (int i = 0; i < alphaSize; i++) {
+                nodeWeight[i] = weight[i];
+                leaves[i] = i;
+            }
+            sortByWeight(leaves, nodeWeight);
+            // two-queue construction: leaves in weight order, inner nodes in creation order
+            int leafPos = 0;
+            int innerHead = 0;
+            int innerTail = 0;
+            int next = alphaSize;
+            for (int k = 0; k < alphaSize - 1; k++) {
+                int a = leafPos < alphaSize && (innerHead == innerTail || nodeWeight[leaves[leafPos]] <= nodeWeight[inner[innerHead]]) ? leaves[leafPos++] : inner[innerHead++];
+                int b = leafPos < alphaSize && (innerHead == innerTail || nodeWeight[leaves[leafPos]] <= nodeWeight[inner[innerHead]]) ? leaves[leafPos++] : inner[innerHead++];
+                nodeWeight[next] = nodeWeight[a] + nodeWeight[b];
+                parent[a] = next;
+                parent[b] = next;
+                inner[innerTail++] = next++;
+            }
+            int root = next - 1;
+            boolean tooLong = false;
+            for (int i = 0; i < alphaSize; i++) {
+                int depth = 0;
+                for (int node = i; node != root; node = parent[node]) {
+                    depth++;
+                }
+                len[i] = (byte) depth;
+                tooLong |= depth > BZip2.MAX_ENCODE_CODE_LENGTH;
+            }
+            if (!tooLong) {
+                return;
+            }
+            for (int i = 0; i < alphaSize; i++) {
+                weight[i] = 1 + weight[i] / 2;
+            }
+        }
+    }
+
+    private static void sortByWeight(int[] nodes, long[] nodeWeight) {
+        // insertion sort, there are at most 258 symbols
+        for (int i = 1; i < nodes.length; i++) {
+            int node = nodes[i];
+            int j = i - 1;
+            while (j >= 0 && nodeWeight[nodes[j]] > nodeWeight[node]) {
+                nodes[j + 1] = nodes[j];
+                j--;
+            }
+            nodes[j + 1] = node;
+        }
+    }
+
+    /**
+     * Assigns the canonical codes: the codes of each length are consecutive and assigned in the
+     * order of the symbols.
+     */
+    private static void assignCodes(int[] codes, byte[] len, int alphaSize) {
+        int code = 0;
+        for (int l = 1; l <= BZip2.MAX_CODE_LENGTH; l++) {
+            for (int i = 0; i < alphaSize; i++) {
+                if (len[i] == l) {
+                    codes[i] = code++;
+                }
+            }
+            code <<= 1;
+        }
+    }
+
+    /**
+     * Writes the remaining data and the end of the stream, without closing the underlying stream.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (runLength > 0) {
+            writeRun();
+            runLength = 0;
+        }
+        endBlock();
+        writeBits(24, (int) (BZip2.END_MAGIC >>> 24));
+        writeBits(24, (int) BZip2.END_MAGIC);
+        writeBits(32, combinedCRC);
+        if (bitCount > 0) {
+            writeBits(8 - bitCount, 0);
+        }
+        out.write(outBuffer, 0, outPos);
+        outPos = 0;
+        finished = true;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // a partial block cannot be written, but the completed ones can
+        out.write(outBuffer, 0, outPos);
+        outPos = 0;
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+}
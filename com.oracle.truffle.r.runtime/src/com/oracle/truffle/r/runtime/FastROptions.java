@@ -54,6 +54,16 @@ public enum FastROptions {
     UseInternalGraphics("Whether the internal (Java) graphics subsystem should be used", false),
     UseSpecials("Whether the fast-path special call nodes should be created for simple enough arguments.", true),
     ForceSources("Generate source sections for unserialized code", false),
+    SynchronizedNativeCalls("SynchronizedNativeCalls=pkg1,pkg2,...; Serialize .Call/.External calls into the native code of the given packages (all if no list given)", null, true),
+    DeferredArithmetic("Evaluate arithmetic on large double vectors lazily to avoid allocating intermediate results", true),
+    NativeVectorDataSize("Size (in MB) up to which large vectors accessed by native code keep a native copy of their data (0 disables)", "256", true),
+    LazyDBCacheSize("Size (in MB) up to which unused memory-mapped lazy-load databases are kept for reuse", "256", true),
+    LazyDBObjectCacheSize("Size (in MB) of the process-wide cache of values decoded from lazy-load databases", "64", true),
+    XZPreset("Preset (0-9) of the LZMA compression of xz-compressed lazy-load database records", "6", true),
+    ParallelGZip("Compress the output of all gzfile connections in parallel blocks (serializeToConn does on connections it opens itself)", false),
+    ASTCacheMinSize("Minimum length of R sources whose parse results are cached in ~/.fastr/ast-cache (0 disables the cache)", "16384", true),
+    ASTCacheMaxSize("Size (in MB) up to which ~/.fastr/ast-cache grows before the least recently used files are deleted", "256", true),
+    SharedBase("Share the functions and constants of the base package between SHARE_NOTHING contexts instead of evaluating its sources in each of them", false),
 
     // Promises optimizations
     EagerEval("If enabled, overrides all other EagerEval switches (see EagerEvalHelper)", false),
@@ -91,6 +101,16 @@ public enum FastROptions {
         }
     }
 
+    /**
+     * Changes the value of a boolean option, which only affects code that reads the option later.
+     * Used by tests of options that are otherwise only set on startup.
+     */
+    public void setBooleanValue(boolean newValue) {
+        assert isBoolean;
+        CompilerDirectives.transferToInterpreterAndInvalidate();
+        value = newValue;
+    }
+
     public String getStringValue() {
         assert !isBoolean;
         if (value == null || value instanceof String) {
@@ -23,35 +23,500 @@
 package com.oracle.truffle.r.runtime;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
-import java.util.HashMap;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.RootCallTarget;
+import com.oracle.truffle.api.frame.MaterializedFrame;
+import com.oracle.truffle.api.object.DynamicObject;
 import com.oracle.truffle.r.runtime.context.RContext;
+import com.oracle.truffle.r.runtime.context.RContext.ContextKind;
+import com.oracle.truffle.r.runtime.context.RContext.ContextState;
+import com.oracle.truffle.r.runtime.data.RAttributable;
+import com.oracle.truffle.r.runtime.data.RAttributesLayout;
+import com.oracle.truffle.r.runtime.data.RDataFactory;
+import com.oracle.truffle.r.runtime.data.RFunction;
+import com.oracle.truffle.r.runtime.data.RList;
+import com.oracle.truffle.r.runtime.data.RListBase;
+import com.oracle.truffle.r.runtime.data.RNull;
+import com.oracle.truffle.r.runtime.data.RObjectSize;
+import com.oracle.truffle.r.runtime.data.RShareable;
+import com.oracle.truffle.r.runtime.data.RVector;
+import com.oracle.truffle.r.runtime.env.REnvironment;
+import com.oracle.truffle.r.runtime.env.frame.FrameSlotChangeMonitor;
 
+/**
+ * Process-wide cache of lazy-load database ({@code .rdb}) files. The files are memory-mapped rather
+ * than read into the Java heap and the mappings are shared by all contexts, so that a package that
+ * is loaded in many contexts occupies its database only once.
+ *
+ * Each {@link MappedDB} is reference counted: {@link #acquire} increments the count and
+ * {@link MappedDB#release} decrements it. Unreferenced mappings are kept around for reuse, but are
+ * dropped in least-recently-used order once the total size of the mapped files exceeds
+ * {@link FastROptions#LazyDBCacheSize}. Referenced mappings are never evicted, hence the bound is
+ * only exceeded while that many bytes are actually in use. A mapping is only reused as long as the
+ * file has not been replaced or modified since it was mapped (see {@link FileStamp}).
+ *
+ * In addition, the values decoded from the database records are cached (see
+ * {@link ContextStateImpl#getDecoded}), provided that they do not depend on the context that
+ * decoded them.
+ */
 public class LazyDBCache {
 
-    public static final class ContextStateImpl implements RContext.ContextState {
-        private final Map<String, byte[]> dbCache = new HashMap<>();
-
-        public byte[] getData(String dbPath) {
-            byte[] dbData = dbCache.get(dbPath);
-            if (dbData == null) {
-                try {
-                    dbData = Files.readAllBytes(FileSystems.getDefault().getPath(dbPath));
-                } catch (IOException ex) {
-                    // unexpected
-                    throw RInternalError.shouldNotReachHere(ex);
+    /**
+     * A read-only mapping of a single database file.
+     */
+    public static final class MappedDB {
+        private final String path;
+        private final FileStamp stamp;
+        private final ByteBuffer data;
+        private int refCount;
+
+        private MappedDB(String path, FileStamp stamp, ByteBuffer data) {
+            this.path = path;
+            this.stamp = stamp;
+            this.data = data;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public int size() {
+            return data.capacity();
+        }
+
+        /**
+         * Returns a read-only view of the record of {@code length} bytes starting at
+         * {@code offset}. No data is copied.
+         */
+        public ByteBuffer slice(int offset, int length) {
+            // N.B. 'data' is shared by threads, its position must never be modified
+            ByteBuffer result = data.duplicate();
+            result.limit(offset + length);
+            result.position(offset);
+            return result.slice();
+        }
+
+        public void release() {
+            LazyDBCache.release(this);
+        }
+    }
+
+    /**
+     * Identifies the contents of a file by the file itself, its size and the time of its last
+     * modification, so that a file that has been rewritten, e.g., by reinstalling a package, is
+     * never served from the cache.
+     */
+    private static final class FileStamp {
+        private final Object fileKey;
+        private final long lastModified;
+        private final long size;
+
+        private FileStamp(Object fileKey, long lastModified, long size) {
+            this.fileKey = fileKey;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+
+        static FileStamp of(String path) {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(FileSystems.getDefault().getPath(path), BasicFileAttributes.class);
+                // not every file system provides a file key
+                Object fileKey = attrs.fileKey() == null ? path : attrs.fileKey();
+                return new FileStamp(fileKey, attrs.lastModifiedTime().toMillis(), attrs.size());
+            } catch (IOException ex) {
+                throw RError.ioError(RError.SHOW_CALLER, ex);
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return (fileKey.hashCode() * 31 + Long.hashCode(lastModified)) * 31 + Long.hashCode(size);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof FileStamp)) {
+                return false;
+            }
+            FileStamp other = (FileStamp) obj;
+            return lastModified == other.lastModified && size == other.size && fileKey.equals(other.fileKey);
+        }
+    }
+
+    private static final LinkedHashMap<String, MappedDB> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private static long mappedBytes;
+
+    private static long getMaxMappedBytes() {
+        return FastROptions.LazyDBCacheSize.getNonNegativeIntValue() * 1024L * 1024L;
+    }
+
+    /**
+     * Returns the mapping of {@code dbPath}, mapping the file if necessary. The caller is
+     * responsible for calling {@link MappedDB#release} when it no longer needs the data.
+     */
+    @TruffleBoundary
+    public static MappedDB acquire(String dbPath) {
+        FileStamp stamp = FileStamp.of(dbPath);
+        synchronized (LazyDBCache.class) {
+            MappedDB db = cache.get(dbPath);
+            if (db != null && !db.stamp.equals(stamp)) {
+                // the file has changed, holders of the old mapping can continue using it
+                cache.remove(dbPath);
+                mappedBytes -= db.size();
+                db = null;
+            }
+            if (db == null) {
+                db = new MappedDB(dbPath, stamp, map(dbPath));
+                cache.put(dbPath, db);
+                mappedBytes += db.size();
+            }
+            db.refCount++;
+            evict();
+            return db;
+        }
+    }
+
+    private static synchronized void release(MappedDB db) {
+        assert db.refCount > 0;
+        db.refCount--;
+        evict();
+    }
+
+    /**
+     * Drops the mapping of {@code dbPath}, if any, e.g. because the file has been rewritten. Not
+     * an error if the file is not cached. Contexts still holding the old mapping can continue
+     * using it until they release it.
+     */
+    @TruffleBoundary
+    public static synchronized void invalidate(String dbPath) {
+        MappedDB db = cache.remove(dbPath);
+        if (db != null) {
+            mappedBytes -= db.size();
+        }
+        Iterator<RecordKey> iter = decodedCache.keySet().iterator();
+        while (iter.hasNext()) {
+            RecordKey key = iter.next();
+            if (key.path.equals(dbPath)) {
+                decodedBytes -= decodedCache.get(key).size;
+                iter.remove();
+            }
+        }
+    }
+
+    private static void evict() {
+        long max = getMaxMappedBytes();
+        Iterator<MappedDB> iter = cache.values().iterator();
+        while (mappedBytes > max && iter.hasNext()) {
+            MappedDB db = iter.next();
+            if (db.refCount == 0) {
+                iter.remove();
+                mappedBytes -= db.size();
+            }
+        }
+    }
+
+    private static ByteBuffer map(String dbPath) {
+        try (FileChannel channel = FileChannel.open(FileSystems.getDefault().getPath(dbPath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw RError.error(RError.SHOW_CALLER, RError.Message.GENERIC, "lazy-load database '" + dbPath + "' is too large");
+            }
+            // the mapping stays valid after the channel is closed
+            return channel.map(MapMode.READ_ONLY, 0, size).asReadOnlyBuffer();
+        } catch (IOException ex) {
+            throw RError.ioError(RError.SHOW_CALLER, ex);
+        }
+    }
+
+    /**
+     * Identifies a record of a database file. Decoded values are only shared within a group of
+     * contexts, see {@link ContextStateImpl}.
+     */
+    private static final class RecordKey {
+        private final Object group;
+        private final String path;
+        private final FileStamp stamp;
+        private final int offset;
+        private final int length;
+
+        RecordKey(Object group, MappedDB db, int offset, int length) {
+            this.group = group;
+            this.path = db.path;
+            this.stamp = db.stamp;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((System.identityHashCode(group) * 31 + stamp.hashCode()) * 31 + offset) * 31 + length;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof RecordKey)) {
+                return false;
+            }
+            RecordKey other = (RecordKey) obj;
+            return group == other.group && offset == other.offset && length == other.length && stamp.equals(other.stamp) && path.equals(other.path);
+        }
+    }
+
+    private static final class Decoded {
+        /**
+         * A (permanently shared) data value, {@code null} for a function.
+         */
+        private final Object value;
+        /**
+         * For a function, a call target that has never been executed and from which the function
+         * is re-created. It does not reference the frame the function was decoded in.
+         */
+        private final RootCallTarget target;
+        private final String name;
+        private final String packageName;
+        private final DynamicObject attributes;
+        /**
+         * The name of the namespace a function is to be bound to, {@code null} for data.
+         */
+        private final String namespace;
+        private final long size;
+
+        Decoded(Object value, long size) {
+            this.value = value;
+            this.target = null;
+            this.name = null;
+            this.packageName = null;
+            this.attributes = null;
+            this.namespace = null;
+            this.size = size;
+        }
+
+        Decoded(RFunction fn, String namespace, long size) {
+            this.value = null;
+            this.target = ((HasSignature) fn.getTarget().getRootNode()).duplicateWithNewFrameDescriptor();
+            this.name = fn.getName();
+            this.packageName = fn.getPackageName();
+            this.attributes = fn.getAttributes() == null ? null : RAttributesLayout.copy(fn.getAttributes());
+            this.namespace = namespace;
+            this.size = size;
+        }
+
+        RFunction instantiateFunction(MaterializedFrame enclosingFrame) {
+            RootCallTarget newTarget = ((HasSignature) target.getRootNode()).duplicateWithNewFrameDescriptor();
+            FrameSlotChangeMonitor.initializeEnclosingFrame(newTarget.getRootNode().getFrameDescriptor(), enclosingFrame);
+            RFunction fn = RDataFactory.createFunction(name, packageName, newTarget, null, enclosingFrame);
+            if (attributes != null) {
+                fn.initAttributes(RAttributesLayout.copy(attributes));
+            }
+            return fn;
+        }
+    }
+
+    private static final LinkedHashMap<RecordKey, Decoded> decodedCache = new LinkedHashMap<>(16, 0.75f, true);
+    private static long decodedBytes;
+
+    private static long getMaxDecodedBytes() {
+        return FastROptions.LazyDBObjectCacheSize.getNonNegativeIntValue() * 1024L * 1024L;
+    }
+
+    private static Object getDecoded(Object group, MappedDB db, int offset, int length) {
+        Decoded decoded;
+        synchronized (LazyDBCache.class) {
+            decoded = decodedCache.get(new RecordKey(group, db, offset, length));
+        }
+        if (decoded == null) {
+            return null;
+        } else if (decoded.namespace == null) {
+            return decoded.value;
+        } else {
+            REnvironment namespace = REnvironment.getRegisteredNamespace(decoded.namespace);
+            return namespace == null ? null : decoded.instantiateFunction(namespace.getFrame());
+        }
+    }
+
+    private static void putDecoded(Object group, MappedDB db, int offset, int length, Object value) {
+        Decoded decoded;
+        long max = getMaxDecodedBytes();
+        if (value instanceof RFunction) {
+            RFunction fn = (RFunction) value;
+            if (fn.isBuiltin() || !(fn.getTarget().getRootNode() instanceof HasSignature)) {
+                return;
+            }
+            String namespace;
+            REnvironment env = REnvironment.frameToEnvironment(fn.getEnclosingFrame());
+            if (env == REnvironment.baseNamespaceEnv()) {
+                namespace = "base";
+            } else if (env.isNamespaceEnv()) {
+                namespace = env.getNamespaceSpec().getDataAt(0);
+            } else {
+                return;
+            }
+            if (!isShareableAttributes(fn.getAttributes())) {
+                return;
+            }
+            long size = RObjectSize.getObjectSize(fn, null);
+            if (size > max) {
+                return;
+            }
+            makeSharedPermanent(fn);
+            decoded = new Decoded(fn, namespace, size);
+        } else {
+            if (!isShareableData(value)) {
+                return;
+            }
+            long size = RObjectSize.getObjectSize(value, null);
+            if (size > max) {
+                return;
+            }
+            makeSharedPermanent(value);
+            decoded = new Decoded(value, size);
+        }
+        synchronized (LazyDBCache.class) {
+            Decoded old = decodedCache.put(new RecordKey(group, db, offset, length), decoded);
+            decodedBytes += decoded.size - (old == null ? 0 : old.size);
+            evictDecoded(max);
+        }
+    }
+
+    private static void evictDecoded(long max) {
+        Iterator<Decoded> iter = decodedCache.values().iterator();
+        while (decodedBytes > max && iter.hasNext()) {
+            decodedBytes -= iter.next().size;
+            iter.remove();
+        }
+    }
+
+    private static synchronized void removeGroup(Object group) {
+        Iterator<Map.Entry<RecordKey, Decoded>> iter = decodedCache.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<RecordKey, Decoded> entry = iter.next();
+            if (entry.getKey().group == group) {
+                decodedBytes -= entry.getValue().size;
+                iter.remove();
+            }
+        }
+    }
+
+    private static boolean isShareableData(Object value) {
+        if (value == RNull.instance || value instanceof String || value instanceof Integer || value instanceof Double || value instanceof Byte) {
+            return true;
+        } else if (value instanceof RListBase) {
+            if (!(value instanceof RList)) {
+                // expressions contain language objects
+                return false;
+            }
+            RList list = (RList) value;
+            for (int i = 0; i < list.getLength(); i++) {
+                if (!isShareableData(list.getDataAt(i))) {
+                    return false;
+                }
+            }
+            return isShareableAttributes(list.getAttributes());
+        } else if (value instanceof RVector) {
+            return isShareableAttributes(((RVector<?>) value).getAttributes());
+        }
+        return false;
+    }
+
+    private static boolean isShareableAttributes(DynamicObject attributes) {
+        if (attributes != null) {
+            for (RAttributesLayout.RAttribute a : RAttributesLayout.asIterable(attributes)) {
+                if (!isShareableData(a.getValue())) {
+                    return false;
                 }
-                dbCache.put(dbPath, dbData);
             }
-            return dbData;
+        }
+        return true;
+    }
+
+    /**
+     * Prevents reference count updates by different threads, see {@link RChannel}.
+     */
+    private static void makeSharedPermanent(Object value) {
+        if (value instanceof RShareable) {
+            ((RShareable) value).makeSharedPermanent();
+        }
+        if (value instanceof RList) {
+            RList list = (RList) value;
+            for (int i = 0; i < list.getLength(); i++) {
+                makeSharedPermanent(list.getDataAt(i));
+            }
+        }
+        if (value instanceof RAttributable && ((RAttributable) value).getAttributes() != null) {
+            for (RAttributesLayout.RAttribute a : RAttributesLayout.asIterable(((RAttributable) value).getAttributes())) {
+                makeSharedPermanent(a.getValue());
+            }
+        }
+    }
+
+    /**
+     * The per-context view of the cache. The mappings are shared by all contexts, but decoded
+     * values are only shared within the group of a context and its
+     * {@link ContextKind#SHARE_PARENT_RO} and {@link ContextKind#SHARE_PARENT_RW} descendants,
+     * which share their namespaces anyway.
+     */
+    public static final class ContextStateImpl implements RContext.ContextState {
+        /**
+         * Identifies the group of contexts that share decoded values, owned by the group's root.
+         */
+        private Object group;
+
+        @Override
+        public ContextState initialize(RContext context) {
+            ContextKind kind = context.getKind();
+            if (context.getParent() != null && (kind == ContextKind.SHARE_PARENT_RO || kind == ContextKind.SHARE_PARENT_RW)) {
+                group = context.getParent().stateLazyDBCache.group;
+            } else {
+                group = new Object();
+            }
+            return this;
+        }
+
+        @Override
+        public void beforeDestroy(RContext context) {
+            if (context.getParent() == null || context.getParent().stateLazyDBCache.group != group) {
+                removeGroup(group);
+            }
+        }
+
+        public MappedDB getData(String dbPath) {
+            return acquire(dbPath);
+        }
+
+        /**
+         * Returns the value previously decoded from the given record by a context of this group,
+         * or {@code null} if there is none. Data values are returned as is, they are permanently
+         * shared and hence copied on modification. Functions are re-created with a fresh call
+         * target in the current context's instance of their namespace.
+         */
+        @TruffleBoundary
+        public Object getDecoded(MappedDB db, int offset, int length) {
+            return LazyDBCache.getDecoded(group, db, offset, length);
+        }
+
+        /**
+         * Records the value decoded from the given record if it can be shared between contexts,
+         * i.e., if it consists only of vectors and lists, or is a closure defined in a namespace
+         * whose attributes are of that form.
+         */
+        @TruffleBoundary
+        public void putDecoded(MappedDB db, int offset, int length, Object value) {
+            LazyDBCache.putDecoded(group, db, offset, length, value);
         }
 
         public void remove(String dbPath) {
-            // no an error if missing
-            dbCache.remove(dbPath);
+            invalidate(dbPath);
         }
 
         public static ContextStateImpl newContextState() {
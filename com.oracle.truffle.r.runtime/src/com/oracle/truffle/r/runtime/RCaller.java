@@ -25,6 +25,7 @@ package com.oracle.truffle.r.runtime;
 import java.util.function.Supplier;
 
 import com.oracle.truffle.api.frame.Frame;
+import com.oracle.truffle.api.frame.MaterializedFrame;
 import com.oracle.truffle.r.runtime.nodes.RSyntaxElement;
 
 /**
@@ -43,6 +44,12 @@ public final class RCaller {
      * promise evaluation frames).
      */
     private final Object payload;
+    /**
+     * The frame of the invocation described by this caller while it is active, linked only by
+     * functions whose frames have been looked up on the stack before, see
+     * {@link Utils#getStackFrame(com.oracle.truffle.api.frame.FrameInstance.FrameAccess, RCaller)}.
+     */
+    private MaterializedFrame frame;
 
     private RCaller(Frame callingFrame, Object nodeOrSupplier) {
         this.depth = depthFromFrame(callingFrame);
@@ -123,6 +130,17 @@ public final class RCaller {
         return new RCaller(newDepth, originalCaller, originalCall);
     }
 
+    /**
+     * Returns the frame linked to this caller, or {@code null} if the frame is not linked.
+     */
+    public MaterializedFrame getFrame() {
+        return frame;
+    }
+
+    public void setFrame(MaterializedFrame frame) {
+        this.frame = frame;
+    }
+
     public boolean getVisibility() {
         return visibility;
     }
@@ -23,8 +23,10 @@
 package com.oracle.truffle.r.runtime;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.RootCallTarget;
@@ -56,132 +58,184 @@ import com.oracle.truffle.r.runtime.nodes.RSyntaxElement;
  */
 public class RChannel {
 
-    // TODO: cheaper way of serializing data (re-usable buffer?)
-
     private static final int INITIAL_CHANNEL_NUM = 4;
     private static final int CHANNEL_NUM_GROW_FACTOR = 2;
-    private static final int QUEUE_CAPACITY = 1;
-
-    private static int[] keys = new int[INITIAL_CHANNEL_NUM];
-    private static RChannel[] channels = new RChannel[INITIAL_CHANNEL_NUM];
+    public static final int DEFAULT_CAPACITY = 1;
 
     private static final int CLOSED_CHANNEL_KEY = -1;
 
+    /**
+     * The channel table, which is never modified once published; creating or closing a channel
+     * replaces the whole table so that looking up a channel, done for every transmission, does not
+     * need any locking.
+     */
+    private static final class Table {
+        private final int[] keys;
+        private final RChannel[] channels;
+
+        Table(int[] keys, RChannel[] channels) {
+            this.keys = keys;
+            this.channels = channels;
+        }
+    }
+
+    private static volatile Table table = new Table(new int[INITIAL_CHANNEL_NUM], new RChannel[INITIAL_CHANNEL_NUM]);
+
+    /*
+     * Used to serialize the modifications of the channel table
+     */
+    private static final Object tableLock = new Object();
+
     /*
-     * Used to mediate access to the semaphore instances
+     * Used by select to wait for a message to arrive in any of the channels it is interested in;
+     * senders only notify when there is a thread waiting.
      */
-    private static final Semaphore create = new Semaphore(1, true);
+    private static final Object selectLock = new Object();
+    private static final AtomicInteger selectWaiting = new AtomicInteger();
+
+    private final ArrayBlockingQueue<Object> masterToClient;
+    private final ArrayBlockingQueue<Object> clientToMaster;
 
-    private final ArrayBlockingQueue<Object> masterToClient = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
-    private final ArrayBlockingQueue<Object> clientToMaster = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private RChannel(int capacity) {
+        masterToClient = new ArrayBlockingQueue<>(capacity);
+        clientToMaster = new ArrayBlockingQueue<>(capacity);
+    }
 
     public static int createChannel(int key) {
+        return createChannel(key, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a channel in which each direction can hold up to {@code capacity} messages before
+     * the sender blocks.
+     */
+    public static int createChannel(int key, int capacity) {
         if (key <= 0) {
             throw RError.error(RError.SHOW_CALLER2, RError.Message.GENERIC, "channel's key must be positive");
         }
-        try {
-            create.acquire();
-            while (true) {
-                int freeSlot = -1;
-                // start from one as we need slots that have distinguishable positive and negative
-                // value
-                for (int i = 1; i < keys.length; i++) {
-                    if (keys[i] == key) {
-                        throw RError.error(RError.SHOW_CALLER2, RError.Message.GENERIC, "channel with specified key already exists");
-                    }
-                    if (keys[i] == 0 && freeSlot == -1) {
-                        freeSlot = i;
-                    }
+        if (capacity <= 0) {
+            throw RError.error(RError.SHOW_CALLER2, RError.Message.GENERIC, "channel's capacity must be positive");
+        }
+        synchronized (tableLock) {
+            int[] keys = table.keys;
+            int freeSlot = -1;
+            // start from one as we need slots that have distinguishable positive and negative
+            // value
+            for (int i = 1; i < keys.length; i++) {
+                if (keys[i] == key) {
+                    throw RError.error(RError.SHOW_CALLER2, RError.Message.GENERIC, "channel with specified key already exists");
                 }
-                if (freeSlot != -1) {
-                    keys[freeSlot] = key;
-                    channels[freeSlot] = new RChannel();
-                    return freeSlot;
-                } else {
-                    int[] keysTmp = new int[keys.length * CHANNEL_NUM_GROW_FACTOR];
-                    RChannel[] channelsTmp = new RChannel[channels.length * CHANNEL_NUM_GROW_FACTOR];
-                    for (int i = 1; i < keys.length; i++) {
-                        keysTmp[i] = keys[i];
-                        channelsTmp[i] = channels[i];
-                    }
-                    keys = keysTmp;
-                    channels = channelsTmp;
+                if (keys[i] == 0 && freeSlot == -1) {
+                    freeSlot = i;
                 }
             }
-        } catch (InterruptedException x) {
-            throw RError.error(RError.SHOW_CALLER2, RError.Message.GENERIC, "error creating a channel");
-        } finally {
-            create.release();
+            int newLength = keys.length;
+            if (freeSlot == -1) {
+                freeSlot = keys.length;
+                newLength = keys.length * CHANNEL_NUM_GROW_FACTOR;
+            }
+            int[] keysTmp = Arrays.copyOf(keys, newLength);
+            RChannel[] channelsTmp = Arrays.copyOf(table.channels, newLength);
+            keysTmp[freeSlot] = key;
+            channelsTmp[freeSlot] = new RChannel(capacity);
+            table = new Table(keysTmp, channelsTmp);
+            return freeSlot;
         }
     }
 
     public static int getChannel(int key) {
-        try {
-            create.acquire();
-            for (int i = 1; i < keys.length; i++) {
-                if (keys[i] == key) {
-                    return -i;
-                }
+        int[] keys = table.keys;
+        for (int i = 1; i < keys.length; i++) {
+            if (keys[i] == key) {
+                return -i;
             }
-        } catch (InterruptedException x) {
-            throw RError.error(RError.SHOW_CALLER2, RError.Message.GENERIC, "error accessing channel");
-        } finally {
-            create.release();
         }
         throw RError.error(RError.SHOW_CALLER2, RError.Message.GENERIC, "channel does not exist");
     }
 
     public static void closeChannel(int id) {
         int actualId = Math.abs(id);
-        try {
-            create.acquire();
-            if (actualId == 0 || actualId >= channels.length || channels[actualId] == null) {
+        synchronized (tableLock) {
+            Table t = table;
+            if (actualId == 0 || actualId >= t.channels.length || t.channels[actualId] == null) {
                 // closing an already closed channel does not necessarily have to be an error (and
                 // makes parallell package's worker script work unchanged)
-                if (keys[actualId] != CLOSED_CHANNEL_KEY) {
+                if (actualId >= t.keys.length || t.keys[actualId] != CLOSED_CHANNEL_KEY) {
                     throw RError.error(RError.SHOW_CALLER2, RError.Message.GENERIC, "channel with specified id does not exist");
                 }
             }
-            keys[actualId] = CLOSED_CHANNEL_KEY;
-            channels[actualId] = null;
-        } catch (InterruptedException x) {
-            throw RError.error(RError.SHOW_CALLER2, RError.Message.GENERIC, "error closing channel");
-        } finally {
-            create.release();
+            int[] keysTmp = t.keys.clone();
+            RChannel[] channelsTmp = t.channels.clone();
+            keysTmp[actualId] = CLOSED_CHANNEL_KEY;
+            channelsTmp[actualId] = null;
+            table = new Table(keysTmp, channelsTmp);
         }
     }
 
     private static RChannel getChannelFromId(int id) {
         int actualId = Math.abs(id);
-        try {
-            create.acquire();
-            if (actualId == 0 || actualId >= channels.length || channels[actualId] == null) {
-                throw RError.error(RError.SHOW_CALLER2, RError.Message.GENERIC, "channel with specified id does not exist");
+        RChannel[] channels = table.channels;
+        if (actualId == 0 || actualId >= channels.length || channels[actualId] == null) {
+            throw RError.error(RError.SHOW_CALLER2, RError.Message.GENERIC, "channel with specified id does not exist");
+        }
+        return channels[actualId];
+    }
+
+    private static ArrayBlockingQueue<Object> outgoing(int id) {
+        RChannel channel = getChannelFromId(id);
+        return id > 0 ? channel.masterToClient : channel.clientToMaster;
+    }
+
+    private static ArrayBlockingQueue<Object> incoming(int id) {
+        RChannel channel = getChannelFromId(id);
+        return id < 0 ? channel.masterToClient : channel.clientToMaster;
+    }
+
+    private static void notifySelect() {
+        if (selectWaiting.get() > 0) {
+            synchronized (selectLock) {
+                selectLock.notifyAll();
             }
-            RChannel channel = channels[actualId];
-            return channel;
-        } catch (InterruptedException x) {
-            throw RError.error(RError.SHOW_CALLER2, RError.Message.GENERIC, "error transmitting through channel");
-        } finally {
-            create.release();
         }
     }
 
     public static void send(int id, Object data) {
         Output out = new Output();
         Object msg = out.processOutgoingMessage(data);
-        RChannel channel = getChannelFromId(id);
         try {
-            (id > 0 ? channel.masterToClient : channel.clientToMaster).put(msg);
+            outgoing(id).put(msg);
+        } catch (InterruptedException x) {
+            throw RError.error(RError.SHOW_CALLER2, RError.Message.GENERIC, "error sending through the channel");
+        }
+        notifySelect();
+    }
+
+    /**
+     * Sends the elements of {@code data} as separate messages, in order.
+     */
+    public static void sendBatch(int id, RList data) {
+        ArrayBlockingQueue<Object> queue = outgoing(id);
+        Object[] msgs = new Object[data.getLength()];
+        for (int i = 0; i < msgs.length; i++) {
+            msgs[i] = new Output().processOutgoingMessage(data.getDataAt(i));
+        }
+        try {
+            for (Object msg : msgs) {
+                if (!queue.offer(msg)) {
+                    // the receiver may be waiting in select for the messages sent so far
+                    notifySelect();
+                    queue.put(msg);
+                }
+            }
         } catch (InterruptedException x) {
             throw RError.error(RError.SHOW_CALLER2, RError.Message.GENERIC, "error sending through the channel");
         }
+        notifySelect();
     }
 
     public static Object receive(int id) {
-        RChannel channel = getChannelFromId(id);
         try {
-            Object msg = (id < 0 ? channel.masterToClient : channel.clientToMaster).take();
+            Object msg = incoming(id).take();
             Input in = new Input();
             return in.processedReceivedMessage(msg);
         } catch (InterruptedException x) {
@@ -189,9 +243,28 @@ public class RChannel {
         }
     }
 
+    /**
+     * Waits for at least one message and returns it together with all the messages that are
+     * already available, but not more than {@code max} in total.
+     */
+    public static RList receiveBatch(int id, int max) {
+        ArrayBlockingQueue<Object> queue = incoming(id);
+        ArrayList<Object> msgs = new ArrayList<>();
+        try {
+            msgs.add(queue.take());
+        } catch (InterruptedException x) {
+            throw RError.error(RError.SHOW_CALLER2, RError.Message.GENERIC, "error receiving from the channel");
+        }
+        queue.drainTo(msgs, max - 1);
+        Object[] data = new Object[msgs.size()];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = new Input().processedReceivedMessage(msgs.get(i));
+        }
+        return RDataFactory.createList(data);
+    }
+
     public static Object poll(int id) {
-        RChannel channel = getChannelFromId(id);
-        Object msg = (id < 0 ? channel.masterToClient : channel.clientToMaster).poll();
+        Object msg = incoming(id).poll();
         if (msg != null) {
             Input in = new Input();
             return in.processedReceivedMessage(msg);
@@ -199,6 +272,49 @@ public class RChannel {
         return null;
     }
 
+    /**
+     * Waits for a message in any of the channels and returns a list of the channel's id and the
+     * message. Instead of polling, the calling thread sleeps until a message is sent to any
+     * channel.
+     */
+    public static RList select(int[] ids) {
+        ArrayBlockingQueue<?>[] queues = new ArrayBlockingQueue<?>[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            queues[i] = incoming(ids[i]);
+        }
+        try {
+            while (true) {
+                for (int i = 0; i < ids.length; i++) {
+                    Object msg = queues[i].poll();
+                    if (msg != null) {
+                        return RDataFactory.createList(new Object[]{ids[i], new Input().processedReceivedMessage(msg)});
+                    }
+                }
+                synchronized (selectLock) {
+                    selectWaiting.incrementAndGet();
+                    try {
+                        // re-check with the lock held, a sender notifies only after its message
+                        // is in the queue
+                        boolean empty = true;
+                        for (ArrayBlockingQueue<?> queue : queues) {
+                            if (!queue.isEmpty()) {
+                                empty = false;
+                                break;
+                            }
+                        }
+                        if (empty) {
+                            selectLock.wait();
+                        }
+                    } finally {
+                        selectWaiting.decrementAndGet();
+                    }
+                }
+            }
+        } catch (InterruptedException x) {
+            throw RError.error(RError.SHOW_CALLER2, RError.Message.GENERIC, "error receiving from the channel");
+        }
+    }
+
     private static class TransmitterCommon extends RSerialize.RefCounter {
 
         protected static class SerializedRef {
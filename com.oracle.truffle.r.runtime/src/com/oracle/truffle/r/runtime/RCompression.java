@@ -27,21 +27,20 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.lang.ProcessBuilder.Redirect;
-import java.nio.file.Files;
-import java.nio.file.OpenOption;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 import java.util.zip.GZIPInputStream;
 
+import org.tukaani.xz.FinishableOutputStream;
+import org.tukaani.xz.FinishableWrapperOutputStream;
 import org.tukaani.xz.LZMA2InputStream;
+import org.tukaani.xz.LZMA2Options;
 
 import com.oracle.truffle.r.runtime.ffi.RFFIFactory;
 
 /**
- * Abstracts the implementation of the various forms of compression used in R. Since the C API for
- * LZMA is very complex (as used by GnuR), we use an 'xz' subprocess to do the work.
+ * Abstracts the implementation of the various forms of compression used in R. All of them are done
+ * in-process: gzip by the native zlib, bzip2 by {@link BZip2InputStream}/{@link BZip2OutputStream}
+ * and LZMA by the {@code org.tukaani.xz} library.
  */
 public class RCompression {
     public enum Type {
@@ -112,7 +111,7 @@ public class RCompression {
             case GZIP:
                 return gzipUncompress(udata, cdata);
             case BZIP2:
-                throw RInternalError.unimplemented("BZIP2 compression");
+                return bzipUncompress(udata, new ByteArrayInputStream(cdata));
             case XZ:
                 return lzmaUncompress(udata, cdata);
             default:
@@ -122,28 +121,51 @@ public class RCompression {
     }
 
     /**
-     * Uncompress for internal use in {@code LazyLoadDBInsertValue} where size of uncompressed data
+     * Variant of {@link #uncompress(Type, byte[], byte[])} where the compressed data is a (possibly
+     * memory-mapped) buffer, which is read from its current position to its limit. The data is only
+     * copied to the heap if the decompressor requires it.
+     */
+    public static boolean uncompress(Type type, byte[] udata, ByteBuffer cdata) {
+        switch (type) {
+            case NONE:
+                cdata.get(udata, 0, cdata.remaining());
+                return true;
+            case BZIP2:
+                return bzipUncompress(udata, new ByteBufferInputStream(cdata));
+            case XZ:
+                return lzmaUncompress(udata, new ByteBufferInputStream(cdata));
+            default:
+                // the native zlib interface needs a heap array
+                byte[] data = new byte[cdata.remaining()];
+                cdata.get(data);
+                return uncompress(type, udata, data);
+        }
+    }
+
+    /**
+     * Compress for internal use in {@code LazyLoadDBInsertValue} where size of uncompressed data
      * is known.
      *
      * @param type compression type
      * @param udata uncompressed data
-     * @param cdata where to store compressed data
-     * @return {@code true} iff success
+     * @param cdata where to store compressed data, which has to be large enough for the worst case
+     * @return the length of the compressed data (all of {@code cdata} for gzip), or {@code -1} on
+     *         failure
      */
-    public static boolean compress(Type type, byte[] udata, byte[] cdata) {
+    public static int compress(Type type, byte[] udata, byte[] cdata) {
         switch (type) {
             case NONE:
                 System.arraycopy(udata, 0, cdata, 0, udata.length);
-                return true;
+                return udata.length;
             case GZIP:
-                return gzipCompress(udata, cdata);
+                return gzipCompress(udata, cdata) ? cdata.length : -1;
             case BZIP2:
-                throw RInternalError.unimplemented("BZIP2 compression");
+                return bzipCompress(udata, cdata);
             case XZ:
                 return lzmaCompress(udata, cdata);
             default:
                 assert false;
-                return false;
+                return -1;
         }
     }
 
@@ -158,36 +180,41 @@ public class RCompression {
     }
 
     /**
-     * There is no obvious counterpart to {@link LZMA2InputStream} and according to the XZ forum it
-     * is not implemented for Java, so have to use sub-process.
+     * Returns the options for LZMA compression with the given preset (see
+     * {@link FastROptions#XZPreset}). The dictionary does not need to be larger than the data, so
+     * for small data the encoder allocates much less than the preset's buffers.
+     */
+    public static LZMA2Options lzmaOptions(int preset, long dataLength) throws IOException {
+        LZMA2Options options = new LZMA2Options(Math.min(preset, LZMA2Options.PRESET_MAX));
+        if (dataLength < options.getDictSize()) {
+            options.setDictSize((int) Math.max(LZMA2Options.DICT_SIZE_MIN, dataLength));
+        }
+        return options;
+    }
+
+    /**
+     * Compresses to raw LZMA2 data, like {@code xz --format=raw --lzma2}.
      */
-    private static boolean lzmaCompress(byte[] udata, byte[] cdata) {
-        int rc;
-        ProcessBuilder pb = new ProcessBuilder("xz", "--compress", "--format=raw", "--lzma2", "--stdout");
-        pb.redirectError(Redirect.INHERIT);
+    private static int lzmaCompress(byte[] udata, byte[] cdata) {
+        ArrayOutputStream out = new ArrayOutputStream(cdata);
         try {
-            Process p = pb.start();
-            OutputStream os = p.getOutputStream();
-            InputStream is = p.getInputStream();
-            ProcessOutputManager.OutputThread readThread = new ProcessOutputManager.OutputThreadFixed("xz", is, cdata);
-            readThread.start();
-            os.write(udata);
-            os.close();
-            rc = p.waitFor();
-            if (rc == 0) {
-                readThread.join();
-                return true;
+            LZMA2Options options = lzmaOptions(FastROptions.XZPreset.getNonNegativeIntValue(), udata.length);
+            try (FinishableOutputStream lzmaStream = options.getOutputStream(new FinishableWrapperOutputStream(out))) {
+                lzmaStream.write(udata);
             }
-        } catch (InterruptedException | IOException ex) {
-            return false;
+            return out.length();
+        } catch (IOException ex) {
+            return -1;
         }
-        return rc == 0;
-
     }
 
     private static boolean lzmaUncompress(byte[] udata, byte[] data) {
+        return lzmaUncompress(udata, new ByteArrayInputStream(data));
+    }
+
+    private static boolean lzmaUncompress(byte[] udata, InputStream data) {
         int dictSize = udata.length < LZMA2InputStream.DICT_SIZE_MIN ? LZMA2InputStream.DICT_SIZE_MIN : udata.length;
-        try (LZMA2InputStream lzmaStream = new LZMA2InputStream(new ByteArrayInputStream(data), dictSize)) {
+        try (LZMA2InputStream lzmaStream = new LZMA2InputStream(data, dictSize)) {
             int totalRead = 0;
             int n;
             while ((n = lzmaStream.read(udata, totalRead, udata.length - totalRead)) > 0) {
@@ -199,50 +226,90 @@ public class RCompression {
         }
     }
 
-    public static byte[] bzipUncompressFromFile(String path) throws IOException {
-        String[] command = new String[]{"bzip2", "-dc", path};
-        ProcessBuilder pb = new ProcessBuilder(command);
-        pb.redirectError(Redirect.INHERIT);
-        Process p = pb.start();
-        InputStream is = p.getInputStream();
-        ProcessOutputManager.OutputThreadVariable readThread = new ProcessOutputManager.OutputThreadVariable(command[0], is);
-        readThread.start();
-        try {
-            int rc = p.waitFor();
-            if (rc == 0) {
-                readThread.join();
-                return Arrays.copyOf(readThread.getData(), readThread.getTotalRead());
+    private static boolean bzipUncompress(byte[] udata, InputStream data) {
+        try (BZip2InputStream bzipStream = new BZip2InputStream(data)) {
+            int totalRead = 0;
+            int n;
+            while ((n = bzipStream.read(udata, totalRead, udata.length - totalRead)) > 0) {
+                totalRead += n;
             }
-        } catch (InterruptedException ex) {
-            // fall through
+            return totalRead == udata.length;
+        } catch (IOException ex) {
+            return false;
         }
-        throw new IOException();
     }
 
-    public static void bzipCompressToFile(byte[] data, String path, boolean append) throws IOException {
-        String[] command = new String[]{"bzip2", "-zc"};
-        int rc;
-        ProcessBuilder pb = new ProcessBuilder(command);
-        pb.redirectError(Redirect.INHERIT);
-        Process p = pb.start();
-        InputStream is = p.getInputStream();
-        OutputStream os = p.getOutputStream();
-        ProcessOutputManager.OutputThreadVariable readThread = new ProcessOutputManager.OutputThreadVariable(command[0], is);
-        readThread.start();
-        os.write(data);
-        os.close();
-        try {
-            rc = p.waitFor();
-            if (rc == 0) {
-                readThread.join();
-                byte[] cData = Arrays.copyOf(readThread.getData(), readThread.getTotalRead());
-                OpenOption[] openOptions = append ? new OpenOption[]{StandardOpenOption.APPEND} : new OpenOption[0];
-                Files.write(Paths.get(path), cData, openOptions);
-                return;
+    private static int bzipCompress(byte[] udata, byte[] cdata) {
+        ArrayOutputStream out = new ArrayOutputStream(cdata);
+        try (BZip2OutputStream bzipStream = new BZip2OutputStream(out)) {
+            bzipStream.write(udata);
+        } catch (IOException ex) {
+            return -1;
+        }
+        return out.length();
+    }
+
+    /**
+     * Writes into a fixed array, failing if the data does not fit.
+     */
+    private static final class ArrayOutputStream extends OutputStream {
+        private final byte[] array;
+        private int pos;
+
+        ArrayOutputStream(byte[] array) {
+            this.array = array;
+        }
+
+        int length() {
+            return pos;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (pos == array.length) {
+                throw new IOException("compressed data too long");
             }
-        } catch (InterruptedException ex) {
-            // fall through
+            array[pos++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (pos + len > array.length) {
+                throw new IOException("compressed data too long");
+            }
+            System.arraycopy(b, off, array, pos, len);
+            pos += len;
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
         }
-        throw new IOException();
     }
 }
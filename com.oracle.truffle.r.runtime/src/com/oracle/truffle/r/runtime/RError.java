@@ -587,6 +587,8 @@ public final class RError extends RuntimeException {
         CANNOT_ASSIGN_IN_EMPTY_ENV("cannot assign values in the empty environment"),
         CANNOT_OPEN_CONNECTION("cannot open the connection"),
         ERROR_READING_CONNECTION("error reading connection: %s"),
+        ERROR_READING_FROM_CONNECTION("error reading from connection"),
+        READ_ERROR("read error"),
         ERROR_WRITING_CONNECTION("error writing connection: %s"),
         ERROR_FLUSHING_CONNECTION("error flushing connection: %s"),
         ALREADY_OPEN_CONNECTION("connection is already open"),
@@ -201,4 +201,10 @@ public interface RRuntimeASTAccess {
 
     void checkDebugRequest(RFunction func);
 
+    /**
+     * Makes the invocations of the closure {@code func} link their frames to their
+     * {@link RCaller}s.
+     */
+    void enableFrameLinks(RFunction func);
+
 }
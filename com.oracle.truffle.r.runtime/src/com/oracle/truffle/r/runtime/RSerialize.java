@@ -12,12 +12,12 @@
 package com.oracle.truffle.r.runtime;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.PrintStream;
 import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -28,6 +28,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.oracle.truffle.api.CompilerAsserts;
 import com.oracle.truffle.api.CompilerDirectives;
@@ -36,6 +38,7 @@ import com.oracle.truffle.api.RootCallTarget;
 import com.oracle.truffle.api.frame.MaterializedFrame;
 import com.oracle.truffle.api.object.DynamicObject;
 import com.oracle.truffle.r.runtime.conn.RConnection;
+import com.oracle.truffle.r.runtime.conn.TextConnections;
 import com.oracle.truffle.r.runtime.context.RContext;
 import com.oracle.truffle.r.runtime.data.RArgsValuesAndNames;
 import com.oracle.truffle.r.runtime.data.RAttributable;
@@ -43,6 +46,7 @@ import com.oracle.truffle.r.runtime.data.RAttributesLayout;
 import com.oracle.truffle.r.runtime.data.RComplex;
 import com.oracle.truffle.r.runtime.data.RComplexVector;
 import com.oracle.truffle.r.runtime.data.RDataFactory;
+import com.oracle.truffle.r.runtime.data.RDoubleVector;
 import com.oracle.truffle.r.runtime.data.REmpty;
 import com.oracle.truffle.r.runtime.data.RExpression;
 import com.oracle.truffle.r.runtime.data.RExternalPtr;
@@ -303,9 +307,10 @@ public class RSerialize {
 
     @TruffleBoundary
     public static Object unserialize(RAbstractRawVector data) {
-        byte[] buffer = data.materialize().getDataWithoutCopying();
+        byte[] buffer = data.materialize().getReadonlyData();
         try {
-            return new Input(new ByteArrayInputStream(buffer)).unserialize();
+            // decoded in place, without copying through a read buffer
+            return new Input(new PByteArrayInputStream(buffer)).unserialize();
         } catch (IOException e) {
             throw RInternalError.shouldNotReachHere("ByteArrayInputStream should not throw IOExceptiopn");
         }
@@ -680,14 +685,7 @@ public class RSerialize {
                 case INTSXP: {
                     int len = stream.readInt();
                     int[] data = new int[len];
-                    boolean complete = RDataFactory.COMPLETE_VECTOR;
-                    for (int i = 0; i < len; i++) {
-                        int intVal = stream.readInt();
-                        if (intVal == RRuntime.INT_NA) {
-                            complete = false;
-                        }
-                        data[i] = intVal;
-                    }
+                    boolean complete = stream.readInts(data);
                     result = RDataFactory.createIntVector(data, complete);
                     break;
                 }
@@ -695,16 +693,7 @@ public class RSerialize {
                 case LGLSXP: {
                     int len = stream.readInt();
                     byte[] data = new byte[len];
-                    boolean complete = RDataFactory.COMPLETE_VECTOR;
-                    for (int i = 0; i < len; i++) {
-                        int intVal = stream.readInt();
-                        if (intVal == RRuntime.INT_NA) {
-                            complete = false;
-                            data[i] = RRuntime.LOGICAL_NA;
-                        } else {
-                            data[i] = (byte) intVal;
-                        }
-                    }
+                    boolean complete = stream.readLogicals(data);
                     result = RDataFactory.createLogicalVector(data, complete);
                     break;
                 }
@@ -712,14 +701,7 @@ public class RSerialize {
                 case REALSXP: {
                     int len = stream.readInt();
                     double[] data = new double[len];
-                    boolean complete = RDataFactory.COMPLETE_VECTOR;
-                    for (int i = 0; i < len; i++) {
-                        double doubleVal = stream.readDouble();
-                        if (RRuntime.isNA(doubleVal)) {
-                            complete = false;
-                        }
-                        data[i] = doubleVal;
-                    }
+                    boolean complete = stream.readDoubles(data);
                     result = RDataFactory.createDoubleVector(data, complete);
                     break;
                 }
@@ -1009,6 +991,27 @@ public class RSerialize {
 
         abstract void readRaw(byte[] data) throws IOException;
 
+        /**
+         * Reads {@code data.length} integers into {@code data}.
+         *
+         * @return {@code false} if any of them is {@link RRuntime#INT_NA}
+         */
+        abstract boolean readInts(int[] data) throws IOException;
+
+        /**
+         * Reads {@code data.length} integers into {@code data}, mapping {@link RRuntime#INT_NA} to
+         * {@link RRuntime#LOGICAL_NA}.
+         *
+         * @return {@code false} if any of them is NA
+         */
+        abstract boolean readLogicals(byte[] data) throws IOException;
+
+        /**
+         * Reads {@code data.length} doubles into {@code data}.
+         *
+         * @return {@code false} if any of them is NA
+         */
+        abstract boolean readDoubles(double[] data) throws IOException;
     }
 
     @SuppressWarnings("unused")
@@ -1027,11 +1030,21 @@ public class RSerialize {
 
     private static final class XdrInputFormat extends PInputStream {
 
-        private static final int READ_BUFFER_SIZE = 32 * 1024;
+        private static final int READ_BUFFER_SIZE = 256 * 1024;
 
-        private final byte[] buf;
+        /**
+         * The data is {@code buf[offset..size)}; {@link #view} wraps {@link #buf} for the bulk
+         * decoding of vectors (XDR is big-endian, which is the default byte order).
+         */
+        private byte[] buf;
+        private ByteBuffer view;
         private int size;
         private int offset;
+        /**
+         * {@code buf} is the complete input, which must not be modified, and the position of
+         * {@link #is} is stale.
+         */
+        private final boolean inMemory;
 
         private final WeakHashMap<String, WeakReference<String>> strings = RContext.getInstance().stringMap;
 
@@ -1043,11 +1056,14 @@ public class RSerialize {
                 buf = pbis.getData();
                 size = pbis.getData().length;
                 offset = pbis.pos();
+                inMemory = true;
             } else {
                 buf = new byte[READ_BUFFER_SIZE];
                 size = 0;
                 offset = 0;
+                inMemory = false;
             }
+            view = ByteBuffer.wrap(buf);
         }
 
         @Override
@@ -1099,8 +1115,13 @@ public class RSerialize {
         }
 
         private void ensureData(int n) throws IOException {
+            if (offset + n > size && inMemory) {
+                throw unexpectedEOF();
+            }
             if (n > buf.length) {
-                throw RInternalError.unimplemented("dynamically enlarge buffer");
+                // e.g., a very long string
+                buf = Arrays.copyOf(buf, n);
+                view = ByteBuffer.wrap(buf);
             }
             if (offset + n > size) {
                 if (offset != size) {
@@ -1113,18 +1134,115 @@ public class RSerialize {
                     // read some more data
                     int nread = is.read(buf, size, buf.length - size);
                     if (nread <= 0) {
-                        throw RInternalError.unimplemented("handle unexpected eof");
+                        throw unexpectedEOF();
                     }
                     size += nread;
                 }
             }
         }
 
+        /**
+         * The errors of GnuR's {@code InBytesMem} and {@code InBytesConn} for truncated input.
+         */
+        private RError unexpectedEOF() {
+            return RError.error(RError.SHOW_CALLER2, inMemory ? RError.Message.READ_ERROR : RError.Message.ERROR_READING_FROM_CONNECTION);
+        }
+
+        /**
+         * Returns a view of the buffered data, starting with at least {@code elementSize} bytes.
+         */
+        private ByteBuffer elements(int elementSize) throws IOException {
+            ensureData(elementSize);
+            view.limit(size).position(offset);
+            return view;
+        }
+
         @Override
         void readRaw(byte[] data) throws IOException {
-            ensureData(data.length);
-            System.arraycopy(buf, offset, data, 0, data.length);
-            offset += data.length;
+            int done = Math.min(data.length, size - offset);
+            System.arraycopy(buf, offset, data, 0, done);
+            offset += done;
+            if (done < data.length && inMemory) {
+                throw unexpectedEOF();
+            }
+            // large vectors are read directly into the result
+            while (done < data.length) {
+                int nread = is.read(data, done, data.length - done);
+                if (nread <= 0) {
+                    throw unexpectedEOF();
+                }
+                done += nread;
+            }
+        }
+
+        @Override
+        boolean readInts(int[] data) throws IOException {
+            boolean complete = true;
+            int done = 0;
+            while (done < data.length) {
+                int n = Math.min(data.length - done, (size - offset) / Integer.BYTES);
+                if (n == 0) {
+                    ensureData(Integer.BYTES);
+                    continue;
+                }
+                elements(Integer.BYTES).asIntBuffer().get(data, done, n);
+                offset += n * Integer.BYTES;
+                for (int i = done; i < done + n; i++) {
+                    if (data[i] == RRuntime.INT_NA) {
+                        complete = false;
+                    }
+                }
+                done += n;
+            }
+            return complete;
+        }
+
+        @Override
+        boolean readLogicals(byte[] data) throws IOException {
+            boolean complete = true;
+            int done = 0;
+            while (done < data.length) {
+                int n = Math.min(data.length - done, (size - offset) / Integer.BYTES);
+                if (n == 0) {
+                    ensureData(Integer.BYTES);
+                    continue;
+                }
+                IntBuffer ints = elements(Integer.BYTES).asIntBuffer();
+                for (int i = done; i < done + n; i++) {
+                    int value = ints.get();
+                    if (value == RRuntime.INT_NA) {
+                        complete = false;
+                        data[i] = RRuntime.LOGICAL_NA;
+                    } else {
+                        data[i] = (byte) value;
+                    }
+                }
+                offset += n * Integer.BYTES;
+                done += n;
+            }
+            return complete;
+        }
+
+        @Override
+        boolean readDoubles(double[] data) throws IOException {
+            boolean complete = true;
+            int done = 0;
+            while (done < data.length) {
+                int n = Math.min(data.length - done, (size - offset) / Double.BYTES);
+                if (n == 0) {
+                    ensureData(Double.BYTES);
+                    continue;
+                }
+                elements(Double.BYTES).asDoubleBuffer().get(data, done, n);
+                offset += n * Double.BYTES;
+                for (int i = done; i < done + n; i++) {
+                    if (RRuntime.isNA(data[i])) {
+                        complete = false;
+                    }
+                }
+                done += n;
+            }
+            return complete;
         }
     }
 
@@ -1168,11 +1286,146 @@ public class RSerialize {
     // Serialize support is currently very limited, essentially to saving the CRAN package format
     // info,
 
+    /**
+     * Receives the filled buffers of a {@link POutputStream}, i.e., the bytes between the position
+     * and the limit of each buffer.
+     */
+    private interface BufferSink {
+        /**
+         * @return {@code true} if the buffer has been consumed and can be reused, {@code false} if
+         *         the sink keeps it
+         */
+        boolean write(ByteBuffer buffer) throws IOException;
+
+        void flush() throws IOException;
+
+        /**
+         * The pool of the buffers passed to {@link #write}.
+         */
+        BufferPool pool();
+    }
+
+    /**
+     * Writes the buffers to a connection, which passes them on to, e.g., a file channel without
+     * copying, hence the buffers are direct.
+     */
+    private static final class ConnectionSink implements BufferSink {
+        private final RConnection conn;
+
+        ConnectionSink(RConnection conn) {
+            this.conn = conn;
+        }
+
+        @Override
+        public boolean write(ByteBuffer buffer) throws IOException {
+            conn.writeBin(buffer);
+            return true;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            conn.flush();
+        }
+
+        @Override
+        public BufferPool pool() {
+            return BufferPool.DIRECT;
+        }
+    }
+
+    /**
+     * Keeps the buffers until the size of the serialized data is known, so that the result array
+     * is allocated (and the data copied) only once. The data only ever goes to the Java heap, so
+     * the buffers are heap buffers.
+     */
+    private static final class ArraySink implements BufferSink {
+        private final ArrayList<ByteBuffer> buffers = new ArrayList<>();
+        private long size;
+
+        @Override
+        public boolean write(ByteBuffer buffer) {
+            buffers.add(buffer);
+            size += buffer.remaining();
+            return false;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public BufferPool pool() {
+            return BufferPool.HEAP;
+        }
+
+        byte[] toByteArray() {
+            if (size > Integer.MAX_VALUE) {
+                throw RError.error(RError.SHOW_CALLER2, RError.Message.GENERIC, "serialized object is too large for a raw vector");
+            }
+            byte[] result = new byte[(int) size];
+            int offset = 0;
+            for (ByteBuffer buffer : buffers) {
+                int n = buffer.remaining();
+                buffer.get(result, offset, n);
+                offset += n;
+                BufferPool.HEAP.release(buffer);
+            }
+            buffers.clear();
+            return result;
+        }
+
+        void release() {
+            for (ByteBuffer buffer : buffers) {
+                BufferPool.HEAP.release(buffer);
+            }
+            buffers.clear();
+        }
+    }
+
+    /**
+     * The buffers used by {@link XdrOutputFormat}, which are reused by all serializations so that
+     * serializing many small values, e.g., in {@link RChannel}, does not allocate a buffer each
+     * time.
+     */
+    private static final class BufferPool {
+        static final int BUFFER_SIZE = 64 * 1024;
+        private static final int MAX_POOLED = 64;
+
+        static final BufferPool DIRECT = new BufferPool(true);
+        static final BufferPool HEAP = new BufferPool(false);
+
+        private final boolean direct;
+        private final ConcurrentLinkedQueue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pooled = new AtomicInteger();
+
+        private BufferPool(boolean direct) {
+            this.direct = direct;
+        }
+
+        ByteBuffer acquire() {
+            ByteBuffer buffer = pool.poll();
+            if (buffer == null) {
+                return direct ? ByteBuffer.allocateDirect(BUFFER_SIZE) : ByteBuffer.allocate(BUFFER_SIZE);
+            }
+            pooled.decrementAndGet();
+            buffer.clear();
+            return buffer;
+        }
+
+        void release(ByteBuffer buffer) {
+            if (pooled.incrementAndGet() <= MAX_POOLED) {
+                pool.offer(buffer);
+            } else {
+                pooled.decrementAndGet();
+            }
+        }
+    }
+
     private abstract static class POutputStream {
-        protected OutputStream os;
+        protected final BufferSink sink;
 
-        POutputStream(OutputStream os) {
-            this.os = os;
+        POutputStream(BufferSink sink) {
+            this.sink = sink;
         }
 
         abstract void writeInt(int value) throws IOException;
@@ -1183,28 +1436,33 @@ public class RSerialize {
 
         abstract void writeRaw(byte[] value) throws IOException;
 
+        abstract void writeIntVector(RIntVector vec) throws IOException;
+
+        abstract void writeDoubleVector(RDoubleVector vec) throws IOException;
+
         abstract void flush() throws IOException;
 
+        /**
+         * Returns the buffer to the pool; the stream cannot be used afterwards.
+         */
+        abstract void release();
     }
 
     private static class XdrOutputFormat extends POutputStream {
-        private final byte[] buf;
-        private int offset;
+        // XDR is big-endian, which is the initial byte order of all buffers
+        private ByteBuffer buf;
 
-        XdrOutputFormat(OutputStream os) {
-            super(os);
-            buf = new byte[8192];
-            buf[offset++] = 'X';
-            buf[offset++] = '\n';
+        XdrOutputFormat(BufferSink sink) {
+            super(sink);
+            buf = sink.pool().acquire();
+            buf.put((byte) 'X');
+            buf.put((byte) '\n');
         }
 
         @Override
         void writeInt(int value) throws IOException {
             ensureSpace(4);
-            buf[offset++] = (byte) (value >>> 24);
-            buf[offset++] = (byte) (value >> 16);
-            buf[offset++] = (byte) (value >> 8);
-            buf[offset++] = (byte) value;
+            buf.putInt(value);
         }
 
         @Override
@@ -1216,75 +1474,95 @@ public class RSerialize {
                     break;
                 }
             }
-            if (simple && value.length() <= buf.length) {
-                writeInt(value.length());
-                ensureSpace(value.length());
+            if (simple && value.length() <= BufferPool.BUFFER_SIZE - 4) {
+                ensureSpace(4 + value.length());
+                buf.putInt(value.length());
                 for (int i = 0; i < value.length(); i++) {
-                    buf[offset++] = (byte) value.charAt(i);
+                    buf.put((byte) value.charAt(i));
                 }
             } else {
                 byte[] bytes = value.getBytes();
-                int bytesLen = bytes.length;
-                int totalLen = bytesLen + 4;
-                if (totalLen > buf.length) {
-                    // too large to fit buffer
-                    ensureSpace(4);
-                    writeInt(bytesLen);
-                    flushBuffer();
-                    os.write(bytes);
-                } else {
-                    ensureSpace(totalLen);
-                    writeInt(bytesLen);
-                    System.arraycopy(bytes, 0, buf, offset, bytesLen);
-                    offset += bytesLen;
-                }
+                writeInt(bytes.length);
+                writeBytes(bytes, bytes.length);
             }
         }
 
         @Override
         void writeRaw(byte[] value) throws IOException {
-            int valueLen = value.length;
-            if (valueLen > buf.length) {
-                flushBuffer();
-                os.write(value);
-            } else {
-                ensureSpace(valueLen);
-                System.arraycopy(value, 0, buf, offset, valueLen);
-                offset += valueLen;
+            writeBytes(value, value.length);
+        }
+
+        private void writeBytes(byte[] value, int length) throws IOException {
+            int done = 0;
+            while (done < length) {
+                ensureSpace(1);
+                int n = Math.min(length - done, buf.remaining());
+                buf.put(value, done, n);
+                done += n;
             }
         }
 
         @Override
         void writeDouble(double value) throws IOException {
             ensureSpace(8);
-            long valueBits = Double.doubleToRawLongBits(value);
-            buf[offset++] = (byte) (valueBits >>> 56);
-            buf[offset++] = (byte) ((valueBits >> 48) & 0xff);
-            buf[offset++] = (byte) ((valueBits >> 40) & 0xff);
-            buf[offset++] = (byte) ((valueBits >> 32) & 0xff);
-            buf[offset++] = (byte) ((valueBits >> 24) & 0xff);
-            buf[offset++] = (byte) ((valueBits >> 16) & 0xff);
-            buf[offset++] = (byte) ((valueBits >> 8) & 0xff);
-            buf[offset++] = (byte) (valueBits & 0xff);
+            buf.putDouble(value);
+        }
+
+        @Override
+        void writeIntVector(RIntVector vec) throws IOException {
+            int length = vec.getLength();
+            int done = 0;
+            while (done < length) {
+                ensureSpace(Integer.BYTES);
+                int n = Math.min(length - done, buf.remaining() / Integer.BYTES);
+                vec.copyRegion(done, buf.asIntBuffer(), n);
+                buf.position(buf.position() + n * Integer.BYTES);
+                done += n;
+            }
+        }
+
+        @Override
+        void writeDoubleVector(RDoubleVector vec) throws IOException {
+            int length = vec.getLength();
+            int done = 0;
+            while (done < length) {
+                ensureSpace(Double.BYTES);
+                int n = Math.min(length - done, buf.remaining() / Double.BYTES);
+                vec.copyRegion(done, buf.asDoubleBuffer(), n);
+                buf.position(buf.position() + n * Double.BYTES);
+                done += n;
+            }
         }
 
         private void ensureSpace(int n) throws IOException {
-            if (offset + n > buf.length) {
+            if (buf.remaining() < n) {
                 flushBuffer();
             }
         }
 
-        void flushBuffer() throws IOException {
-            if (offset > 0) {
-                os.write(buf, 0, offset);
-                offset = 0;
+        private void flushBuffer() throws IOException {
+            if (buf.position() > 0) {
+                buf.flip();
+                if (sink.write(buf)) {
+                    buf.clear();
+                } else {
+                    buf = sink.pool().acquire();
+                }
             }
         }
 
         @Override
         void flush() throws IOException {
             flushBuffer();
-            os.flush();
+            sink.flush();
+        }
+
+        @Override
+        void release() {
+            if (buf != null) {
+                sink.pool().release(buf);
+                buf = null;
+            }
         }
     }
 
@@ -1299,7 +1577,7 @@ public class RSerialize {
         private final POutputStream stream;
         private final int version;
 
-        private Output(OutputStream os, int format, int version, CallHook hook) throws IOException {
+        private Output(BufferSink sink, int format, int version, CallHook hook) throws IOException {
             super(hook);
             this.state = new PLState();
             this.version = version;
@@ -1309,7 +1587,7 @@ public class RSerialize {
                 case BINARY:
                     throw formatError((byte) format, true);
                 default:
-                    stream = new XdrOutputFormat(os);
+                    stream = new XdrOutputFormat(sink);
                     break;
             }
         }
@@ -1325,8 +1603,12 @@ public class RSerialize {
                 default:
                     throw RInternalError.unimplemented();
             }
-            writeItem(obj);
-            stream.flush();
+            try {
+                writeItem(obj);
+                stream.flush();
+            } finally {
+                stream.release();
+            }
         }
 
         private static SEXPTYPE saveSpecialHook(Object item) {
@@ -1450,6 +1732,10 @@ public class RSerialize {
                             attributes = null;
                         }
                     }
+                    if (gnuRType == SEXPTYPE.PROMSXP) {
+                        // forces the variable of a text connection, see serializePromise
+                        TextConnections.getConnectionValue((RPromise) obj);
+                    }
                     boolean hasTag = gnuRType == SEXPTYPE.CLOSXP || (gnuRType == SEXPTYPE.PROMSXP && !((RPromise) obj).isEvaluated()) || (type == SEXPTYPE.LISTSXP && !((RPairList) obj).isNullTag());
                     int gpbits = getGPBits(obj);
                     int flags = Flags.packFlags(gnuRType, gpbits, isObject(obj), attributes != null, hasTag);
@@ -1469,8 +1755,12 @@ public class RSerialize {
                         case INTSXP: {
                             RAbstractIntVector vec = (RAbstractIntVector) obj;
                             stream.writeInt(vec.getLength());
-                            for (int i = 0; i < vec.getLength(); i++) {
-                                stream.writeInt(vec.getDataAt(i));
+                            if (vec instanceof RIntVector) {
+                                stream.writeIntVector((RIntVector) vec);
+                            } else {
+                                for (int i = 0; i < vec.getLength(); i++) {
+                                    stream.writeInt(vec.getDataAt(i));
+                                }
                             }
                             break;
                         }
@@ -1478,8 +1768,12 @@ public class RSerialize {
                         case REALSXP: {
                             RAbstractDoubleVector vec = (RAbstractDoubleVector) obj;
                             stream.writeInt(vec.getLength());
-                            for (int i = 0; i < vec.getLength(); i++) {
-                                stream.writeDouble(vec.getDataAt(i));
+                            if (vec instanceof RDoubleVector) {
+                                stream.writeDoubleVector((RDoubleVector) vec);
+                            } else {
+                                for (int i = 0; i < vec.getLength(); i++) {
+                                    stream.writeDouble(vec.getDataAt(i));
+                                }
                             }
                             break;
                         }
@@ -1533,7 +1827,7 @@ public class RSerialize {
 
                         case RAWSXP: {
                             RRawVector raw = (RRawVector) obj;
-                            byte[] data = raw.getDataWithoutCopying();
+                            byte[] data = raw.getReadonlyData();
                             stream.writeInt(data.length);
                             stream.writeRaw(data);
                             break;
@@ -2076,19 +2370,21 @@ public class RSerialize {
      */
     @TruffleBoundary
     public static byte[] serialize(Object obj, int type, int version, Object refhook) {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ArraySink sink = new ArraySink();
         try {
-            Output output = new Output(out, type, version, (CallHook) refhook);
+            Output output = new Output(sink, type, version, (CallHook) refhook);
             output.serialize(obj);
-            return out.toByteArray();
+            return sink.toByteArray();
         } catch (IOException ex) {
             throw RInternalError.shouldNotReachHere();
+        } finally {
+            sink.release();
         }
     }
 
     @TruffleBoundary
     public static void serialize(RConnection conn, Object obj, int type, int version, Object refhook) throws IOException {
-        Output output = new Output(conn.getOutputStream(), type, version, (CallHook) refhook);
+        Output output = new Output(new ConnectionSink(conn), type, version, (CallHook) refhook);
         output.serialize(obj);
     }
 
@@ -2364,7 +2660,14 @@ public class RSerialize {
          */
         Object value;
         Object tag;
-        if (promise.isEvaluated()) {
+        RSyntaxElement expr = promise.getRep().asRSyntaxNode();
+        Object connectionValue = TextConnections.getConnectionValue(promise);
+        if (connectionValue != null) {
+            // the expression refers to a connection, which does not survive serialization
+            value = connectionValue;
+            tag = RNull.instance;
+            expr = RSyntaxConstant.createDummyConstant(RSyntaxNode.LAZY_DEPARSE, connectionValue);
+        } else if (promise.isEvaluated()) {
             value = promise.getValue();
             tag = RNull.instance;
         } else {
@@ -2374,7 +2677,7 @@ public class RSerialize {
         state.openPairList().setTag(tag);
         state.setCar(value);
         state.openPairList();
-        new SerializeVisitor(state).accept(promise.getRep().asRSyntaxNode());
+        new SerializeVisitor(state).accept(expr);
         state.setCdr(state.closePairList());
         return state.closePairList();
     }
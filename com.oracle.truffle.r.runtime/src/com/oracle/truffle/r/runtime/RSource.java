@@ -70,6 +70,7 @@ public class RSource {
         EVAL_WRAPPER("<eval wrapper>"),
         NO_SOURCE("<no source>"),
         CONTEXT_EVAL("<context_eval>"),
+        CONTEXT_WORKER("<context_worker>"),
         RF_FINDFUN("<Rf_findfun>"),
         BROWSER_INPUT("<browser_input>"),
         CLEAR_WARNINGS("<clear_warnings>"),
@@ -79,6 +80,7 @@ public class RSource {
         DEBUGTEST_DEBUG("<debugtest.r>"),
         DEBUGTEST_EVAL("<evaltest.r>"),
         TCK_INIT("<tck_initialization>"),
+        BENCHMARK("<benchmark>"),
         PACKAGE("<package:%s deparse>"),
         DEPARSE_ERROR("<package_deparse_error>"),
         LAPPLY("<lapply>"),
@@ -27,6 +27,7 @@ import java.util.Arrays;
 
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.r.runtime.RError.Message;
+import com.oracle.truffle.r.runtime.conn.TextConnections;
 import com.oracle.truffle.r.runtime.context.RContext;
 import com.oracle.truffle.r.runtime.data.RArgsValuesAndNames;
 import com.oracle.truffle.r.runtime.data.RLanguage;
@@ -60,6 +61,10 @@ public class RSubstitute {
             // strange special case, mimics GnuR behavior
             return RSyntaxLookup.createDummyLookup(RSyntaxNode.LAZY_DEPARSE, "", false);
         } else if (val instanceof RPromise) {
+            Object connectionValue = TextConnections.getConnectionValue((RPromise) val);
+            if (connectionValue != null) {
+                return RSyntaxConstant.createDummyConstant(RSyntaxNode.LAZY_DEPARSE, connectionValue);
+            }
             return ((RPromise) val).getRep().asRSyntaxNode();
         } else if (val instanceof RLanguage) {
             return ((RLanguage) val).getRep().asRSyntaxNode();
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2017, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.runtime;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.WeakHashMap;
+
+import com.oracle.truffle.api.frame.FrameDescriptor;
+import com.oracle.truffle.api.frame.MaterializedFrame;
+import com.oracle.truffle.r.runtime.context.RContext;
+import com.oracle.truffle.r.runtime.data.RStringVector;
+import com.oracle.truffle.r.runtime.env.frame.FrameSlotChangeMonitor;
+
+/**
+ * The S3 dispatch results shared by all megamorphic {@code UseMethod} call sites of a context. The
+ * result of the lookups depends on the hierarchy of frame descriptors seen from the caller, so the
+ * entries are grouped by the caller's frame descriptor. The descriptors are only weakly referenced,
+ * like in {@link FrameSlotChangeMonitor}, so the table does not keep the descriptors of collected
+ * functions and environments alive.
+ */
+public final class S3DispatchTable {
+
+    private S3DispatchTable() {
+        // no instances
+    }
+
+    /**
+     * Identifies a dispatch in the table of the caller's frame descriptor. The result of the
+     * lookups depends on the generic, the class vector and the environment that defines the
+     * generic, which holds the methods table.
+     */
+    public static final class Key {
+        private final String generic;
+        private final String group;
+        private final String[] classes;
+        private final boolean nextMethod;
+        private final MaterializedFrame genericDefFrame;
+        private final int hash;
+
+        private Key(String generic, String group, String[] classes, boolean nextMethod, MaterializedFrame genericDefFrame) {
+            this.generic = generic;
+            this.group = group;
+            this.classes = classes;
+            this.nextMethod = nextMethod;
+            this.genericDefFrame = genericDefFrame;
+            this.hash = (generic.hashCode() * 31 + Arrays.hashCode(classes)) * 31 + System.identityHashCode(genericDefFrame);
+        }
+
+        public static Key create(String generic, String group, RStringVector type, boolean nextMethod, MaterializedFrame genericDefFrame) {
+            return new Key(generic, group, type.getDataWithoutCopying(), nextMethod, genericDefFrame);
+        }
+
+        /**
+         * The key that goes into the table must not share the (mutable) class vector.
+         */
+        public Key copy() {
+            return new Key(generic, group, classes.clone(), nextMethod, genericDefFrame);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash && nextMethod == other.nextMethod && genericDefFrame == other.genericDefFrame &&
+                            generic.equals(other.generic) && (group == null ? other.group == null : group.equals(other.group)) && Arrays.equals(classes, other.classes);
+        }
+    }
+
+    /**
+     * The result of a dispatch, which is defined by the lookup nodes, together with what is needed
+     * to check that it still holds.
+     */
+    public abstract static class Entry {
+        public abstract boolean isValid(MaterializedFrame callerFrame, Object methodsTable);
+    }
+
+    public static final class ContextStateImpl implements RContext.ContextState {
+        private static final int MAX_SIZE = 4096;
+
+        private final WeakHashMap<FrameDescriptor, HashMap<Key, Entry>> entries = new WeakHashMap<>();
+        /**
+         * The number of entries, which does not account for the entries of collected descriptors.
+         */
+        private int size;
+
+        public Entry get(FrameDescriptor callerDescriptor, Key key) {
+            HashMap<Key, Entry> callerEntries = entries.get(callerDescriptor);
+            return callerEntries == null ? null : callerEntries.get(key);
+        }
+
+        public void put(FrameDescriptor callerDescriptor, Key key, Entry entry) {
+            if (size >= MAX_SIZE) {
+                entries.clear();
+                size = 0;
+            }
+            if (entries.computeIfAbsent(callerDescriptor, d -> new HashMap<>()).put(key, entry) == null) {
+                size++;
+            }
+        }
+
+        public void remove(FrameDescriptor callerDescriptor, Key key) {
+            HashMap<Key, Entry> callerEntries = entries.get(callerDescriptor);
+            if (callerEntries != null && callerEntries.remove(key) != null) {
+                size--;
+            }
+        }
+
+        @Override
+        public void beforeDestroy(RContext context) {
+            entries.clear();
+            size = 0;
+        }
+
+        public static ContextStateImpl newContextState() {
+            return new ContextStateImpl();
+        }
+    }
+}
@@ -46,6 +46,7 @@ import com.oracle.truffle.api.frame.FrameInstance;
 import com.oracle.truffle.api.frame.FrameInstance.FrameAccess;
 import com.oracle.truffle.api.frame.FrameInstanceVisitor;
 import com.oracle.truffle.api.frame.FrameSlot;
+import com.oracle.truffle.api.frame.MaterializedFrame;
 import com.oracle.truffle.api.nodes.GraphPrintVisitor;
 import com.oracle.truffle.api.source.Source;
 import com.oracle.truffle.api.source.SourceSection;
@@ -346,6 +347,10 @@ public final class Utils {
      * {@link #getActualCurrentFrame()} as suggested. But if they don't, then this will incorrectly
      * return {@code null}.
      *
+     * If the frame is linked to {@code target} (see {@link RCaller#getFrame()}), it is returned
+     * without walking the stack. Otherwise, the function of the frame found on the stack is made to
+     * link its frames from now on.
+     *
      * @param fa kind of access required to the frame
      * @param target identifies which frame is required
      * @return {@link Frame} instance or {@code null} if {@code depth} is out of range
@@ -353,7 +358,11 @@ public final class Utils {
     @TruffleBoundary
     public static Frame getStackFrame(FrameAccess fa, RCaller target) {
         assert target != null;
-        return Truffle.getRuntime().iterateFrames(new FrameInstanceVisitor<Frame>() {
+        MaterializedFrame linked = target.getFrame();
+        if (linked != null) {
+            return linked;
+        }
+        Frame result = Truffle.getRuntime().iterateFrames(new FrameInstanceVisitor<Frame>() {
             boolean first = true;
 
             @Override
@@ -371,6 +380,40 @@ public final class Utils {
                 return null;
             }
         });
+        enableFrameLinks(result);
+        return result;
+    }
+
+    /**
+     * Like {@link #getStackFrame(FrameAccess, int)}, but first follows the parents of
+     * {@code current}, the caller of the current frame, to the caller with the given depth. If the
+     * frame of that caller is linked to it, the stack is not walked at all.
+     */
+    @TruffleBoundary
+    public static Frame getStackFrame(FrameAccess fa, RCaller current, int depth) {
+        RCaller call = current;
+        while (call != null && (call.isPromise() || call.getDepth() > depth)) {
+            call = call.getParent();
+        }
+        if (call != null && call.getDepth() == depth && call.getFrame() != null) {
+            return call.getFrame();
+        }
+        Frame result = getStackFrame(fa, depth);
+        enableFrameLinks(result);
+        return result;
+    }
+
+    /**
+     * Called after a frame has been found by walking the stack, so that the function it belongs to
+     * links its frames from now on and the next lookup of one of them is cheap.
+     */
+    private static void enableFrameLinks(Frame frame) {
+        if (frame != null && !(frame instanceof VirtualEvalFrame)) {
+            RFunction function = RArguments.getFunction(frame);
+            if (function != null && !function.isBuiltin()) {
+                RContext.getRRuntimeASTAccess().enableFrameLinks(function);
+            }
+        }
     }
 
     /**
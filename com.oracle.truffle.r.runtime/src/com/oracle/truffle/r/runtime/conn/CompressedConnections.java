@@ -22,7 +22,6 @@
  */
 package com.oracle.truffle.r.runtime.conn;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -38,6 +37,9 @@ import org.tukaani.xz.XZ;
 import org.tukaani.xz.XZInputStream;
 import org.tukaani.xz.XZOutputStream;
 
+import com.oracle.truffle.r.runtime.BZip2InputStream;
+import com.oracle.truffle.r.runtime.BZip2OutputStream;
+import com.oracle.truffle.r.runtime.FastROptions;
 import com.oracle.truffle.r.runtime.RCompression;
 import com.oracle.truffle.r.runtime.RCompression.Type;
 import com.oracle.truffle.r.runtime.RError;
@@ -53,6 +55,10 @@ import com.oracle.truffle.r.runtime.data.model.RAbstractStringVector;
 
 public class CompressedConnections {
     public static final int GZIP_BUFFER_SIZE = (2 << 20);
+    /**
+     * The amount of uncompressed data in each gzip member written by a parallel gzip connection.
+     */
+    private static final int PARALLEL_GZIP_BLOCK_SIZE = 1 << 20;
 
     /**
      * Base class for all modes of gzfile/bzfile/xzfile connections. N.B. In GNU R these can read
@@ -62,7 +68,8 @@ public class CompressedConnections {
     public static class CompressedRConnection extends BasePathRConnection {
         private final RCompression.Type cType;
         @SuppressWarnings("unused") private final String encoding; // TODO
-        @SuppressWarnings("unused") private final int compression; // TODO
+        private final int compression;
+        private boolean parallel = FastROptions.ParallelGZip.getBooleanValue();
 
         public CompressedRConnection(String path, String modeString, Type cType, String encoding, int compression) throws IOException {
             super(path, mapConnectionClass(cType), modeString, AbstractOpenMode.ReadBinary);
@@ -117,9 +124,8 @@ public class CompressedConnections {
                             delegate = new CompressedInputRConnection(this, new XZInputStream(new FileInputStream(path)));
                             break;
                         case BZIP2:
-                            // no in Java support, so go via byte array
-                            byte[] bzipUdata = RCompression.bzipUncompressFromFile(path);
-                            delegate = new ByteStreamCompressedInputRConnection(this, new ByteArrayInputStream(bzipUdata));
+                            delegate = new CompressedInputRConnection(this, new BZip2InputStream(new FileInputStream(path)));
+                            break;
                     }
                     break;
 
@@ -130,13 +136,14 @@ public class CompressedConnections {
                     boolean append = openMode == AbstractOpenMode.Append || openMode == AbstractOpenMode.AppendBinary;
                     switch (cType) {
                         case GZIP:
-                            delegate = new CompressedOutputRConnection(this, new GZIPOutputStream(new FileOutputStream(path, append), GZIP_BUFFER_SIZE));
+                            delegate = new GZIPOutputRConnection(this, new FileOutputStream(path, append), compression, parallel && canCompressInParallel());
                             break;
                         case BZIP2:
-                            delegate = new BZip2OutputRConnection(this, new ByteArrayOutputStream(), append);
+                            // the compression level is the block size
+                            delegate = new CompressedOutputRConnection(this, new BZip2OutputStream(new FileOutputStream(path, append), Math.max(1, compression)));
                             break;
                         case XZ:
-                            delegate = new CompressedOutputRConnection(this, new XZOutputStream(new FileOutputStream(path, append), new LZMA2Options(), XZ.CHECK_CRC32));
+                            delegate = new CompressedOutputRConnection(this, new ParallelXZOutputStream(new FileOutputStream(path, append), compression));
                             break;
                     }
                     break;
@@ -147,6 +154,42 @@ public class CompressedConnections {
             setDelegate(delegate);
         }
 
+        /**
+         * Selects whether gzip output is compressed in independent blocks on the common fork-join
+         * pool, each of which becomes a separate gzip member. Readers of gzip files, including
+         * GnuR, accept a concatenation of members. This can only be changed before anything has
+         * been written and has no effect at compression level 0, which leaves nothing to
+         * parallelize.
+         *
+         * @return whether the output is compressed in parallel
+         */
+        public boolean setParallelCompression(boolean value) {
+            if (!canCompressInParallel()) {
+                return false;
+            }
+            if (theConnection instanceof GZIPOutputRConnection) {
+                return ((GZIPOutputRConnection) theConnection).setParallel(value);
+            }
+            // takes effect when the connection is opened for writing
+            parallel = value;
+            return value;
+        }
+
+        /**
+         * Returns whether the output is (or will be) compressed in parallel, see
+         * {@link #setParallelCompression}.
+         */
+        public boolean isParallelCompression() {
+            if (theConnection instanceof GZIPOutputRConnection) {
+                return ((GZIPOutputRConnection) theConnection).parallel;
+            }
+            return parallel && canCompressInParallel();
+        }
+
+        private boolean canCompressInParallel() {
+            return cType == RCompression.Type.GZIP && compression != 0;
+        }
+
         // @Override
         /**
          * GnuR behavior for lazy connections is odd, e.g. gzfile returns "text", even though the
@@ -157,11 +200,11 @@ public class CompressedConnections {
     }
 
     private static class CompressedInputRConnection extends DelegateReadRConnection implements ReadWriteHelper {
-        private final InputStream inputStream;
+        private final LineReader inputStream;
 
         protected CompressedInputRConnection(CompressedRConnection base, InputStream is) {
             super(base);
-            this.inputStream = is;
+            this.inputStream = new LineReader(is);
         }
 
         @Override
@@ -181,7 +224,7 @@ public class CompressedConnections {
 
         @Override
         public String[] readLinesInternal(int n, boolean warn, boolean skipNul) throws IOException {
-            return readLinesHelper(inputStream, n, warn, skipNul);
+            return inputStream.readLines(n, warn, skipNul);
         }
 
         @Override
@@ -189,6 +232,11 @@ public class CompressedConnections {
             return inputStream;
         }
 
+        @Override
+        public long[] getReadStatistics() {
+            return inputStream.getStatistics();
+        }
+
         @Override
         public void closeAndDestroy() throws IOException {
             base.closed = true;
@@ -201,9 +249,96 @@ public class CompressedConnections {
         }
     }
 
-    private static class ByteStreamCompressedInputRConnection extends CompressedInputRConnection {
-        ByteStreamCompressedInputRConnection(CompressedRConnection base, ByteArrayInputStream is) {
-            super(base, is);
+    /**
+     * Compresses blocks of three times the dictionary size (as {@code xz --threads} does) in
+     * parallel into separate xz streams. GnuR and {@link XZInputStream} read concatenated streams.
+     * Each block in flight needs the block, its result and the encoder state, e.g., about 94MB for
+     * the default preset, so the number of blocks compressed at a time is bounded by memory.
+     */
+    private static final class ParallelXZOutputStream extends ParallelCompressedOutputStream {
+        private final int preset;
+
+        ParallelXZOutputStream(OutputStream out, int compression) throws IOException {
+            // negative values request the "extreme" variants of the presets, which are not supported
+            this(out, Math.abs(compression), RCompression.lzmaOptions(Math.abs(compression), Long.MAX_VALUE));
+        }
+
+        private ParallelXZOutputStream(OutputStream out, int preset, LZMA2Options options) {
+            super(out, 3 * options.getDictSize(), 2L * 3 * options.getDictSize() + options.getEncoderMemoryUsage() * 1024L);
+            this.preset = preset;
+        }
+
+        @Override
+        protected byte[] compressBlock(byte[] data, int dataLength) throws IOException {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(dataLength / 4 + 64);
+            try (XZOutputStream xz = new XZOutputStream(bos, RCompression.lzmaOptions(preset, dataLength), XZ.CHECK_CRC32)) {
+                xz.write(data, 0, dataLength);
+            }
+            return bos.toByteArray();
+        }
+    }
+
+    /**
+     * A {@link GZIPOutputStream} with a given compression level.
+     */
+    private static final class LevelGZIPOutputStream extends GZIPOutputStream {
+        LevelGZIPOutputStream(OutputStream out, int size, int level) throws IOException {
+            super(out, size);
+            def.setLevel(level);
+        }
+    }
+
+    /**
+     * Compresses blocks of {@link #PARALLEL_GZIP_BLOCK_SIZE} in parallel into separate gzip
+     * members.
+     */
+    private static final class ParallelGZIPOutputStream extends ParallelCompressedOutputStream {
+        private final int level;
+
+        ParallelGZIPOutputStream(OutputStream out, int level) {
+            super(out, PARALLEL_GZIP_BLOCK_SIZE);
+            this.level = level;
+        }
+
+        @Override
+        protected byte[] compressBlock(byte[] data, int dataLength) throws IOException {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(dataLength / 2 + 64);
+            try (GZIPOutputStream gz = new LevelGZIPOutputStream(bos, 64 * 1024, level)) {
+                gz.write(data, 0, dataLength);
+            }
+            return bos.toByteArray();
+        }
+    }
+
+    /**
+     * Creates the compressing stream on the first write (which also writes the gzip header), so
+     * that {@link #setParallel} can still choose between sequential and parallel compression.
+     */
+    private static final class GZIPOutputRConnection extends CompressedOutputRConnection {
+        private final OutputStream file;
+        private final int level;
+        private boolean parallel;
+
+        GZIPOutputRConnection(CompressedRConnection base, OutputStream file, int level, boolean parallel) {
+            super(base, null);
+            this.file = file;
+            this.level = level;
+            this.parallel = parallel;
+        }
+
+        boolean setParallel(boolean value) {
+            if (outputStream == null) {
+                parallel = value;
+            }
+            return parallel;
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = parallel ? new ParallelGZIPOutputStream(file, level) : new LevelGZIPOutputStream(file, GZIP_BUFFER_SIZE, level);
+            }
+            return outputStream;
         }
     }
 
@@ -229,52 +364,32 @@ public class CompressedConnections {
         @Override
         public void close() throws IOException {
             flush();
-            outputStream.close();
+            getOutputStream().close();
         }
 
         @Override
         public void writeLines(RAbstractStringVector lines, String sep, boolean useBytes) throws IOException {
-            writeLinesHelper(outputStream, lines, sep);
+            writeLinesHelper(getOutputStream(), lines, sep);
         }
 
         @Override
         public void writeChar(String s, int pad, String eos, boolean useBytes) throws IOException {
-            writeCharHelper(outputStream, s, pad, eos);
+            writeCharHelper(getOutputStream(), s, pad, eos);
         }
 
         @Override
         public void writeBin(ByteBuffer buffer) throws IOException {
-            writeBinHelper(buffer, outputStream);
+            writeBinHelper(buffer, getOutputStream());
         }
 
         @Override
         public void writeString(String s, boolean nl) throws IOException {
-            writeStringHelper(outputStream, s, nl);
+            writeStringHelper(getOutputStream(), s, nl);
         }
 
         @Override
         public void flush() throws IOException {
-            outputStream.flush();
-        }
-    }
-
-    private static class BZip2OutputRConnection extends CompressedOutputRConnection {
-        private final ByteArrayOutputStream bos;
-        private final boolean append;
-
-        BZip2OutputRConnection(CompressedRConnection base, ByteArrayOutputStream os, boolean append) {
-            super(base, os);
-            this.bos = os;
-            this.append = append;
-        }
-
-        @Override
-        public void close() throws IOException {
-            flush();
-            outputStream.close();
-            // Now actually do the compression using sub-process
-            byte[] data = bos.toByteArray();
-            RCompression.bzipCompressToFile(data, ((BasePathRConnection) base).path, append);
+            getOutputStream().flush();
         }
     }
 }
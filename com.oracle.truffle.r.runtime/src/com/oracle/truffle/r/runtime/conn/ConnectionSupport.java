@@ -30,6 +30,8 @@ import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
@@ -313,6 +315,7 @@ public class ConnectionSupport {
         Socket("sockconn"),
         Text("textConnection"),
         URL("url"),
+        MMap("mmap"),
         Internal("internal");
 
         private final String printName;
@@ -654,6 +657,11 @@ public class ConnectionSupport {
             return theConnection.getInputStream();
         }
 
+        @Override
+        public long[] getReadStatistics() {
+            return theConnection == null ? null : theConnection.getReadStatistics();
+        }
+
         @Override
         public OutputStream getOutputStream() throws IOException {
             checkOpen();
@@ -696,6 +704,12 @@ public class ConnectionSupport {
             return theConnection.readBin(buffer);
         }
 
+        @Override
+        public ByteBuffer readBinView(int n) throws IOException {
+            checkOpen();
+            return theConnection.readBinView(n);
+        }
+
         @Override
         public byte[] readBinChars() throws IOException {
             checkOpen();
@@ -748,6 +762,14 @@ public class ConnectionSupport {
             return theConnection.isSeekable();
         }
 
+        /**
+         * Whether reading more than was asked for cannot block, i.e., the connection reads from a
+         * regular file or from memory. {@code scan} only reads lines ahead in that case.
+         */
+        public boolean canReadAhead() {
+            return false;
+        }
+
         /**
          * Subclass-specific creation of the {@link DelegateRConnection} using {@link #openMode}. To
          * support both lazy and non-lazy creation, the implementation of this method must
@@ -1120,5 +1142,11 @@ public class ConnectionSupport {
         public String getSummaryDescription() {
             return path;
         }
+
+        @Override
+        public boolean canReadAhead() {
+            // not, e.g., a fifo or a device
+            return Files.isRegularFile(Paths.get(path));
+        }
     }
 }
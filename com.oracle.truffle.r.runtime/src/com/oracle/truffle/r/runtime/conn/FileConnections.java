@@ -22,9 +22,7 @@
  */
 package com.oracle.truffle.r.runtime.conn;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -37,6 +35,7 @@ import java.util.zip.GZIPInputStream;
 import org.tukaani.xz.XZInputStream;
 
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.r.runtime.BZip2InputStream;
 import com.oracle.truffle.r.runtime.RCompression;
 import com.oracle.truffle.r.runtime.RError;
 import com.oracle.truffle.r.runtime.RInternalError;
@@ -102,30 +101,30 @@ public class FileConnections {
     }
 
     static class FileReadTextRConnection extends DelegateReadRConnection implements ReadWriteHelper {
-        private InputStream inputStream;
+        private final LineReader inputStream;
 
         FileReadTextRConnection(BasePathRConnection base) throws IOException {
             super(base);
             // can be compressed - check for it
             RCompression.Type cType = RCompression.getCompressionType(base.path);
+            InputStream in;
             switch (cType) {
                 case NONE:
-                    inputStream = new BufferedInputStream(new FileInputStream(base.path));
+                    in = new FileInputStream(base.path);
                     break;
                 case GZIP:
-                    inputStream = new GZIPInputStream(new FileInputStream(base.path), CompressedConnections.GZIP_BUFFER_SIZE);
+                    in = new GZIPInputStream(new FileInputStream(base.path), CompressedConnections.GZIP_BUFFER_SIZE);
                     break;
                 case BZIP2:
-                    // no in Java support, so go via byte array
-                    byte[] bzipUdata = RCompression.bzipUncompressFromFile(base.path);
-                    inputStream = new ByteArrayInputStream(bzipUdata);
+                    in = new BZip2InputStream(new FileInputStream(base.path));
                     break;
                 case XZ:
-                    inputStream = new XZInputStream(new FileInputStream(base.path));
+                    in = new XZInputStream(new FileInputStream(base.path));
                     break;
                 default:
                     throw RError.nyi(RError.SHOW_CALLER2, "compression type: " + cType.name());
             }
+            inputStream = new LineReader(in);
         }
 
         @Override
@@ -141,7 +140,7 @@ public class FileConnections {
         @TruffleBoundary
         @Override
         public String[] readLinesInternal(int n, boolean warn, boolean skipNul) throws IOException {
-            return readLinesHelper(inputStream, n, warn, skipNul);
+            return inputStream.readLines(n, warn, skipNul);
         }
 
         @Override
@@ -154,6 +153,11 @@ public class FileConnections {
             return inputStream;
         }
 
+        @Override
+        public long[] getReadStatistics() {
+            return inputStream.getStatistics();
+        }
+
         @Override
         public void closeAndDestroy() throws IOException {
             base.closed = true;
@@ -218,11 +222,17 @@ public class FileConnections {
     }
 
     static class FileReadBinaryRConnection extends DelegateReadRConnection implements ReadWriteHelper {
-        private final FileInputStream inputStream;
+        private final FileInputStream fileStream;
+        /**
+         * All reads except {@link #readBin} go through this buffer, whose content has to be taken
+         * into account when accessing the file channel directly.
+         */
+        private final LineReader inputStream;
 
         FileReadBinaryRConnection(BasePathRConnection base) throws IOException {
             super(base);
-            inputStream = new FileInputStream(base.path);
+            fileStream = new FileInputStream(base.path);
+            inputStream = new LineReader(fileStream);
         }
 
         @Override
@@ -232,7 +242,16 @@ public class FileConnections {
 
         @Override
         public int readBin(ByteBuffer buffer) throws IOException {
-            return inputStream.getChannel().read(buffer);
+            int n = inputStream.readBuffered(buffer);
+            if (buffer.hasRemaining()) {
+                int count = fileStream.getChannel().read(buffer);
+                if (count > 0) {
+                    n += count;
+                } else if (n == 0) {
+                    return count;
+                }
+            }
+            return n;
         }
 
         @Override
@@ -243,7 +262,7 @@ public class FileConnections {
         @TruffleBoundary
         @Override
         public String[] readLinesInternal(int n, boolean warn, boolean skipNul) throws IOException {
-            return readLinesHelper(inputStream, n, warn, skipNul);
+            return inputStream.readLines(n, warn, skipNul);
         }
 
         @Override
@@ -251,6 +270,11 @@ public class FileConnections {
             return inputStream;
         }
 
+        @Override
+        public long[] getReadStatistics() {
+            return inputStream.getStatistics();
+        }
+
         @Override
         public void closeAndDestroy() throws IOException {
             base.closed = true;
@@ -269,17 +293,19 @@ public class FileConnections {
 
         @Override
         public long seek(long offset, SeekMode seekMode, SeekRWMode seekRWMode) throws IOException {
-            long position = inputStream.getChannel().position();
+            long position = fileStream.getChannel().position() - inputStream.buffered();
             switch (seekMode) {
                 case ENQUIRE:
                     break;
                 case CURRENT:
                     if (offset != 0) {
-                        inputStream.getChannel().position(position + offset);
+                        inputStream.discardBuffer();
+                        fileStream.getChannel().position(position + offset);
                     }
                     break;
                 case START:
-                    inputStream.getChannel().position(offset);
+                    inputStream.discardBuffer();
+                    fileStream.getChannel().position(offset);
                     break;
                 case END:
                     throw RInternalError.unimplemented();
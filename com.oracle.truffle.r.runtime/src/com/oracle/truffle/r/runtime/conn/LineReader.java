@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2017, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.runtime.conn;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.oracle.truffle.r.runtime.RError;
+
+/**
+ * A buffered {@link InputStream} that implements {@code readLines} directly on its buffer: line
+ * terminators are searched for in the buffered bytes and each line is decoded at once by a
+ * {@link CharsetDecoder} that is reused for all lines. Since binary reads are served from the same
+ * buffer, text and binary operations can be mixed on a connection that reads through this class.
+ *
+ * Like {@link ConnectionSupport.ReadWriteHelper#readLinesHelper}, this assumes an encoding in which
+ * {@code '\n'}, {@code '\r'} and {@code '\0'} are single bytes.
+ */
+final class LineReader extends InputStream {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final CharsetDecoder decoder = Charset.defaultCharset().newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private CharBuffer chars = CharBuffer.allocate(256);
+    /**
+     * The buffered bytes are {@code buffer[pos..limit)}.
+     */
+    private int pos;
+    private int limit;
+    /**
+     * A line ended with a {@code '\r'} that was the last buffered byte: the {@code '\n'} of a
+     * crlf pair, if any, is swallowed by the next {@link #fill()} instead of blocking for it.
+     */
+    private boolean pendingCR;
+
+    private long bytesRead;
+    private long linesRead;
+    private long readLinesNanos;
+
+    LineReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Moves the buffered bytes to the start of the buffer, growing it if it is full, and reads
+     * more bytes from the underlying stream.
+     *
+     * @return {@code false} if the end of the stream has been reached
+     */
+    private boolean fill() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int n = in.read(buffer, limit, buffer.length - limit);
+        if (n <= 0) {
+            pendingCR = false;
+            return false;
+        }
+        limit += n;
+        bytesRead += n;
+        if (pendingCR) {
+            pendingCR = false;
+            if (buffer[pos] == '\n') {
+                pos++;
+                return pos < limit || fill();
+            }
+        }
+        return true;
+    }
+
+    String[] readLines(int n, boolean warn, boolean skipNul) throws IOException {
+        long start = System.nanoTime();
+        ArrayList<String> lines = new ArrayList<>();
+        while (n <= 0 || lines.size() < n) {
+            int i = pos;
+            boolean nul = false;
+            boolean eof = false;
+            while (true) {
+                byte[] b = buffer;
+                int l = limit;
+                while (i < l) {
+                    byte ch = b[i];
+                    if (ch == '\n' || ch == '\r') {
+                        break;
+                    } else if (ch == 0) {
+                        nul = true;
+                    }
+                    i++;
+                }
+                if (i < l) {
+                    break;
+                }
+                int scanned = i - pos;
+                if (!fill()) {
+                    eof = true;
+                    break;
+                }
+                i = pos + scanned;
+            }
+            if (eof) {
+                if (limit > pos) {
+                    /*
+                     * TODO GnuR says keep data and output a warning if blocking, otherwise silently
+                     * push back. FastR doesn't support non-blocking yet, so we keep the data.
+                     */
+                    lines.add(decode(pos, limit, nul && skipNul));
+                    pos = limit;
+                    if (warn) {
+                        RError.warning(RError.SHOW_CALLER2, RError.Message.INCOMPLETE_FINAL_LINE, "TODO: connection path");
+                    }
+                }
+                break;
+            }
+            lines.add(decode(pos, i, nul && skipNul));
+            pos = i + 1;
+            if (buffer[i] == '\r') {
+                // swallow the lf of a crlf pair, without blocking if it has not arrived yet
+                if (pos < limit) {
+                    if (buffer[pos] == '\n') {
+                        pos++;
+                    }
+                } else {
+                    pendingCR = true;
+                }
+            }
+        }
+        linesRead += lines.size();
+        readLinesNanos += System.nanoTime() - start;
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    private String decode(int from, int to, boolean removeNul) {
+        int end = to;
+        if (removeNul) {
+            end = from;
+            for (int i = from; i < to; i++) {
+                if (buffer[i] != 0) {
+                    buffer[end++] = buffer[i];
+                }
+            }
+        }
+        int length = end - from;
+        int maxChars = (int) Math.ceil(length * (double) decoder.maxCharsPerByte());
+        if (chars.capacity() < maxChars) {
+            chars = CharBuffer.allocate(Math.max(maxChars, chars.capacity() * 2));
+        }
+        chars.clear();
+        decoder.reset();
+        decoder.decode(ByteBuffer.wrap(buffer, from, length), chars, true);
+        decoder.flush(chars);
+        chars.flip();
+        return chars.toString();
+    }
+
+    /**
+     * Transfers the buffered bytes, as many as fit, into {@code dst}.
+     */
+    int readBuffered(ByteBuffer dst) throws IOException {
+        if (pendingCR && pos == limit && dst.hasRemaining()) {
+            fill();
+        }
+        int n = Math.min(dst.remaining(), limit - pos);
+        dst.put(buffer, pos, n);
+        pos += n;
+        return n;
+    }
+
+    /**
+     * The number of bytes that have been read from the underlying stream but not consumed yet.
+     */
+    int buffered() {
+        return limit - pos;
+    }
+
+    /**
+     * Drops the buffered bytes, e.g., when the position of the underlying stream changes.
+     */
+    void discardBuffer() {
+        pos = 0;
+        limit = 0;
+        pendingCR = false;
+    }
+
+    /**
+     * Returns the number of bytes read from the underlying stream, the number of lines returned by
+     * {@link #readLines} and the time spent in {@link #readLines} in nanoseconds.
+     */
+    long[] getStatistics() {
+        return new long[]{bytesRead, linesRead, readLinesNanos};
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = 0;
+        while (n < len) {
+            if (pos == limit) {
+                if (len - n >= buffer.length && !pendingCR) {
+                    // do not copy large reads through the buffer
+                    int count = in.read(b, off + n, len - n);
+                    if (count <= 0) {
+                        break;
+                    }
+                    bytesRead += count;
+                    n += count;
+                    continue;
+                }
+                if (!fill()) {
+                    break;
+                }
+            }
+            int count = Math.min(len - n, limit - pos);
+            System.arraycopy(buffer, pos, b, off + n, count);
+            pos += count;
+            n += count;
+        }
+        return n == 0 && len > 0 ? -1 : n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (limit - pos) + in.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
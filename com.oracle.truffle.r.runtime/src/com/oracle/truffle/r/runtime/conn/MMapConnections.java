@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2017, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.runtime.conn;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.r.runtime.RError;
+import com.oracle.truffle.r.runtime.conn.ConnectionSupport.AbstractOpenMode;
+import com.oracle.truffle.r.runtime.conn.ConnectionSupport.BasePathRConnection;
+import com.oracle.truffle.r.runtime.conn.ConnectionSupport.ConnectionClass;
+import com.oracle.truffle.r.runtime.conn.ConnectionSupport.DelegateReadRConnection;
+import com.oracle.truffle.r.runtime.conn.ConnectionSupport.ReadWriteHelper;
+
+/**
+ * Read-only binary connections on memory-mapped files. {@code readBin} is served by views of the
+ * mapped file (see {@link RConnection#readBinView}), so the data is copied only once, directly into
+ * the result vector.
+ */
+public class MMapConnections {
+
+    public static class MMapRConnection extends BasePathRConnection {
+
+        public MMapRConnection(String path, String modeString) throws IOException {
+            super(path, ConnectionClass.MMap, modeString, AbstractOpenMode.ReadBinary);
+            openNonLazyConnection();
+        }
+
+        @Override
+        protected void createDelegateConnection() throws IOException {
+            switch (getOpenMode().abstractOpenMode) {
+                case ReadBinary:
+                    setDelegate(new MMapReadRConnection(this));
+                    break;
+                default:
+                    throw RError.error(RError.SHOW_CALLER2, RError.Message.UNSUPPORTED_MODE);
+            }
+        }
+    }
+
+    static class MMapReadRConnection extends DelegateReadRConnection implements ReadWriteHelper {
+        /**
+         * The file is mapped in regions of this size (or of the size of a larger read), which
+         * limits the address space used for very large files. A region is unmapped when it is
+         * collected, i.e., once neither this connection nor any view returned by {@link #map}
+         * refers to it anymore.
+         */
+        private static final long REGION_SIZE = 1L << 28;
+
+        private final FileChannel channel;
+        private final long size;
+        private final InputStream inputStream = new MappedInputStream();
+
+        private MappedByteBuffer region;
+        private long regionStart;
+        private long position;
+
+        MMapReadRConnection(BasePathRConnection base) throws IOException {
+            super(base);
+            channel = FileChannel.open(Paths.get(base.path), StandardOpenOption.READ);
+            size = channel.size();
+        }
+
+        /**
+         * Returns a view of the next (at most) {@code n} bytes of the file and advances past them,
+         * mapping a new region if they are not in the current one.
+         */
+        @TruffleBoundary
+        private ByteBuffer map(int n) throws IOException {
+            if (position >= size) {
+                return ByteBuffer.allocate(0);
+            }
+            long end = Math.min(size, position + n);
+            if (region == null || position < regionStart || end > regionStart + region.capacity()) {
+                region = channel.map(MapMode.READ_ONLY, position, Math.min(size - position, Math.max(REGION_SIZE, n)));
+                regionStart = position;
+            }
+            ByteBuffer view = region.duplicate();
+            view.limit((int) (end - regionStart));
+            view.position((int) (position - regionStart));
+            position = end;
+            return view.slice();
+        }
+
+        @Override
+        public ByteBuffer readBinView(int n) throws IOException {
+            return map(n);
+        }
+
+        @Override
+        public int readBin(ByteBuffer buffer) throws IOException {
+            ByteBuffer src = map(buffer.remaining());
+            int n = src.remaining();
+            buffer.put(src);
+            return n;
+        }
+
+        @Override
+        public byte[] readBinChars() throws IOException {
+            return readBinCharsHelper(inputStream);
+        }
+
+        @Override
+        public String readChar(int nchars, boolean useBytes) throws IOException {
+            return readCharHelper(nchars, inputStream, useBytes);
+        }
+
+        @TruffleBoundary
+        @Override
+        public String[] readLinesInternal(int n, boolean warn, boolean skipNul) throws IOException {
+            return readLinesHelper(inputStream, n, warn, skipNul);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return inputStream;
+        }
+
+        @Override
+        public void closeAndDestroy() throws IOException {
+            base.closed = true;
+            close();
+        }
+
+        @Override
+        public void close() throws IOException {
+            region = null;
+            channel.close();
+        }
+
+        @Override
+        public boolean isSeekable() {
+            return true;
+        }
+
+        @Override
+        public long seek(long offset, SeekMode seekMode, SeekRWMode seekRWMode) throws IOException {
+            long result = position;
+            switch (seekMode) {
+                case ENQUIRE:
+                    break;
+                case CURRENT:
+                    position = Math.max(0, position + offset);
+                    break;
+                case START:
+                    position = Math.max(0, offset);
+                    break;
+                case END:
+                    position = Math.max(0, size + offset);
+                    break;
+            }
+            return result;
+        }
+
+        private final class MappedInputStream extends InputStream {
+            @Override
+            public int read() throws IOException {
+                ByteBuffer src = map(1);
+                return src.hasRemaining() ? src.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                ByteBuffer src = map(len);
+                int n = src.remaining();
+                if (n == 0) {
+                    return -1;
+                }
+                src.get(b, off, n);
+                return n;
+            }
+
+            @Override
+            public int available() throws IOException {
+                return (int) Math.min(Integer.MAX_VALUE, Math.max(0, size - position));
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2017, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.runtime.conn;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * An {@link OutputStream} that splits the data into blocks, compresses each of them independently
+ * on the common fork-join pool and writes the results in order. This is only valid for formats in
+ * which a concatenation of compressed streams is itself valid, e.g., xz streams or gzip members.
+ *
+ * At most as many blocks as the pool has threads are compressed at a time, and fewer if the
+ * estimated memory they need (the data, the result and the state of the compressor) would exceed
+ * {@link #MEMORY_BUDGET}. A small amount of data results in a single block, i.e., the same output
+ * as a sequential compressor.
+ */
+abstract class ParallelCompressedOutputStream extends OutputStream {
+
+    /**
+     * The memory that the blocks being compressed at the same time may use, a quarter of the
+     * maximum heap size.
+     */
+    private static final long MEMORY_BUDGET = Runtime.getRuntime().maxMemory() / 4;
+
+    /**
+     * The initial size of the buffer of a block, which grows as data arrives, up to the block size,
+     * so that small streams do not allocate a full block.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+    private final int blockSize;
+    private final int maxPending;
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    private byte[] block;
+    private int length;
+    private boolean submitted;
+    private boolean closed;
+
+    protected ParallelCompressedOutputStream(OutputStream out, int blockSize) {
+        this(out, blockSize, 2L * blockSize);
+    }
+
+    /**
+     * @param blockMemory the estimated memory needed to compress one block, including the block
+     *            itself
+     */
+    protected ParallelCompressedOutputStream(OutputStream out, int blockSize, long blockMemory) {
+        this.out = out;
+        this.blockSize = blockSize;
+        this.maxPending = (int) Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), MEMORY_BUDGET / blockMemory));
+    }
+
+    /**
+     * Compresses {@code data[0..length)} into a self-contained stream of the format. This is called
+     * concurrently on pool threads.
+     */
+    protected abstract byte[] compressBlock(byte[] data, int dataLength) throws IOException;
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureCapacity(1);
+        block[length++] = (byte) b;
+        if (length == blockSize) {
+            submitBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        int pos = off;
+        int remaining = len;
+        while (remaining > 0) {
+            int n = Math.min(remaining, blockSize - length);
+            ensureCapacity(n);
+            System.arraycopy(b, pos, block, length, n);
+            length += n;
+            pos += n;
+            remaining -= n;
+            if (length == blockSize) {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * Makes room for {@code n} more bytes in the current block, where {@code length + n} is at
+     * most the block size.
+     */
+    private void ensureCapacity(int n) {
+        int needed = length + n;
+        if (block == null) {
+            block = new byte[Math.min(blockSize, Math.max(INITIAL_BUFFER_SIZE, needed))];
+        } else if (needed > block.length) {
+            block = Arrays.copyOf(block, (int) Math.min(blockSize, Math.max(needed, 2L * block.length)));
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        byte[] data = block == null ? new byte[0] : block;
+        int dataLength = length;
+        block = null;
+        length = 0;
+        submitted = true;
+        pending.add(ForkJoinPool.commonPool().submit(() -> compressBlock(data, dataLength)));
+        while (pending.size() > maxPending) {
+            writeBlock();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        byte[] compressed;
+        try {
+            compressed = pending.removeFirst().get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+        out.write(compressed);
+    }
+
+    /**
+     * Writes the blocks that have been completed. Like {@link java.util.zip.GZIPOutputStream}, this
+     * does not force out the data of the current block, which would reduce the compression ratio.
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!pending.isEmpty()) {
+            writeBlock();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            // an empty stream still consists of one (empty) block
+            if (length > 0 || !submitted) {
+                submitBlock();
+            }
+            while (!pending.isEmpty()) {
+                writeBlock();
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
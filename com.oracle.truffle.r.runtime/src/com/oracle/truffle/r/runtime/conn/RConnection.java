@@ -26,6 +26,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.LinkedList;
 
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
@@ -111,27 +112,35 @@ public abstract class RConnection implements AutoCloseable {
 
     @TruffleBoundary
     private String[] readLinesWithPushBack(int n, boolean warn, boolean skipNul) throws IOException {
-        String[] res = new String[n];
-        for (int i = 0; i < n; i++) {
-            String s = readOneLineWithPushBack(res, i, warn, skipNul);
-            if (s == null) {
-                if (res[i] == null) {
-                    // no more push back value
-                    System.arraycopy(readLinesInternal(n - i, warn, skipNul), 0, res, i, n - i);
-                    pushBack = null;
-                    break;
+        ArrayList<String> res = new ArrayList<>();
+        String[] line = new String[1];
+        while (n <= 0 || res.size() < n) {
+            line[0] = null;
+            String s = readOneLineWithPushBack(line, 0, warn, skipNul);
+            if (line[0] != null) {
+                res.add(line[0]);
+                continue;
+            }
+            // no more push back values, the rest comes from the connection itself, which may
+            // provide fewer lines than requested
+            pushBack = null;
+            String[] rest = readLinesInternal(n <= 0 ? n : n - res.size(), warn, skipNul);
+            int start = 0;
+            if (s != null) {
+                // the last push back value did not end with a newline
+                if (rest.length == 0) {
+                    res.add(s);
+                } else {
+                    res.add(s + rest[0]);
+                    start = 1;
                 }
-                // else res[i] has been filled - move to trying to fill the next one
-            } else {
-                // reached the last push back value without reaching and of line
-                assert pushBack.size() == 0;
-                System.arraycopy(readLinesInternal(n - i, warn, skipNul), 0, res, i, n - i);
-                res[i] = s + res[i];
-                pushBack = null;
-                break;
             }
+            for (int i = start; i < rest.length; i++) {
+                res.add(rest[i]);
+            }
+            break;
         }
-        return res;
+        return res.toArray(new String[res.size()]);
     }
 
     /**
@@ -162,6 +171,14 @@ public abstract class RConnection implements AutoCloseable {
      */
     public abstract OutputStream getOutputStream() throws IOException;
 
+    /**
+     * Returns the number of bytes read, the number of lines read and the time spent reading lines
+     * in nanoseconds, or {@code null} if the connection does not keep these statistics.
+     */
+    public long[] getReadStatistics() {
+        return null;
+    }
+
     /**
      * Close the connection. The corresponds to the {@code R close} function.
      */
@@ -317,6 +334,16 @@ public abstract class RConnection implements AutoCloseable {
      */
     public abstract int readBin(ByteBuffer buffer) throws IOException;
 
+    /**
+     * Internal connection-specific support for the {@code readBin} builtin on connections that can
+     * provide their data without copying it, e.g., from a memory-mapped file. Returns a buffer whose
+     * remaining bytes are the next (at most {@code n}) bytes of the connection and advances past
+     * them, or {@code null} if {@link #readBin} has to be used instead.
+     */
+    public ByteBuffer readBinView(@SuppressWarnings("unused") int n) throws IOException {
+        return null;
+    }
+
     /**
      * Internal connection-specific support for the {@code readBin} builtin on character data.
      * character data is null-terminated and, therefore of length unknown to the caller. The result
@@ -26,7 +26,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.oracle.truffle.api.source.SourceSection;
 
 import com.oracle.truffle.r.runtime.RError;
 import com.oracle.truffle.r.runtime.RInternalError;
@@ -36,13 +41,41 @@ import com.oracle.truffle.r.runtime.conn.ConnectionSupport.ConnectionClass;
 import com.oracle.truffle.r.runtime.conn.ConnectionSupport.DelegateRConnection;
 import com.oracle.truffle.r.runtime.conn.ConnectionSupport.DelegateReadRConnection;
 import com.oracle.truffle.r.runtime.conn.ConnectionSupport.DelegateWriteRConnection;
+import com.oracle.truffle.r.runtime.context.RContext;
 import com.oracle.truffle.r.runtime.data.RDataFactory;
-import com.oracle.truffle.r.runtime.data.RStringVector;
+import com.oracle.truffle.r.runtime.data.RPromise;
+import com.oracle.truffle.r.runtime.data.RPromise.Closure;
+import com.oracle.truffle.r.runtime.data.RPromise.PromiseState;
 import com.oracle.truffle.r.runtime.data.model.RAbstractStringVector;
 import com.oracle.truffle.r.runtime.env.REnvironment;
 import com.oracle.truffle.r.runtime.env.REnvironment.PutException;
+import com.oracle.truffle.r.runtime.nodes.RCodeBuilder;
+import com.oracle.truffle.r.runtime.nodes.RSyntaxNode;
 
 public class TextConnections {
+    /**
+     * The promises that text output connections have bound their variables to, see
+     * {@link TextWriteRConnection}.
+     */
+    private static final Map<RPromise, TextWriteRConnection> pendingValues = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Returns the value of {@code promise}, forcing it if necessary, if it is the value of the
+     * variable of a text output connection, otherwise {@code null}. The expression of such a
+     * promise refers to the connection by its descriptor, which becomes invalid once the connection
+     * is closed, so it must not be captured, e.g., by {@code substitute} or serialization.
+     */
+    public static Object getConnectionValue(RPromise promise) {
+        TextWriteRConnection connection = pendingValues.get(promise);
+        if (connection == null) {
+            return null;
+        }
+        if (!promise.isEvaluated()) {
+            promise.setValue(RDataFactory.createStringVector(connection.getValue(), RDataFactory.COMPLETE_VECTOR));
+        }
+        return promise.getValue();
+    }
+
     public static class TextRConnection extends BaseRConnection {
         protected String description;
         protected RAbstractStringVector object;
@@ -61,6 +94,11 @@ public class TextConnections {
             return description;
         }
 
+        @Override
+        public boolean canReadAhead() {
+            return true;
+        }
+
         @Override
         protected void createDelegateConnection() throws IOException {
             DelegateRConnection delegate = null;
@@ -156,19 +194,30 @@ public class TextConnections {
         }
     }
 
+    /**
+     * Collects the lines in a growable array, so that writing n lines costs O(n). The bound
+     * variable is not rebuilt on every write; instead, it is bound to a promise that creates the
+     * vector from the lines written so far when (and if) the variable is read. A new promise is
+     * only needed after the previous one has been forced. Code that would capture the promise
+     * itself uses its value instead, see {@link TextConnections#getConnectionValue}.
+     */
     private static class TextWriteRConnection extends DelegateWriteRConnection implements GetConnectionValue {
         private String incompleteLine;
-        private RStringVector textVec;
+        private String[] lines = new String[16];
+        private int lineCount;
         private String idName;
+        /**
+         * The promise the variable is currently bound to, if any.
+         */
+        private RPromise pendingValue;
 
-        private void initTextVec(RStringVector v, TextRConnection textBase) {
+        private void initTextVec(Object value, TextRConnection textBase) {
             if (textBase.description.equals("NULL")) {
                 throw RError.nyi(null, "anonymous text output connection");
             }
             idName = textBase.object.getDataAt(0);
             try {
-                textVec = v;
-                textBase.env.put(idName, textVec);
+                textBase.env.put(idName, value);
             } catch (PutException ex) {
                 throw RError.error(RError.SHOW_CALLER2, ex);
             }
@@ -191,11 +240,18 @@ public class TextConnections {
         public void closeAndDestroy() throws IOException {
             /* Check if we ended up with an incomplete line */
             if (incompleteLine != null) {
-                appendData(new String[]{incompleteLine});
+                addLine(incompleteLine);
                 incompleteLine = null;
             }
             base.closed = true;
             TextRConnection textBase = (TextRConnection) base;
+            // the promise would refer to the closed connection, so bind the final value
+            textBase.env.unlockBinding(idName);
+            initTextVec(RDataFactory.createStringVector(getValue(), RDataFactory.COMPLETE_VECTOR), textBase);
+            if (pendingValue != null) {
+                pendingValues.remove(pendingValue);
+                pendingValue = null;
+            }
             textBase.env.unlockBinding(idName);
         }
 
@@ -203,17 +259,24 @@ public class TextConnections {
         public void close() throws IOException {
         }
 
+        private void addLine(String line) {
+            if (lineCount == lines.length) {
+                lines = Arrays.copyOf(lines, lines.length * 2);
+            }
+            lines[lineCount++] = line;
+        }
+
         private void writeStringInternal(String result) {
             int nlIndex;
             int px = 0;
             boolean endOfLine = false;
-            ArrayList<String> appendedLines = new ArrayList<>();
+            int oldLineCount = lineCount;
             while ((nlIndex = result.indexOf('\n', px)) >= 0) {
                 if (incompleteLine != null) {
-                    appendedLines.add(new StringBuffer(incompleteLine).append(result.substring(px, nlIndex)).toString());
+                    addLine(new StringBuffer(incompleteLine).append(result.substring(px, nlIndex)).toString());
                     incompleteLine = null;
                 } else {
-                    appendedLines.add(result.substring(px, nlIndex));
+                    addLine(result.substring(px, nlIndex));
                 }
                 nlIndex++;
                 px = nlIndex;
@@ -226,30 +289,34 @@ public class TextConnections {
                 // only reset incompleteLine if
                 incompleteLine = result.substring(px);
             }
-            if (appendedLines.size() > 0) {
-                // update the vector data
-                String[] appendedData = new String[appendedLines.size()];
-                appendedLines.toArray(appendedData);
-                appendData(appendedData);
+            if (lineCount > oldLineCount) {
+                linesAdded();
             }
         }
 
-        void appendData(String[] appendedData) {
-            String[] existingData = textVec.getDataWithoutCopying();
-            String[] updateData = appendedData;
-            if (existingData.length > 0) {
-                updateData = new String[existingData.length + appendedData.length];
-                System.arraycopy(existingData, 0, updateData, 0, existingData.length);
-                System.arraycopy(appendedData, 0, updateData, existingData.length, appendedData.length);
+        /**
+         * Makes sure that the variable is bound to a promise that has not been forced yet.
+         */
+        private void linesAdded() {
+            if (pendingValue != null && !pendingValue.isEvaluated()) {
+                return;
             }
+            RCodeBuilder<RSyntaxNode> builder = RContext.getASTBuilder();
+            SourceSection src = RSyntaxNode.LAZY_DEPARSE;
+            RSyntaxNode value = builder.call(src, builder.lookup(src, "textConnectionValue", true), builder.constant(src, getDescriptor()));
+            RSyntaxNode internal = builder.call(src, builder.lookup(src, ".Internal", true), value);
+            if (pendingValue != null) {
+                pendingValues.remove(pendingValue);
+            }
+            pendingValue = RDataFactory.createPromise(PromiseState.Explicit, Closure.create(internal.asRNode()), REnvironment.baseEnv().getFrame());
+            pendingValues.put(pendingValue, this);
             TextRConnection textBase = (TextRConnection) base;
             /*
              * N.B. This assumes one thread per RContext else another thread could be calling
              * lockBinding
              */
             textBase.env.unlockBinding(idName);
-            // TODO: is vector really complete?
-            initTextVec(RDataFactory.createStringVector(updateData, RDataFactory.COMPLETE_VECTOR), textBase);
+            initTextVec(pendingValue, textBase);
         }
 
         @Override
@@ -287,7 +354,7 @@ public class TextConnections {
 
         @Override
         public String[] getValue() {
-            throw RError.nyi(null, "textConnectionValue");
+            return Arrays.copyOf(lines, lineCount);
         }
 
         private class ConnectionOutputStream extends OutputStream {
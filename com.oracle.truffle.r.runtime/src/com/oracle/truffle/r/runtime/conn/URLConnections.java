@@ -22,7 +22,6 @@
  */
 package com.oracle.truffle.r.runtime.conn;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
@@ -67,12 +66,12 @@ public class URLConnections {
 
     private static class URLReadRConnection extends DelegateReadRConnection implements ReadWriteHelper {
 
-        private final BufferedInputStream inputStream;
+        private final LineReader inputStream;
 
         protected URLReadRConnection(URLRConnection base) throws MalformedURLException, IOException {
             super(base);
             URL url = new URL(base.urlString);
-            inputStream = new BufferedInputStream(url.openStream());
+            inputStream = new LineReader(url.openStream());
         }
 
         @Override
@@ -87,7 +86,7 @@ public class URLConnections {
 
         @Override
         public String[] readLinesInternal(int n, boolean warn, boolean skipNul) throws IOException {
-            return readLinesHelper(inputStream, n, warn, skipNul);
+            return inputStream.readLines(n, warn, skipNul);
         }
 
         @Override
@@ -95,6 +94,11 @@ public class URLConnections {
             return inputStream;
         }
 
+        @Override
+        public long[] getReadStatistics() {
+            return inputStream.getStatistics();
+        }
+
         @Override
         public void closeAndDestroy() throws IOException {
             base.closed = true;
@@ -0,0 +1,419 @@
+/*
+ * Copyright (c) 2017, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.runtime.context;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.r.runtime.RChannel;
+import com.oracle.truffle.r.runtime.RCmdOptions;
+import com.oracle.truffle.r.runtime.RCmdOptions.Client;
+import com.oracle.truffle.r.runtime.RError;
+import com.oracle.truffle.r.runtime.RSource;
+import com.oracle.truffle.r.runtime.RStartParams;
+import com.oracle.truffle.r.runtime.context.RContext.ContextKind;
+import com.oracle.truffle.r.runtime.data.RAttributable;
+import com.oracle.truffle.r.runtime.data.RDataFactory;
+import com.oracle.truffle.r.runtime.data.RList;
+import com.oracle.truffle.r.runtime.data.RNull;
+import com.oracle.truffle.r.runtime.data.RStringVector;
+import com.oracle.truffle.r.runtime.data.model.RAbstractStringVector;
+
+/**
+ * Pools of worker contexts, each running in its own thread and evaluating jobs that it receives
+ * over an {@link RChannel}. Workers are kept once a job is done, so that the cost of creating and
+ * initializing a context is only paid once and not for every parallel computation. In a
+ * {@link ContextKind#SHARE_PARENT_RO} worker the functions of the default packages are shared with
+ * the parent, so their call targets also stay compiled between jobs.
+ *
+ * There are two kinds of pools, both kept per parent context:
+ * <ul>
+ * <li>An unbounded pool of {@link ContextKind#SHARE_PARENT_RO} workers, from which workers are
+ * {@link ContextStateImpl#acquire acquired} and to which they are
+ * {@link ContextStateImpl#release released}; used by the parallel package.</li>
+ * <li>Explicitly {@link ContextStateImpl#createPool created} pools of a fixed number of
+ * {@link ContextKind#SHARE_PARENT_RO} workers, which are started right away and to which R code is
+ * {@link ContextStateImpl#submit submitted}. Tasks that find no idle worker are queued until one
+ * becomes available.</li>
+ * </ul>
+ *
+ * A job is a list with the elements {@code fun}, {@code args}, {@code more}, {@code text},
+ * {@code globals} and {@code seed}. If {@code text} is not {@code NULL}, it is parsed and evaluated
+ * in the global environment, otherwise {@code fun} is called with {@code args} followed by
+ * {@code more}. {@code fun} and {@code more} are kept by the worker, a job that has them set to
+ * {@code NULL} uses the ones of the previous job, so that a series of calls of the same function
+ * only needs to send the varying arguments. If {@code globals} is not {@code NULL}, the global
+ * environment of the worker is replaced with these bindings, which, e.g., emulates the state of a
+ * forked process. {@code seed} is either {@code NULL}, which keeps the
+ * random seed, {@code FALSE}, which removes it, or the value to be used as {@code .Random.seed}.
+ * The worker replies with {@code list(result)}, where the result is a {@code try-error} object if
+ * the evaluation failed. Sending {@code NULL} terminates the worker.
+ *
+ * Workers are identified by the (master side) id of their channel.
+ */
+public final class ContextPool {
+
+    private static final String WORKER_LOOP = "local({\n" +
+                    "    channel <- .fastr.channel.get(%d)\n" +
+                    "    fun <- NULL\n" +
+                    "    more <- list()\n" +
+                    "    repeat {\n" +
+                    "        job <- .fastr.channel.receive(channel)\n" +
+                    "        if (is.null(job)) break\n" +
+                    "        if (!is.null(job$globals)) {\n" +
+                    "            rm(list = ls(globalenv(), all.names = TRUE), envir = globalenv())\n" +
+                    "            list2env(job$globals, globalenv())\n" +
+                    "        }\n" +
+                    "        if (identical(job$seed, FALSE)) {\n" +
+                    "            if (exists('.Random.seed', envir = globalenv(), inherits = FALSE)) rm('.Random.seed', envir = globalenv())\n" +
+                    "        } else if (!is.null(job$seed)) {\n" +
+                    "            assign('.Random.seed', job$seed, envir = globalenv())\n" +
+                    "        }\n" +
+                    "        if (!is.null(job$fun)) fun <- job$fun\n" +
+                    "        if (!is.null(job$more)) more <- job$more\n" +
+                    "        result <- tryCatch(if (is.null(job$text)) do.call(fun, c(job$args, more)) else eval(parse(text = job$text), envir = globalenv()), error = function(e) structure(conditionMessage(e), class = 'try-error', condition = e))\n" +
+                    "        .fastr.channel.send(channel, list(result))\n" +
+                    "    }\n" +
+                    "    .fastr.channel.close(channel)\n" +
+                    "})";
+
+    private static final int MAX_IDLE = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Channel keys must be unique in the whole VM, start high to stay clear of the keys chosen by
+     * the user (e.g., the port numbers used by the snow cluster emulation).
+     */
+    private static final AtomicInteger nextKey = new AtomicInteger(1 << 30);
+
+    private static final String[] EMPTY = new String[0];
+
+    private static final class Worker {
+        private final int channel;
+        private final RContext.EvalThread thread;
+
+        Worker(int channel, RContext.EvalThread thread) {
+            this.channel = channel;
+            this.thread = thread;
+        }
+    }
+
+    private static final RStringVector TASK_NAMES = RDataFactory.createStringVector(new String[]{"text", "globals"}, RDataFactory.COMPLETE_VECTOR);
+
+    /**
+     * A pool with a fixed number of workers.
+     */
+    private static final class Pool {
+        private final ArrayDeque<Worker> idle = new ArrayDeque<>();
+        private final ArrayDeque<Task> pending = new ArrayDeque<>();
+        /**
+         * The tasks that are being evaluated, in the order in which they were dispatched.
+         */
+        private final ArrayDeque<Task> running = new ArrayDeque<>();
+        private final Worker[] workers;
+
+        Pool(Worker[] workers) {
+            this.workers = workers;
+            idle.addAll(Arrays.asList(workers));
+        }
+
+        void submit(Task task) {
+            Worker worker = idle.pollFirst();
+            if (worker == null) {
+                pending.addLast(task);
+            } else {
+                dispatch(task, worker);
+            }
+        }
+
+        private void dispatch(Task task, Worker worker) {
+            task.worker = worker;
+            running.addLast(task);
+            // the global environment is reset for each task
+            RList job = RDataFactory.createList(new Object[]{task.text, RDataFactory.createList()}, TASK_NAMES);
+            RChannel.send(worker.channel, job);
+        }
+
+        /**
+         * Records the result {@code msg} of the running {@code task} and hands its worker to the
+         * next pending task, if any.
+         */
+        void complete(Task task, Object msg) {
+            running.remove(task);
+            task.result = createResult(((RList) msg).getDataAt(0));
+            Worker worker = task.worker;
+            task.worker = null;
+            Task next = pending.pollFirst();
+            if (next == null) {
+                idle.addLast(worker);
+            } else {
+                dispatch(next, worker);
+            }
+        }
+
+        void terminate() {
+            pending.clear();
+            for (Worker worker : workers) {
+                ContextPool.terminate(worker);
+            }
+        }
+    }
+
+    private static final class Task {
+        private final Pool pool;
+        private final String text;
+        private Worker worker;
+        /**
+         * Whether a thread is waiting for the result of this (running) task.
+         */
+        private boolean receiving;
+        /**
+         * The result in the format of {@code .fastr.context.eval}, {@code null} while the task is
+         * not done.
+         */
+        private RList result;
+
+        Task(Pool pool, String text) {
+            this.pool = pool;
+            this.text = text;
+        }
+    }
+
+    private static RList createResult(Object value) {
+        if (value instanceof RAttributable) {
+            RStringVector klass = ((RAttributable) value).getClassAttr();
+            if (klass != null && klass.getLength() > 0 && "try-error".equals(klass.getDataAt(0))) {
+                return RContext.EvalThread.createErrorResult(String.valueOf(((RAbstractStringVector) value).getDataAt(0)));
+            }
+        }
+        return RDataFactory.createList(new Object[]{value});
+    }
+
+    private ContextPool() {
+        // no instances
+    }
+
+    public static final class ContextStateImpl implements RContext.ContextState {
+
+        // all state is guarded by this, the context may be destroyed from another thread
+        private final ArrayDeque<Worker> idle = new ArrayDeque<>();
+        private final HashMap<Integer, Worker> busy = new HashMap<>();
+
+        private final HashMap<Integer, Pool> pools = new HashMap<>();
+        private final HashMap<Integer, Task> tasks = new HashMap<>();
+        private int nextPoolId = 1;
+        private int nextTaskId = 1;
+
+        /**
+         * Returns the channel id of a worker that is not running any job, creating a new worker if
+         * none is available.
+         */
+        @TruffleBoundary
+        public synchronized int acquire(RContext parent) {
+            Worker worker = idle.pollFirst();
+            if (worker == null) {
+                worker = spawn(parent, ContextKind.SHARE_PARENT_RO);
+            }
+            busy.put(worker.channel, worker);
+            return worker.channel;
+        }
+
+        /**
+         * Returns a worker to the pool. If the worker may still be evaluating a job, e.g., because
+         * an error interrupted the collection of the results, {@code reuse} must be {@code false},
+         * in which case the worker terminates once the job is done.
+         */
+        @TruffleBoundary
+        public synchronized void release(int channel, boolean reuse) {
+            Worker worker = busy.remove(channel);
+            if (worker == null) {
+                throw RError.error(RError.SHOW_CALLER2, RError.Message.GENERIC, "no busy worker with the specified id");
+            }
+            if (reuse && idle.size() < MAX_IDLE) {
+                idle.addLast(worker);
+            } else {
+                terminate(worker);
+            }
+        }
+
+        /**
+         * Creates a pool of {@code size} workers, which are started immediately, and returns its
+         * id. The workers are always {@link ContextKind#SHARE_PARENT_RO} contexts: there
+         * can only be one {@link ContextKind#SHARE_PARENT_RW} child, and
+         * {@link ContextKind#SHARE_NOTHING} workers would neither share the default packages (and
+         * their compiled call targets) with the parent nor be isolated from each other's tasks,
+         * since only the global environment is reset between tasks.
+         */
+        @TruffleBoundary
+        public synchronized int createPool(RContext parent, int size) {
+            Worker[] workers = new Worker[size];
+            for (int i = 0; i < size; i++) {
+                workers[i] = spawn(parent, ContextKind.SHARE_PARENT_RO);
+            }
+            int id = nextPoolId++;
+            pools.put(id, new Pool(workers));
+            return id;
+        }
+
+        /**
+         * Submits R code to be evaluated by a worker of the pool and returns the id of the task.
+         */
+        @TruffleBoundary
+        public synchronized int submit(int poolId, String text) {
+            Task task = new Task(getPool(poolId), text);
+            task.pool.submit(task);
+            int id = nextTaskId++;
+            tasks.put(id, task);
+            return id;
+        }
+
+        /**
+         * Waits for the task to finish and returns the result in the format of
+         * {@code .fastr.context.eval}. The result can only be retrieved once.
+         */
+        @TruffleBoundary
+        public RList await(int taskId) {
+            Task task;
+            synchronized (this) {
+                task = tasks.remove(taskId);
+                if (task == null) {
+                    throw RError.error(RError.SHOW_CALLER2, RError.Message.GENERIC, "no task with the specified id");
+                }
+            }
+            while (true) {
+                Task running = null;
+                synchronized (this) {
+                    while (task.result == null) {
+                        // a pending task has to wait for the running tasks to finish
+                        Task next = task.worker != null ? task : task.pool.running.peekFirst();
+                        if (next == null) {
+                            throw RError.error(RError.SHOW_CALLER2, RError.Message.GENERIC, "the context pool was closed");
+                        }
+                        if (!next.receiving) {
+                            next.receiving = true;
+                            running = next;
+                            break;
+                        }
+                        // another thread receives the result of next
+                        waitForResult();
+                    }
+                    if (running == null) {
+                        return task.result;
+                    }
+                }
+                // the lock is not held while waiting for the worker
+                Object msg = null;
+                try {
+                    msg = RChannel.receive(running.worker.channel);
+                } finally {
+                    synchronized (this) {
+                        running.receiving = false;
+                        if (msg != null) {
+                            running.pool.complete(running, msg);
+                        }
+                        notifyAll();
+                    }
+                }
+            }
+        }
+
+        private void waitForResult() {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                throw RError.error(RError.SHOW_CALLER2, RError.Message.GENERIC, "interrupted while waiting for a task");
+            }
+        }
+
+        /**
+         * Terminates the workers of the pool once they are done with their current task. Pending
+         * tasks are discarded.
+         */
+        @TruffleBoundary
+        public synchronized void closePool(int poolId) {
+            Pool pool = getPool(poolId);
+            pools.remove(poolId);
+            pool.terminate();
+            tasks.values().removeIf(task -> task.pool == pool);
+        }
+
+        private Pool getPool(int poolId) {
+            Pool pool = pools.get(poolId);
+            if (pool == null) {
+                throw RError.error(RError.SHOW_CALLER2, RError.Message.GENERIC, "no context pool with the specified id");
+            }
+            return pool;
+        }
+
+        /**
+         * The number of workers, busy or idle, in the pool.
+         */
+        public synchronized int size() {
+            return idle.size() + busy.size();
+        }
+
+        @Override
+        public synchronized void beforeDestroy(RContext context) {
+            for (Worker worker : idle) {
+                terminate(worker);
+            }
+            idle.clear();
+            for (Worker worker : busy.values()) {
+                terminate(worker);
+            }
+            busy.clear();
+            for (Pool pool : pools.values()) {
+                pool.terminate();
+            }
+            pools.clear();
+            tasks.clear();
+        }
+
+        public static ContextStateImpl newContextState() {
+            return new ContextStateImpl();
+        }
+    }
+
+    private static Worker spawn(RContext parent, ContextKind kind) {
+        int key = nextKey.getAndIncrement();
+        int channel = RChannel.createChannel(key);
+        RStartParams startParams = new RStartParams(RCmdOptions.parseArguments(Client.RSCRIPT, EMPTY, false), false);
+        ContextInfo info = ContextInfo.create(startParams, null, kind, parent, parent.getConsoleHandler());
+        RContext.EvalThread thread = new RContext.EvalThread(info, RSource.fromTextInternal(String.format(WORKER_LOOP, key), RSource.Internal.CONTEXT_WORKER));
+        thread.setDaemon(true);
+        thread.start();
+        return new Worker(channel, thread);
+    }
+
+    /**
+     * Asks the worker to terminate once it is done with its current job, if any. The worker
+     * closes the channel itself.
+     */
+    private static void terminate(Worker worker) {
+        if (worker.thread.isAlive()) {
+            RChannel.send(worker.channel, RNull.instance);
+        }
+    }
+}
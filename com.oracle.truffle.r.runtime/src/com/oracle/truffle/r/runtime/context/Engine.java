@@ -115,6 +115,12 @@ public interface Engine {
      */
     Timings getTimings();
 
+    /**
+     * Return the number of parses that were served from the persistent cache of parse results and
+     * the number of parse results that were written to it.
+     */
+    long[] getParseCacheStatistics();
+
     /**
      * Parse an R expression and return an {@link RExpression} object representing the Truffle ASTs
      * for the components.
@@ -60,6 +60,7 @@ import com.oracle.truffle.r.runtime.RRuntimeASTAccess;
 import com.oracle.truffle.r.runtime.RSerialize;
 import com.oracle.truffle.r.runtime.RSource;
 import com.oracle.truffle.r.runtime.RStartParams;
+import com.oracle.truffle.r.runtime.S3DispatchTable;
 import com.oracle.truffle.r.runtime.Utils;
 import com.oracle.truffle.r.runtime.builtins.RBuiltinDescriptor;
 import com.oracle.truffle.r.runtime.builtins.RBuiltinKind;
@@ -109,7 +110,8 @@ public final class RContext extends ExecutionContext implements TruffleObject {
          * in a parallel computation. The initial context is always of this kind. The intent is that
          * all mutable state is localized to the context, which may not be completely achievable.
          * For example, shared native libraries are assumed to contain no mutable state and be
-         * re-entrant.
+         * re-entrant. With {@code FastROptions.SharedBase}, only the ASTs of the functions of the
+         * base package and its constant vectors are shared.
          */
         SHARE_NOTHING,
 
@@ -413,6 +415,8 @@ public final class RContext extends ExecutionContext implements TruffleObject {
     public final InstrumentationState stateInstrumentation;
     public final ContextStateImpl stateInternalCode;
     public final DLL.ContextStateImpl stateDLL;
+    public final ContextPool.ContextStateImpl stateContextPool;
+    public final S3DispatchTable.ContextStateImpl stateS3Dispatch;
     /**
      * RFFI implementation state. Cannot be final as choice of FFI implementation is not made at the
      * time the constructor is called.
@@ -424,7 +428,7 @@ public final class RContext extends ExecutionContext implements TruffleObject {
 
     private ContextState[] contextStates() {
         return new ContextState[]{stateREnvVars, stateRProfile, stateROptions, stateREnvironment, stateRErrorHandling, stateRConnection, stateStdConnections, stateRNG, stateRFFI, stateRSerialize,
-                        stateLazyDBCache, stateInstrumentation, stateDLL};
+                        stateLazyDBCache, stateInstrumentation, stateDLL, stateContextPool, stateS3Dispatch};
     }
 
     public static void setEmbedded() {
@@ -469,6 +473,8 @@ public final class RContext extends ExecutionContext implements TruffleObject {
         this.stateInstrumentation = InstrumentationState.newContextState(instrumenter);
         this.stateInternalCode = ContextStateImpl.newContextState();
         this.stateDLL = DLL.ContextStateImpl.newContextState();
+        this.stateContextPool = ContextPool.ContextStateImpl.newContextState();
+        this.stateS3Dispatch = S3DispatchTable.ContextStateImpl.newContextState();
         this.engine = RContext.getRRuntimeASTAccess().createEngine(this);
         state.add(State.CONSTRUCTED);
     }
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2017, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.runtime.data;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashSet;
+
+import com.oracle.truffle.r.runtime.FastROptions;
+
+/**
+ * A copy of the data of a vector in native (direct) memory, created when the vector is first
+ * accessed as a C array by native code, e.g., via {@code INTEGER(x)}, and kept for the lifetime of
+ * the vector. Native code therefore sees the same address for the vector in every call.
+ *
+ * The Java array remains the primary storage. It is only transferred to native memory if it has
+ * been modified since the last transfer (see {@link RVector#javaDataModified}), and the native data
+ * is only transferred back if native code may have modified it (see
+ * {@link RVector#commitNativeData()}).
+ *
+ * Since the data is held twice, the total size of the native copies is bounded by
+ * {@link FastROptions#NativeVectorDataSize}. Once the bound is reached, further vectors are handled
+ * by copying until the vectors owning native copies are collected.
+ */
+public final class NativeVectorData {
+    /**
+     * Vectors shorter than this are cheaper to copy than to keep a native copy of.
+     */
+    private static final int MIN_LENGTH = 1024;
+
+    /**
+     * Tracks the vectors owning a native copy, to account for the memory freed when they are
+     * collected.
+     */
+    private static final class OwnerRef extends PhantomReference<RVector<?>> {
+        private final int size;
+
+        OwnerRef(RVector<?> owner, int size) {
+            super(owner, ownerQueue);
+            this.size = size;
+        }
+    }
+
+    private static final ReferenceQueue<RVector<?>> ownerQueue = new ReferenceQueue<>();
+    private static final HashSet<OwnerRef> owners = new HashSet<>();
+    private static long allocatedSize;
+
+    private final ByteBuffer buffer;
+    private boolean javaModified = true;
+    private boolean nativeWritable;
+
+    private NativeVectorData(int size) {
+        this.buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Returns a new instance for {@code owner}, able to hold {@code length} elements of
+     * {@code elementSize} bytes, or {@code null} if the vector should be handled by copying.
+     */
+    static NativeVectorData create(RVector<?> owner, int length, int elementSize) {
+        if (length < MIN_LENGTH || (long) length * elementSize > Integer.MAX_VALUE) {
+            return null;
+        }
+        int size = length * elementSize;
+        long maxSize = FastROptions.NativeVectorDataSize.getNonNegativeIntValue() * 1024L * 1024L;
+        synchronized (NativeVectorData.class) {
+            Reference<? extends RVector<?>> ref;
+            while ((ref = ownerQueue.poll()) != null) {
+                OwnerRef ownerRef = (OwnerRef) ref;
+                owners.remove(ownerRef);
+                allocatedSize -= ownerRef.size;
+            }
+            if (allocatedSize + size > maxSize) {
+                return null;
+            }
+            owners.add(new OwnerRef(owner, size));
+            allocatedSize += size;
+        }
+        return new NativeVectorData(size);
+    }
+
+    /**
+     * The buffer whose address is handed out to native code. N.B. the position of the buffer must
+     * not be changed.
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    boolean isJavaModified() {
+        return javaModified;
+    }
+
+    void setJavaModified(boolean value) {
+        javaModified = value;
+    }
+
+    boolean isNativeWritable() {
+        return nativeWritable;
+    }
+
+    void setNativeWritable(boolean value) {
+        nativeWritable = value;
+    }
+}
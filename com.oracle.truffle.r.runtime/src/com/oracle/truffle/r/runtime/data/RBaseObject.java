@@ -26,6 +26,12 @@ abstract class RBaseObject implements RTypedValue {
 
     private int typedValueInfo;
 
+    /**
+     * Key of this object in the tables of global refs kept by the native code, assigned by the
+     * native code when it first creates a global ref for the object and 0 before.
+     */
+    @SuppressWarnings("unused") private int nativeRefHash;
+
     @Override
     public final int getTypedValueInfo() {
         return typedValueInfo;
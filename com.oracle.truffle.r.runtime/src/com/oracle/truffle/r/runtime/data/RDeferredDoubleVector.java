@@ -0,0 +1,507 @@
+/*
+ * Copyright (c) 2017, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.runtime.data;
+
+import java.util.Arrays;
+
+import com.oracle.truffle.api.CompilerAsserts;
+import com.oracle.truffle.api.object.DynamicObject;
+import com.oracle.truffle.api.profiles.ConditionProfile;
+import com.oracle.truffle.r.runtime.FastROptions;
+import com.oracle.truffle.r.runtime.RRuntime;
+import com.oracle.truffle.r.runtime.RType;
+import com.oracle.truffle.r.runtime.data.closures.RClosures;
+import com.oracle.truffle.r.runtime.data.model.RAbstractContainer;
+import com.oracle.truffle.r.runtime.data.model.RAbstractDoubleVector;
+import com.oracle.truffle.r.runtime.data.model.RAbstractVector;
+
+/**
+ * A double vector whose elements are the result of an element-wise arithmetic operation on two
+ * other double vectors and are only computed on demand. These are created by {@code BinaryMapNode}
+ * for large operands without attributes, so that, e.g., {@code a*b + c*d - e} is evaluated in a
+ * single pass over the data, without allocating the intermediate results. Operands are either of
+ * the full length or scalars, and may themselves be deferred (up to a nesting depth of
+ * {@link #MAX_DEPTH}).
+ *
+ * A deferred vector never outlives the expression that created it: {@code BinaryArithmeticNode}
+ * only returns it if the call is a direct argument of another arithmetic call or of {@code sum},
+ * and {@link #materialize() materializes} it immediately otherwise. The consuming call materializes
+ * it if it dispatches to a closure or to a builtin that does not handle it explicitly. Reductions
+ * such as {@code sum} consume it block-wise via {@link #fill(int, int, double[], int, double[][])}.
+ *
+ * Operands that may be modified in place (i.e., vectors referenced by exactly one variable) get
+ * their reference count incremented while this vector refers to them, so that a modification within
+ * the same expression creates a copy instead of changing the values of this vector. The reference
+ * counts are decremented again by {@link #release()}, which is called once the vector has been
+ * materialized or consumed.
+ *
+ * Once materialized, the vector delegates to the materialized result, including its attributes.
+ */
+public final class RDeferredDoubleVector implements RAbstractDoubleVector {
+
+    /**
+     * Vectors shorter than this are computed eagerly.
+     */
+    private static final int MIN_LENGTH = 4096;
+    /**
+     * The maximal nesting of deferred operations, deeper expressions are computed eagerly.
+     */
+    public static final int MAX_DEPTH = 8;
+    /**
+     * The number of elements computed at once by {@link #fill}.
+     */
+    public static final int BLOCK_SIZE = 1024;
+
+    public enum Op {
+        ADD {
+            @Override
+            double op(double left, double right) {
+                return left + right;
+            }
+        },
+        SUBTRACT {
+            @Override
+            double op(double left, double right) {
+                return left - right;
+            }
+        },
+        MULTIPLY {
+            @Override
+            double op(double left, double right) {
+                return left * right;
+            }
+        },
+        DIVIDE {
+            @Override
+            double op(double left, double right) {
+                return left / right;
+            }
+        };
+
+        abstract double op(double left, double right);
+
+        /**
+         * Applies the operation with the NA handling of arithmetic on double vectors.
+         */
+        final double apply(double left, double right) {
+            if (RRuntime.isNA(left)) {
+                return RRuntime.DOUBLE_NA;
+            }
+            if (RRuntime.isNA(right)) {
+                // NaN op NA == NaN
+                return Double.isNaN(left) ? left : RRuntime.DOUBLE_NA;
+            }
+            return op(left, right);
+        }
+    }
+
+    private final Op op;
+    private final int length;
+    private final int depth;
+    private final boolean complete;
+    // null for a scalar operand, whose value is then kept in leftValue/rightValue
+    private RAbstractDoubleVector left;
+    private RAbstractDoubleVector right;
+    private final double leftValue;
+    private final double rightValue;
+    // whether the reference count of left/right was incremented by protect
+    private boolean leftProtected;
+    private boolean rightProtected;
+    private boolean released;
+    private RDoubleVector materialized;
+
+    private RDeferredDoubleVector(Op op, RAbstractDoubleVector left, RAbstractDoubleVector right, int length) {
+        this.op = op;
+        this.length = length;
+        this.complete = left.isComplete() && right.isComplete();
+        this.left = left.getLength() == 1 ? null : left;
+        this.right = right.getLength() == 1 ? null : right;
+        this.leftValue = this.left == null ? left.getDataAt(0) : 0;
+        this.rightValue = this.right == null ? right.getDataAt(0) : 0;
+        this.leftProtected = protect(this.left);
+        this.rightProtected = protect(this.right);
+        this.depth = Math.max(depthOf(this.left), depthOf(this.right)) + 1;
+    }
+
+    public static boolean isEnabled() {
+        return FastROptions.DeferredArithmetic.getBooleanValue();
+    }
+
+    /**
+     * Determines whether the vector classes (before any cast) can be used as operands. Other
+     * vectors, e.g., closures over integer vectors, are not considered as they cannot be protected
+     * against modification.
+     */
+    public static boolean isOperandClass(Class<?> clazz) {
+        return clazz == RDoubleVector.class || clazz == RDoubleSequence.class || clazz == RDeferredDoubleVector.class || clazz == RDouble.class;
+    }
+
+    /**
+     * Determines whether a deferred vector of {@code length} should be created for the given
+     * operands.
+     */
+    public static boolean canDefer(RAbstractDoubleVector left, int leftLength, RAbstractDoubleVector right, int rightLength, int length) {
+        return length >= MIN_LENGTH && (leftLength == length || leftLength == 1) && (rightLength == length || rightLength == 1) && depthOf(left) < MAX_DEPTH && depthOf(right) < MAX_DEPTH;
+    }
+
+    public static RDeferredDoubleVector create(Op op, RAbstractDoubleVector left, RAbstractDoubleVector right, int length) {
+        return new RDeferredDoubleVector(op, left, right, length);
+    }
+
+    private static int depthOf(RAbstractDoubleVector operand) {
+        return operand instanceof RDeferredDoubleVector ? ((RDeferredDoubleVector) operand).depth : 0;
+    }
+
+    private static boolean protect(RAbstractDoubleVector operand) {
+        if (operand instanceof RShareable) {
+            RShareable shareable = (RShareable) operand;
+            if (!shareable.isTemporary() && !shareable.isShared()) {
+                shareable.incRefCount();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void unprotect(RAbstractDoubleVector operand, boolean isProtected) {
+        if (isProtected) {
+            RShareable shareable = (RShareable) operand;
+            if (!shareable.isSharedPermanent()) {
+                shareable.decRefCount();
+            }
+        } else if (operand instanceof RDeferredDoubleVector) {
+            // deferred operands are owned by this vector
+            ((RDeferredDoubleVector) operand).release();
+        }
+    }
+
+    /**
+     * Undoes the protection of the operands, this vector must not be read afterwards unless it has
+     * been {@link #materialize() materialized}. Called by consumers once they have read all
+     * elements or failed. Releasing a vector more than once has no effect.
+     */
+    public void release() {
+        if (!released) {
+            released = true;
+            unprotect(left, leftProtected);
+            unprotect(right, rightProtected);
+            leftProtected = false;
+            rightProtected = false;
+        }
+    }
+
+    /**
+     * Determines whether {@code operand} is a direct operand of this vector, i.e., whether it is
+     * owned by this vector and released together with it.
+     */
+    public boolean hasOperand(Object operand) {
+        return materialized == null && (operand == left || operand == right);
+    }
+
+    /**
+     * Materializes {@code value} if it is a {@link RDeferredDoubleVector}.
+     */
+    public static Object materializeDeferred(Object value) {
+        return value instanceof RDeferredDoubleVector ? ((RDeferredDoubleVector) value).materialize() : value;
+    }
+
+    /**
+     * Releases {@code value} if it is a {@link RDeferredDoubleVector}, see {@link #release()}.
+     */
+    public static void releaseDeferred(Object value) {
+        if (value instanceof RDeferredDoubleVector) {
+            ((RDeferredDoubleVector) value).release();
+        }
+    }
+
+    /**
+     * Creates the scratch buffers needed by {@link #fill}.
+     */
+    public double[][] createScratch() {
+        return new double[depth][BLOCK_SIZE];
+    }
+
+    /**
+     * Computes the {@code count} (at most {@link #BLOCK_SIZE}) elements starting at {@code from}
+     * into {@code dest} at {@code destPos}.
+     */
+    public void fill(int from, int count, double[] dest, int destPos, double[][] scratch) {
+        assert count <= BLOCK_SIZE && from + count <= length;
+        if (materialized != null) {
+            materialized.copyRegion(from, dest, destPos, count);
+            return;
+        }
+        fillOperand(left, leftValue, from, count, dest, destPos, scratch);
+        // the operands use the buffers below their depth
+        double[] rightData = scratch[depth - 1];
+        fillOperand(right, rightValue, from, count, rightData, 0, scratch);
+        if (complete) {
+            for (int i = 0; i < count; i++) {
+                dest[destPos + i] = op.op(dest[destPos + i], rightData[i]);
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                dest[destPos + i] = op.apply(dest[destPos + i], rightData[i]);
+            }
+        }
+    }
+
+    private static void fillOperand(RAbstractDoubleVector operand, double value, int from, int count, double[] dest, int destPos, double[][] scratch) {
+        if (operand == null) {
+            Arrays.fill(dest, destPos, destPos + count, value);
+        } else if (operand instanceof RDeferredDoubleVector) {
+            ((RDeferredDoubleVector) operand).fill(from, count, dest, destPos, scratch);
+        } else if (operand instanceof RDoubleVector) {
+            ((RDoubleVector) operand).copyRegion(from, dest, destPos, count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                dest[destPos + i] = operand.getDataAt(from + i);
+            }
+        }
+    }
+
+    @Override
+    public double getDataAt(int index) {
+        if (materialized != null) {
+            return materialized.getDataAt(index);
+        }
+        double l = left == null ? leftValue : left.getDataAt(index);
+        double r = right == null ? rightValue : right.getDataAt(index);
+        return complete ? op.op(l, r) : op.apply(l, r);
+    }
+
+    @Override
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public boolean isComplete() {
+        return materialized == null ? complete : materialized.isComplete();
+    }
+
+    @Override
+    public void setComplete(boolean complete) {
+        // determined by the operands unless materialized
+        if (materialized != null) {
+            materialized.setComplete(complete);
+        }
+    }
+
+    /**
+     * Computes the elements into a new vector, and releases the operands. The result is kept, so
+     * that all later accesses (and attribute updates) go to the same vector.
+     */
+    @Override
+    public RDoubleVector materialize() {
+        if (materialized == null) {
+            materialized = compute();
+            release();
+            left = null;
+            right = null;
+        }
+        return materialized;
+    }
+
+    private RDoubleVector compute() {
+        if (materialized != null) {
+            return (RDoubleVector) materialized.copy();
+        }
+        double[] result = new double[length];
+        double[][] scratch = createScratch();
+        for (int from = 0; from < length; from += BLOCK_SIZE) {
+            fill(from, Math.min(BLOCK_SIZE, length - from), result, from, scratch);
+        }
+        return RDataFactory.createDoubleVector(result, complete);
+    }
+
+    @Override
+    public RAbstractVector castSafe(RType type, ConditionProfile isNAProfile) {
+        switch (type) {
+            case Double:
+                return this;
+            case Integer:
+                return RClosures.createDoubleToIntVector(this);
+            case Complex:
+                return RClosures.createDoubleToComplexVector(this);
+            case Character:
+                return RClosures.createDoubleToStringVector(this);
+            case List:
+                return RClosures.createAbstractVectorToListVector(this);
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public RAbstractContainer resize(int size) {
+        return materialize().resize(size);
+    }
+
+    @Override
+    public RAbstractVector copy() {
+        // a copy must not be affected by updates of the materialized vector
+        return compute();
+    }
+
+    @Override
+    public RAbstractVector copyDropAttributes() {
+        return materialized == null ? compute() : materialized.copyDropAttributes();
+    }
+
+    @Override
+    public RAbstractVector copyWithNewDimensions(int[] newDimensions) {
+        return materialize().copyWithNewDimensions(newDimensions);
+    }
+
+    @Override
+    public RVector<?> copyResized(int size, boolean fillNA) {
+        return materialize().copyResized(size, fillNA);
+    }
+
+    @Override
+    public RVector<?> copyResizedWithDimensions(int[] newDimensions, boolean fillNA) {
+        return materialize().copyResizedWithDimensions(newDimensions, fillNA);
+    }
+
+    @Override
+    public RDoubleVector createEmptySameType(int newLength, boolean newIsComplete) {
+        return RDataFactory.createDoubleVector(new double[newLength], newIsComplete);
+    }
+
+    @Override
+    public RTypedValue getNonShared() {
+        return materialize().getNonShared();
+    }
+
+    @Override
+    public RShareable materializeToShareable() {
+        return materialize();
+    }
+
+    @Override
+    public boolean hasDimensions() {
+        return materialized != null && materialized.hasDimensions();
+    }
+
+    @Override
+    public int[] getDimensions() {
+        return materialized == null ? null : materialized.getDimensions();
+    }
+
+    @Override
+    public void setDimensions(int[] newDimensions) {
+        materialize().setDimensions(newDimensions);
+    }
+
+    @Override
+    public RStringVector getNames() {
+        return materialized == null ? null : materialized.getNames();
+    }
+
+    @Override
+    public void setNames(RStringVector newNames) {
+        materialize().setNames(newNames);
+    }
+
+    @Override
+    public RList getDimNames() {
+        return materialized == null ? null : materialized.getDimNames();
+    }
+
+    @Override
+    public void setDimNames(RList newDimNames) {
+        materialize().setDimNames(newDimNames);
+    }
+
+    @Override
+    public Object getRowNames() {
+        return materialized == null ? RNull.instance : materialized.getRowNames();
+    }
+
+    @Override
+    public void setRowNames(RAbstractVector rowNames) {
+        materialize().setRowNames(rowNames);
+    }
+
+    @Override
+    public DynamicObject initAttributes() {
+        return materialize().initAttributes();
+    }
+
+    @Override
+    public void initAttributes(DynamicObject newAttributes) {
+        materialize().initAttributes(newAttributes);
+    }
+
+    @Override
+    public DynamicObject getAttributes() {
+        return materialized == null ? null : materialized.getAttributes();
+    }
+
+    @Override
+    public boolean isMatrix() {
+        return materialized != null && materialized.isMatrix();
+    }
+
+    @Override
+    public boolean isArray() {
+        return materialized != null && materialized.isArray();
+    }
+
+    @Override
+    public boolean isObject() {
+        return materialized != null && materialized.isObject();
+    }
+
+    @Override
+    public RStringVector getClassHierarchy() {
+        return materialized == null ? getImplicitClass() : materialized.getClassHierarchy();
+    }
+
+    @Override
+    public RStringVector getImplicitClass() {
+        return materialized == null ? RDoubleVector.implicitClassHeader : materialized.getImplicitClass();
+    }
+
+    @Override
+    public int getTypedValueInfo() {
+        return materialized == null ? 0 : materialized.getTypedValueInfo();
+    }
+
+    @Override
+    public void setTypedValueInfo(int value) {
+        materialize().setTypedValueInfo(value);
+    }
+
+    @Override
+    public boolean isS4() {
+        return materialized != null && materialized.isS4();
+    }
+
+    @Override
+    public String toString() {
+        CompilerAsserts.neverPartOfCompilation();
+        return "deferred " + op + " [" + length + "]";
+    }
+}
@@ -22,6 +22,8 @@
  */
 package com.oracle.truffle.r.runtime.data;
 
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
 import java.util.Arrays;
 
 import com.oracle.truffle.api.profiles.ConditionProfile;
@@ -74,12 +76,15 @@ public final class RDoubleVector extends RVector<double[]> implements RAbstractD
 
     @Override
     public double[] getInternalStore() {
+        // the store may be written to, e.g., via the raw array
+        javaDataModified();
         return data;
     }
 
     @Override
     public void setDataAt(Object store, int index, double value) {
         assert data == store;
+        javaDataModified();
         ((double[]) store)[index] = value;
     }
 
@@ -134,15 +139,38 @@ public final class RDoubleVector extends RVector<double[]> implements RAbstractD
         return Arrays.copyOf(data, data.length);
     }
 
+    /**
+     * Like {@link #getDataWithoutCopying()}, for callers that do not modify the returned array.
+     */
+    public double[] getReadonlyData() {
+        return data;
+    }
+
     /**
      * Intended for external calls where a copy is not needed. WARNING: think carefully before using
      * this method rather than {@link #getDataCopy()}.
      */
     @Override
     public double[] getDataWithoutCopying() {
+        javaDataModified();
         return data;
     }
 
+    /**
+     * Copies {@code count} elements starting at {@code from} to {@code dest}. Unlike
+     * {@link #getDataWithoutCopying()}, this does not expose the internal store.
+     */
+    public void copyRegion(int from, double[] dest, int destPos, int count) {
+        System.arraycopy(data, from, dest, destPos, count);
+    }
+
+    /**
+     * Puts {@code count} elements starting at {@code from} into {@code dest} at its position.
+     */
+    public void copyRegion(int from, DoubleBuffer dest, int count) {
+        dest.put(data, from, count);
+    }
+
     @Override
     public RDoubleVector copyWithNewDimensions(int[] newDimensions) {
         return RDataFactory.createDoubleVector(data, isComplete(), newDimensions);
@@ -150,6 +178,7 @@ public final class RDoubleVector extends RVector<double[]> implements RAbstractD
 
     public RDoubleVector updateDataAt(int i, double right, NACheck valueNACheck) {
         assert !this.isShared();
+        javaDataModified();
         data[i] = right;
         if (valueNACheck.check(right)) {
             complete = false;
@@ -203,6 +232,7 @@ public final class RDoubleVector extends RVector<double[]> implements RAbstractD
     @Override
     public void transferElementSameType(int toIndex, RAbstractVector fromVector, int fromIndex) {
         RAbstractDoubleVector other = (RAbstractDoubleVector) fromVector;
+        javaDataModified();
         data[toIndex] = other.getDataAt(fromIndex);
     }
 
@@ -215,4 +245,19 @@ public final class RDoubleVector extends RVector<double[]> implements RAbstractD
     public RStringVector getImplicitClass() {
         return getClassHierarchyHelper(implicitClassHeader);
     }
+
+    @Override
+    protected int getNativeElementSize() {
+        return Double.BYTES;
+    }
+
+    @Override
+    protected void copyToNative(ByteBuffer buffer) {
+        buffer.asDoubleBuffer().put(data);
+    }
+
+    @Override
+    protected void copyFromNative(ByteBuffer buffer) {
+        buffer.asDoubleBuffer().get(data);
+    }
 }
@@ -22,6 +22,8 @@
  */
 package com.oracle.truffle.r.runtime.data;
 
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.util.Arrays;
 
 import com.oracle.truffle.api.profiles.ConditionProfile;
@@ -69,6 +71,8 @@ public final class RIntVector extends RVector<int[]> implements RAbstractIntVect
 
     @Override
     public int[] getInternalStore() {
+        // the store may be written to, e.g., via the raw array
+        javaDataModified();
         return data;
     }
 
@@ -86,6 +90,7 @@ public final class RIntVector extends RVector<int[]> implements RAbstractIntVect
     @Override
     public void setDataAt(Object store, int index, int value) {
         assert data == store;
+        javaDataModified();
         ((int[]) store)[index] = value;
     }
 
@@ -134,15 +139,31 @@ public final class RIntVector extends RVector<int[]> implements RAbstractIntVect
         return Arrays.copyOf(data, data.length);
     }
 
+    /**
+     * Like {@link #getDataWithoutCopying()}, for callers that do not modify the returned array.
+     */
+    public int[] getReadonlyData() {
+        return data;
+    }
+
     /**
      * Intended for external calls where a copy is not needed. WARNING: think carefully before using
      * this method rather than {@link #getDataCopy()}.
      */
     @Override
     public int[] getDataWithoutCopying() {
+        javaDataModified();
         return data;
     }
 
+    /**
+     * Puts {@code count} elements starting at {@code from} into {@code dest} at its position.
+     * Unlike {@link #getDataWithoutCopying()}, this does not expose the internal store.
+     */
+    public void copyRegion(int from, IntBuffer dest, int count) {
+        dest.put(data, from, count);
+    }
+
     @Override
     public RIntVector copyWithNewDimensions(int[] newDimensions) {
         return RDataFactory.createIntVector(data, isComplete(), newDimensions);
@@ -150,6 +171,7 @@ public final class RIntVector extends RVector<int[]> implements RAbstractIntVect
 
     public RIntVector updateDataAt(int i, int right, NACheck valueNACheck) {
         assert !this.isShared();
+        javaDataModified();
         data[i] = right;
         if (valueNACheck.check(right)) {
             setComplete(false);
@@ -202,6 +224,7 @@ public final class RIntVector extends RVector<int[]> implements RAbstractIntVect
     @Override
     public void transferElementSameType(int toIndex, RAbstractVector fromVector, int fromIndex) {
         RAbstractIntVector other = (RAbstractIntVector) fromVector;
+        javaDataModified();
         data[toIndex] = other.getDataAt(fromIndex);
     }
 
@@ -217,6 +240,22 @@ public final class RIntVector extends RVector<int[]> implements RAbstractIntVect
 
     @Override
     public void setElement(int i, Object value) {
+        javaDataModified();
         data[i] = (int) value;
     }
+
+    @Override
+    protected int getNativeElementSize() {
+        return Integer.BYTES;
+    }
+
+    @Override
+    protected void copyToNative(ByteBuffer buffer) {
+        buffer.asIntBuffer().put(data);
+    }
+
+    @Override
+    protected void copyFromNative(ByteBuffer buffer) {
+        buffer.asIntBuffer().get(data);
+    }
 }
@@ -22,6 +22,8 @@
  */
 package com.oracle.truffle.r.runtime.data;
 
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.util.Arrays;
 
 import com.oracle.truffle.api.profiles.ConditionProfile;
@@ -71,12 +73,15 @@ public final class RLogicalVector extends RVector<byte[]> implements RAbstractLo
 
     @Override
     public byte[] getInternalStore() {
+        // the store may be written to, e.g., via the raw array
+        javaDataModified();
         return data;
     }
 
     @Override
     public void setDataAt(Object store, int index, byte value) {
         assert data == store;
+        javaDataModified();
         ((byte[]) store)[index] = value;
     }
 
@@ -133,6 +138,7 @@ public final class RLogicalVector extends RVector<byte[]> implements RAbstractLo
 
     private RLogicalVector updateDataAt(int index, byte right, NACheck valueNACheck) {
         assert !this.isShared();
+        javaDataModified();
         data[index] = right;
         if (valueNACheck.check(right)) {
             setComplete(false);
@@ -177,6 +183,7 @@ public final class RLogicalVector extends RVector<byte[]> implements RAbstractLo
     @Override
     public void transferElementSameType(int toIndex, RAbstractVector fromVector, int fromIndex) {
         RAbstractLogicalVector other = (RAbstractLogicalVector) fromVector;
+        javaDataModified();
         data[toIndex] = other.getDataAt(fromIndex);
     }
 
@@ -185,12 +192,20 @@ public final class RLogicalVector extends RVector<byte[]> implements RAbstractLo
         return Arrays.copyOf(data, data.length);
     }
 
+    /**
+     * Like {@link #getDataWithoutCopying()}, for callers that do not modify the returned array.
+     */
+    public byte[] getReadonlyData() {
+        return data;
+    }
+
     /**
      * Intended for external calls where a copy is not needed. WARNING: think carefully before using
      * this method rather than {@link #getDataCopy()}.
      */
     @Override
     public byte[] getDataWithoutCopying() {
+        javaDataModified();
         return data;
     }
 
@@ -213,4 +228,37 @@ public final class RLogicalVector extends RVector<byte[]> implements RAbstractLo
     public RStringVector getImplicitClass() {
         return getClassHierarchyHelper(implicitClassHeader);
     }
+
+    /**
+     * Native code expects logicals as {@code int}s, with {@code NA_INTEGER} denoting NA.
+     */
+    @Override
+    protected int getNativeElementSize() {
+        return Integer.BYTES;
+    }
+
+    @Override
+    protected void copyToNative(ByteBuffer buffer) {
+        IntBuffer ints = buffer.asIntBuffer();
+        for (int i = 0; i < data.length; i++) {
+            byte value = data[i];
+            ints.put(i, value == RRuntime.LOGICAL_NA ? RRuntime.INT_NA : value);
+        }
+    }
+
+    @Override
+    protected void copyFromNative(ByteBuffer buffer) {
+        IntBuffer ints = buffer.asIntBuffer();
+        boolean isComplete = true;
+        for (int i = 0; i < data.length; i++) {
+            int value = ints.get(i);
+            if (value == RRuntime.INT_NA) {
+                data[i] = RRuntime.LOGICAL_NA;
+                isComplete = false;
+            } else {
+                data[i] = (byte) value;
+            }
+        }
+        complete = isComplete;
+    }
 }
@@ -22,6 +22,7 @@
  */
 package com.oracle.truffle.r.runtime.data;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import com.oracle.truffle.api.profiles.ConditionProfile;
@@ -80,12 +81,15 @@ public final class RRawVector extends RVector<byte[]> implements RAbstractRawVec
 
     @Override
     public byte[] getInternalStore() {
+        // the store may be written to, e.g., via the raw array
+        javaDataModified();
         return data;
     }
 
     @Override
     public void setRawDataAt(Object store, int index, byte value) {
         assert data == store;
+        javaDataModified();
         ((byte[]) store)[index] = value;
     }
 
@@ -119,12 +123,20 @@ public final class RRawVector extends RVector<byte[]> implements RAbstractRawVec
         return Arrays.copyOf(data, data.length);
     }
 
+    /**
+     * Like {@link #getDataWithoutCopying()}, for callers that do not modify the returned array.
+     */
+    public byte[] getReadonlyData() {
+        return data;
+    }
+
     /**
      * Intended for external calls where a copy is not needed. WARNING: think carefully before using
      * this method rather than {@link #getDataCopy()}.
      */
     @Override
     public byte[] getDataWithoutCopying() {
+        javaDataModified();
         return data;
     }
 
@@ -140,6 +152,7 @@ public final class RRawVector extends RVector<byte[]> implements RAbstractRawVec
 
     public RRawVector updateDataAt(int i, RRaw right) {
         assert !this.isShared();
+        javaDataModified();
         data[i] = right.getValue();
         return this;
     }
@@ -174,6 +187,7 @@ public final class RRawVector extends RVector<byte[]> implements RAbstractRawVec
     @Override
     public void transferElementSameType(int toIndex, RAbstractVector fromVector, int fromIndex) {
         RAbstractRawVector other = (RAbstractRawVector) fromVector;
+        javaDataModified();
         data[toIndex] = other.getRawDataAt(fromIndex);
     }
 
@@ -186,4 +200,19 @@ public final class RRawVector extends RVector<byte[]> implements RAbstractRawVec
     public RStringVector getImplicitClass() {
         return getClassHierarchyHelper(implicitClassHeader);
     }
+
+    @Override
+    protected int getNativeElementSize() {
+        return Byte.BYTES;
+    }
+
+    @Override
+    protected void copyToNative(ByteBuffer buffer) {
+        buffer.duplicate().put(data);
+    }
+
+    @Override
+    protected void copyFromNative(ByteBuffer buffer) {
+        buffer.duplicate().get(data);
+    }
 }
@@ -22,6 +22,7 @@
  */
 package com.oracle.truffle.r.runtime.data;
 
+import java.nio.ByteBuffer;
 import java.util.function.Function;
 
 import com.oracle.truffle.api.CompilerAsserts;
@@ -60,6 +61,12 @@ public abstract class RVector<ArrayT> extends RSharingAttributeStorage implement
 
     protected boolean complete; // "complete" means: does not contain NAs
 
+    /**
+     * The copy of the data in native memory, see {@link NativeVectorData}. Only used by the vector
+     * types that native code can access as C arrays.
+     */
+    private NativeVectorData nativeData;
+
     protected RVector(boolean complete, int length, int[] dimensions, RStringVector names) {
         this.complete = complete;
         assert names != this;
@@ -149,6 +156,76 @@ public abstract class RVector<ArrayT> extends RSharingAttributeStorage implement
         return isTemporary() ? getDataWithoutCopying() : getDataCopy();
     }
 
+    /**
+     * Must be called by any operation that (potentially) modifies the Java data, which includes
+     * handing out the data array, e.g., via {@link #getDataWithoutCopying()} or
+     * {@link #getInternalStore()}.
+     */
+    protected final void javaDataModified() {
+        if (nativeData != null) {
+            nativeData.setJavaModified(true);
+        }
+    }
+
+    /**
+     * Returns the native copy of the data, creating it if necessary, which is guaranteed to be up
+     * to date with the Java data. Returns {@code null} if the data should be handled by copying
+     * instead, e.g., because the vector is short.
+     *
+     * As in GNU R, native code may only modify vectors that are not referenced from R code. This is
+     * checked here, i.e., when native code first accesses the data, and again in
+     * {@link #commitNativeData()}, so that the data is only transferred back if the native code may
+     * have modified it.
+     */
+    @TruffleBoundary
+    public final NativeVectorData getNativeData() {
+        if (nativeData == null) {
+            nativeData = NativeVectorData.create(this, getLength(), getNativeElementSize());
+            if (nativeData == null) {
+                return null;
+            }
+        }
+        if (nativeData.isJavaModified()) {
+            copyToNative(nativeData.getBuffer());
+            nativeData.setJavaModified(false);
+        }
+        nativeData.setNativeWritable(isTemporary());
+        return nativeData;
+    }
+
+    /**
+     * Transfers (potential) modifications of the native copy made by native code back to the Java
+     * data. Returns {@code false} if the vector is referenced and therefore cannot have been
+     * modified, in which case nothing is transferred.
+     */
+    @TruffleBoundary
+    public final boolean commitNativeData() {
+        assert nativeData != null;
+        if (!nativeData.isNativeWritable() && !isTemporary()) {
+            return false;
+        }
+        copyFromNative(nativeData.getBuffer());
+        nativeData.setJavaModified(false);
+        return true;
+    }
+
+    /**
+     * The size of an element in the native representation of the data.
+     */
+    protected int getNativeElementSize() {
+        throw RInternalError.shouldNotReachHere();
+    }
+
+    @SuppressWarnings("unused")
+    protected void copyToNative(ByteBuffer buffer) {
+        throw RInternalError.shouldNotReachHere();
+    }
+
+    @SuppressWarnings("unused")
+    protected void copyFromNative(ByteBuffer buffer) {
+        throw RInternalError.shouldNotReachHere();
+    }
+
     public final int[] getInternalDimensions() {
         return getDimensionsFromAttrs();
     }
@@ -50,6 +50,7 @@ import com.oracle.truffle.r.runtime.data.RStringVector;
 import com.oracle.truffle.r.runtime.env.frame.NSBaseMaterializedFrame;
 import com.oracle.truffle.r.runtime.env.frame.REnvEmptyFrameAccess;
 import com.oracle.truffle.r.runtime.env.frame.REnvFrameAccess;
+import com.oracle.truffle.r.runtime.env.frame.REnvHashedFrameAccess;
 import com.oracle.truffle.r.runtime.env.frame.REnvTruffleFrameAccess;
 
 /**
@@ -759,7 +760,7 @@ public abstract class REnvironment extends RAttributeStorage {
     }
 
     public REnvironment getParent() {
-        MaterializedFrame enclosingFrame = RArguments.getEnclosingFrame(getFrame());
+        MaterializedFrame enclosingFrame = RArguments.getEnclosingFrame(frameAccess.getArgumentsFrame());
         return enclosingFrame == null ? emptyEnv : frameToEnvironment(enclosingFrame);
     }
 
@@ -769,7 +770,7 @@ public abstract class REnvironment extends RAttributeStorage {
      */
     public void setParent(REnvironment env) {
         if (getParent() != env) {
-            RArguments.setEnclosingFrame(getFrame(), env.getFrame());
+            RArguments.setEnclosingFrame(frameAccess.getArgumentsFrame(), env.getFrame());
         }
     }
 
@@ -829,6 +830,15 @@ public abstract class REnvironment extends RAttributeStorage {
         return frameAccessProfile.profile(frameAccess).getFrame();
     }
 
+    /**
+     * Like {@link #getFrame()}, but only for access to the arguments of the frame, e.g., to set its
+     * enclosing frame. Unlike {@link #getFrame()}, this does not move the bindings of a hashed
+     * {@link NewEnv} into the frame.
+     */
+    public MaterializedFrame getArgumentsFrame() {
+        return frameAccess.getArgumentsFrame();
+    }
+
     public void lock(boolean bindings) {
         locked = true;
         if (bindings) {
@@ -1002,8 +1012,9 @@ public abstract class REnvironment extends RAttributeStorage {
     /**
      * An environment explicitly created with, typically, {@code new.env}, but also used internally.
      * Such environments are always {@link #UNNAMED} but can later be given a name as an attribute.
-     * This is the class used by the {@code new.env} function. We record but do not interpret the
-     * {@code hash} input, as we always use a hashmap, for possible use by the serialization code
+     * This is the class used by the {@code new.env} function. If created with {@code hash = TRUE},
+     * the bindings are stored in a {@link REnvHashedFrameAccess hash table} until the frame is
+     * needed for evaluation. The {@code hash} input is also recorded for the serialization code
      * (GnuR generates different output format for hash environments).
      *
      */
@@ -1018,6 +1029,16 @@ public abstract class REnvironment extends RAttributeStorage {
             }
         }
 
+        public NewEnv(MaterializedFrame frame, String name, boolean hashed, int initialSize) {
+            super(UNNAMED, hashed ? new REnvHashedFrameAccess(frame, initialSize) : new REnvTruffleFrameAccess(frame));
+            RArguments.setEnvironment(frame, this);
+            if (name != null) {
+                setAttr(NAME_ATTR_KEY, name);
+            }
+            this.hashed = hashed;
+            this.initialSize = initialSize;
+        }
+
         public boolean isHashed() {
             return hashed;
         }
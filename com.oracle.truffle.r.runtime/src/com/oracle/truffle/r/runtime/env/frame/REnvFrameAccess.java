@@ -77,4 +77,12 @@ public abstract class REnvFrameAccess {
 
     public abstract MaterializedFrame getFrame();
 
+    /**
+     * Returns the frame for access to its arguments only, e.g., the enclosing frame, which unlike
+     * {@link #getFrame()} does not imply that the bindings are accessed through the frame.
+     */
+    public MaterializedFrame getArgumentsFrame() {
+        return getFrame();
+    }
+
 }
@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2017, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.runtime.env.frame;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.frame.MaterializedFrame;
+import com.oracle.truffle.r.runtime.RError;
+import com.oracle.truffle.r.runtime.RInternalError;
+import com.oracle.truffle.r.runtime.data.RDataFactory;
+import com.oracle.truffle.r.runtime.data.RStringVector;
+import com.oracle.truffle.r.runtime.env.REnvironment;
+import com.oracle.truffle.r.runtime.env.REnvironment.PutException;
+
+/**
+ * Variant of {@link REnvFrameAccess} for environments created with {@code new.env(hash = TRUE)},
+ * which are often used as dictionaries with many dynamically created keys. As long as no code is
+ * evaluated in the environment, the bindings are kept in a hash table instead of the slots of the
+ * frame, so that adding a binding neither grows the frame descriptor nor invalidates any lookups.
+ *
+ * The table maps each key to an index into arrays of keys and values, which are kept in insertion
+ * order like the slots of a frame descriptor. The table uses open addressing with linear probing
+ * and removed bindings leave {@link #DELETED} markers until the next rehash.
+ *
+ * Once the frame itself is requested via {@link #getFrame()}, e.g., because the environment
+ * becomes the enclosing environment of a closure, of another environment or of an {@code eval},
+ * all bindings are moved into frame slots and all further accesses go to the frame.
+ */
+public final class REnvHashedFrameAccess extends REnvFrameAccess {
+
+    private static final int EMPTY = -1;
+    private static final int DELETED = -2;
+    private static final int MIN_CAPACITY = 8;
+
+    private final MaterializedFrame frame;
+    /**
+     * The access to the frame once the bindings have been moved there, {@code null} before.
+     */
+    private REnvTruffleFrameAccess frameAccess;
+
+    private int[] table;
+    private String[] keys;
+    private Object[] values;
+    /**
+     * The number of used entries in {@link #keys} and {@link #values}, including removed ones.
+     */
+    private int entries;
+    /**
+     * The number of bindings.
+     */
+    private int size;
+    /**
+     * Records which bindings are locked, allocated lazily like in {@link REnvTruffleFrameAccess}.
+     */
+    private Set<String> lockedBindings;
+
+    public REnvHashedFrameAccess(MaterializedFrame frame, int initialSize) {
+        this.frame = frame;
+        int capacity = MIN_CAPACITY;
+        while (capacity < initialSize && capacity < (1 << 29)) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int entryCapacity) {
+        table = new int[entryCapacity * 2];
+        Arrays.fill(table, EMPTY);
+        keys = new String[entryCapacity];
+        values = new Object[entryCapacity];
+        entries = 0;
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the index of the entry for {@code key} or {@code -1}.
+     */
+    private int find(String key) {
+        int mask = table.length - 1;
+        int i = hash(key) & mask;
+        while (true) {
+            int entry = table[i];
+            if (entry == EMPTY) {
+                return -1;
+            }
+            if (entry != DELETED && key.equals(keys[entry])) {
+                return entry;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * Returns the table slot that holds the entry for {@code key}, or the slot in which to insert
+     * it, encoded as {@code -slot - 1}.
+     */
+    private int findSlot(String key) {
+        int mask = table.length - 1;
+        int i = hash(key) & mask;
+        int firstDeleted = -1;
+        while (true) {
+            int entry = table[i];
+            if (entry == EMPTY) {
+                return -(firstDeleted == -1 ? i : firstDeleted) - 1;
+            }
+            if (entry == DELETED) {
+                if (firstDeleted == -1) {
+                    firstDeleted = i;
+                }
+            } else if (key.equals(keys[entry])) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * Rebuilds the table and compacts the entries, growing them if more than half are bindings.
+     */
+    private void rehash() {
+        String[] oldKeys = keys;
+        Object[] oldValues = values;
+        int oldEntries = entries;
+        int capacity = keys.length;
+        if (size >= capacity / 2) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+        int mask = table.length - 1;
+        for (int j = 0; j < oldEntries; j++) {
+            String key = oldKeys[j];
+            if (key != null) {
+                int i = hash(key) & mask;
+                while (table[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = entries;
+                keys[entries] = key;
+                values[entries] = oldValues[j];
+                entries++;
+            }
+        }
+    }
+
+    @TruffleBoundary
+    private void moveToFrame() {
+        REnvTruffleFrameAccess access = new REnvTruffleFrameAccess(frame);
+        try {
+            for (int j = 0; j < entries; j++) {
+                if (keys[j] != null) {
+                    access.put(keys[j], values[j]);
+                }
+            }
+        } catch (PutException e) {
+            throw RInternalError.shouldNotReachHere(e);
+        }
+        if (lockedBindings != null) {
+            for (String key : lockedBindings) {
+                access.lockBinding(key);
+            }
+        }
+        frameAccess = access;
+        table = null;
+        keys = null;
+        values = null;
+        lockedBindings = null;
+    }
+
+    @Override
+    public MaterializedFrame getFrame() {
+        if (frameAccess == null) {
+            moveToFrame();
+        }
+        return frame;
+    }
+
+    @Override
+    public MaterializedFrame getArgumentsFrame() {
+        return frame;
+    }
+
+    @Override
+    @TruffleBoundary
+    public Object get(String key) {
+        if (frameAccess != null) {
+            return frameAccess.get(key);
+        }
+        int entry = find(key);
+        return entry == -1 ? null : values[entry];
+    }
+
+    @Override
+    @TruffleBoundary
+    public void put(String key, Object value) throws PutException {
+        if (frameAccess != null) {
+            frameAccess.put(key, value);
+            return;
+        }
+        assert key != null;
+        assert value != null;
+        if (lockedBindings != null && lockedBindings.contains(key)) {
+            throw new PutException(RError.Message.ENV_CHANGE_BINDING, key);
+        }
+        int slot = findSlot(key);
+        if (slot >= 0) {
+            values[table[slot]] = value;
+            return;
+        }
+        if (entries == keys.length) {
+            // the table has twice as many slots as there are entries, so it is never full
+            rehash();
+            slot = findSlot(key);
+        }
+        slot = -slot - 1;
+        table[slot] = entries;
+        keys[entries] = key;
+        values[entries] = value;
+        entries++;
+        size++;
+    }
+
+    @Override
+    @TruffleBoundary
+    public void rm(String key) throws PutException {
+        if (frameAccess != null) {
+            frameAccess.rm(key);
+            return;
+        }
+        assert key != null;
+        if (lockedBindings != null) {
+            lockedBindings.remove(key);
+        }
+        int slot = findSlot(key);
+        if (slot < 0) {
+            throw new PutException(RError.Message.UNKNOWN_OBJECT, key);
+        }
+        int entry = table[slot];
+        table[slot] = DELETED;
+        keys[entry] = null;
+        values[entry] = null;
+        size--;
+    }
+
+    @Override
+    @TruffleBoundary
+    public RStringVector ls(boolean allNames, Pattern pattern, boolean sorted) {
+        if (frameAccess != null) {
+            return frameAccess.ls(allNames, pattern, sorted);
+        }
+        String[] data = new String[size];
+        int count = 0;
+        for (int j = 0; j < entries; j++) {
+            String key = keys[j];
+            if (key != null && REnvironment.includeName(key, allNames, pattern)) {
+                data[count++] = key;
+            }
+        }
+        if (count != data.length) {
+            data = Arrays.copyOf(data, count);
+        }
+        if (sorted) {
+            Arrays.sort(data);
+        }
+        return RDataFactory.createStringVector(data, RDataFactory.COMPLETE_VECTOR);
+    }
+
+    @Override
+    @TruffleBoundary
+    public boolean bindingIsLocked(String key) {
+        if (frameAccess != null) {
+            return frameAccess.bindingIsLocked(key);
+        }
+        return lockedBindings != null && lockedBindings.contains(key);
+    }
+
+    @Override
+    @TruffleBoundary
+    public void lockBindings() {
+        if (frameAccess != null) {
+            frameAccess.lockBindings();
+            return;
+        }
+        for (int j = 0; j < entries; j++) {
+            if (keys[j] != null) {
+                lockBinding(keys[j]);
+            }
+        }
+    }
+
+    @Override
+    @TruffleBoundary
+    public void lockBinding(String key) {
+        if (frameAccess != null) {
+            frameAccess.lockBinding(key);
+            return;
+        }
+        if (findSlot(key) < 0) {
+            // there is no binding to lock, a later put must still succeed
+            return;
+        }
+        if (lockedBindings == null) {
+            lockedBindings = new HashSet<>();
+        }
+        lockedBindings.add(key);
+    }
+
+    @Override
+    @TruffleBoundary
+    public void unlockBinding(String key) {
+        if (frameAccess != null) {
+            frameAccess.unlockBinding(key);
+        } else if (lockedBindings != null) {
+            lockedBindings.remove(key);
+        }
+    }
+}
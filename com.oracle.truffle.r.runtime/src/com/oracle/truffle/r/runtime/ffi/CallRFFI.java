@@ -52,6 +52,15 @@ public interface CallRFFI {
          * Sets the {@code R_Interactive} FFI variable. Similar rationale to {#link setTmpDir}.
          */
         public abstract void setInteractive(boolean interactive);
+
+        /**
+         * Returns the statistics of the cache of global refs kept by the native code for the
+         * current thread (lookups, hits, permanent refs, thread refs, thread table capacity and
+         * preserved refs) or {@code null} if the implementation does not have such a cache.
+         */
+        public long[] getGlobalRefCacheStats() {
+            return null;
+        }
     }
 
     CallRFFINode createCallRFFINode();
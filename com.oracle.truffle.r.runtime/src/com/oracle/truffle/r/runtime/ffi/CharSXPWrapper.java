@@ -34,6 +34,10 @@ package com.oracle.truffle.r.runtime.ffi;
  */
 public final class CharSXPWrapper {
     private final String contents;
+    /**
+     * See {@code RBaseObject.nativeRefHash}.
+     */
+    @SuppressWarnings("unused") private int nativeRefHash;
 
     private CharSXPWrapper(String contents) {
         this.contents = contents;
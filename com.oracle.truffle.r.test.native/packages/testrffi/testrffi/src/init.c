@@ -58,6 +58,8 @@ static const R_CallMethodDef CallEntries[] = {
 	    CALLDEF(preserve_object, 0),
 	    CALLDEF(release_object, 1),
 	    CALLDEF(findvar, 2),
+	    CALLDEF(sum_real, 1),
+	    CALLDEF(populateRealList, 1),
 	    {NULL, NULL, 0}
 };
 
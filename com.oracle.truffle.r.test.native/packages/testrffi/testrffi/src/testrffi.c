@@ -290,3 +290,26 @@ SEXP findvar(SEXP x, SEXP env) {
 	}
 }
 
+
+SEXP sum_real(SEXP x) {
+	double *cx = REAL(x);
+	int len = LENGTH(x);
+	double sum = 0;
+	for (int i = 0; i < len; i++) {
+		sum += cx[i];
+	}
+	return ScalarReal(sum);
+}
+
+SEXP populateRealList(SEXP n) {
+    SEXP list;
+    int intN = INTEGER_VALUE(n);
+    PROTECT(list = allocVector(VECSXP, 1));
+    SET_VECTOR_ELT(list, 0, allocVector(REALSXP, intN));
+    double *data = REAL(VECTOR_ELT(list, 0));
+    for (int i = 0; i < intN; i++) {
+    	data[i] = i * 0.5;
+    }
+    UNPROTECT(1);
+    return list;
+}
@@ -71,3 +71,7 @@ extern SEXP preserve_object(void);
 extern SEXP release_object(SEXP x);
 
 extern SEXP findvar(SEXP x, SEXP env);
+
+extern SEXP sum_real(SEXP x);
+
+extern SEXP populateRealList(SEXP n);
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2017, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.test.builtins;
+
+import org.junit.Test;
+
+import com.oracle.truffle.r.test.TestBase;
+
+// Checkstyle: stop line length check
+public class TestBuiltin_lazyLoadDBfetch extends TestBase {
+
+    private static final String MAKE_DB = "e <- new.env(); e$a <- 1:10; e$b <- list(x = 'abc', y = c(1.5, NA)); e$f <- function(x) x + 1; f <- tempfile(); ";
+
+    @Test
+    public void testlazyLoadDBfetch() {
+        assertEval("{ " + MAKE_DB + "tools:::makeLazyLoadDB(e, f); e2 <- new.env(); lazyLoad(f, envir = e2); list(e2$a, e2$b, e2$f(1), sort(ls(e2))) }");
+        // the records are fetched again from the mapping that is shared by both loads
+        assertEval("{ " + MAKE_DB + "tools:::makeLazyLoadDB(e, f); e2 <- new.env(); lazyLoad(f, envir = e2); e3 <- new.env(); lazyLoad(f, envir = e3); list(identical(e2$a, e3$a), e3$b, e3$f(2)) }");
+        for (String compress : new String[]{"TRUE", "2L", "3L"}) {
+            assertEval("{ " + MAKE_DB + "tools:::makeLazyLoadDB(e, f, compress = " + compress + "); e2 <- new.env(); lazyLoad(f, envir = e2); list(e2$a, e2$b) }");
+        }
+    }
+
+    @Test
+    public void testlazyLoadDBfetchRewritten() {
+        // records at the same offsets of a rewritten database must not be served from the cache
+        assertEval("{ " + MAKE_DB + "tools:::makeLazyLoadDB(e, f); e2 <- new.env(); lazyLoad(f, envir = e2); r <- e2$a; e$a <- 11:20; e$b <- list(x = 'def', y = c(2.5, NA)); " +
+                        "tools:::makeLazyLoadDB(e, f); e3 <- new.env(); lazyLoad(f, envir = e3); list(r, e3$a, e3$b) }");
+    }
+}
@@ -37,4 +37,17 @@ public class TestBuiltin_newenv extends TestBase {
         assertEval(Output.ContainsReferences, "parent.env(new.env())");
         assertEval(Output.ContainsReferences, "e <- new.env(); e; parent.env(new.env(TRUE, e))");
     }
+
+    @Test
+    public void testHashedEnv() {
+        assertEval("{ e <- new.env(hash = TRUE); for (i in 1:10000) assign(paste0('k', i), i, envir = e); rm(list = paste0('k', 1:9990), envir = e); " +
+                        "c(length(ls(e)), exists('k9995', envir = e, inherits = FALSE), exists('k5', envir = e, inherits = FALSE), get('k10000', envir = e)) }");
+        assertEval("{ e <- new.env(hash = TRUE, size = 1L); e$b <- 2; e$a <- 1; e$c <- 3; rm('b', envir = e); e$b <- 4; list(ls(e), mget(c('a', 'b'), envir = e)) }");
+        // the bindings move into the frame when code is evaluated in the environment
+        assertEval("{ e <- new.env(hash = TRUE); e$x <- 1; e$y <- 2; r <- evalq(x + y, e); e$x <- 10; c(r, evalq(x + y, e), e$x, length(ls(e))) }");
+        assertEval("{ e <- new.env(hash = TRUE); e$x <- 1; f <- function() x; environment(f) <- e; e$x <- 5; f() }");
+        assertEval("{ e <- new.env(hash = TRUE); e$x <- 1; g <- new.env(parent = e); x <- 0; evalq(x, g) }");
+        assertEval("{ e <- new.env(hash = TRUE); e$x <- 1; lockBinding('x', e); r <- tryCatch(assign('x', 2, envir = e), error = function(c) 'locked'); f <- function() x; environment(f) <- e; list(r, f(), bindingIsLocked('x', e)) }");
+        assertEval("{ e <- new.env(hash = TRUE); tryCatch(lockBinding('y', e), error = function(c) NULL); e$y <- 1; f <- function() y; environment(f) <- e; e$y <- 2; list(f(), bindingIsLocked('y', e)) }");
+    }
 }
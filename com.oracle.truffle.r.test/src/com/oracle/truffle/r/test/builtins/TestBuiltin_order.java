@@ -163,4 +163,41 @@ public class TestBuiltin_order extends TestBase {
 
         assertEval("order(c('40 50', '405', '40 51', '4028', '40 20', '40 30', '404'))");
     }
+
+    @Test
+    public void testOrderLarge() {
+        // at least 256 elements, ordered by radix sort
+        assertEval("{ x <- (1:1000 * 7919L) %% 257L; o <- order(x); c(head(o, 30), tail(o, 30)) }");
+        assertEval("{ x <- (1:1000 * 7919L) %% 257L; o <- order(x, method=\"shell\"); c(head(o, 30), tail(o, 30)) }");
+        assertEval("{ x <- (1:1000 * 7919L) %% 257L; o <- order(x, decreasing=TRUE, method=\"shell\"); c(head(o, 30), tail(o, 30)) }");
+        assertEval("{ x <- (1:1000 * 7919) %% 263 - 100.5; o <- order(x, method=\"shell\"); c(head(o, 30), tail(o, 30)) }");
+        assertEval("{ x <- ((1:600 * 7919L) %% 3L) == 1L; o <- order(x, method=\"shell\"); c(head(o, 20), tail(o, 20)) }");
+
+        // ties stay in index order
+        assertEval("{ x <- rep(c(3L, 1L, 2L), 200); identical(order(x, method=\"shell\"), c(seq(2, 600, 3), seq(3, 600, 3), seq(1, 600, 3))) }");
+        assertEval("{ x <- rep(c(3, 1, 2), 200); identical(order(x, decreasing=TRUE, method=\"shell\"), c(seq(1, 600, 3), seq(3, 600, 3), seq(2, 600, 3))) }");
+        assertEval("{ x <- rep(c(3, 1, 2), 200); identical(order(x, decreasing=TRUE, method=\"radix\"), c(seq(1, 600, 3), seq(3, 600, 3), seq(2, 600, 3))) }");
+
+        // NA placement
+        assertEval("{ x <- c((1:300 * 7919) %% 101 / 7, NA, -Inf, Inf, -0, NA); o <- order(x, method=\"shell\"); c(head(o, 10), tail(o, 10)) }");
+        assertEval("{ x <- c((1:300 * 7919) %% 101 / 7, NA, -Inf, Inf, -0, NA); o <- order(x, na.last=FALSE, method=\"shell\"); c(head(o, 10), tail(o, 10)) }");
+        assertEval("{ x <- c((1:300 * 7919) %% 101 / 7, NA, -Inf, Inf, -0, NA); o <- order(x, decreasing=TRUE, method=\"shell\"); c(head(o, 10), tail(o, 10)) }");
+        assertEval("{ x <- c((1:300 * 7919) %% 101 / 7, NA, -Inf, Inf, -0, NA); o <- order(x, na.last=NA); c(length(o), head(o, 10), tail(o, 10)) }");
+        assertEval("{ x <- c((1:300 * 7919L) %% 101L, NA, NA); o <- order(x, decreasing=TRUE, na.last=FALSE); c(head(o, 10), tail(o, 10)) }");
+
+        // strings
+        assertEval("{ s <- paste0(\"k\", (1:500 * 31) %% 97); o <- order(s); c(head(o, 20), tail(o, 20)) }");
+        assertEval("{ s <- paste0(\"k\", (1:500 * 31) %% 97); s[c(5, 50)] <- NA; o <- order(s, decreasing=TRUE, na.last=FALSE); c(head(o, 20), tail(o, 20)) }");
+
+        // multiple keys
+        assertEval("{ a <- (1:800) %% 5; b <- (1:800 * 13) %% 7; o <- order(a, b, method=\"shell\"); c(head(o, 30), tail(o, 30)) }");
+        assertEval("{ a <- (1:800) %% 5; b <- (1:800 * 13) %% 7; o <- order(a, b, decreasing=TRUE, method=\"shell\"); c(head(o, 30), tail(o, 30)) }");
+        assertEval("{ a <- (1:800) %% 5; s <- paste0(\"k\", (1:800 * 13) %% 7); o <- order(a, s); c(head(o, 30), tail(o, 30)) }");
+        assertEval("{ a <- (1:800) %% 5; b <- (1:800 * 13) %% 7; a[c(3, 400)] <- NA; o <- order(a, b, na.last=FALSE, method=\"shell\"); c(head(o, 30), tail(o, 30)) }");
+
+        // differing 'decreasing' per key
+        assertEval("{ a <- (1:800) %% 5; b <- (1:800 * 13) %% 7; o <- order(a, b, decreasing=c(TRUE, FALSE), method=\"radix\"); c(head(o, 30), tail(o, 30)) }");
+        assertEval("{ a <- (1:800) %% 5; b <- (1:800 * 13) %% 7; a[c(3, 400)] <- NA; o <- order(a, b, decreasing=c(FALSE, TRUE), method=\"radix\"); c(head(o, 30), tail(o, 30)) }");
+        assertEval("{ a <- (1:800) %% 5; b <- (1:800 * 13) %% 7; b[c(1, 2)] <- NA; o <- order(a, b, decreasing=c(TRUE, FALSE), na.last=FALSE, method=\"radix\"); c(head(o, 30), tail(o, 30)) }");
+    }
 }
@@ -47,6 +47,14 @@ public class TestBuiltin_parentframe extends TestBase {
         assertEval("parent.frame(-1)");
     }
 
+    @Test
+    public void testParentFrameRepeated() {
+        // the first lookup walks the stack, later ones find the frames linked to their callers
+        assertEval("{ g <- function(n) { a <- n; if (n > 0) g(n - 1) else c(get('a', envir = parent.frame(1)), get('a', envir = parent.frame(3))) }; list(g(6), g(6)) }");
+        assertEval("{ h <- function() sys.function(1); g <- function() h(); f <- function() g(); identical(f(), f) && identical(f(), f) }");
+        assertEval("{ g <- function() eval(quote(v), parent.frame(2)); f <- function(v) { w <- function() g(); w() }; k <- function() c(f(1), f(2)); c(k(), k()) }");
+    }
+
     @Test
     public void testParentFramePromises() {
         assertEval("{ f <- function(frame) frame; g <- function() f(parent.frame()); g() }");
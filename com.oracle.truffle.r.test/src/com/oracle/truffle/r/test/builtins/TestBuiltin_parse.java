@@ -53,6 +53,19 @@ public class TestBuiltin_parse extends TestBase {
         assertEval(Ignored.ImplementationError, "attributes(parse(text='somethingthatdoesnotexist'))");
     }
 
+    @Test
+    public void testParseLarge() {
+        // large enough for the parse result to be cached, the second parse reads the cache
+        String line = "'g <- function(x, ..., y = NA_character_) list(x[, 1L] + 2i, \"\\\\u00e9\", NULL, TRUE, NA, 0x10, 1e-300)'";
+        String code = "{ f <- tempfile(fileext = '.R'); writeLines(rep(" + line + ", 300), f); e1 <- parse(f); e2 <- parse(f); unlink(f); " +
+                        "c(length(e1), identical(deparse(e1), deparse(e2)), deparse(e2[[300]])) }";
+        assertEval(code);
+        // only file-backed sources are cached
+        assertEvalFastR("{ f <- tempfile(fileext = '.R'); writeLines(rep(" + line + ", 300), f); e1 <- parse(f); s <- .fastr.parse.cache.stats(); " +
+                        "e2 <- parse(f); d1 <- .fastr.parse.cache.stats() - s; e3 <- parse(text = readLines(f)); d2 <- .fastr.parse.cache.stats() - s - d1; unlink(f); " +
+                        "c(d1[['hits']], sum(d2), identical(deparse(e1), deparse(e2))) }", "c(1, 0, 1)");
+    }
+
     @Test
     public void testArgumentsCasts() {
         assertEval(".Internal(parse(stdin(), c(1,2), c('expr1', 'expr2'), '?', '<weird-text', 'unknown'))");
@@ -48,5 +48,13 @@ public class TestBuiltin_scan extends TestBase {
         assertEval("{ con<-textConnection(c(\"bar'foo'\")); scan(con, what=list(\"\")) }");
         assertEval("{ con<-textConnection(c(\"'foo'\")); scan(con, what=list(\"\")) }");
         assertEval("{ con<-textConnection(c(\"bar 'foo'\")); scan(con, what=list(\"\")) }");
+
+        assertEval("{ con<-textConnection(c(\"1 2 # comment\", \"# only comment\", \"3\")); scan(con, comment.char=\"#\", quiet=TRUE) }");
+        assertEval("{ con<-textConnection(c(\"1,5;2,25\", \"3;NA\")); scan(con, sep=\";\", dec=\",\", quiet=TRUE) }");
+        assertEval("{ con<-textConnection(c(\"a,b,\", \"c,,d\")); scan(con, what=list(\"\", \"\", \"\"), sep=\",\", quiet=TRUE) }");
+        assertEval("{ con<-textConnection(c(\"\\ta\\tb\", \"c\\td\\t\", \"\\t\\t\")); scan(con, what=list(\"\", \"\", \"\"), sep=\"\\t\", quiet=TRUE) }");
+        assertEval("{ con<-textConnection(c(\"\\\"x,\\\"\\\"y\\\"\\\"\\\",1\")); scan(con, what=list(\"\", 0), sep=\",\", quiet=TRUE) }");
+        assertEval("{ con<-textConnection(c(\"1 -9 3\", \"x 4 -9\")); scan(con, what=list(\"\", 0, 0), na.strings=c(\"-9\", \"x\"), quiet=TRUE) }");
+        assertEval("{ con<-textConnection(c(\"1 2\", \"3 4\", \"5 6\")); x <- scan(con, nlines=1, quiet=TRUE); list(x, readLines(con)) }");
     }
 }
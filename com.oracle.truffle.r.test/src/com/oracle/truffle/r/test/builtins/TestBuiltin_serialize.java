@@ -84,4 +84,11 @@ public class TestBuiltin_serialize extends TestBase {
         assertEval("options(keep.source=FALSE); val <- new.env(hash=FALSE); val$e <- 5+9i; serialize(val, connection=NULL)");
         assertEval("options(keep.source=FALSE); val <- new.env(hash=FALSE); val$f <- NA; serialize(val, connection=NULL)");
     }
+
+    @Test
+    public void testSerializeLarge() {
+        // spans several serialization buffers
+        assertEval("{ x <- list(a=c(1:100000, NA), b=c(seq(0, 1, length.out=50000), NA, NaN, -Inf), c=paste0('s', 1:20000)); s <- serialize(x, NULL); list(length(s), identical(unserialize(s), x)) }");
+        assertEval("{ x <- c(as.double(1:300000), NA); f <- tempfile(); c <- file(f, 'wb'); serialize(x, c); close(c); c <- file(f, 'rb'); y <- unserialize(c); close(c); list(file.size(f), identical(x, y)) }");
+    }
 }
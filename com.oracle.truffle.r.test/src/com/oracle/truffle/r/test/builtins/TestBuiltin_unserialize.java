@@ -101,4 +101,17 @@ public class TestBuiltin_unserialize extends TestBase {
         assertEval(Output.ContainsReferences, "options(keep.source=FALSE); val <- new.env(hash=FALSE); val$e <- 5+9i; unserialize(serialize(val, connection=NULL))");
         assertEval(Output.ContainsReferences, "options(keep.source=FALSE); val <- new.env(hash=FALSE); val$f <- NA; unserialize(serialize(val, connection=NULL))");
     }
+
+    @Test
+    public void testUnserializeLarge() {
+        // vectors, raws and strings larger than the read buffer, read from a connection
+        assertEval("{ x <- list(i=c(1:100000, NA), l=rep(c(TRUE, NA, FALSE), 30000), d=c(1:100000 / 7, NA, NaN), r=as.raw(rep(0:255, 2000)), s=strrep('x', 300000)); f <- tempfile(); saveRDS(x, f, compress=FALSE); y <- readRDS(f); list(identical(x, y), anyNA(y$i), anyNA(y$l), sum(y$d, na.rm=TRUE), nchar(y$s)) }");
+    }
+
+    @Test
+    public void testUnserializeTruncated() {
+        assertEval(Output.IgnoreErrorContext, "{ x <- serialize(c(1.5, 2.5, 3.5), NULL); unserialize(x[1:(length(x) - 4)]) }");
+        assertEval(Output.IgnoreErrorContext, "{ x <- serialize(as.raw(1:100), NULL); unserialize(x[1:(length(x) - 4)]) }");
+        assertEval(Output.IgnoreErrorContext, "{ x <- serialize(1:100000, NULL); f <- tempfile(); writeBin(x[1:(length(x) - 4)], f); con <- file(f, 'rb'); tryCatch(unserialize(con), finally = close(con)) }");
+    }
 }
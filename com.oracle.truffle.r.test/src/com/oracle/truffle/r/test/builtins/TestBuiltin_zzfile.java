@@ -40,4 +40,27 @@ public class TestBuiltin_zzfile extends TestBase {
                         "{ f <- tempfile(); c <- %0zfile(f); writeLines(as.character(1:50), c); close(c); c <- %0zfile(f, \"a\"); writeLines(as.character(51:70), c); close(c); readLines(f) }",
                         CTYPES));
     }
+
+    @Test
+    public void testLarge() {
+        // more than one bzip2 block, read incrementally
+        assertEval(TestBase.template(
+                        "{ f <- tempfile(); c <- %0zfile(f, compression=1); writeLines(as.character(1:200000), c); close(c); c <- %0zfile(f, \"r\"); x <- readLines(c, 5); y <- readLines(c); close(c); list(x, length(y), y[length(y)]) }",
+                        CTYPES));
+        assertEval(TestBase.template(
+                        "{ f <- tempfile(); c <- %0zfile(f, \"wb\"); writeBin(rep(c(1.5, -2, NA), 50000), c); close(c); c <- %0zfile(f, \"rb\"); x <- readBin(c, \"double\", 200000); close(c); list(length(x), sum(x, na.rm=TRUE)) }",
+                        CTYPES));
+    }
+
+    @Test
+    public void testSaveLoad() {
+        assertEval("{ f <- tempfile(); x <- list(a=1:10, b=letters); save(x, file=f, compress=\"bzip2\"); rm(x); load(f); x }");
+        assertEval("{ f <- tempfile(); x <- list(a=1:10, b=letters); save(x, file=f, compress=\"xz\", compression_level=9); rm(x); load(f); x }");
+        assertEval("{ f <- tempfile(); c <- xzfile(f, compression=-9); writeLines(letters, c); close(c); readLines(f) }");
+        // several gzip members
+        assertEval("{ f <- tempfile(); x <- list(a=seq(0, 1, length.out=500000), b=rep(letters, 10000)); saveRDS(x, f); y <- readRDS(f); list(identical(x, y), sum(y$a), length(y$b)) }");
+        assertEval("{ f <- tempfile(); c <- gzfile(f, \"wb\", compression=0); serialize(1:10, c); close(c); c <- gzfile(f, \"rb\"); x <- unserialize(c); close(c); x }");
+        assertEval("{ f <- tempfile(); c <- gzfile(f, \"wb\"); serialize(seq(0, 1, length.out=500000), c); serialize(letters, c); close(c); c <- gzfile(f, \"rb\"); x <- unserialize(c); y <- unserialize(c); close(c); list(sum(x), y) }");
+        assertEval("{ f <- tempfile(); c <- gzfile(f, \"wb\"); writeBin(1:3, c); serialize(seq(0, 1, length.out=500000), c); close(c); c <- gzfile(f, \"rb\"); i <- readBin(c, \"integer\", 3); x <- unserialize(c); close(c); list(i, sum(x)) }");
+    }
 }
@@ -4,7 +4,7 @@
  * http://www.gnu.org/licenses/gpl-2.0.html
  *
  * Copyright (c) 2012-2014, Purdue University
- * Copyright (c) 2013, 2016, Oracle and/or its affiliates
+ * Copyright (c) 2013, 2017, Oracle and/or its affiliates
  *
  * All rights reserved.
  */
@@ -134,6 +134,19 @@ public class TestS3Dispatch extends TestRBase {
         assertEval("f.default<-function(abc, bbb, ...)list(abc, bbb, ...); f<-function(x,...)UseMethod('f'); f(13, ab=42, b=1, c=5);");
     }
 
+    @Test
+    public void testMegamorphicDispatch() {
+        // a single call site sees more classes than its inline cache can hold
+        String objs = "f <- function(x) UseMethod('f'); f.default <- function(x) 'default'; for (c in letters[1:8]) assign(paste0('f.', c), eval(bquote(function(x) .(c)))); " +
+                        "objs <- lapply(c(letters[1:10], 'a'), function(c) structure(1, class = c(c, 'b'))); g <- function() vapply(objs, function(o) f(o), ''); ";
+        assertEval("{ " + objs + "g(); g() }");
+        assertEval("{ " + objs + "g(); f.c <- function(x) 'new c'; f.i <- function(x) 'new i'; rm(f.a); g() }");
+        assertEval("{ " + objs + "g(); h <- function() { f.d <- function(x) 'local d'; vapply(objs, function(o) f(o), '') }; list(h(), g()) }");
+        assertEval("{ " + objs + "g(); e <- new.env(); assign('f.e', function(x) 'attached e', envir = e); attach(e, name = 'ee'); r1 <- g(); rm(f.e); r2 <- g(); detach('ee'); list(r1, r2, g()) }");
+        // a generic defined inside a function is dispatched anew in each call of that function
+        assertEval("{ " + objs + "k <- function(tag) { f <- function(x) UseMethod('f'); f.default <- function(x) tag; f.a <- function(x) paste(tag, 'a'); vapply(objs, function(o) f(o), '') }; list(k('one'), k('two')) }");
+    }
+
     @Override
     public String getTestDir() {
         return "functions/S3";
@@ -65,6 +65,17 @@ public class TestConnections extends TestBase {
         assertEval(TestBase.template("{ con <- file(\"%0\"); readLines(con, 2) }", testDir.subDir("wl2")));
     }
 
+    @Test
+    public void testFileReadLinesStats() {
+        // the cr of the first line is the last byte of the first 64k block
+        String write = "writeBin(c(charToRaw(strrep(\"x\", 65535)), as.raw(c(13, 10)), charToRaw(\"b\\r\\nc\\rd\\n\")), \"%0\"); ";
+        String read = "{ " + write + "con <- file(\"%0\", \"r\"); l <- readLines(con); s <- .fastr.connection.stats(con); close(con); list(nchar(l), l[-1], s[[\"bytes\"]], s[[\"lines\"]]) }";
+        assertEvalFastR(TestBase.template(read, testDir.subDir("crlf1"))[0], "list(c(65535L, 1L, 1L, 1L), c(\"b\", \"c\", \"d\"), 65544, 4)");
+        // binary reads after readLines do not see the lf of a crlf pair split by the block boundary
+        String bin = "{ " + write + "con <- file(\"%0\", \"rb\"); l <- readLines(con, 1); r <- readBin(con, \"raw\", 3); close(con); list(nchar(l), rawToChar(r)) }";
+        assertEvalFastR(TestBase.template(bin, testDir.subDir("crlf2"))[0], "list(65535L, \"b\\r\\n\")");
+    }
+
     @Test
     public void testFileWriteReadChar() {
         assertEval(TestBase.template("{ writeChar(\"abc\", file(\"%0\")) }", testDir.subDir("wc1")));
@@ -122,5 +133,11 @@ public class TestConnections extends TestBase {
         assertEval(Ignored.Unimplemented, "c <- textConnection('out', 'w'); cat('testtext', file=c); isIncomplete(c); cat('testtext2\\n', file=c); isIncomplete(c); close(c); out");
 
         assertEval("{ d<-data.frame(c(1,2), c(10, 20)); buf<-character(); c<-textConnection(\"buf\", open=\"w\", local=T); write.table(d, c); buf }");
+        // the variable follows the writes, also when read in between
+        assertEval("{ con <- textConnection(\"tcval\", open=\"w\"); x <- tcval; writeLines(c(\"a\", \"b\"), con); y <- tcval; writeLines(\"c\", con); z <- textConnectionValue(con); writeLines(\"d\", con); close(con); list(x, y, z, tcval) }");
+        assertEval("{ x <- capture.output(for (i in 1:50000) cat(i, \"\\n\")); list(length(x), x[50000]) }");
+        // substitute and serialize see the value, not the pending read of the connection
+        assertEval("{ f <- function() { con <- textConnection(\"tcval\", open=\"w\", local=TRUE); writeLines(c(\"a\", \"b\"), con); s <- substitute(tcval); close(con); s }; f() }");
+        assertEval("{ f <- function() { con <- textConnection(\"tcval\", open=\"w\", local=TRUE); writeLines(\"a\", con); s <- serialize(environment(), NULL); writeLines(\"b\", con); close(con); get(\"tcval\", unserialize(s)) }; f() }");
     }
 }
@@ -742,6 +742,33 @@ public class TestSimpleArithmetic extends TestBase {
         assertEval("{ x <- 3 ; f <- function(z) { if (z) { x <- 1 } ; x <- x - 1L ; x } ; f(FALSE) }");
     }
 
+    @Test
+    public void testLargeVectors() {
+        // large double vectors are computed lazily by fused operations
+        assertEval("{ x <- as.double(1:5000); y <- x * 2 + x / 4 - 1; c(sum(y), y[1], y[5000], length(y)) }");
+        assertEval("{ x <- as.double(1:5000); c(sum(x * 2 + 1), mean(x * x), (x * 3)[4711]) }");
+        assertEval("{ x <- as.double(1:5000); x[17] <- NA; c(sum(x * 2 + 1), sum(x * 2 + 1, na.rm = TRUE)) }");
+        assertEval("{ x <- as.double(1:5000); y <- x * 2 + 1; dim(y) <- c(50, 100); c(dim(y), y[50, 100]) }");
+        assertEval("{ x <- as.double(1:5000); y <- structure(x * 2 + 1, foo = \"bar\"); c(attr(y, \"foo\"), y[3]) }");
+        assertEval("{ x <- as.double(1:5000); y <- x * 2; names(y) <- paste0(\"n\", 1:5000); y[c(\"n1\", \"n5000\")] }");
+        assertEval("{ x <- as.double(1:5000); l <- lapply(1:3, function(i) x * i + 1); x[1] <- 0; sapply(l, function(v) c(v[1], sum(v))) }");
+        assertEval("{ x <- as.double(1:5000); l <- lapply(list(x, x + 1), \"*\", 2); x[1] <- 0; sapply(l, function(v) c(v[1], sum(v))) }");
+        assertEval("{ x <- as.double(1:5000); vapply(1:3, function(i) sum(x * i + 1), 0) }");
+        assertEval("{ x <- as.double(1:5000); m <- vapply(1:2, function(i) x * i, numeric(5000)); c(dim(m), m[5000, 2]) }");
+        assertEval("{ x <- as.double(1:5000); l <- mapply(function(a, b) a * b, list(x, x), c(2, 3), SIMPLIFY = FALSE); x[2] <- 0; sapply(l, function(v) v[2]) }");
+        // operands must not change while the result is pending
+        assertEval("{ x <- as.double(1:5000); sum(x * 2 + { x[1] <- 1000; 0 }) }");
+        assertEval("{ x <- as.double(1:5000); f <- function() { x * 2; x[1] <- 10; x[1:2] }; f() }");
+        assertEval("{ f <- function() { x <- as.double(1:5000); on.exit(x[1] <- 100); x * 2 }; f()[1:2] }");
+        // results that are not consumed by arithmetic are never deferred
+        assertEval("{ x <- as.double(1:5000); (x * 2 + 1)[c(1, 5000)] }");
+        assertEval("{ x <- as.double(1:5000); c(sum((x * 2) + 1), sum(+(x * 2) - x)) }");
+        assertEval("{ x <- as.double(1:5000); l <- list(); l[[1]] <- x * 2 + 1; x[1] <- 0; c(l[[1]][1], sum(l[[1]])) }");
+        assertEval("{ x <- as.double(1:5000); l <- list(); l$a <- x * 2; x[1] <- 0; l$a[1:2] }");
+        assertEval("{ x <- as.double(1:5000); e <- new.env(); e$a <- x * 2; x[1] <- 0; e$a[1:2] }");
+        assertEval("{ x <- as.double(1:5000); y <- x / 2; x[1] <- 0; x * 2; x[2] <- 0; c(x[1:3], y[1:3]) }");
+    }
+
     @Test
     public void testXor() {
         assertEval(" xor(TRUE, TRUE) ");
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2017, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.test.library.fastr;
+
+import org.junit.Test;
+
+import com.oracle.truffle.r.test.TestBase;
+
+public class TestMMap extends TestBase {
+
+    private static final String WRITE = "f <- tempfile(); con <- file(f, 'wb'); writeBin(c(1.5, NA, -3), con); writeBin(c(7L, NA, 9L), con); writeBin(c(1+2i, 3-4i), con); writeBin(c(TRUE, NA), con); writeBin(as.raw(1:3), con); close(con); ";
+    private static final String READ = "x <- list(readBin(con, 'double', 3), readBin(con, 'integer', 3), readBin(con, 'complex', 2), readBin(con, 'logical', 2), readBin(con, 'raw', 10), readBin(con, 'double', 1)); close(con); unlink(f); x";
+
+    @Test
+    public void testReadBin() {
+        assertEvalFastR(WRITE + "con <- .fastr.mmap(f); " + READ, WRITE + "con <- file(f, 'rb'); " + READ);
+        assertEvalFastR(WRITE + "con <- .fastr.mmap(f); x <- class(con); close(con); unlink(f); x", "c('mmap', 'connection')");
+    }
+
+    @Test
+    public void testSeek() {
+        String seek = "x <- list(isSeekable(con), seek(con, 8), readBin(con, 'double', 1), seek(con), seek(con, -8, 'current'), readBin(con, 'double', 5)); close(con); unlink(f); x";
+        assertEvalFastR(WRITE + "con <- .fastr.mmap(f); " + seek, WRITE + "con <- file(f, 'rb'); " + seek);
+    }
+
+    @Test
+    public void testSwap() {
+        String write = "f <- tempfile(); con <- file(f, 'wb'); writeBin(c(1.5, 2.5), con, endian='swap'); writeBin(1:2, con, endian='swap'); close(con); ";
+        String read = "x <- list(readBin(con, 'double', 2, endian='swap'), readBin(con, 'integer', 2, endian='swap')); close(con); unlink(f); x";
+        assertEvalFastR(write + "con <- .fastr.mmap(f); " + read, write + "con <- file(f, 'rb'); " + read);
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2017, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.test.library.fastr;
+
+import org.junit.Test;
+
+import com.oracle.truffle.r.runtime.FastROptions;
+import com.oracle.truffle.r.test.TestBase;
+
+// Checkstyle: stop line length check
+public class TestSharedBase extends TestBase {
+
+    @Test
+    public void testSharedBase() {
+        FastROptions.SharedBase.setBooleanValue(true);
+        try {
+            // the spawned contexts see the same constant vector, but the changes of one context
+            // to its base environment are not visible in the next one or in the parent
+            assertEvalFastR("{ ch <- .fastr.channel.create(1L); code <- \"ch <- .fastr.channel.get(1L); r <- list(.fastr.identity(month.name), month.name[1], nlevels(factor(c('a', 'b')))); " +
+                            "unlockBinding('month.name', baseenv()); evalq(month.name[1] <- 'x', baseenv()); unlockBinding('nlevels', baseenv()); assign('nlevels', function(x) -1L, envir = baseenv()); .fastr.channel.send(ch, r)\"; " +
+                            "r <- list(); for (i in 1:3) { cx <- .fastr.context.spawn(code); r[[i]] <- .fastr.channel.receive(ch); .fastr.context.join(cx) }; .fastr.channel.close(ch); " +
+                            "list(length(unique(sapply(r, `[[`, 1))), sapply(r, `[[`, 2), sapply(r, `[[`, 3), month.name[1], nlevels(factor('a'))) }",
+                            "list(1L, rep('January', 3), rep(2L, 3), 'January', 1L)");
+        } finally {
+            FastROptions.SharedBase.setBooleanValue(false);
+        }
+    }
+}
@@ -53,6 +53,17 @@ public class TestTypeConvert extends TestBase {
         }
     }
 
+    @Test
+    public void testLargeVectors() {
+        // large enough to be converted in parallel chunks
+        assertEval("{ x <- type.convert(as.character(1:100000)); c(typeof(x), sum(x)) }");
+        assertEval("{ x <- type.convert(c(as.character(1:100000), '0.5')); c(typeof(x), sum(x)) }");
+        assertEval("{ x <- type.convert(c(as.character(1:100000), 'a')); c(class(x), nlevels(x), x[[100001]]) }");
+        assertEval("{ x <- type.convert(rep(c('T', 'false', 'NA'), 10000)); c(typeof(x), sum(x, na.rm=TRUE), sum(is.na(x))) }");
+        assertEval("{ x <- type.convert(rep(c('b', 'a', '-', 'c'), 10000), na.strings='-'); list(levels(x), table(x, useNA='always')) }");
+        assertEval("{ x <- type.convert(rep(c('b', 'a', 'c'), 10000), as.is=TRUE); c(typeof(x), length(x)) }");
+    }
+
     @Test
     public void testFirstTypeMustBeOfModeTest() {
         // UnsupportedSpecializationException: Unexpected values provided for ...
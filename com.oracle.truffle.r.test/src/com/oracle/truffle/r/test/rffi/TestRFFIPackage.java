@@ -165,4 +165,33 @@ public class TestRFFIPackage extends TestRPackages {
     public void testRFFI20() {
         assertEvalWithLibWithSetup("x <- \"12345\"; ", "rffi.char_length(x)");
     }
+
+    @Test
+    public void testRFFI21() {
+        // large vectors are accessed through a native copy of their data
+        assertEvalWithLibWithSetup("x <- as.double(1:2000); ", "c(rffi.sum_real(x), x[[1]])");
+        assertEvalWithLibWithSetup("x <- as.double(1:2000); s <- rffi.sum_real(x); x[[1]] <- 1001; ", "c(s, rffi.sum_real(x), x[[1]])");
+        assertEvalWithLibWithSetup("x <- as.double(1:2000); y <- x; rffi.sum_real(x); x[[2]] <- 0; ", "c(rffi.sum_real(x), rffi.sum_real(y), sum(x), sum(y))");
+        assertEvalWithLib("{ l <- rffi.populateRealList(2000); c(length(l[[1]]), l[[1]][1:3], sum(l[[1]])) }");
+        assertEvalWithLibWithSetup("x <- rffi.iterate_iarray(1:2000); ", "c(length(x), x[c(1, 1000, 2000)], sum(x))");
+    }
+
+    @Test
+    public void testRFFI22() {
+        // native calls from contexts running in parallel, each preserving and releasing objects
+        String child = "library(testrffi, lib.loc = '%0'); x <- as.double(1:2000); p <- rffi.preserve_object(); r <- 0; " +
+                        "for (i in 1:100) { q <- rffi.preserve_object(); r <- r + rffi.sum_real(x); rffi.release_object(q) }; rffi.release_object(p); r";
+        String test = "{ r <- .fastr.context.eval(\"" + child + "\", pc = 4L); sapply(r, function(e) e$result) }";
+        assertEvalFastR(TestBase.template(test, new String[]{TestRPackages.libLoc()})[0], "rep(200100000, 4)");
+    }
+
+    @Test
+    public void testRFFI23() {
+        // NULL arguments are found in the global ref cache, fresh vectors are rejected without a
+        // table lookup
+        String test = "{ library(testrffi, lib.loc = '%0'); s0 <- .fastr.rffi.refcache.stats(); for (i in 1:10) rffi.isRString(NULL); " +
+                        "for (i in 1:10) rffi.addInt(i, 1L); d <- .fastr.rffi.refcache.stats() - s0; " +
+                        "detach('package:testrffi', unload = TRUE); c(d[['hits']] >= 10, d[['lookups']] - d[['hits']] >= 30) }";
+        assertEvalFastR(TestBase.template(test, new String[]{TestRPackages.libLoc()})[0], "c(TRUE, TRUE)");
+    }
 }
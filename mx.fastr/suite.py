@@ -163,6 +163,18 @@ suite = {
       "jacoco" : "include",
     },
 
+    "com.oracle.truffle.r.benchmarks" : {
+      "sourceDirs" : ["src"],
+      "dependencies" : [
+        "mx:JMH",
+        "com.oracle.truffle.r.engine",
+      ],
+      "checkstyle" : "com.oracle.truffle.r.runtime",
+      "javaCompliance" : "1.8",
+      "annotationProcessors" : ["mx:JMH"],
+      "workingSets" : "Truffle,FastR,Test",
+    },
+
     "com.oracle.truffle.r.test" : {
       "sourceDirs" : ["src"],
       "dependencies" : [